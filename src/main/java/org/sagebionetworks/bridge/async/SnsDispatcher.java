@@ -0,0 +1,146 @@
+package org.sagebionetworks.bridge.async;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+import javax.annotation.Resource;
+
+import com.google.common.collect.ImmutableList;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+
+/**
+ * <p>
+ * Makes a blocking SNS call for each item in a list concurrently, on the fan-out executor, and waits for all of them
+ * to finish. This is used where a request would otherwise make one SNS call after another, such as publishing to each
+ * of a participant's registrations, or subscribing a registration to each of a list of topics. It's also used for
+ * other independent blocking calls, such as the conditional DynamoDB writes for a list of activity events.
+ * </p>
+ * <p>
+ * Each dispatch uses at most sns.dispatch.max.concurrency threads, including the calling thread, so a participant with
+ * many registrations or topics can't take over the executor. The outcome of each call is returned, whether or not it
+ * succeeded, so callers can decide how to handle each failure.
+ * </p>
+ */
+@Component
+public class SnsDispatcher {
+    static final String CONFIG_KEY_MAX_CONCURRENCY = "sns.dispatch.max.concurrency";
+
+    private ExecutorService fanOutExecutorService;
+    private int maxConcurrency;
+
+    /** Config, to get the maximum number of concurrent calls per dispatch. */
+    @Autowired
+    public final void setBridgeConfig(BridgeConfig config) {
+        this.maxConcurrency = config.getPropertyAsInt(CONFIG_KEY_MAX_CONCURRENCY);
+    }
+
+    /** Executor that the calls are made on. */
+    @Resource(name = "fanOutExecutorService")
+    public final void setFanOutExecutorService(ExecutorService fanOutExecutorService) {
+        this.fanOutExecutorService = fanOutExecutorService;
+    }
+
+    /**
+     * Calls the function for each item, and returns the outcome of each call in the same order as the items.
+     * RuntimeExceptions from the function are returned as failed outcomes, not thrown.
+     */
+    public <T, R> List<Outcome<T, R>> dispatch(List<? extends T> items, Function<? super T, ? extends R> call) {
+        checkNotNull(items);
+        checkNotNull(call);
+        if (items.isEmpty()) {
+            return ImmutableList.of();
+        }
+
+        // Each worker takes the next item until none are left. Submit the extra workers to the executor, and run one
+        // on this thread while we wait.
+        AtomicReferenceArray<Outcome<T, R>> outcomes = new AtomicReferenceArray<>(items.size());
+        AtomicInteger nextIndex = new AtomicInteger();
+        CountDownLatch remaining = new CountDownLatch(items.size());
+        Runnable worker = () -> {
+            int index;
+            while ((index = nextIndex.getAndIncrement()) < items.size()) {
+                T item = items.get(index);
+                try {
+                    outcomes.set(index, new Outcome<>(item, call.apply(item), null));
+                } catch (RuntimeException ex) {
+                    outcomes.set(index, new Outcome<>(item, null, ex));
+                } finally {
+                    remaining.countDown();
+                }
+            }
+        };
+
+        int extraWorkerCount = Math.min(Math.max(maxConcurrency, 1), items.size()) - 1;
+        List<Future<?>> futures = new ArrayList<>(extraWorkerCount);
+        try {
+            for (int i = 0; i < extraWorkerCount; i++) {
+                futures.add(fanOutExecutorService.submit(worker));
+            }
+            worker.run();
+            // Once this thread runs out of items, only wait for the calls that are still running. Workers that are
+            // still queued have nothing left to do.
+            remaining.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BridgeServiceException(ex);
+        } finally {
+            for (Future<?> future : futures) {
+                future.cancel(false);
+            }
+        }
+
+        List<Outcome<T, R>> results = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            Outcome<T, R> outcome = outcomes.get(i);
+            if (outcome == null) {
+                // The call threw an Error, which has already been thrown on the thread that made the call.
+                throw new BridgeServiceException("Error dispatching SNS call");
+            }
+            results.add(outcome);
+        }
+        return results;
+    }
+
+    /** The outcome of one call: the item, and either the result of the call or the exception it threw. */
+    public static final class Outcome<T, R> {
+        private final T item;
+        private final R result;
+        private final RuntimeException error;
+
+        Outcome(T item, R result, RuntimeException error) {
+            this.item = item;
+            this.result = result;
+            this.error = error;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        /** The value returned by the call, or null if the call failed. */
+        public R getResult() {
+            return result;
+        }
+
+        /** The exception thrown by the call, or null if the call succeeded. */
+        public RuntimeException getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+}
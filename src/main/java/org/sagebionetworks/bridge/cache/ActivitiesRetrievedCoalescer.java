@@ -0,0 +1,190 @@
+package org.sagebionetworks.bridge.cache;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.time.DateUtils;
+
+/**
+ * <p>
+ * Set of participants whose activities_retrieved event was recently published. The event is published every time a
+ * participant retrieves their activities, but it is immutable, so every publish after the first is a write that
+ * changes nothing. Once the event has been published for a participant, later publishes within the app's window are
+ * skipped.
+ * </p>
+ * <p>
+ * The set is normally shared through Redis, so it covers requests to every node. An unshared set is kept in memory and
+ * only covers this node's requests. Deleting a participant's events must call {@link #remove}, so the event is
+ * published again afterwards. An unshared set only forgets the participant on this node, so other nodes keep skipping
+ * the event until their window ends.
+ * </p>
+ */
+@Component
+public class ActivitiesRetrievedCoalescer {
+    private static final Logger LOG = LoggerFactory.getLogger(ActivitiesRetrievedCoalescer.class);
+
+    private static final String CONFIG_KEY_SHARED = "activities.retrieved.coalesce.shared";
+    private static final String CONFIG_KEY_WINDOW_SECONDS = "activities.retrieved.coalesce.window.seconds";
+    private static final String CONFIG_KEY_APP_WINDOW_SECONDS = "activities.retrieved.coalesce.app.window.seconds";
+    private static final Splitter APP_WINDOW_SPLITTER = Splitter.on(':').trimResults();
+
+    // Package-scoped for unit tests.
+    static final String METRIC_COALESCED = "activities.retrieved.coalesced";
+    static final String METRIC_UNAVAILABLE = "activities.retrieved.coalesce.unavailable";
+    static final int DEFAULT_WINDOW_SECONDS = 3600;
+    static final long LOCAL_MAX_SIZE = 100000L;
+
+    // Unshared set, from participant to when their window ends.
+    private Cache<CacheKey, Long> localCache = newLocalCache(DEFAULT_WINDOW_SECONDS);
+    private CacheProvider cacheProvider;
+    private boolean shared = true;
+    private int windowSeconds = DEFAULT_WINDOW_SECONDS;
+    private Map<String, Integer> appWindowSeconds = ImmutableMap.of();
+    private Meter coalescedMeter;
+    private Meter unavailableMeter;
+
+    /** Config, to get the window for each app and whether the set is shared. */
+    @Autowired
+    final void setBridgeConfig(BridgeConfig config) {
+        shared = Boolean.parseBoolean(config.getProperty(CONFIG_KEY_SHARED));
+        windowSeconds = config.getPropertyAsInt(CONFIG_KEY_WINDOW_SECONDS);
+
+        // Overrides are listed as appId:seconds. A window of 0 turns off coalescing for that app.
+        int maxWindowSeconds = windowSeconds;
+        ImmutableMap.Builder<String, Integer> builder = ImmutableMap.builder();
+        List<String> overrides = config.getPropertyAsList(CONFIG_KEY_APP_WINDOW_SECONDS);
+        if (overrides != null) {
+            for (String override : overrides) {
+                if (StringUtils.isBlank(override)) {
+                    continue;
+                }
+                List<String> parts = APP_WINDOW_SPLITTER.splitToList(override);
+                int seconds = Integer.parseInt(parts.get(1));
+                builder.put(parts.get(0), seconds);
+                maxWindowSeconds = Math.max(maxWindowSeconds, seconds);
+            }
+        }
+        appWindowSeconds = builder.build();
+        localCache = newLocalCache(maxWindowSeconds);
+    }
+
+    /** Cache provider, where the shared set is kept. */
+    @Autowired
+    final void setCacheProvider(CacheProvider cacheProvider) {
+        this.cacheProvider = cacheProvider;
+    }
+
+    /** Metric registry, used to report how often a publish is skipped. */
+    @Autowired
+    final void setMetricRegistry(MetricRegistry metricRegistry) {
+        coalescedMeter = metricRegistry.meter(METRIC_COALESCED);
+        unavailableMeter = metricRegistry.meter(METRIC_UNAVAILABLE);
+    }
+
+    private static Cache<CacheKey, Long> newLocalCache(int maxWindowSeconds) {
+        return CacheBuilder.newBuilder().maximumSize(LOCAL_MAX_SIZE)
+                .expireAfterWrite(Math.max(maxWindowSeconds, 1), TimeUnit.SECONDS).build();
+    }
+
+    /**
+     * Returns true if the participant's event (the global event if the study ID is null) was published within the
+     * app's window, so it doesn't need to be published again. Errors are logged, and return false.
+     */
+    public boolean isRecentlyPublished(String appId, String healthCode, String studyId) {
+        checkNotNull(healthCode);
+
+        if (getWindowSeconds(appId) <= 0) {
+            return false;
+        }
+        CacheKey cacheKey = CacheKey.activitiesRetrieved(healthCode, studyId);
+        boolean published;
+        if (shared) {
+            try {
+                published = cacheProvider.getObject(cacheKey, Long.class) != null;
+            } catch (RuntimeException ex) {
+                LOG.warn("Error reading recently published activities_retrieved events", ex);
+                mark(unavailableMeter);
+                return false;
+            }
+        } else {
+            Long windowEnd = localCache.getIfPresent(cacheKey);
+            published = windowEnd != null && windowEnd > DateUtils.getCurrentMillisFromEpoch();
+        }
+        if (published) {
+            mark(coalescedMeter);
+        }
+        return published;
+    }
+
+    /**
+     * Records that the participant's event has been published. Since the event is immutable, this is also true if the
+     * publish was rejected because the event already existed. Errors are logged, and the next publish isn't skipped.
+     */
+    public void recordPublished(String appId, String healthCode, String studyId) {
+        checkNotNull(healthCode);
+
+        int seconds = getWindowSeconds(appId);
+        if (seconds <= 0) {
+            return;
+        }
+        CacheKey cacheKey = CacheKey.activitiesRetrieved(healthCode, studyId);
+        long now = DateUtils.getCurrentMillisFromEpoch();
+        if (shared) {
+            try {
+                cacheProvider.setObject(cacheKey, now, seconds);
+            } catch (RuntimeException ex) {
+                LOG.warn("Error recording published activities_retrieved event", ex);
+                mark(unavailableMeter);
+            }
+        } else {
+            localCache.put(cacheKey, now + TimeUnit.SECONDS.toMillis(seconds));
+        }
+    }
+
+    /**
+     * Forgets the participant's event, so the next publish isn't skipped. Called when their events are deleted. Errors
+     * are logged, and publishes may be skipped until the window ends.
+     */
+    public void remove(String healthCode, String studyId) {
+        checkNotNull(healthCode);
+
+        CacheKey cacheKey = CacheKey.activitiesRetrieved(healthCode, studyId);
+        localCache.invalidate(cacheKey);
+        if (shared) {
+            try {
+                cacheProvider.removeObject(cacheKey);
+            } catch (RuntimeException ex) {
+                LOG.warn("Error removing recently published activities_retrieved event", ex);
+                mark(unavailableMeter);
+            }
+        }
+    }
+
+    // Package-scoped for unit tests.
+    int getWindowSeconds(String appId) {
+        Integer seconds = (appId != null) ? appWindowSeconds.get(appId) : null;
+        return (seconds != null) ? seconds : windowSeconds;
+    }
+
+    private static void mark(Meter meter) {
+        if (meter != null) {
+            meter.mark();
+        }
+    }
+}
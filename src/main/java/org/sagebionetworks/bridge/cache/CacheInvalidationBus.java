@@ -0,0 +1,144 @@
+package org.sagebionetworks.bridge.cache;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+
+/**
+ * <p>
+ * Broadcasts invalidations of process-local (near) caches to every Bridge node, using Redis pub/sub. Each message is
+ * in the form "[nodeId]|[cacheName]|[key]". Nodes ignore their own messages, since the publishing node has already
+ * invalidated its own cache.
+ * </p>
+ * <p>
+ * Redis pub/sub is fire-and-forget. If a node misses a message (for example, while it is reconnecting), its near cache
+ * is stale until the entry expires. Near caches that use this bus must therefore have short TTLs.
+ * </p>
+ */
+@Component
+public class CacheInvalidationBus {
+    private static final Logger LOG = LoggerFactory.getLogger(CacheInvalidationBus.class);
+
+    // Package-scoped for unit tests.
+    static final String CHANNEL = "bridge:cache:invalidate";
+    static final String SEPARATOR = "|";
+
+    private static final long RECONNECT_DELAY_MILLIS = 5000L;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, List<Consumer<String>>> listeners = new ConcurrentHashMap<>();
+    private final List<JedisPubSub> subscribers = new CopyOnWriteArrayList<>();
+    private JedisPool jedisPool;
+    private volatile boolean running;
+
+    @Resource(name = "jedisPool")
+    final void setJedisPool(JedisPool jedisPool) {
+        this.jedisPool = jedisPool;
+    }
+
+    /** Registers a listener, which is called with the key whenever another node invalidates the named cache. */
+    public void addListener(String cacheName, Consumer<String> listener) {
+        checkNotNull(cacheName);
+        checkNotNull(listener);
+        listeners.computeIfAbsent(cacheName, name -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    /** Tells all other nodes to invalidate the given key in the named cache. Failures are logged and ignored. */
+    public void publish(String cacheName, String key) {
+        checkNotNull(cacheName);
+        checkNotNull(key);
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.publish(CHANNEL, nodeId + SEPARATOR + cacheName + SEPARATOR + key);
+        } catch (RuntimeException ex) {
+            LOG.warn("Error publishing invalidation for cache " + cacheName + ", key " + key + ": " +
+                    ex.getMessage(), ex);
+        }
+    }
+
+    /** Starts listening for invalidations on a background thread. This is called by Spring. */
+    @PostConstruct
+    public void start() {
+        running = true;
+        Thread thread = new Thread(this::subscribeLoop, "cache-invalidation-subscriber");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Stops listening for invalidations. This is called by Spring. */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        for (JedisPubSub subscriber : subscribers) {
+            if (subscriber.isSubscribed()) {
+                subscriber.unsubscribe();
+            }
+        }
+    }
+
+    // Subscribing blocks the thread until we unsubscribe or lose the connection. Reconnect until we're stopped.
+    private void subscribeLoop() {
+        while (running) {
+            JedisPubSub subscriber = new JedisPubSub() {
+                @Override
+                public void onMessage(String channel, String message) {
+                    handleMessage(message);
+                }
+            };
+            subscribers.add(subscriber);
+            try (Jedis jedis = jedisPool.getResource()) {
+                jedis.subscribe(subscriber, CHANNEL);
+            } catch (RuntimeException ex) {
+                LOG.warn("Lost cache invalidation subscription, reconnecting: " + ex.getMessage(), ex);
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException interruptedEx) {
+                    return;
+                }
+            } finally {
+                subscribers.remove(subscriber);
+            }
+        }
+    }
+
+    // Package-scoped for unit tests.
+    void handleMessage(String message) {
+        String[] parts = message.split("\\" + SEPARATOR, 3);
+        if (parts.length != 3) {
+            LOG.warn("Malformed cache invalidation message: " + message);
+            return;
+        }
+        if (nodeId.equals(parts[0])) {
+            // We already invalidated our own cache.
+            return;
+        }
+
+        List<Consumer<String>> cacheListeners = listeners.get(parts[1]);
+        if (cacheListeners != null) {
+            for (Consumer<String> listener : cacheListeners) {
+                listener.accept(parts[2]);
+            }
+        }
+    }
+
+    /** Node ID, included in each message. Package-scoped for unit tests. */
+    String getNodeId() {
+        return nodeId;
+    }
+}
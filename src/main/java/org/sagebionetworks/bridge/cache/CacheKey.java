@@ -1,5 +1,7 @@
 package org.sagebionetworks.bridge.cache;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import java.util.List;
 import java.util.Objects;
 
@@ -19,7 +21,7 @@ import com.google.common.collect.Lists;
 public final class CacheKey {
     
     private static final String[] PUBLIC_KEYS = new String[] { "emailVerificationStatus", "AppConfigList",
-            "channel-throttling", "lock", "App", "Subpopulation", "SubpopulationList", "view" };
+            "channel-throttling", "lock", "App", "Subpopulation", "SubpopulationList", "view", "view:v2" };
     
     public final static boolean isPublic(String key) {
         for (String suffix : PUBLIC_KEYS) {
@@ -45,6 +47,13 @@ public final class CacheKey {
     public static final CacheKey appConfigList(String appId) {
         return new CacheKey(appId, "AppConfigList");
     }
+    /** Marks a participant's activities_retrieved event as recently published, globally or for a study. */
+    public static final CacheKey activitiesRetrieved(String healthCode, String studyId) {
+        if (studyId == null) {
+            return new CacheKey(healthCode, "activitiesRetrieved");
+        }
+        return new CacheKey(healthCode, studyId, "activitiesRetrieved");
+    }
 
     /**
      * Cache key for mapping a used channel sign-in token to the cached session token, used for when a second channel
@@ -106,14 +115,27 @@ public final class CacheKey {
     public static final CacheKey verificationToken(String sptoken) {
         return new CacheKey(sptoken); // no type, not great
     }
+    /**
+     * Views are cached as bytes under a versioned key, so nodes that still cache views as JSON strings never read 
+     * them (and vice versa).
+     */
     public static final CacheKey viewKey(Class<?> clazz, String... elements) {
         List<String> list = Lists.newArrayList(elements);
         list.add(clazz.getSimpleName());
         list.add("view");
+        list.add(VIEW_FORMAT_VERSION);
         return new CacheKey(COLON_JOINER.join(list));
     }
+    /** The key a view was cached under when views were cached as JSON strings. */
+    static final CacheKey legacyViewKey(CacheKey viewKey) {
+        String key = viewKey.toString();
+        String suffix = ":" + VIEW_FORMAT_VERSION;
+        checkArgument(key.endsWith(suffix), "Not a view key: %s", key);
+        return new CacheKey(key.substring(0, key.length() - suffix.length()));
+    }
     
     private static final Joiner COLON_JOINER = Joiner.on(":");
+    private static final String VIEW_FORMAT_VERSION = "v2";
     
     private final String key;
     
@@ -1,13 +1,17 @@
 package org.sagebionetworks.bridge.cache;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Resource;
 
 import org.sagebionetworks.bridge.BridgeConstants;
+import org.sagebionetworks.bridge.config.BridgeConfig;
 import org.sagebionetworks.bridge.config.BridgeConfigFactory;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
@@ -18,30 +22,114 @@ import org.sagebionetworks.bridge.models.apps.App;
 import org.sagebionetworks.bridge.redis.JedisOps;
 import org.sagebionetworks.bridge.redis.JedisTransaction;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
 
 /**
- * A wrapper around our use of Redis.
+ * A wrapper around our use of Redis. Apps are also held in a small process-local (near) cache in front of Redis, since
+ * nearly every request looks up its app. The near cache is invalidated on every node through the
+ * {@link CacheInvalidationBus}, and its entries expire quickly in case an invalidation is missed.
  */
 @Component
 public class CacheProvider {
     private static final String LOCAL_SERVICE_ERROR = "Cannot find cache service, have you started Redis? (original message: %s)";
+
+    private static final String CONFIG_KEY_APP_NEAR_CACHE_MAX_SIZE = "app.near.cache.max.size";
+    private static final String CONFIG_KEY_APP_NEAR_CACHE_TTL_SECONDS = "app.near.cache.ttl.seconds";
+
+    // Package-scoped for unit tests.
+    static final String APP_NEAR_CACHE_NAME = "app";
+    static final String METRIC_APP_NEAR_CACHE_HIT = "cache.app.near.hit";
+    static final String METRIC_APP_NEAR_CACHE_MISS = "cache.app.near.miss";
+    static final long DEFAULT_APP_NEAR_CACHE_MAX_SIZE = 1000L;
+    static final int DEFAULT_APP_NEAR_CACHE_TTL_SECONDS = 30;
+
+    /**
+     * Sessions are written with this format marker as their first property, so we can deserialize them directly,
+     * without the legacy studyIdentifier fix-up. Nodes that predate the marker ignore it as an unknown property.
+     * Package-scoped for unit tests.
+     */
+    static final String SESSION_FORMAT_PREFIX = "{\"sessionFormat\":2,";
+
+    // Looks up the user ID for the session token (KEYS[1]), then the session for that user ID, in a single round
+    // trip. The session key can't be known until the user ID has been read, so the script builds it from the prefix
+    // (ARGV[1]) and suffix (ARGV[2]) of CacheKey.userIdToSession(), instead of being passed it in KEYS. This is fine
+    // for the single Redis node we use, but would need both keys in the same hash slot on a Redis Cluster.
+    // Package-scoped for unit tests.
+    static final String GET_SESSION_SCRIPT = "local userId = redis.call('GET', KEYS[1]) " +
+            "if not userId then return nil end " +
+            "return {userId, redis.call('GET', ARGV[1] .. userId .. ARGV[2])}";
+    private static final String USER_ID_PLACEHOLDER = "{userId}";
+    private static final String USER_ID_TO_SESSION_TEMPLATE = CacheKey.userIdToSession(USER_ID_PLACEHOLDER)
+            .toString();
+    static final String USER_ID_TO_SESSION_PREFIX = USER_ID_TO_SESSION_TEMPLATE.substring(0,
+            USER_ID_TO_SESSION_TEMPLATE.indexOf(USER_ID_PLACEHOLDER));
+    static final String USER_ID_TO_SESSION_SUFFIX = USER_ID_TO_SESSION_TEMPLATE.substring(
+            USER_ID_TO_SESSION_TEMPLATE.indexOf(USER_ID_PLACEHOLDER) + USER_ID_PLACEHOLDER.length());
+
     private JedisOps jedisOps;
+    private JedisPool jedisPool;
     private int sessionExpireInSeconds;
+    private CacheInvalidationBus cacheInvalidationBus;
+    private Cache<String, NearCacheEntry> appNearCache = newAppNearCache(DEFAULT_APP_NEAR_CACHE_MAX_SIZE,
+            DEFAULT_APP_NEAR_CACHE_TTL_SECONDS);
+    private Counter appNearCacheHitCounter;
+    private Counter appNearCacheMissCounter;
 
     @Resource(name = "jedisOps")
     final void setJedisOps(JedisOps jedisOps) {
         this.jedisOps = jedisOps;
     }
 
+    /** Used directly for scripts and binary values, which JedisOps doesn't support. */
+    @Resource(name = "jedisPool")
+    final void setJedisPool(JedisPool jedisPool) {
+        this.jedisPool = jedisPool;
+    }
+
     @Resource(name = "sessionExpireInSeconds")
     final void setSessionExpireInSeconds(@SuppressWarnings("SameParameterValue") int sessionExpireInSeconds) {
         this.sessionExpireInSeconds = sessionExpireInSeconds;
     }
+
+    /** Config, to get the size and TTL of the app near cache. */
+    @Autowired
+    final void setBridgeConfig(BridgeConfig config) {
+        appNearCache = newAppNearCache(config.getPropertyAsInt(CONFIG_KEY_APP_NEAR_CACHE_MAX_SIZE),
+                config.getPropertyAsInt(CONFIG_KEY_APP_NEAR_CACHE_TTL_SECONDS));
+    }
+
+    /** Bus used to invalidate the app near cache on other nodes. */
+    @Autowired
+    final void setCacheInvalidationBus(CacheInvalidationBus cacheInvalidationBus) {
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        cacheInvalidationBus.addListener(APP_NEAR_CACHE_NAME, appId -> appNearCache.invalidate(appId));
+    }
+
+    /** Metric registry, used to report app near cache hits and misses. */
+    @Autowired
+    final void setMetricRegistry(MetricRegistry metricRegistry) {
+        appNearCacheHitCounter = metricRegistry.counter(METRIC_APP_NEAR_CACHE_HIT);
+        appNearCacheMissCounter = metricRegistry.counter(METRIC_APP_NEAR_CACHE_MISS);
+    }
+
+    private static Cache<String, NearCacheEntry> newAppNearCache(long maxSize, int ttlSeconds) {
+        return CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
     
     /**
      * Take existing data in the request info object and augment with any new information 
@@ -96,7 +184,7 @@ public class CacheProvider {
             Long ttl = jedisOps.ttl(userIdToSessionKey.toString());
             int expiration = (ttl != null && ttl > 0L) ? ttl.intValue() : sessionExpireInSeconds;
                    
-            String ser = StudyParticipant.CACHE_WRITER.writeValueAsString(session);
+            String ser = serializeSession(session);
             
             List<Object> results = transaction
                 .setex(tokenToUserIdKey.toString(), expiration, session.getId())
@@ -122,13 +210,11 @@ public class CacheProvider {
         checkNotNull(sessionToken);
         try {
             CacheKey tokenToUserIdKey = CacheKey.tokenToUserId(sessionToken);
-            String userId = jedisOps.get(tokenToUserIdKey.toString());
-            if (userId != null) {
-                CacheKey userIdToSessionKey = CacheKey.userIdToSession(userId);
-                String ser = jedisOps.get(userIdToSessionKey.toString());
+            List<String> userIdAndSession = getUserIdAndSession(tokenToUserIdKey);
+            if (userIdAndSession != null && userIdAndSession.size() > 1) {
+                String ser = userIdAndSession.get(1);
                 if (ser != null) {
-                    JsonNode node = adjustJsonWithStudyIdentifier(ser);
-                    UserSession session = BridgeObjectMapper.get().treeToValue(node,  UserSession.class);
+                    UserSession session = deserializeSession(ser);
                     
                     // The token --> userId look up is not replaced on session invalidation. 
                     // Check here and only return if the sessionToken is valid. It is possible 
@@ -149,6 +235,18 @@ public class CacheProvider {
         }
     }
     
+    /**
+     * Returns a list of the user ID and the serialized session (which may be null), or null if the session token isn't
+     * mapped to a user.
+     */
+    @SuppressWarnings("unchecked")
+    private List<String> getUserIdAndSession(CacheKey tokenToUserIdKey) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            return (List<String>) jedis.eval(GET_SESSION_SCRIPT, ImmutableList.of(tokenToUserIdKey.toString()),
+                    ImmutableList.of(USER_ID_TO_SESSION_PREFIX, USER_ID_TO_SESSION_SUFFIX));
+        }
+    }
+    
     public UserSession getUserSessionByUserId(String userId) {
         checkNotNull(userId);
         
@@ -158,14 +256,34 @@ public class CacheProvider {
             if (ser == null) {
                 return null;
             }
-            JsonNode node = adjustJsonWithStudyIdentifier(ser);
-            return BridgeObjectMapper.get().treeToValue(node,  UserSession.class);
+            return deserializeSession(ser);
         } catch(Throwable e) {
             promptToStartRedisIfLocal(e);
             throw new BridgeServiceException(e);
         }
     }
 
+    // Package-scoped for unit tests.
+    static String serializeSession(UserSession session) throws Exception {
+        String ser = StudyParticipant.CACHE_WRITER.writeValueAsString(session);
+        // Sessions always serialize to a non-empty JSON object, so we can splice the format marker in as the first
+        // property.
+        return SESSION_FORMAT_PREFIX + ser.substring(1);
+    }
+
+    /**
+     * Current sessions deserialize in a single pass. Sessions written before the format marker go through the legacy
+     * tree fix-up. Those sessions expire within sessionExpireInSeconds of this change being deployed, after which the
+     * legacy path can be removed.
+     */
+    private UserSession deserializeSession(String ser) throws Exception {
+        if (ser.startsWith(SESSION_FORMAT_PREFIX)) {
+            return BridgeObjectMapper.get().readValue(ser, UserSession.class);
+        }
+        JsonNode node = adjustJsonWithStudyIdentifier(ser);
+        return BridgeObjectMapper.get().treeToValue(node, UserSession.class);
+    }
+
     /**
      * During a transition period away from appId, we will need special handling to
      * ensure persisted sessions, subpopulations, and subpopulation lists are deserialized 
@@ -236,22 +354,73 @@ public class CacheProvider {
         }
     }
 
+    /**
+     * Caches an app that has just been written to DDB. Other nodes may have reloaded the old app after it was removed,
+     * so they're told to drop it now that Redis has the new one.
+     */
     public void setApp(App app) {
+        cacheLoadedApp(app);
+        publishAppInvalidation(app.getIdentifier());
+    }
+
+    /**
+     * Caches an app that was read from DDB after a cache miss. The app hasn't changed, so other nodes aren't told to
+     * drop their copies.
+     */
+    public void cacheLoadedApp(App app) {
         checkNotNull(app);
         CacheKey redisKey = CacheKey.app(app.getIdentifier());
         setObject(redisKey, app, BridgeConstants.BRIDGE_SESSION_EXPIRE_IN_SECONDS);
+        putAppInNearCache(app);
     }
 
+    /**
+     * Gets the app from the near cache, falling back to Redis. Callers routinely modify the returned app, so this
+     * always returns a copy, never the instance held in the near cache.
+     */
     public App getApp(String appId) {
         checkNotNull(appId);
+        NearCacheEntry entry = appNearCache.getIfPresent(appId);
+        if (entry != null) {
+            incrementCounter(appNearCacheHitCounter);
+            return entry.readApp();
+        }
+        incrementCounter(appNearCacheMissCounter);
+
         CacheKey redisKey = CacheKey.app(appId);
-        return getObject(redisKey, App.class, BridgeConstants.BRIDGE_SESSION_EXPIRE_IN_SECONDS);
+        App app = getObject(redisKey, App.class, BridgeConstants.BRIDGE_SESSION_EXPIRE_IN_SECONDS);
+        if (app != null) {
+            putAppInNearCache(app);
+        }
+        return app;
     }
 
     public void removeApp(String appId) {
         checkNotNull(appId);
         CacheKey redisKey = CacheKey.app(appId);
         removeObject(redisKey);
+        appNearCache.invalidate(appId);
+        publishAppInvalidation(appId);
+    }
+
+    private void publishAppInvalidation(String appId) {
+        if (cacheInvalidationBus != null) {
+            cacheInvalidationBus.publish(APP_NEAR_CACHE_NAME, appId);
+        }
+    }
+
+    // Caches the app, unless the near cache already has a newer version (for example, if a concurrent request read a
+    // stale app from Redis while this node was updating it).
+    private void putAppInNearCache(App app) {
+        NearCacheEntry entry = new NearCacheEntry(app);
+        appNearCache.asMap().merge(app.getIdentifier(), entry, (existing, updated) ->
+                existing.isNewerThan(updated) ? existing : updated);
+    }
+
+    private static void incrementCounter(Counter counter) {
+        if (counter != null) {
+            counter.inc();
+        }
     }
 
     public <T> T getObject(CacheKey cacheKey, Class<T> clazz) {
@@ -352,6 +521,36 @@ public class CacheProvider {
         }
     }
     
+    /**
+     * Get the raw bytes cached under this key, or null if nothing is cached. Unlike objects, these aren't parsed.
+     */
+    public byte[] getBytes(CacheKey cacheKey) {
+        checkNotNull(cacheKey);
+        try (Jedis jedis = jedisPool.getResource()) {
+            return jedis.get(cacheKey.toString().getBytes(UTF_8));
+        } catch (Throwable e) {
+            promptToStartRedisIfLocal(e);
+            throw new BridgeServiceException(e);
+        }
+    }
+    
+    /**
+     * Set raw bytes in the cache with an expiration in seconds.
+     */
+    public void setBytes(CacheKey cacheKey, byte[] bytes, int expireInSeconds) {
+        checkNotNull(cacheKey);
+        checkNotNull(bytes);
+        try (Jedis jedis = jedisPool.getResource()) {
+            String result = jedis.setex(cacheKey.toString().getBytes(UTF_8), expireInSeconds, bytes);
+            if (!"OK".equals(result)) {
+                throw new BridgeServiceException("Bytes storage error");
+            }
+        } catch (Throwable e) {
+            promptToStartRedisIfLocal(e);
+            throw new BridgeServiceException(e);
+        }
+    }
+    
     /**
      * Remove object from cache, if it exists.
      */
@@ -401,4 +600,35 @@ public class CacheProvider {
             throw new BridgeServiceException(String.format(LOCAL_SERVICE_ERROR, e.getMessage()));
         }
     }
+
+    /**
+     * An app in the near cache. The app is held as the tokens Jackson wrote when serializing it, so each hit only has
+     * to build a new app from those tokens. We don't pay to serialize the app again, or to parse JSON text.
+     */
+    private static final class NearCacheEntry {
+        private final Long version;
+        private final TokenBuffer tokens;
+
+        NearCacheEntry(App app) {
+            this.version = app.getVersion();
+            this.tokens = new TokenBuffer(BridgeObjectMapper.get(), false);
+            try {
+                BridgeObjectMapper.get().writeValue(tokens, app);
+            } catch (IOException e) {
+                throw new BridgeServiceException(e);
+            }
+        }
+
+        boolean isNewerThan(NearCacheEntry other) {
+            return version != null && other.version != null && version > other.version;
+        }
+
+        App readApp() {
+            try {
+                return BridgeObjectMapper.get().readValue(tokens.asParser(), App.class);
+            } catch (IOException e) {
+                throw new BridgeServiceException(e);
+            }
+        }
+    }
 }
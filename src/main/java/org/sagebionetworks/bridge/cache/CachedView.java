@@ -0,0 +1,113 @@
+package org.sagebionetworks.bridge.cache;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.google.common.base.Splitter;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * A view cached by {@link ViewCache}: the view's JSON as UTF-8 bytes, optionally a gzipped copy of the JSON, and an
+ * ETag for the view. Views are served from these bytes as they are, without parsing or re-serializing the JSON. The
+ * byte arrays aren't copied, so callers must not modify them.
+ */
+public final class CachedView {
+    // Cached views start with this marker. Views cached as JSON strings don't, so they're treated as a miss.
+    private static final byte[] FORMAT_MARKER = { 0, 1 };
+    private static final int HASH_LENGTH = 16;
+    private static final String WEAK_ETAG_PREFIX = "W/";
+    private static final Splitter ETAG_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    private final byte[] hash;
+    private final byte[] json;
+    private final byte[] gzippedJson;
+
+    CachedView(byte[] json, byte[] gzippedJson) {
+        this(Hashing.murmur3_128().hashBytes(checkNotNull(json)).asBytes(), json, gzippedJson);
+    }
+
+    private CachedView(byte[] hash, byte[] json, byte[] gzippedJson) {
+        this.hash = hash;
+        this.json = json;
+        this.gzippedJson = gzippedJson;
+    }
+
+    /** The view's JSON, as UTF-8 bytes. */
+    public byte[] getJson() {
+        return json;
+    }
+
+    /** The view's JSON, gzipped, or null if the view wasn't large enough to be worth compressing. */
+    public byte[] getGzippedJson() {
+        return gzippedJson;
+    }
+
+    /**
+     * A weak ETag for the view, based on its JSON. The JSON and the gzipped JSON are the same view, so they have the
+     * same ETag.
+     */
+    public String getEtag() {
+        return WEAK_ETAG_PREFIX + "\"" + BaseEncoding.base16().lowerCase().encode(hash) + "\"";
+    }
+
+    /**
+     * True if the value of an If-None-Match header matches this view's ETag, that is, the client already has this
+     * view. ETags are compared weakly, as If-None-Match requires.
+     */
+    public boolean matches(String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String etag = stripWeakPrefix(getEtag());
+        for (String candidate : ETAG_SPLITTER.split(ifNoneMatch)) {
+            if ("*".equals(candidate) || etag.equals(stripWeakPrefix(candidate))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeakPrefix(String etag) {
+        return etag.startsWith(WEAK_ETAG_PREFIX) ? etag.substring(WEAK_ETAG_PREFIX.length()) : etag;
+    }
+
+    /** The bytes stored in the cache: the format marker, hash, JSON length, JSON, and gzipped JSON (if any). */
+    byte[] serialize() {
+        int gzippedLength = (gzippedJson != null) ? gzippedJson.length : 0;
+        ByteBuffer buffer = ByteBuffer.allocate(FORMAT_MARKER.length + HASH_LENGTH + Integer.BYTES + json.length
+                + gzippedLength);
+        buffer.put(FORMAT_MARKER).put(hash).putInt(json.length).put(json);
+        if (gzippedJson != null) {
+            buffer.put(gzippedJson);
+        }
+        return buffer.array();
+    }
+
+    /** Reads a view from the bytes stored in the cache. Returns null if the bytes aren't a cached view. */
+    static CachedView deserialize(byte[] bytes) {
+        if (bytes == null || bytes.length < FORMAT_MARKER.length
+                || !Arrays.equals(Arrays.copyOf(bytes, FORMAT_MARKER.length), FORMAT_MARKER)) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            buffer.position(FORMAT_MARKER.length);
+            byte[] hash = new byte[HASH_LENGTH];
+            buffer.get(hash);
+            byte[] json = new byte[buffer.getInt()];
+            buffer.get(json);
+            byte[] gzippedJson = null;
+            if (buffer.hasRemaining()) {
+                gzippedJson = new byte[buffer.remaining()];
+                buffer.get(gzippedJson);
+            }
+            return new CachedView(hash, json, gzippedJson);
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.sagebionetworks.bridge.cache;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import com.codahale.metrics.Counter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * <p>
+ * Process-local cache of values that belong to an app, keyed by the app and by the app's current "generation".
+ * Invalidating an app starts a new generation for it, on this node and, through the {@link CacheInvalidationBus}, on
+ * every other node. Entries cached under an old generation are never read again. If a node misses an invalidation,
+ * its entries are stale until they expire.
+ * </p>
+ * <p>
+ * If the cache has a global app, invalidating that app starts a new generation for every app. This is for values
+ * that include something from a shared app.
+ * </p>
+ */
+final class GenerationalCache<K, V> {
+    private final String name;
+    private final String globalAppId;
+    private final Map<String, AtomicLong> generationsByAppId = new ConcurrentHashMap<>();
+    private final AtomicLong globalGeneration = new AtomicLong();
+    private Cache<Key<K>, V> cache;
+    private CacheInvalidationBus cacheInvalidationBus;
+    private Counter hitCounter;
+    private Counter missCounter;
+
+    /**
+     * Creates a cache with the given name, which is used for invalidations on the bus, and the given size and TTL.
+     * The global app ID may be null.
+     */
+    GenerationalCache(String name, String globalAppId, long maxSize, int ttlSeconds) {
+        this.name = checkNotNull(name);
+        this.globalAppId = globalAppId;
+        setSize(maxSize, ttlSeconds);
+    }
+
+    /** Replaces the cache with an empty cache of the given size and TTL. */
+    void setSize(long maxSize, int ttlSeconds) {
+        cache = CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /** Bus used to invalidate the cache on other nodes. */
+    void setCacheInvalidationBus(CacheInvalidationBus cacheInvalidationBus) {
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        cacheInvalidationBus.addListener(name, this::invalidateLocal);
+    }
+
+    /** Counters for cache hits and misses. */
+    void setCounters(Counter hitCounter, Counter missCounter) {
+        this.hitCounter = hitCounter;
+        this.missCounter = missCounter;
+    }
+
+    /**
+     * Returns the value cached for the app and key, calling the loader only if it isn't already cached. The loaded
+     * value is only cached if it's accepted by the predicate. Exceptions from the loader are thrown, and nothing is
+     * cached.
+     */
+    V get(String appId, K key, Supplier<V> loader, Predicate<? super V> cacheIf) {
+        checkNotNull(appId);
+        checkNotNull(key);
+        checkNotNull(loader);
+        checkNotNull(cacheIf);
+
+        // Read the generation before loading. If the app is invalidated while we're loading, our result is cached
+        // under the old generation, which nothing will read.
+        Key<K> cacheKey = new Key<>(appId, getGeneration(appId), globalGeneration.get(), key);
+        V value = cache.getIfPresent(cacheKey);
+        if (value != null) {
+            incrementCounter(hitCounter);
+            return value;
+        }
+        incrementCounter(missCounter);
+        value = loader.get();
+        if (value != null && cacheIf.test(value)) {
+            cache.put(cacheKey, value);
+        }
+        return value;
+    }
+
+    /** Discards all cached values for the app, on this node and every other node. */
+    void invalidate(String appId) {
+        checkNotNull(appId);
+        invalidateLocal(appId);
+        if (cacheInvalidationBus != null) {
+            cacheInvalidationBus.publish(name, appId);
+        }
+    }
+
+    private void invalidateLocal(String appId) {
+        if (appId.equals(globalAppId)) {
+            globalGeneration.incrementAndGet();
+            cache.invalidateAll();
+        } else {
+            generationsByAppId.computeIfAbsent(appId, id -> new AtomicLong()).incrementAndGet();
+            cache.asMap().keySet().removeIf(key -> key.appId.equals(appId));
+        }
+    }
+
+    private long getGeneration(String appId) {
+        AtomicLong generation = generationsByAppId.get(appId);
+        return (generation == null) ? 0L : generation.get();
+    }
+
+    private static void incrementCounter(Counter counter) {
+        if (counter != null) {
+            counter.inc();
+        }
+    }
+
+    private static final class Key<K> {
+        private final String appId;
+        private final long generation;
+        private final long globalGeneration;
+        private final K key;
+
+        Key(String appId, long generation, long globalGeneration, K key) {
+            this.appId = appId;
+            this.generation = generation;
+            this.globalGeneration = globalGeneration;
+            this.key = key;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(appId, generation, globalGeneration, key);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            Key<?> other = (Key<?>) obj;
+            return generation == other.generation && globalGeneration == other.globalGeneration &&
+                    Objects.equals(appId, other.appId) && Objects.equals(key, other.key);
+        }
+    }
+}
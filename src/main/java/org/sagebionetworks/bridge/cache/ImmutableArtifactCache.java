@@ -0,0 +1,105 @@
+package org.sagebionetworks.bridge.cache;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.function.Supplier;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
+import org.sagebionetworks.bridge.models.surveys.Survey;
+import org.sagebionetworks.bridge.models.upload.UploadSchema;
+
+/**
+ * <p>
+ * Process-local cache of published survey versions and upload schema revisions. Every upload and health data
+ * submission looks up a survey version and a schema revision, which are read far more often than they change. The
+ * cache is bounded by its number of entries. (Surveys are cached without their elements, so they're all about the same
+ * size.)
+ * </p>
+ * <p>
+ * Cached surveys and schemas are shared by every caller, so callers must not modify them. Only published survey
+ * versions are cached, since drafts can change. Anything that changes a cached survey or schema (updating a schema
+ * revision, or deleting a survey or schema, which is rare) must call {@link #invalidate}, which starts a new
+ * generation for the app on every node. Invalidations are broadcast through the {@link CacheInvalidationBus}, so if a
+ * node misses one, its entries are stale until they expire.
+ * </p>
+ */
+@Component
+public class ImmutableArtifactCache {
+    private static final String CONFIG_KEY_MAX_SIZE = "immutable.artifact.cache.max.size";
+    private static final String CONFIG_KEY_TTL_SECONDS = "immutable.artifact.cache.ttl.seconds";
+    private static final String TYPE_SURVEY = "survey";
+    private static final String TYPE_SCHEMA = "schema";
+
+    // Package-scoped for unit tests.
+    static final String CACHE_NAME = "immutableArtifact";
+    static final String METRIC_HIT = "cache.immutable.artifact.hit";
+    static final String METRIC_MISS = "cache.immutable.artifact.miss";
+    static final String METRIC_HIT_RATIO = "cache.immutable.artifact.hit.ratio";
+    static final long DEFAULT_MAX_SIZE = 5000L;
+    static final int DEFAULT_TTL_SECONDS = 3600;
+
+    private final GenerationalCache<String, Object> cache = new GenerationalCache<>(CACHE_NAME, null,
+            DEFAULT_MAX_SIZE, DEFAULT_TTL_SECONDS);
+
+    /** Config, to get the size and TTL of the cache. */
+    @Autowired
+    final void setBridgeConfig(BridgeConfig config) {
+        cache.setSize(config.getPropertyAsInt(CONFIG_KEY_MAX_SIZE), config.getPropertyAsInt(CONFIG_KEY_TTL_SECONDS));
+    }
+
+    /** Bus used to invalidate the cache on other nodes. */
+    @Autowired
+    final void setCacheInvalidationBus(CacheInvalidationBus cacheInvalidationBus) {
+        cache.setCacheInvalidationBus(cacheInvalidationBus);
+    }
+
+    /** Metric registry, used to report cache hits and misses, and the hit ratio. */
+    @Autowired
+    final void setMetricRegistry(MetricRegistry metricRegistry) {
+        Counter hits = metricRegistry.counter(METRIC_HIT);
+        Counter misses = metricRegistry.counter(METRIC_MISS);
+        metricRegistry.register(METRIC_HIT_RATIO, new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(hits.getCount(), hits.getCount() + misses.getCount());
+            }
+        });
+        cache.setCounters(hits, misses);
+    }
+
+    /**
+     * Gets the survey version, calling the loader only if it isn't already cached. The survey is only cached if it's
+     * published. Exceptions from the loader are thrown, and nothing is cached.
+     */
+    public Survey getSurvey(String appId, GuidCreatedOnVersionHolder keys, Supplier<Survey> loader) {
+        checkNotNull(keys);
+        checkNotNull(loader);
+
+        String key = TYPE_SURVEY + ":" + keys.getGuid() + ":" + keys.getCreatedOn();
+        return (Survey) cache.get(appId, key, loader::get, survey -> ((Survey) survey).isPublished());
+    }
+
+    /**
+     * Gets the upload schema revision, calling the loader only if it isn't already cached. If the loader returns
+     * null, nothing is cached, since the schema revision may be created later.
+     */
+    public UploadSchema getUploadSchema(String appId, String schemaId, int revision, Supplier<UploadSchema> loader) {
+        checkNotNull(schemaId);
+        checkNotNull(loader);
+
+        String key = TYPE_SCHEMA + ":" + schemaId + ":" + revision;
+        return (UploadSchema) cache.get(appId, key, loader::get, schema -> true);
+    }
+
+    /** Discards all cached surveys and schemas for the app, on this node and every other node. */
+    public void invalidate(String appId) {
+        cache.invalidate(appId);
+    }
+}
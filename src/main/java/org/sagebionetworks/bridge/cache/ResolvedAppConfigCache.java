@@ -0,0 +1,129 @@
+package org.sagebionetworks.bridge.cache;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.sagebionetworks.bridge.BridgeConstants.SHARED_APP_ID;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.models.appconfig.AppConfig;
+import org.sagebionetworks.bridge.models.assessments.AssessmentReference;
+import org.sagebionetworks.bridge.models.schedules.SurveyReference;
+
+/**
+ * <p>
+ * Process-local cache of the references resolved for an app config (survey references, assessment references, and
+ * config elements), keyed by the config's GUID and version. Every request for an app config resolves the same
+ * references, and resolving them takes several reads per reference.
+ * </p>
+ * <p>
+ * Updating an app config gives it a new version, so that's simply a cache miss. Anything else that changes what the
+ * references resolve to (surveys, assessments, and config elements) must call {@link #invalidate}, which starts a new
+ * generation for the app on every node. Assessment references include the identifier of the shared assessment they
+ * were imported from, so invalidating the shared app starts a new generation for every app. Invalidations are
+ * broadcast through the {@link CacheInvalidationBus}, so if a node misses one, its entries are stale until they
+ * expire.
+ * </p>
+ */
+@Component
+public class ResolvedAppConfigCache {
+    private static final String CONFIG_KEY_MAX_SIZE = "app.config.cache.max.size";
+    private static final String CONFIG_KEY_TTL_SECONDS = "app.config.cache.ttl.seconds";
+
+    // Package-scoped for unit tests.
+    static final String CACHE_NAME = "resolvedAppConfig";
+    static final String METRIC_HIT = "cache.app.config.hit";
+    static final String METRIC_MISS = "cache.app.config.miss";
+    static final long DEFAULT_MAX_SIZE = 1000L;
+    static final int DEFAULT_TTL_SECONDS = 900;
+
+    private final GenerationalCache<String, ResolvedReferences> cache = new GenerationalCache<>(CACHE_NAME,
+            SHARED_APP_ID, DEFAULT_MAX_SIZE, DEFAULT_TTL_SECONDS);
+
+    /** Config, to get the size and TTL of the cache. */
+    @Autowired
+    final void setBridgeConfig(BridgeConfig config) {
+        cache.setSize(config.getPropertyAsInt(CONFIG_KEY_MAX_SIZE), config.getPropertyAsInt(CONFIG_KEY_TTL_SECONDS));
+    }
+
+    /** Bus used to invalidate the cache on other nodes. */
+    @Autowired
+    final void setCacheInvalidationBus(CacheInvalidationBus cacheInvalidationBus) {
+        cache.setCacheInvalidationBus(cacheInvalidationBus);
+    }
+
+    /** Metric registry, used to report cache hits and misses. */
+    @Autowired
+    final void setMetricRegistry(MetricRegistry metricRegistry) {
+        cache.setCounters(metricRegistry.counter(METRIC_HIT), metricRegistry.counter(METRIC_MISS));
+    }
+
+    /**
+     * Sets the resolved survey references, assessment references, and config elements on the app config, calling
+     * the resolver only if they aren't already cached. The resolver must set these on the config it's given. App
+     * configs that don't have a version (ie, that haven't been saved) aren't cached.
+     */
+    public void resolveReferences(AppConfig appConfig, Consumer<AppConfig> resolver) {
+        checkNotNull(appConfig);
+        checkNotNull(resolver);
+
+        if (appConfig.getAppId() == null || appConfig.getGuid() == null || appConfig.getVersion() == null) {
+            resolver.accept(appConfig);
+            return;
+        }
+
+        String key = appConfig.getGuid() + ":" + appConfig.getVersion();
+        ResolvedReferences resolved = cache.get(appConfig.getAppId(), key, () -> {
+            resolver.accept(appConfig);
+            return new ResolvedReferences(appConfig);
+        }, references -> true);
+        resolved.copyTo(appConfig);
+    }
+
+    /**
+     * Discards all cached app configs for the app, on this node and every other node. Invalidating the shared app
+     * discards all cached app configs for all apps.
+     */
+    public void invalidate(String appId) {
+        cache.invalidate(appId);
+    }
+
+    // References are immutable, but config elements are JSON nodes, which callers could modify. Keep our own copy,
+    // and hand out copies.
+    private static final class ResolvedReferences {
+        private final List<SurveyReference> surveyReferences;
+        private final List<AssessmentReference> assessmentReferences;
+        private final Map<String, JsonNode> configElements;
+
+        ResolvedReferences(AppConfig appConfig) {
+            this.surveyReferences = ImmutableList.copyOf(appConfig.getSurveyReferences());
+            this.assessmentReferences = ImmutableList.copyOf(appConfig.getAssessmentReferences());
+            this.configElements = copyElements(appConfig.getConfigElements());
+        }
+
+        void copyTo(AppConfig appConfig) {
+            appConfig.setSurveyReferences(surveyReferences);
+            appConfig.setAssessmentReferences(assessmentReferences);
+            appConfig.setConfigElements(copyElements(configElements));
+        }
+
+        private static Map<String, JsonNode> copyElements(Map<String, JsonNode> elements) {
+            ImmutableMap.Builder<String, JsonNode> builder = new ImmutableMap.Builder<>();
+            if (elements != null) {
+                for (Map.Entry<String, JsonNode> entry : elements.entrySet()) {
+                    builder.put(entry.getKey(), entry.getValue().deepCopy());
+                }
+            }
+            return builder.build();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.sagebionetworks.bridge.cache;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.models.schedules.ScheduleContext;
+import org.sagebionetworks.bridge.models.schedules.ScheduledActivity;
+
+/**
+ * <p>
+ * Process-local cache of the activities computed by the scheduler, keyed by the full schedule context (criteria
+ * context, events, time zone, and time window) and by the app's current schedule "generation". Participants poll the
+ * same time window many times a day, and unless one of their events changes, the scheduler produces the same
+ * activities each time. Since the events are part of the key, a new activity event is simply a cache miss.
+ * </p>
+ * <p>
+ * Anything that changes what the scheduler produces for an app (schedule plans, app configs, published surveys,
+ * compound activity definitions) must call {@link #invalidate}, which starts a new generation for the app on every
+ * node. Invalidations are broadcast through the {@link CacheInvalidationBus}, so if a node misses one, its entries
+ * are stale until they expire.
+ * </p>
+ */
+@Component
+public class ScheduleCache {
+    private static final String CONFIG_KEY_MAX_SIZE = "schedule.cache.max.size";
+    private static final String CONFIG_KEY_TTL_SECONDS = "schedule.cache.ttl.seconds";
+
+    // Package-scoped for unit tests.
+    static final String CACHE_NAME = "schedule";
+    static final String METRIC_HIT = "cache.schedule.hit";
+    static final String METRIC_MISS = "cache.schedule.miss";
+    static final long DEFAULT_MAX_SIZE = 2000L;
+    static final int DEFAULT_TTL_SECONDS = 900;
+
+    private final GenerationalCache<ScheduleContext, List<ScheduledActivity>> cache = new GenerationalCache<>(
+            CACHE_NAME, null, DEFAULT_MAX_SIZE, DEFAULT_TTL_SECONDS);
+
+    /** Config, to get the size and TTL of the cache. */
+    @Autowired
+    final void setBridgeConfig(BridgeConfig config) {
+        cache.setSize(config.getPropertyAsInt(CONFIG_KEY_MAX_SIZE), config.getPropertyAsInt(CONFIG_KEY_TTL_SECONDS));
+    }
+
+    /** Bus used to invalidate the cache on other nodes. */
+    @Autowired
+    final void setCacheInvalidationBus(CacheInvalidationBus cacheInvalidationBus) {
+        cache.setCacheInvalidationBus(cacheInvalidationBus);
+    }
+
+    /** Metric registry, used to report cache hits and misses. */
+    @Autowired
+    final void setMetricRegistry(MetricRegistry metricRegistry) {
+        cache.setCounters(metricRegistry.counter(METRIC_HIT), metricRegistry.counter(METRIC_MISS));
+    }
+
+    /**
+     * Returns the scheduled activities for the given context, calling the scheduler only if they aren't already
+     * cached. Callers modify and persist the returned activities, so this always returns a mutable list of copies,
+     * never the instances held in the cache.
+     */
+    public List<ScheduledActivity> getScheduledActivities(ScheduleContext context,
+            Supplier<List<ScheduledActivity>> scheduler) {
+        checkNotNull(context);
+        checkNotNull(scheduler);
+
+        List<ScheduledActivity> activities = cache.get(context.getCriteriaContext().getAppId(), context,
+                () -> ImmutableList.copyOf(copyActivities(scheduler.get())), cached -> true);
+        return copyActivities(activities);
+    }
+
+    /** Discards all cached schedules for the app, on this node and every other node. */
+    public void invalidate(String appId) {
+        cache.invalidate(appId);
+    }
+
+    private static List<ScheduledActivity> copyActivities(List<ScheduledActivity> activities) {
+        return activities.stream().map(ScheduleCache::copyActivity).collect(Collectors.toList());
+    }
+
+    // Activity objects are immutable, so a field-by-field copy is enough. (A copy through Jackson would lose the time
+    // zone and the local times, which aren't serialized.)
+    private static ScheduledActivity copyActivity(ScheduledActivity activity) {
+        ScheduledActivity copy = ScheduledActivity.create();
+        copy.setHealthCode(activity.getHealthCode());
+        copy.setGuid(activity.getGuid());
+        copy.setSchedulePlanGuid(activity.getSchedulePlanGuid());
+        copy.setTimeZone(activity.getTimeZone());
+        copy.setLocalScheduledOn(activity.getLocalScheduledOn());
+        copy.setLocalExpiresOn(activity.getLocalExpiresOn());
+        copy.setActivity(activity.getActivity());
+        copy.setStartedOn(activity.getStartedOn());
+        copy.setFinishedOn(activity.getFinishedOn());
+        copy.setPersistent(activity.getPersistent());
+        copy.setClientData(activity.getClientData());
+        copy.setReferentGuid(activity.getReferentGuid());
+        return copy;
+    }
+}
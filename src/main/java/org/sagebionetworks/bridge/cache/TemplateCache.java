@@ -0,0 +1,78 @@
+package org.sagebionetworks.bridge.cache;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import com.codahale.metrics.MetricRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.models.CriteriaMatcher;
+import org.sagebionetworks.bridge.models.templates.Template;
+import org.sagebionetworks.bridge.models.templates.TemplateType;
+
+/**
+ * <p>
+ * Process-local index of an app's templates of each type, with their criteria already loaded and compiled into a
+ * {@link CriteriaMatcher}. Every email and SMS message we send selects a template by matching the caller against the
+ * criteria of every template of that type, and loading the templates and their criteria used to take one read per
+ * template.
+ * </p>
+ * <p>
+ * The templates in the index are shared by all callers and must not be modified. Anything that changes an app's
+ * templates or their criteria must call {@link #invalidate}, which starts a new generation for the app on every node.
+ * Invalidations are broadcast through the {@link CacheInvalidationBus}, so if a node misses one, its entries are
+ * stale until they expire.
+ * </p>
+ */
+@Component
+public class TemplateCache {
+    private static final String CONFIG_KEY_MAX_SIZE = "template.cache.max.size";
+    private static final String CONFIG_KEY_TTL_SECONDS = "template.cache.ttl.seconds";
+
+    // Package-scoped for unit tests.
+    static final String CACHE_NAME = "template";
+    static final String METRIC_HIT = "cache.template.hit";
+    static final String METRIC_MISS = "cache.template.miss";
+    static final long DEFAULT_MAX_SIZE = 1000L;
+    static final int DEFAULT_TTL_SECONDS = 900;
+
+    private final GenerationalCache<TemplateType, CriteriaMatcher<Template>> cache = new GenerationalCache<>(
+            CACHE_NAME, null, DEFAULT_MAX_SIZE, DEFAULT_TTL_SECONDS);
+
+    /** Config, to get the size and TTL of the cache. */
+    @Autowired
+    final void setBridgeConfig(BridgeConfig config) {
+        cache.setSize(config.getPropertyAsInt(CONFIG_KEY_MAX_SIZE), config.getPropertyAsInt(CONFIG_KEY_TTL_SECONDS));
+    }
+
+    /** Bus used to invalidate the cache on other nodes. */
+    @Autowired
+    final void setCacheInvalidationBus(CacheInvalidationBus cacheInvalidationBus) {
+        cache.setCacheInvalidationBus(cacheInvalidationBus);
+    }
+
+    /** Metric registry, used to report cache hits and misses. */
+    @Autowired
+    final void setMetricRegistry(MetricRegistry metricRegistry) {
+        cache.setCounters(metricRegistry.counter(METRIC_HIT), metricRegistry.counter(METRIC_MISS));
+    }
+
+    /**
+     * Returns a matcher for the app's templates of the given type, calling the loader only if they aren't already
+     * cached.
+     */
+    public CriteriaMatcher<Template> getTemplateMatcher(String appId, TemplateType type,
+            Supplier<List<Template>> loader) {
+        checkNotNull(loader);
+        return cache.get(appId, type, () -> CriteriaMatcher.compile(loader.get()), matcher -> true);
+    }
+
+    /** Discards all cached templates for the app, on this node and every other node. */
+    public void invalidate(String appId) {
+        cache.invalidate(appId);
+    }
+}
@@ -0,0 +1,382 @@
+package org.sagebionetworks.bridge.cache;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Resource;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.hash.Hashing;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.time.DateUtils;
+
+/**
+ * <p>
+ * Time-bucketed Bloom filter of registered uploads, keyed on health code and upload MD5. Upload dedupe checks this
+ * filter before querying DynamoDB, and skips the query when the filter says the upload definitely hasn't been seen,
+ * which is true of almost every upload.
+ * </p>
+ * <p>
+ * Each day has its own bucket of bits, holding the uploads requested that day. A lookup checks every bucket that
+ * overlaps the dedupe window, and buckets expire once they're older than any window. The filter can only say an upload
+ * hasn't been seen if it has recorded every upload registered in the window. It tracks when it started recording, and
+ * won't answer for a window that starts before then. Redis can also drop a bucket on its own (for example, to free
+ * memory), so every shared bucket has a sentinel bit, set with each upload, and the filter won't answer for a window
+ * with a missing bucket. If recording an upload fails, the filter may be missing that
+ * upload, so it starts recording again from scratch. The restart is broadcast through the {@link CacheInvalidationBus},
+ * and every node restarts before it next answers a lookup, in case this node couldn't restart the shared filter.
+ * </p>
+ * <p>
+ * The filter is normally shared through Redis, as a bitmap per day, so it sees the uploads registered on every node.
+ * An unshared filter is kept in memory and only sees the uploads registered on this node. It is only correct when
+ * one node handles all uploads.
+ * </p>
+ */
+@Component
+public class UploadDedupeFilter {
+    private static final Logger LOG = LoggerFactory.getLogger(UploadDedupeFilter.class);
+
+    private static final String CONFIG_KEY_ENABLED = "upload.dedupe.filter.enabled";
+    private static final String CONFIG_KEY_SHARED = "upload.dedupe.filter.shared";
+    private static final String CONFIG_KEY_BITS = "upload.dedupe.filter.bits";
+    private static final String CONFIG_KEY_HASHES = "upload.dedupe.filter.hashes";
+
+    // Package-scoped for unit tests.
+    static final String CACHE_NAME = "uploadDedupeFilter";
+    static final String RESTART_KEY = "restart";
+    static final String KEY_PREFIX = "uploadDedupeFilter:";
+    static final String SINCE_KEY = KEY_PREFIX + "since";
+    static final String METRIC_SKIPPED = "upload.dedupe.filter.skipped";
+    static final String METRIC_MAYBE = "upload.dedupe.filter.maybe";
+    static final String METRIC_FALSE_POSITIVE = "upload.dedupe.filter.false.positive";
+    static final String METRIC_UNAVAILABLE = "upload.dedupe.filter.unavailable";
+    static final int DEFAULT_BITS = 1 << 24;
+    static final int DEFAULT_HASHES = 5;
+    static final int MAX_WINDOW_DAYS = 7;
+    // Nodes' clocks differ, so a window must start this long after the filter started recording.
+    static final long CLOCK_SKEW_MILLIS = TimeUnit.HOURS.toMillis(1);
+    static final int BUCKET_TTL_SECONDS = (int) TimeUnit.DAYS.toSeconds(MAX_WINDOW_DAYS + 2);
+
+    private static final long MILLIS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+
+    // Unshared buckets, by day since the epoch, and when the unshared filter started recording.
+    private final Map<Long, AtomicLongArray> localBuckets = new ConcurrentHashMap<>();
+    private final AtomicLong localSince = new AtomicLong();
+
+    private JedisPool jedisPool;
+    private CacheInvalidationBus cacheInvalidationBus;
+    private boolean enabled = true;
+    private boolean shared = true;
+    private int bits = DEFAULT_BITS;
+    private int hashes = DEFAULT_HASHES;
+    private volatile boolean restartPending;
+    private Meter skippedMeter;
+    private Meter maybeMeter;
+    private Meter falsePositiveMeter;
+    private Meter unavailableMeter;
+
+    /** Config, to get the filter's size and whether it's shared. */
+    @Autowired
+    final void setBridgeConfig(BridgeConfig config) {
+        enabled = Boolean.parseBoolean(config.getProperty(CONFIG_KEY_ENABLED));
+        shared = Boolean.parseBoolean(config.getProperty(CONFIG_KEY_SHARED));
+        bits = config.getPropertyAsInt(CONFIG_KEY_BITS);
+        hashes = config.getPropertyAsInt(CONFIG_KEY_HASHES);
+    }
+
+    /** Redis, where the shared filter is kept. */
+    @Resource(name = "jedisPool")
+    final void setJedisPool(JedisPool jedisPool) {
+        this.jedisPool = jedisPool;
+    }
+
+    /** Bus used to tell other nodes to restart the filter. */
+    @Autowired
+    final void setCacheInvalidationBus(CacheInvalidationBus cacheInvalidationBus) {
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        cacheInvalidationBus.addListener(CACHE_NAME, key -> restartPending = true);
+    }
+
+    /** Metric registry, used to report how often the filter skips the query, and how often it's wrong. */
+    @Autowired
+    final void setMetricRegistry(MetricRegistry metricRegistry) {
+        skippedMeter = metricRegistry.meter(METRIC_SKIPPED);
+        maybeMeter = metricRegistry.meter(METRIC_MAYBE);
+        falsePositiveMeter = metricRegistry.meter(METRIC_FALSE_POSITIVE);
+        unavailableMeter = metricRegistry.meter(METRIC_UNAVAILABLE);
+    }
+
+    /** The filter's answer to whether an upload was registered in the window. */
+    public enum Result {
+        /** No upload with this health code and MD5 was registered in the window. */
+        NOT_SEEN,
+        /** An upload with this health code and MD5 may have been registered in the window. */
+        MAYBE_SEEN,
+        /** The filter can't tell, because it hasn't recorded the whole window, or because of an error. */
+        UNKNOWN
+    }
+
+    /**
+     * Checks whether an upload with this health code and MD5 was registered between the start and end of the window.
+     * Errors are logged, and return UNKNOWN.
+     */
+    public Result check(String healthCode, String uploadMd5, DateTime windowStart, DateTime windowEnd) {
+        checkNotNull(healthCode);
+        checkNotNull(uploadMd5);
+        checkNotNull(windowStart);
+        checkNotNull(windowEnd);
+
+        if (!enabled) {
+            return Result.UNKNOWN;
+        }
+        long[] offsets = getOffsets(healthCode, uploadMd5);
+        List<Long> days = new ArrayList<>();
+        for (long day = toDay(windowStart); day <= toDay(windowEnd); day++) {
+            days.add(day);
+        }
+
+        Result result;
+        try {
+            if (!restartIfPending()) {
+                result = Result.UNKNOWN;
+            } else if (shared) {
+                result = checkShared(days, offsets, windowStart);
+            } else {
+                result = checkLocal(days, offsets, windowStart);
+            }
+        } catch (RuntimeException ex) {
+            LOG.warn("Error checking upload dedupe filter: " + ex.getMessage(), ex);
+            result = Result.UNKNOWN;
+        }
+
+        if (result == Result.NOT_SEEN) {
+            mark(skippedMeter);
+        } else if (result == Result.MAYBE_SEEN) {
+            mark(maybeMeter);
+        } else {
+            mark(unavailableMeter);
+        }
+        return result;
+    }
+
+    /**
+     * Records that the filter said an upload was MAYBE_SEEN, but it hadn't been. Divide by the maybe count to get the
+     * false positive rate.
+     */
+    public void recordFalsePositive() {
+        mark(falsePositiveMeter);
+    }
+
+    /**
+     * Adds an upload to the filter. Errors are logged, and the filter starts recording again from scratch on every
+     * node.
+     */
+    public void put(String healthCode, String uploadMd5, DateTime uploadRequestedOn) {
+        checkNotNull(healthCode);
+        checkNotNull(uploadMd5);
+        checkNotNull(uploadRequestedOn);
+
+        if (!enabled) {
+            return;
+        }
+        long[] offsets = getOffsets(healthCode, uploadMd5);
+        long day = toDay(uploadRequestedOn);
+        try {
+            if (shared) {
+                putShared(day, offsets);
+            } else {
+                putLocal(day, offsets);
+            }
+        } catch (RuntimeException ex) {
+            LOG.warn("Error adding to upload dedupe filter, restarting filter: " + ex.getMessage(), ex);
+            restartPending = true;
+            if (cacheInvalidationBus != null) {
+                cacheInvalidationBus.publish(CACHE_NAME, RESTART_KEY);
+            }
+            // Restart now, so other nodes sharing the filter stop trusting it right away. If this fails, the next
+            // lookup on any node tries again.
+            restartIfPending();
+        }
+    }
+
+    // Redis bucket key for the given day.
+    static String getBucketKey(long day) {
+        return KEY_PREFIX + day;
+    }
+
+    // Offset of the bit that marks a shared bucket as present. It's just past the bits used by uploads.
+    long getSentinelOffset() {
+        return bits;
+    }
+
+    // Bit offsets for the given upload, using double hashing of a 128-bit murmur hash, the same as Guava's BloomFilter.
+    long[] getOffsets(String healthCode, String uploadMd5) {
+        byte[] hash = Hashing.murmur3_128().newHasher().putString(healthCode, UTF_8).putChar(':')
+                .putString(uploadMd5, UTF_8).hash().asBytes();
+        ByteBuffer buffer = ByteBuffer.wrap(hash).order(ByteOrder.LITTLE_ENDIAN);
+        long hash1 = buffer.getLong();
+        long hash2 = buffer.getLong();
+
+        long[] offsets = new long[hashes];
+        long combinedHash = hash1;
+        for (int i = 0; i < hashes; i++) {
+            offsets[i] = (combinedHash & Long.MAX_VALUE) % bits;
+            combinedHash += hash2;
+        }
+        return offsets;
+    }
+
+    // If a put failed, start recording again before answering lookups. Returns false if we couldn't.
+    private boolean restartIfPending() {
+        if (!restartPending) {
+            return true;
+        }
+        long now = DateUtils.getCurrentMillisFromEpoch();
+        try {
+            if (shared) {
+                try (Jedis jedis = jedisPool.getResource()) {
+                    jedis.set(SINCE_KEY, String.valueOf(now));
+                }
+            } else {
+                localSince.set(now);
+            }
+        } catch (RuntimeException ex) {
+            LOG.warn("Error restarting upload dedupe filter: " + ex.getMessage(), ex);
+            return false;
+        }
+        restartPending = false;
+        return true;
+    }
+
+    private static boolean coversWindow(Long since, DateTime windowStart) {
+        return since != null && since > 0 && since + CLOCK_SKEW_MILLIS <= windowStart.getMillis();
+    }
+
+    private Result checkShared(List<Long> days, long[] offsets, DateTime windowStart) {
+        List<Response<Boolean>> sentinelResponses = new ArrayList<>();
+        List<List<Response<Boolean>>> bucketResponses = new ArrayList<>();
+        Response<String> sinceResponse;
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            sinceResponse = pipeline.get(SINCE_KEY);
+            for (long day : days) {
+                String key = getBucketKey(day);
+                sentinelResponses.add(pipeline.getbit(key, getSentinelOffset()));
+                List<Response<Boolean>> responses = new ArrayList<>();
+                for (long offset : offsets) {
+                    responses.add(pipeline.getbit(key, offset));
+                }
+                bucketResponses.add(responses);
+            }
+            pipeline.sync();
+        }
+
+        String since = sinceResponse.get();
+        if (since == null || !coversWindow(Long.valueOf(since), windowStart)) {
+            return Result.UNKNOWN;
+        }
+        // The filter started recording before the window, so every day in the window should have a bucket. If one
+        // doesn't, Redis dropped it, or no upload was registered that day. Either way, we can't tell.
+        for (Response<Boolean> sentinelResponse : sentinelResponses) {
+            if (!sentinelResponse.get()) {
+                return Result.UNKNOWN;
+            }
+        }
+        for (List<Response<Boolean>> responses : bucketResponses) {
+            boolean allSet = true;
+            for (Response<Boolean> response : responses) {
+                if (!response.get()) {
+                    allSet = false;
+                    break;
+                }
+            }
+            if (allSet) {
+                return Result.MAYBE_SEEN;
+            }
+        }
+        return Result.NOT_SEEN;
+    }
+
+    private void putShared(long day, long[] offsets) {
+        String key = getBucketKey(day);
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            // If Redis lost the filter, this starts recording again.
+            pipeline.setnx(SINCE_KEY, String.valueOf(DateUtils.getCurrentMillisFromEpoch()));
+            for (long offset : offsets) {
+                pipeline.setbit(key, offset, true);
+            }
+            pipeline.setbit(key, getSentinelOffset(), true);
+            pipeline.expire(key, BUCKET_TTL_SECONDS);
+            pipeline.sync();
+        }
+    }
+
+    private Result checkLocal(List<Long> days, long[] offsets, DateTime windowStart) {
+        if (!coversWindow(localSince.get(), windowStart)) {
+            return Result.UNKNOWN;
+        }
+        for (long day : days) {
+            AtomicLongArray bucket = localBuckets.get(day);
+            if (bucket != null && containsAll(bucket, offsets)) {
+                return Result.MAYBE_SEEN;
+            }
+        }
+        return Result.NOT_SEEN;
+    }
+
+    private void putLocal(long day, long[] offsets) {
+        localSince.compareAndSet(0L, DateUtils.getCurrentMillisFromEpoch());
+        AtomicLongArray bucket = localBuckets.computeIfAbsent(day, d -> new AtomicLongArray((bits + 63) >>> 6));
+        for (long offset : offsets) {
+            int word = (int) (offset >>> 6);
+            long mask = 1L << offset;
+            long value;
+            do {
+                value = bucket.get(word);
+            } while ((value & mask) == 0L && !bucket.compareAndSet(word, value, value | mask));
+        }
+        // Drop buckets that are older than any window.
+        localBuckets.keySet().removeIf(bucketDay -> bucketDay < day - MAX_WINDOW_DAYS - 1);
+    }
+
+    private static boolean containsAll(AtomicLongArray bucket, long[] offsets) {
+        for (long offset : offsets) {
+            if ((bucket.get((int) (offset >>> 6)) & (1L << offset)) == 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long toDay(DateTime dateTime) {
+        return Math.floorDiv(dateTime.getMillis(), MILLIS_PER_DAY);
+    }
+
+    private static void mark(Meter meter) {
+        if (meter != null) {
+            meter.mark();
+        }
+    }
+}
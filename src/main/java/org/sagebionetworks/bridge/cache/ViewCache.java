@@ -1,5 +1,15 @@
 package org.sagebionetworks.bridge.cache;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPOutputStream;
+
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,13 +18,21 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Supplier;
 
+/**
+ * Caches the JSON of objects that are expensive to load, as raw UTF-8 bytes, so they can be returned without being
+ * parsed. Views at least as large as the compression threshold also keep a gzipped copy, so they can be served to
+ * clients that accept gzip without being compressed on every request. When several requests miss on the same view at
+ * once, only one of them loads it, and the others wait for that load.
+ */
 public class ViewCache {
     
     private static final Logger logger = LoggerFactory.getLogger(ViewCache.class);
     
+    private final ConcurrentMap<CacheKey, CompletableFuture<CachedView>> inFlightLoads = new ConcurrentHashMap<>();
     private CacheProvider cache;
     private ObjectMapper objectMapper;
     private int cachePeriod;
+    private int compressionThreshold = Integer.MAX_VALUE;
     
     public final void setCacheProvider(CacheProvider cacheProvider) {
         this.cache = cacheProvider;
@@ -28,6 +46,13 @@ public class ViewCache {
         this.cachePeriod = cachePeriod;
     }
     
+    /**
+     * Views with JSON at least this many bytes long also keep a gzipped copy. By default, views are not compressed.
+     */
+    public final void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+    
     /**
      * Get the JSON for the viewCacheKey, or if nothing has been cached, call the supplier, 
      * cache the JSON representation of the object returned, and return that JSON.
@@ -36,16 +61,34 @@ public class ViewCache {
      * @return
      */
     public <T> String getView(CacheKey key, Supplier<T> supplier) {
+        return new String(getCachedView(key, supplier).getJson(), UTF_8);
+    }
+
+    /**
+     * Get the cached view for the viewCacheKey, or if nothing has been cached, call the supplier, and cache and
+     * return the view of the object returned. If another request is already loading this view, this waits for that
+     * load rather than calling the supplier again.
+     */
+    public <T> CachedView getCachedView(CacheKey key, Supplier<T> supplier) {
+        CachedView view = CachedView.deserialize(cache.getBytes(key));
+        if (view != null) {
+            logger.debug("Retrieving "+key+"' JSON from cache");
+            return view;
+        }
+        CompletableFuture<CachedView> load = new CompletableFuture<>();
+        CompletableFuture<CachedView> inFlightLoad = inFlightLoads.putIfAbsent(key, load);
+        if (inFlightLoad != null) {
+            return awaitLoad(inFlightLoad);
+        }
         try {
-            String value = cache.getObject(key, String.class);
-            if (value == null) {
-                value = cacheView(key, supplier);
-            } else {
-                logger.debug("Retrieving "+key+"' JSON from cache");
-            }
-            return value;
-        } catch(JsonProcessingException e) {
-            throw new BridgeServiceException(e);
+            view = cacheView(key, supplier);
+            load.complete(view);
+            return view;
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLoads.remove(key, load);
         }
     }
 
@@ -56,6 +99,9 @@ public class ViewCache {
     public <T> void removeView(CacheKey key) {
         logger.debug("Deleting JSON for '"+key+"'");
         cache.removeObject(key);
+        // Also remove any copy cached by nodes that still cache views as JSON strings, so they don't serve a stale 
+        // view during a deploy.
+        cache.removeObject(CacheKey.legacyViewKey(key));
     }
     
     /**
@@ -69,11 +115,40 @@ public class ViewCache {
         return CacheKey.viewKey(clazz, identifiers);
     }
     
-    private <T> String cacheView(CacheKey key, Supplier<T> supplier) throws JsonProcessingException {
+    private <T> CachedView cacheView(CacheKey key, Supplier<T> supplier) {
         logger.debug("Caching JSON for "+key+"'");
         T object = supplier.get();
-        String value = objectMapper.writeValueAsString(object);
-        cache.setObject(key, value, cachePeriod);
-        return value;
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(object);
+            byte[] gzippedJson = (json.length >= compressionThreshold) ? gzip(json) : null;
+            CachedView view = new CachedView(json, gzippedJson);
+            cache.setBytes(key, view.serialize(), cachePeriod);
+            return view;
+        } catch(JsonProcessingException e) {
+            throw new BridgeServiceException(e);
+        }
+    }
+
+    // Requests waiting on another request's load get the same view, or the same exception.
+    private static CachedView awaitLoad(CompletableFuture<CachedView> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new BridgeServiceException(e.getCause());
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+            gzipOut.write(bytes);
+        } catch (IOException e) {
+            // Can't happen when writing to memory.
+            throw new BridgeServiceException(e);
+        }
+        return out.toByteArray();
     }
 }
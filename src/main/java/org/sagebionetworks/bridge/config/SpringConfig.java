@@ -13,8 +13,12 @@ import java.nio.file.Paths;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Resource;
 import javax.servlet.Filter;
@@ -31,18 +35,22 @@ import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
 import com.amazonaws.services.securitytoken.AWSSecurityTokenServiceClient;
 import com.amazonaws.services.simpleemail.AmazonSimpleEmailServiceClient;
 import com.amazonaws.services.sns.AmazonSNSClient;
 import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.mchange.v2.c3p0.DriverManagerDataSource;
 
-import org.apache.commons.codec.digest.DigestUtils;
 import org.hibernate.SessionFactory;
 import org.hibernate.boot.MetadataSources;
 import org.hibernate.boot.registry.StandardServiceRegistry;
@@ -51,6 +59,7 @@ import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.hibernate.event.service.spi.EventListenerRegistry;
 import org.hibernate.service.spi.ServiceRegistryImplementor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.liquibase.LiquibaseDataSource;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
@@ -91,6 +100,7 @@ import org.sagebionetworks.bridge.dynamodb.DynamoSmsMessage;
 import org.sagebionetworks.bridge.dynamodb.DynamoStudyConsent1;
 import org.sagebionetworks.bridge.dynamodb.DynamoSubpopulation;
 import org.sagebionetworks.bridge.dynamodb.DynamoSurvey;
+import org.sagebionetworks.bridge.dynamodb.DynamoSurveyDocument;
 import org.sagebionetworks.bridge.dynamodb.DynamoSurveyElement;
 import org.sagebionetworks.bridge.dynamodb.DynamoTopicSubscription;
 import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
@@ -130,10 +140,12 @@ import org.sagebionetworks.bridge.spring.filters.StaticHeadersFilter;
 import org.sagebionetworks.bridge.upload.DecryptHandler;
 import org.sagebionetworks.bridge.upload.InitRecordHandler;
 import org.sagebionetworks.bridge.upload.S3DownloadHandler;
+import org.sagebionetworks.bridge.upload.StreamingUnzipHandler;
 import org.sagebionetworks.bridge.upload.StrictValidationHandler;
 import org.sagebionetworks.bridge.upload.TranscribeConsentHandler;
 import org.sagebionetworks.bridge.upload.UnzipHandler;
 import org.sagebionetworks.bridge.upload.UploadArtifactsHandler;
+import org.sagebionetworks.bridge.upload.UploadFileHelper;
 import org.sagebionetworks.bridge.upload.UploadFormatHandler;
 import org.sagebionetworks.bridge.upload.UploadRawZipHandler;
 import org.sagebionetworks.bridge.upload.UploadValidationHandler;
@@ -283,9 +295,18 @@ public class SpringConfig {
         return new AWSSecurityTokenServiceClient(s3UploadCredentials);
     }
 
-    @Bean(name = "md5DigestUtils")
-    public DigestUtils md5DigestUtils() {
-        return new DigestUtils(DigestUtils.getMd5Digest());
+    // Used to upload large upload attachments with multipart upload. Parts are uploaded on the transfer manager's own
+    // thread pool, not on the attachment upload executor, since attachment upload tasks wait on the parts.
+    @Bean(name = "attachmentTransferManager")
+    @Autowired
+    public TransferManager attachmentTransferManager(BridgeConfig bridgeConfig,
+            @Qualifier("s3Client") AmazonS3Client s3Client) {
+        int threadCount = bridgeConfig.getPropertyAsInt("upload.attachment.multipart.thread.count");
+        return TransferManagerBuilder.standard().withS3Client(s3Client)
+                .withMultipartUploadThreshold(UploadFileHelper.MULTIPART_THRESHOLD_BYTES)
+                .withExecutorFactory(() -> Executors.newFixedThreadPool(threadCount, new ThreadFactoryBuilder()
+                        .setNameFormat("attachment-multipart-%d").setDaemon(true).build()))
+                .withShutDownThreadPools(true).build();
     }
 
     @Bean(name = "s3CmsHelper")
@@ -337,10 +358,86 @@ public class SpringConfig {
         return new AmazonSQSClient(awsCredentials);
     }
 
+    // Registry for in-process metrics (timers, counters, gauges). These are exposed through MetricsAdminController.
+    @Bean(name = "metricRegistry")
+    public MetricRegistry metricRegistry() {
+        return new MetricRegistry();
+    }
+
+    // This is equivalent to Executors.newFixedThreadPool(), but typed as a ThreadPoolExecutor so we can report the
+    // number of in-flight and queued tasks.
     @Bean(name = "asyncExecutorService")
-    @Resource(name = "bridgeConfig")
-    public ExecutorService asyncExecutorService(BridgeConfig bridgeConfig) {
-        return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("async.worker.thread.count"));
+    @Autowired
+    public ExecutorService asyncExecutorService(BridgeConfig bridgeConfig, MetricRegistry metricRegistry) {
+        int threadCount = bridgeConfig.getPropertyAsInt("async.worker.thread.count");
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>());
+        metricRegistry.register("async.executor.active", (Gauge<Integer>) executor::getActiveCount);
+        metricRegistry.register("async.executor.queued", (Gauge<Integer>) () -> executor.getQueue().size());
+        return executor;
+    }
+
+    // Used to fan out independent I/O calls (DynamoDB queries, etc) made while serving a single request. This is
+    // separate from the async executor, so request latency doesn't depend on the async backlog. Tasks run on this
+    // executor must not submit and wait on further tasks on the same executor.
+    @Bean(name = "fanOutExecutorService")
+    @Autowired
+    public ExecutorService fanOutExecutorService(BridgeConfig bridgeConfig, MetricRegistry metricRegistry) {
+        int threadCount = bridgeConfig.getPropertyAsInt("fan.out.worker.thread.count");
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new ThreadFactoryBuilder().setNameFormat("fan-out-%d").setDaemon(true)
+                        .build());
+        metricRegistry.register("fanout.executor.active", (Gauge<Integer>) executor::getActiveCount);
+        metricRegistry.register("fanout.executor.queued", (Gauge<Integer>) () -> executor.getQueue().size());
+        return executor;
+    }
+
+    // Password and reauth token hashing is CPU-bound, so it runs on a small pool with a bounded queue, rather than on
+    // request threads. When the queue is full, submitting a task throws RejectedExecutionException, and the request
+    // fails fast with a 429.
+    @Bean(name = "hashingExecutorService")
+    @Autowired
+    public ExecutorService hashingExecutorService(BridgeConfig bridgeConfig, MetricRegistry metricRegistry) {
+        int threadCount = bridgeConfig.getPropertyAsInt("hashing.thread.count");
+        int maxQueueSize = bridgeConfig.getPropertyAsInt("hashing.max.queue.size");
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueueSize), new ThreadFactoryBuilder().setNameFormat("hashing-%d")
+                        .setDaemon(true).build());
+        metricRegistry.register("hashing.executor.active", (Gauge<Integer>) executor::getActiveCount);
+        metricRegistry.register("hashing.executor.queued", (Gauge<Integer>) () -> executor.getQueue().size());
+        return executor;
+    }
+
+    // Signed consent PDFs are rendered and sent on their own bounded pool, so rendering doesn't run on request threads.
+    // When the queue is full, the PDF is rendered on the request thread instead.
+    @Bean(name = "consentPdfExecutorService")
+    @Autowired
+    public ExecutorService consentPdfExecutorService(BridgeConfig bridgeConfig, MetricRegistry metricRegistry) {
+        int threadCount = bridgeConfig.getPropertyAsInt("consent.pdf.thread.count");
+        int maxQueueSize = bridgeConfig.getPropertyAsInt("consent.pdf.max.queue.size");
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueueSize), new ThreadFactoryBuilder().setNameFormat("consent-pdf-%d")
+                        .setDaemon(true).build());
+        metricRegistry.register("consent.pdf.executor.active", (Gauge<Integer>) executor::getActiveCount);
+        metricRegistry.register("consent.pdf.executor.queued", (Gauge<Integer>) () -> executor.getQueue().size());
+        return executor;
+    }
+
+    // Shared by all upload validation tasks, to upload an upload's attachments in parallel. When the queue is full, the
+    // attachment is uploaded on the upload validation thread instead, which keeps that task from queueing more.
+    @Bean(name = "attachmentUploadExecutorService")
+    @Autowired
+    public ExecutorService attachmentUploadExecutorService(BridgeConfig bridgeConfig, MetricRegistry metricRegistry) {
+        int threadCount = bridgeConfig.getPropertyAsInt("upload.attachment.thread.count");
+        int maxQueueSize = bridgeConfig.getPropertyAsInt("upload.attachment.max.queue.size");
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueueSize), new ThreadFactoryBuilder()
+                        .setNameFormat("attachment-upload-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        metricRegistry.register("attachment.upload.executor.active", (Gauge<Integer>) executor::getActiveCount);
+        metricRegistry.register("attachment.upload.executor.queued",
+                (Gauge<Integer>) () -> executor.getQueue().size());
+        return executor;
     }
 
     @Bean(name = "supportEmail")
@@ -451,6 +548,12 @@ public class SpringConfig {
         return dynamoUtils.getMapper(DynamoSurveyElement.class);
     }
 
+    @Bean(name = "surveyDocumentMapper")
+    @Autowired
+    public DynamoDBMapper surveyDocumentDdbMapper(DynamoUtils dynamoUtils) {
+        return dynamoUtils.getMapper(DynamoSurveyDocument.class);
+    }
+
     @Bean(name = "criteriaMapper")
     @Autowired
     public DynamoDBMapper criteriaMapper(DynamoUtils dynamoUtils) {
@@ -576,16 +679,23 @@ public class SpringConfig {
         return dynamoUtils.getMapper(DynamoExternalIdentifier.class);
     }
     
+    // If streaming is enabled, the upload is downloaded, decrypted, and unzipped in a single pass. Otherwise, we fall
+    // back to the three-handler chain, which writes a copy of the upload to disk at each step.
     @Bean(name = "uploadValidationHandlerList")
     @Autowired
     public List<UploadValidationHandler> uploadValidationHandlerList(S3DownloadHandler s3DownloadHandler,
-            DecryptHandler decryptHandler, UnzipHandler unzipHandler,
+            DecryptHandler decryptHandler, UnzipHandler unzipHandler, StreamingUnzipHandler streamingUnzipHandler,
             InitRecordHandler initRecordHandler, UploadFormatHandler uploadFormatHandler,
             StrictValidationHandler strictValidationHandler, TranscribeConsentHandler transcribeConsentHandler,
             UploadRawZipHandler uploadRawZipHandler, UploadArtifactsHandler uploadArtifactsHandler) {
-        return ImmutableList.of(s3DownloadHandler, decryptHandler, unzipHandler,
-                initRecordHandler, uploadFormatHandler, strictValidationHandler, transcribeConsentHandler,
-                uploadRawZipHandler, uploadArtifactsHandler);
+        ImmutableList.Builder<UploadValidationHandler> builder = ImmutableList.builder();
+        if (Boolean.valueOf(bridgeConfig().get("upload.validation.streaming.enabled"))) {
+            builder.add(streamingUnzipHandler);
+        } else {
+            builder.add(s3DownloadHandler, decryptHandler, unzipHandler);
+        }
+        return builder.add(initRecordHandler, uploadFormatHandler, strictValidationHandler, transcribeConsentHandler,
+                uploadRawZipHandler, uploadArtifactsHandler).build();
     }
 
     @Bean(name = "uploadSchemaDdbMapper")
@@ -609,9 +719,11 @@ public class SpringConfig {
         BridgeConfig config = bridgeConfig();
         
         String url = config.get("hibernate.connection.url");
-        // Append SSL props to URL
+        // Append SSL props to URL. The driver only rewrites JDBC batches, and Hibernate only sends them from sessions
+        // that set a JDBC batch size (see HibernateRequestInfoDao), so this doesn't change any other writes.
         boolean useSsl = Boolean.valueOf(config.get("hibernate.connection.useSSL"));
-        url += "?serverTimezone=UTC&requireSSL="+useSsl+"&useSSL="+useSsl+"&verifyServerCertificate="+useSsl;
+        url += "?serverTimezone=UTC&requireSSL="+useSsl+"&useSSL="+useSsl+"&verifyServerCertificate="+useSsl+
+                "&rewriteBatchedStatements=true";
         
         return url;
     }
@@ -760,6 +872,18 @@ public class SpringConfig {
         return cache;
     }
     
+    // Survey views are large and served as they are cached, so they also keep a gzipped copy.
+    @Bean(name = "surveyViewCache")
+    @Autowired
+    public ViewCache surveyViewCache(CacheProvider cacheProvider) {
+        ViewCache cache = new ViewCache();
+        cache.setCacheProvider(cacheProvider);
+        cache.setObjectMapper(BridgeObjectMapper.get());
+        cache.setCachePeriod(BridgeConstants.BRIDGE_VIEW_EXPIRE_IN_SECONDS);
+        cache.setCompressionThreshold(bridgeConfig().getPropertyAsInt("survey.view.cache.gzip.min.bytes"));
+        return cache;
+    }
+    
     @Bean(name = "appLinkViewCache")
     @Autowired
     public ViewCache appLinkViewCache(CacheProvider cacheProvider) {
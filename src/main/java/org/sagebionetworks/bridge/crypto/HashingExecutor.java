@@ -0,0 +1,113 @@
+package org.sagebionetworks.bridge.crypto;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.Resource;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.exceptions.LimitExceededException;
+
+/**
+ * <p>
+ * Runs password and reauth token hashing on its own bounded thread pool, instead of on request threads. Hashing is
+ * deliberately slow, and a burst of sign-ins used to tie up every request thread with hashing, stalling unrelated
+ * requests.
+ * </p>
+ * <p>
+ * The pool's queue is bounded. If it's full, the hash is not computed and the request fails fast with a 429 and a
+ * Retry-After header, rather than waiting behind the backlog.
+ * </p>
+ */
+@Component
+public class HashingExecutor {
+    // Package-scoped for unit tests.
+    static final String METRIC_TASKS = "hashing.tasks";
+    static final String METRIC_REJECTED = "hashing.rejected";
+    static final int RETRY_AFTER_SECONDS = 5;
+    static final String REJECTED_MESSAGE = "The server is too busy to handle this request, please try again later.";
+
+    private ExecutorService executorService;
+    private Timer taskTimer;
+    private Meter rejectedMeter;
+
+    /** Bounded pool that hashing tasks run on. */
+    @Resource(name = "hashingExecutorService")
+    public final void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /** Metric registry, used to report hashing throughput and rejections. */
+    @Autowired
+    public final void setMetricRegistry(MetricRegistry metricRegistry) {
+        taskTimer = metricRegistry.timer(METRIC_TASKS);
+        rejectedMeter = metricRegistry.meter(METRIC_REJECTED);
+    }
+
+    /**
+     * Starts a hashing task on the pool. Callers that start several tasks must cancel the ones they no longer need.
+     *
+     * @throws LimitExceededException
+     *         if the pool's queue is full
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        checkNotNull(task);
+        try {
+            return executorService.submit(() -> {
+                Timer.Context timerContext = (taskTimer != null) ? taskTimer.time() : null;
+                try {
+                    return task.call();
+                } finally {
+                    if (timerContext != null) {
+                        timerContext.stop();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            if (rejectedMeter != null) {
+                rejectedMeter.mark();
+            }
+            throw new LimitExceededException(REJECTED_MESSAGE, RETRY_AFTER_SECONDS);
+        }
+    }
+
+    /**
+     * Waits for a hashing task started with {@link #submit}. Security exceptions and runtime exceptions thrown by the
+     * task are rethrown as is.
+     */
+    public <T> T getResult(Future<T> future) throws GeneralSecurityException {
+        checkNotNull(future);
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new BridgeServiceException(cause);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new BridgeServiceException("Interrupted waiting for hash");
+        }
+    }
+
+    /** Runs a hashing task on the pool and waits for its result. */
+    public <T> T execute(Callable<T> task) throws GeneralSecurityException {
+        return getResult(submit(task));
+    }
+}
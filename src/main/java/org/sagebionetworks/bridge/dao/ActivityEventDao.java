@@ -1,5 +1,6 @@
 package org.sagebionetworks.bridge.dao;
 
+import java.util.List;
 import java.util.Map;
 
 import org.joda.time.DateTime;
@@ -13,6 +14,13 @@ public interface ActivityEventDao {
      */
     boolean publishEvent(ActivityEvent event);
     
+    /**
+     * Publish a batch of events, which must all belong to the same user (and study, if any). Each event is recorded 
+     * under the same rules as {@link #publishEvent(ActivityEvent)}. If the batch contains more than one of the same 
+     * event, only the latest is recorded.
+     */
+    void publishEvents(List<ActivityEvent> events);
+    
     /**
      * Get a map of events, where the string key is an event identifier, and the value 
      * is the timestamp of the event. If studyId is null, only events that are not scoped
@@ -1,5 +1,8 @@
 package org.sagebionetworks.bridge.dao;
 
+import java.util.Collection;
+import java.util.Map;
+
 import org.sagebionetworks.bridge.models.Criteria;
 
 public interface CriteriaDao {
@@ -16,6 +19,12 @@ public interface CriteriaDao {
      */
     Criteria getCriteria(String key);
 
+    /**
+     * Get the criteria objects for all of the keys in one batch, mapped by key. Keys that do not have a criteria 
+     * object are not in the map (does not throw an EntityNotFoundException).
+     */
+    Map<String, Criteria> batchGetCriteria(Collection<String> keys);
+
     /**
      * Delete the criteria if it exists (if criteria does not exist, does not throw
      * EntityNotFoundException).
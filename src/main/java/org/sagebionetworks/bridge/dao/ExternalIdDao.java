@@ -1,5 +1,6 @@
 package org.sagebionetworks.bridge.dao;
 
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.models.accounts.ExternalIdentifier;
 import org.sagebionetworks.bridge.models.accounts.ExternalIdentifierInfo;
@@ -16,6 +17,14 @@ public interface ExternalIdDao {
     PagedResourceList<ExternalIdentifierInfo> getPagedExternalIds(String appId, String studyId, String idFilter,
             Integer offsetBy, Integer pageSize);
 
+    /**
+     * Get a page of external IDs associated to the indicated study, in order, starting after the offset key (the last 
+     * external ID of the previous page). This doesn't count the total number of IDs, so it stays fast for studies 
+     * with many external IDs.
+     */
+    ForwardCursorPagedResourceList<ExternalIdentifierInfo> getExternalIdsAfter(String appId, String studyId,
+            String idFilter, String offsetKey, int pageSize);
+
     /**
      * Delete an external identifier.
      */
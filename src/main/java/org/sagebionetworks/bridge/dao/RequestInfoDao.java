@@ -1,5 +1,7 @@
 package org.sagebionetworks.bridge.dao;
 
+import java.util.List;
+
 import org.sagebionetworks.bridge.models.RequestInfo;
 
 public interface RequestInfoDao {
@@ -11,6 +13,13 @@ public interface RequestInfoDao {
      */    
     public void updateRequestInfo(RequestInfo requestInfo);
     
+    /**
+     * Same as {@link #updateRequestInfo}, for many users at once. The existing records are read with a single
+     * query, and all records are written in one transaction, so the writes can be sent to the database in JDBC
+     * batches. There should be at most one request info object per user.
+     */
+    public void updateRequestInfos(List<RequestInfo> requestInfos);
+    
     public RequestInfo getRequestInfo(String userId);
     
     public void removeRequestInfo(String userId);
@@ -27,6 +27,19 @@ public interface TopicSubscriptionDao {
      */
     void unsubscribe(NotificationRegistration registration, NotificationTopic topic);
     
+    /**
+     * Subscribe to each of the notification topics. The SNS subscriptions are made concurrently, and the records are 
+     * saved in a batch. Returns the subscriptions that were made. Failures are logged, and the topic is left out.
+     */
+    List<TopicSubscription> batchSubscribe(NotificationRegistration registration, List<NotificationTopic> topics);
+    
+    /**
+     * Unsubscribe from each of the subscriptions. The SNS subscriptions are removed concurrently, and the records are 
+     * deleted in a batch. Returns the subscriptions that were removed. Failures are logged, and the subscription is 
+     * left out.
+     */
+    List<TopicSubscription> batchUnsubscribe(List<? extends TopicSubscription> subscriptions);
+    
     /**
      * In a case whee we have a record of a subscription, but no paired SNS topic subscription, 
      * remove our record. 
@@ -0,0 +1,55 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMappingException;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTypeConverter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.Lists;
+
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.surveys.SurveyElement;
+import org.sagebionetworks.bridge.models.surveys.SurveyElementFactory;
+
+/**
+ * Marshalls a list of survey elements to gzipped JSON, stored as a binary attribute. Elements are written in the same
+ * JSON as the API, and read back through {@link SurveyElementFactory#fromJson}, so the keys and order of each element
+ * aren't stored and must be set by the caller.
+ */
+public class CompressedSurveyElementListMarshaller implements DynamoDBTypeConverter<byte[], List<SurveyElement>> {
+
+    /** {@inheritDoc} */
+    @Override
+    public byte[] convert(List<SurveyElement> elements) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            BridgeObjectMapper.get().writeValue(out, elements);
+        } catch (IOException ex) {
+            throw new DynamoDBMappingException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<SurveyElement> unconvert(byte[] document) {
+        JsonNode node;
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(document))) {
+            node = BridgeObjectMapper.get().readTree(in);
+        } catch (IOException ex) {
+            throw new DynamoDBMappingException(ex);
+        }
+        List<SurveyElement> elements = Lists.newArrayListWithCapacity(node.size());
+        for (JsonNode elementNode : node) {
+            elements.add(SurveyElementFactory.fromJson(elementNode));
+        }
+        return elements;
+    }
+}
@@ -1,7 +1,10 @@
 package org.sagebionetworks.bridge.dynamodb;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -12,16 +15,27 @@ import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 
 import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.async.SnsDispatcher;
+import org.sagebionetworks.bridge.async.SnsDispatcher.Outcome;
 import org.sagebionetworks.bridge.dao.ActivityEventDao;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.models.activities.ActivityEvent;
 import org.sagebionetworks.bridge.models.activities.ActivityEventObjectType;
 import org.sagebionetworks.bridge.models.activities.ActivityEventType;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBSaveExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.PaginatedQueryList;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ConditionalOperator;
+import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMap.Builder;
 import com.google.common.collect.ImmutableSet;
@@ -35,28 +49,74 @@ public class DynamoActivityEventDao implements ActivityEventDao {
             ActivityEventObjectType.ENROLLMENT.name().toLowerCase(),
             ActivityEventObjectType.ACTIVITIES_RETRIEVED.name().toLowerCase(),
             ActivityEventObjectType.CREATED_ON.name().toLowerCase() );
+    static final String HEALTH_CODE_ATTRIBUTE = "healthCode";
+    static final String TIMESTAMP_ATTRIBUTE = "timestamp";
     private DynamoDBMapper mapper;
+    private SnsDispatcher dispatcher;
 
     @Resource(name = "activityEventDdbMapper")
     public final void setDdbMapper(DynamoDBMapper mapper) {
         this.mapper = mapper;
     }
+
+    /** Used to make the conditional writes for a list of events concurrently. */
+    @Autowired
+    public final void setDispatcher(SnsDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
     
     @Override
     public boolean publishEvent(ActivityEvent event) {
         checkNotNull(event);
         
-        DynamoActivityEvent hashKey = new DynamoActivityEvent();
-        hashKey.setHealthCode(event.getHealthCode());
-        hashKey.setStudyId(event.getStudyId());
-        hashKey.setEventId(event.getEventId());
+        // Rather than loading the event first, DynamoDB checks the existing event as part of the write. Immutable 
+        // events are only written if there's no event yet, and other events are only written if they're later.
+        DynamoDBSaveExpression saveExpression = new DynamoDBSaveExpression()
+                .withExpectedEntry(HEALTH_CODE_ATTRIBUTE, new ExpectedAttributeValue(false));
+        if (!IMMUTABLE_EVENTS.contains(event.getEventId()) && event.getTimestamp() != null) {
+            saveExpression.withExpectedEntry(TIMESTAMP_ATTRIBUTE, new ExpectedAttributeValue()
+                    .withComparisonOperator(ComparisonOperator.LT)
+                    .withAttributeValueList(new AttributeValue().withN(event.getTimestamp().toString())))
+                    .withConditionalOperator(ConditionalOperator.OR);
+        }
+        try {
+            mapper.save(event, saveExpression);
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void publishEvents(List<ActivityEvent> events) {
+        checkNotNull(events);
+        if (events.isEmpty()) {
+            return;
+        }
         
-        ActivityEvent savedEvent = mapper.load(hashKey);
-        if (isNewOrMutable(savedEvent, event) && isLater(savedEvent, event)) {
-            mapper.save(event);
-            return true;
+        // Only the latest of each event can be recorded, so drop the others.
+        String hashKeyValue = events.get(0).getHealthCode();
+        Map<String, ActivityEvent> latestEvents = new LinkedHashMap<>();
+        for (ActivityEvent event : events) {
+            checkArgument(hashKeyValue.equals(event.getHealthCode()), "Events must all belong to the same user");
+            latestEvents.merge(event.getEventId(), event,
+                    (existing, candidate) -> candidate.getTimestamp() > existing.getTimestamp() ? candidate : existing);
+        }
+        
+        // BatchWriteItem can't carry conditions, so each event is written with the same conditional write as 
+        // publishEvent(), which checks the stored event as part of the write. The writes are independent, so they're
+        // made concurrently rather than one round trip after another.
+        List<Outcome<ActivityEvent, Boolean>> outcomes = dispatcher.dispatch(new ArrayList<>(latestEvents.values()),
+                this::publishEvent);
+        List<String> errors = new ArrayList<>();
+        for (Outcome<ActivityEvent, Boolean> outcome : outcomes) {
+            if (!outcome.isSuccess()) {
+                errors.add(outcome.getItem().getEventId() + ": " + outcome.getError().getMessage());
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new BridgeServiceException("Error publishing activity events: " + Joiner.on(", ").join(errors));
         }
-        return false;
     }
 
     @Override
@@ -99,23 +159,6 @@ public class DynamoActivityEventDao implements ActivityEventDao {
         }
     }
     
-    // Some events can only be recorded once. 
-    private boolean isNewOrMutable(ActivityEvent savedEvent, ActivityEvent event) {
-        if (savedEvent == null) {
-            return true;
-        }
-        return (!IMMUTABLE_EVENTS.contains(event.getEventId()));
-    }
-    
-    // Events cannot be recorded unless the timestamp submitted is later than the currently
-    // recorded timestamp.
-    private boolean isLater(ActivityEvent savedEvent, ActivityEvent event) {
-        if (savedEvent == null) {
-            return true;
-        }
-        return event.getTimestamp() > savedEvent.getTimestamp();
-    }
-
     /**
      * Answer events do schedule against a specific answer, which is added to the key in the
      * map only. A change in the value is continued to be a change to the same event.
@@ -9,6 +9,10 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.annotation.Resource;
 
@@ -16,6 +20,7 @@ import org.sagebionetworks.bridge.BridgeConstants;
 import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.dao.ScheduledActivityDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.ResourceList;
@@ -57,6 +62,8 @@ public class DynamoScheduledActivityDao implements ScheduledActivityDao {
     
     private DynamoIndexHelper referentIndex;
     
+    private ExecutorService fanOutExecutorService;
+    
     @Resource(name = "activityDdbMapper")
     final void setDdbMapper(DynamoDBMapper mapper) {
         this.mapper = mapper;
@@ -67,6 +74,59 @@ public class DynamoScheduledActivityDao implements ScheduledActivityDao {
         this.referentIndex = index;
     }
     
+    @Resource(name = "fanOutExecutorService")
+    final void setFanOutExecutorService(ExecutorService fanOutExecutorService) {
+        this.fanOutExecutorService = fanOutExecutorService;
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public List<ScheduledActivity> getActivityHistoriesV2(String healthCode, Set<String> activityGuids,
+            DateTime scheduledOnStart, DateTime scheduledOnEnd) {
+        checkNotNull(healthCode);
+        checkNotNull(activityGuids);
+        
+        // Each activity GUID is a separate range of the range key, so each needs its own query. Submit all but the
+        // first to the executor, and run the first on this thread while we wait.
+        List<Future<ForwardCursorPagedResourceList<ScheduledActivity>>> futures = new ArrayList<>();
+        String firstActivityGuid = null;
+        for (String activityGuid : activityGuids) {
+            if (firstActivityGuid == null) {
+                firstActivityGuid = activityGuid;
+            } else {
+                futures.add(fanOutExecutorService.submit(() -> getActivityHistoryV2(healthCode, activityGuid,
+                        scheduledOnStart, scheduledOnEnd, null, API_MAXIMUM_PAGE_SIZE)));
+            }
+        }
+        if (firstActivityGuid == null) {
+            return ImmutableList.of();
+        }
+        
+        List<ScheduledActivity> results = new ArrayList<>();
+        try {
+            results.addAll(getActivityHistoryV2(healthCode, firstActivityGuid, scheduledOnStart, scheduledOnEnd,
+                    null, API_MAXIMUM_PAGE_SIZE).getItems());
+            for (Future<ForwardCursorPagedResourceList<ScheduledActivity>> future : futures) {
+                results.addAll(future.get().getItems());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BridgeServiceException(ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new BridgeServiceException(cause);
+        } finally {
+            // If one query fails, don't keep running the rest.
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+    
     @Override
     public ForwardCursorPagedResourceList<ScheduledActivity> getActivityHistoryV2(String healthCode,
             String activityGuid, DateTime scheduledOnStart, DateTime scheduledOnEnd, String offsetKey, int pageSize) {
@@ -11,6 +11,7 @@ import java.util.Map;
 import javax.annotation.Resource;
 
 import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.config.BridgeConfig;
 import org.sagebionetworks.bridge.dao.SurveyDao;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
@@ -25,25 +26,32 @@ import org.sagebionetworks.bridge.models.surveys.SurveyQuestion;
 import org.sagebionetworks.bridge.models.upload.UploadSchema;
 import org.sagebionetworks.bridge.services.UploadSchemaService;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBSaveExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
 import com.amazonaws.services.dynamodbv2.model.Condition;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 @Component
 public class DynamoSurveyDao implements SurveyDao {
+    private static final Logger LOG = LoggerFactory.getLogger(DynamoSurveyDao.class);
 
     static final String IDENTIFIER_PREFIX = "identifier:";
+    static final String DOCUMENT_STORAGE_ENABLED_PROPERTY = "survey.document.storage.enabled";
+    private static final String SURVEY_COMPOUND_KEY_ATTRIBUTE = "surveyCompoundKey";
     
     class QueryBuilder {
         
@@ -189,6 +197,14 @@ public class DynamoSurveyDao implements SurveyDao {
         }
         
         private void attachSurveyElements(Survey survey) {
+            boolean useDocument = documentStorageEnabled && survey.isPublished();
+            if (useDocument) {
+                List<SurveyElement> elements = loadSurveyDocument(survey);
+                if (elements != null) {
+                    survey.setElements(elements);
+                    return;
+                }
+            }
             DynamoSurveyElement template = new DynamoSurveyElement();
             template.setSurveyKeyComponents(survey.getGuid(), survey.getCreatedOn());
             
@@ -204,6 +220,10 @@ public class DynamoSurveyDao implements SurveyDao {
                 elements.add(surveyElement);
             }
             survey.setElements(elements);
+            if (useDocument) {
+                // Published before documents were stored. Store one now, so later loads can use it.
+                saveSurveyDocument(survey);
+            }
         }
     }
     
@@ -233,7 +253,9 @@ public class DynamoSurveyDao implements SurveyDao {
 
     private DynamoDBMapper surveyMapper;
     private DynamoDBMapper surveyElementMapper;
+    private DynamoDBMapper surveyDocumentMapper;
     private UploadSchemaService uploadSchemaService;
+    private boolean documentStorageEnabled;
     
     @Resource(name = "surveyMapper")
     public void setSurveyMapper(DynamoDBMapper surveyMapper) {
@@ -245,6 +267,17 @@ public class DynamoSurveyDao implements SurveyDao {
         this.surveyElementMapper = surveyElementMapper;
     }
 
+    @Resource(name = "surveyDocumentMapper")
+    public void setSurveyDocumentMapper(DynamoDBMapper surveyDocumentMapper) {
+        this.surveyDocumentMapper = surveyDocumentMapper;
+    }
+
+    /** Config, to get whether published survey versions are also stored as a single document. */
+    @Autowired
+    public final void setBridgeConfig(BridgeConfig bridgeConfig) {
+        this.documentStorageEnabled = Boolean.parseBoolean(bridgeConfig.getProperty(DOCUMENT_STORAGE_ENABLED_PROPERTY));
+    }
+
     @Autowired
     public final void setUploadSchemaService(UploadSchemaService uploadSchemaService) {
         this.uploadSchemaService = uploadSchemaService;
@@ -288,6 +321,9 @@ public class DynamoSurveyDao implements SurveyDao {
             } catch(ConditionalCheckFailedException e) {
                 throw new ConcurrentModificationException(survey);
             }
+            if (documentStorageEnabled) {
+                saveSurveyDocument(survey);
+            }
         }
         return survey;
     }
@@ -343,6 +379,8 @@ public class DynamoSurveyDao implements SurveyDao {
 
         if (existing != null) {
             deleteAllElements(existing.getGuid(), existing.getCreatedOn());
+            // Delete the document even if documents are turned off, since one may have been stored before.
+            surveyDocumentMapper.delete(new DynamoSurveyDocument(existing.getGuid(), existing.getCreatedOn()));
             surveyMapper.delete(existing);
             // Delete the schemas as well, or they accumulate.
             try {
@@ -472,6 +510,46 @@ public class DynamoSurveyDao implements SurveyDao {
         return survey;
     }
 
+    /**
+     * Loads the elements of a published survey version from its document. Returns null if there is no document, so
+     * the elements are loaded from the SurveyElement table instead.
+     */
+    private List<SurveyElement> loadSurveyDocument(Survey survey) {
+        DynamoSurveyDocument document = surveyDocumentMapper.load(
+                new DynamoSurveyDocument(survey.getGuid(), survey.getCreatedOn()));
+        if (document == null || document.getElements() == null) {
+            return null;
+        }
+        // Keys and order aren't stored in the document. Rules were reconciled before it was stored.
+        List<SurveyElement> elements = document.getElements();
+        for (int i=0; i < elements.size(); i++) {
+            SurveyElement element = elements.get(i);
+            element.setSurveyKeyComponents(survey.getGuid(), survey.getCreatedOn());
+            element.setOrder(i);
+        }
+        return elements;
+    }
+
+    /**
+     * Stores the elements of a published survey version as a single document. Published versions can't change, so
+     * an existing document is never overwritten. The elements are still in the SurveyElement table, so if this
+     * fails, loads fall back to that table, and the error is only logged.
+     */
+    private void saveSurveyDocument(Survey survey) {
+        DynamoSurveyDocument document = new DynamoSurveyDocument(survey.getGuid(), survey.getCreatedOn());
+        document.setElements(survey.getElements());
+
+        DynamoDBSaveExpression saveExpression = new DynamoDBSaveExpression()
+                .withExpectedEntry(SURVEY_COMPOUND_KEY_ATTRIBUTE, new ExpectedAttributeValue(false));
+        try {
+            surveyDocumentMapper.save(document, saveExpression);
+        } catch (ConditionalCheckFailedException e) {
+            // Already stored, by an earlier load or publish.
+        } catch (RuntimeException e) {
+            LOG.warn("Error storing document for survey " + document.getSurveyCompoundKey(), e);
+        }
+    }
+
     // Package-scoped for unit tests.
     void deleteAllElements(String surveyGuid, long createdOn) {
         DynamoSurveyElement template = new DynamoSurveyElement();
@@ -0,0 +1,51 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import java.util.List;
+
+import org.sagebionetworks.bridge.models.surveys.SurveyElement;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAttribute;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTypeConverted;
+
+/**
+ * All the elements of a published survey version, stored compressed in a single item, so they can be loaded with one
+ * GetItem instead of a query of the SurveyElement table. Published survey versions can't be changed, so documents are
+ * written once and never updated. Drafts are only stored in the SurveyElement table.
+ */
+@DynamoDBTable(tableName = "SurveyDocument")
+public class DynamoSurveyDocument {
+
+    private String surveyCompoundKey;
+    private List<SurveyElement> elements;
+
+    public DynamoSurveyDocument() {
+    }
+
+    public DynamoSurveyDocument(String surveyGuid, long createdOn) {
+        setSurveyKeyComponents(surveyGuid, createdOn);
+    }
+
+    /** The same key as the survey version's elements in the SurveyElement table. */
+    @DynamoDBHashKey
+    public String getSurveyCompoundKey() {
+        return surveyCompoundKey;
+    }
+    public void setSurveyCompoundKey(String surveyCompoundKey) {
+        this.surveyCompoundKey = surveyCompoundKey;
+    }
+    public void setSurveyKeyComponents(String surveyGuid, long createdOn) {
+        this.surveyCompoundKey = surveyGuid + ":" + Long.toString(createdOn);
+    }
+
+    /** The survey version's elements, in order, with their rules already reconciled. */
+    @DynamoDBTypeConverted(converter = CompressedSurveyElementListMarshaller.class)
+    @DynamoDBAttribute
+    public List<SurveyElement> getElements() {
+        return elements;
+    }
+    public void setElements(List<SurveyElement> elements) {
+        this.elements = elements;
+    }
+}
@@ -1,13 +1,19 @@
 package org.sagebionetworks.bridge.dynamodb;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import javax.annotation.Resource;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import org.sagebionetworks.bridge.async.SnsDispatcher;
+import org.sagebionetworks.bridge.async.SnsDispatcher.Outcome;
 import org.sagebionetworks.bridge.dao.TopicSubscriptionDao;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.models.notifications.NotificationRegistration;
@@ -15,6 +21,7 @@ import org.sagebionetworks.bridge.models.notifications.NotificationTopic;
 import org.sagebionetworks.bridge.models.notifications.TopicSubscription;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
 import com.amazonaws.services.sns.AmazonSNSClient;
 import com.amazonaws.services.sns.model.SubscribeRequest;
@@ -22,11 +29,14 @@ import com.amazonaws.services.sns.model.SubscribeResult;
 
 @Component
 public class DynamoTopicSubscriptionDao implements TopicSubscriptionDao {
+    private static final Logger LOG = LoggerFactory.getLogger(DynamoTopicSubscriptionDao.class);
 
     private DynamoDBMapper mapper;
     
     private AmazonSNSClient snsClient;
     
+    private SnsDispatcher snsDispatcher;
+    
     @Resource(name = "topicSubscriptionMapper")
     final void setTopicSubscriptionMapper(DynamoDBMapper mapper) {
         this.mapper = mapper;
@@ -37,6 +47,11 @@ public class DynamoTopicSubscriptionDao implements TopicSubscriptionDao {
         this.snsClient = snsClient;
     }
     
+    @Autowired
+    final void setSnsDispatcher(SnsDispatcher snsDispatcher) {
+        this.snsDispatcher = snsDispatcher;
+    }
+    
     public List<? extends TopicSubscription> listSubscriptions(NotificationRegistration registration) {
         checkNotNull(registration);
         
@@ -54,18 +69,9 @@ public class DynamoTopicSubscriptionDao implements TopicSubscriptionDao {
         checkNotNull(topic);
 
         // If it already exists, this will just overwrite it.
-        DynamoTopicSubscription subscription = new DynamoTopicSubscription();
-        subscription.setRegistrationGuid(registration.getGuid());
-        subscription.setTopicGuid(topic.getGuid());
-
-        SubscribeRequest request = new SubscribeRequest()
-                .withEndpoint(registration.getEndpoint())
-                .withProtocol(registration.getProtocol().getAwsName())
-                .withTopicArn(topic.getTopicARN());
-        
-        SubscribeResult result = snsClient.subscribe(request);
+        SubscribeResult result = snsClient.subscribe(makeSubscribeRequest(registration, topic));
         String subscriptionARN = result.getSubscriptionArn();
-        subscription.setSubscriptionARN(subscriptionARN);
+        DynamoTopicSubscription subscription = makeSubscription(registration, topic, subscriptionARN);
         
         // The integrity issue we want to avoid is where SNS has registered the user to receive
         // a topic, but we have no DDB record. We cannot unsubscribe them at that point until 
@@ -101,6 +107,96 @@ public class DynamoTopicSubscriptionDao implements TopicSubscriptionDao {
         mapper.delete(subscription);
     }
 
+    @Override
+    public List<TopicSubscription> batchSubscribe(NotificationRegistration registration,
+            List<NotificationTopic> topics) {
+        checkNotNull(registration);
+        checkNotNull(topics);
+
+        List<Outcome<NotificationTopic, SubscribeResult>> outcomes = snsDispatcher.dispatch(topics,
+                topic -> snsClient.subscribe(makeSubscribeRequest(registration, topic)));
+
+        List<DynamoTopicSubscription> subscriptions = new ArrayList<>();
+        for (Outcome<NotificationTopic, SubscribeResult> outcome : outcomes) {
+            NotificationTopic topic = outcome.getItem();
+            if (outcome.isSuccess()) {
+                subscriptions.add(makeSubscription(registration, topic, outcome.getResult().getSubscriptionArn()));
+            } else {
+                LOG.error("Error subscribing registration " + registration.getGuid() + " to topic " +
+                        topic.getGuid(), outcome.getError());
+            }
+        }
+        if (subscriptions.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<FailedBatch> failures = mapper.batchSave(subscriptions);
+        if (failures.isEmpty()) {
+            return new ArrayList<>(subscriptions);
+        }
+        // We can't tell which records weren't saved, so save them one at a time (saving one again just overwrites 
+        // it). As in subscribe(), if a record can't be saved, remove the SNS subscription so it isn't orphaned.
+        List<TopicSubscription> savedSubscriptions = new ArrayList<>();
+        for (DynamoTopicSubscription subscription : subscriptions) {
+            try {
+                mapper.save(subscription);
+                savedSubscriptions.add(subscription);
+            } catch (RuntimeException ex) {
+                LOG.error("Error saving subscription of registration " + registration.getGuid() + " to topic " +
+                        subscription.getTopicGuid(), ex);
+                try {
+                    snsClient.unsubscribe(subscription.getSubscriptionARN());
+                } catch (RuntimeException unsubscribeEx) {
+                    LOG.error("Error removing SNS subscription " + subscription.getSubscriptionARN(),
+                            unsubscribeEx);
+                }
+            }
+        }
+        return savedSubscriptions;
+    }
+
+    @Override
+    public List<TopicSubscription> batchUnsubscribe(List<? extends TopicSubscription> subscriptions) {
+        checkNotNull(subscriptions);
+
+        List<Outcome<TopicSubscription, Void>> outcomes = snsDispatcher.dispatch(subscriptions, subscription -> {
+            snsClient.unsubscribe(subscription.getSubscriptionARN());
+            return null;
+        });
+
+        List<TopicSubscription> unsubscribed = new ArrayList<>();
+        for (Outcome<TopicSubscription, Void> outcome : outcomes) {
+            TopicSubscription subscription = outcome.getItem();
+            if (outcome.isSuccess()) {
+                unsubscribed.add(subscription);
+            } else {
+                LOG.error("Error unsubscribing registration " + subscription.getRegistrationGuid() + " from topic " +
+                        subscription.getTopicGuid(), outcome.getError());
+            }
+        }
+        if (unsubscribed.isEmpty()) {
+            return unsubscribed;
+        }
+
+        List<FailedBatch> failures = mapper.batchDelete(unsubscribed);
+        if (failures.isEmpty()) {
+            return unsubscribed;
+        }
+        // We can't tell which records weren't deleted, so delete them one at a time. If a record can't be deleted, 
+        // it's orphaned, and is cleaned up the next time the registration's subscriptions are managed.
+        List<TopicSubscription> deleted = new ArrayList<>();
+        for (TopicSubscription subscription : unsubscribed) {
+            try {
+                mapper.delete(subscription);
+                deleted.add(subscription);
+            } catch (RuntimeException ex) {
+                LOG.error("Error deleting subscription of registration " + subscription.getRegistrationGuid() +
+                        " to topic " + subscription.getTopicGuid(), ex);
+            }
+        }
+        return deleted;
+    }
+
     /**
      * Subscription is in DDB but we could not find it in SNS. Try and delete both just to be sure, 
      * but definitely delete the DDB record.
@@ -115,4 +211,20 @@ public class DynamoTopicSubscriptionDao implements TopicSubscriptionDao {
         }
     }
 
+    private static SubscribeRequest makeSubscribeRequest(NotificationRegistration registration,
+            NotificationTopic topic) {
+        return new SubscribeRequest()
+                .withEndpoint(registration.getEndpoint())
+                .withProtocol(registration.getProtocol().getAwsName())
+                .withTopicArn(topic.getTopicARN());
+    }
+
+    private static DynamoTopicSubscription makeSubscription(NotificationRegistration registration,
+            NotificationTopic topic, String subscriptionARN) {
+        DynamoTopicSubscription subscription = new DynamoTopicSubscription();
+        subscription.setRegistrationGuid(registration.getGuid());
+        subscription.setTopicGuid(topic.getGuid());
+        subscription.setSubscriptionARN(subscriptionARN);
+        return subscription;
+    }
 }
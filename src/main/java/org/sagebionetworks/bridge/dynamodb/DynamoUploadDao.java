@@ -2,14 +2,16 @@ package org.sagebionetworks.bridge.dynamodb;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.sagebionetworks.bridge.BridgeConstants.API_MAXIMUM_PAGE_SIZE;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -20,6 +22,7 @@ import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
 import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.KeyAttribute;
 import com.amazonaws.services.dynamodbv2.document.QueryOutcome;
 import com.amazonaws.services.dynamodbv2.document.RangeKeyCondition;
 import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
@@ -27,6 +30,7 @@ import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
 import com.amazonaws.services.dynamodbv2.model.Condition;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 
 import org.apache.commons.lang3.StringUtils;
@@ -44,7 +48,6 @@ import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.exceptions.NotFoundException;
-import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.time.DateUtils;
 import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.ResourceList;
@@ -66,6 +69,10 @@ public class DynamoUploadDao implements UploadDao {
     private static final String REQUESTED_ON = "requestedOn";
     private static final String HEALTH_CODE = "healthCode";
     private static final String STUDY_ID_REQUESTED_ON_INDEX = "studyId-requestedOn-index";
+    private static final String OFFSET_KEY_SEPARATOR = ":";
+    private static final Base64.Encoder OFFSET_KEY_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder OFFSET_KEY_DECODER = Base64.getUrlDecoder();
+    private static final Pattern LEGACY_TIMESTAMP_OFFSET_KEY = Pattern.compile("\\d+");
     
     /**
      * This is the DynamoDB mapper that reads from and writes to our DynamoDB table. This is normally configured by
@@ -146,44 +153,47 @@ public class DynamoUploadDao implements UploadDao {
             throw new BadRequestException(PAGE_SIZE_ERROR);
         }
         int sizeWithIndicatorRecord = pageSize+1;
-        long offsetTimestamp = (offsetKey == null) ? 0 : Long.parseLong(offsetKey);
-        long offsetStartTime = Math.max(startTime.getMillis(), offsetTimestamp);
-        
-        RangeKeyCondition condition = new RangeKeyCondition(REQUESTED_ON).between(
-                offsetStartTime, endTime.getMillis());
+        long rangeStartTime = startTime.getMillis();
         
         QuerySpec spec = new QuerySpec()
                 .withHashKey(HEALTH_CODE, healthCode)
-                .withMaxPageSize(sizeWithIndicatorRecord)
-                .withRangeKeyCondition(condition); // this is not a filter, it should not require paging on our side.
+                .withMaxPageSize(sizeWithIndicatorRecord);
+        if (offsetKey != null) {
+            if (LEGACY_TIMESTAMP_OFFSET_KEY.matcher(offsetKey).matches()) {
+                // Older clients may still pass the requestedOn timestamp of the first upload of the next page.
+                rangeStartTime = Math.max(rangeStartTime, Long.parseLong(offsetKey));
+            } else {
+                OffsetKey key = OffsetKey.decode(offsetKey);
+                if (key == null) {
+                    throw new BadRequestException("Invalid offsetKey: " + offsetKey);
+                }
+                spec.withExclusiveStartKey(new KeyAttribute(UPLOAD_ID, key.uploadId),
+                        new KeyAttribute(HEALTH_CODE, healthCode), new KeyAttribute(REQUESTED_ON, key.requestedOn));
+            }
+        }
+        // this is not a filter, it should not require paging on our side.
+        spec.withRangeKeyCondition(new RangeKeyCondition(REQUESTED_ON).between(rangeStartTime, endTime.getMillis()));
         QueryOutcome outcome = healthCodeRequestedOnIndex.query(spec);
         
-        List<Upload> itemsToLoad = new ArrayList<>(sizeWithIndicatorRecord);
+        // The index only has keys. Items come back in requestedOn order. The record after the page only tells us 
+        // there is a next page, so it isn't loaded.
+        List<DynamoUpload2> keys = new ArrayList<>(sizeWithIndicatorRecord);
         Iterator<Item> iter = outcome.getItems().iterator();
-        while (iter.hasNext() && itemsToLoad.size() < sizeWithIndicatorRecord) {
+        while (iter.hasNext() && keys.size() < sizeWithIndicatorRecord) {
             Item item = iter.next();
-            DynamoUpload2 indexKeys = BridgeObjectMapper.get().convertValue(item.asMap(), DynamoUpload2.class);
-            itemsToLoad.add(indexKeys); 
+            DynamoUpload2 indexKeys = new DynamoUpload2();
+            indexKeys.setUploadId(item.getString(UPLOAD_ID));
+            indexKeys.setRequestedOn(item.getLong(REQUESTED_ON));
+            keys.add(indexKeys); 
         }
         
-        List<Upload> results = new ArrayList<>(sizeWithIndicatorRecord);
-        Map<String, List<Object>> resultMap = mapper.batchLoad(itemsToLoad);
-        for (List<Object> resultList : resultMap.values()) {
-            for (Object oneResult : resultList) {
-                results.add((Upload) oneResult);
-            }
-        }
-        
-        // Due to the return in a map, these items are not in order by requestedOn attribute, so sort them.
-        results.sort(Comparator.comparing(Upload::getRequestedOn));
-        
         String nextOffsetKey = null;
-        if (results.size() > pageSize) {
-            nextOffsetKey = Long.toString(Iterables.getLast(results).getRequestedOn());
+        if (keys.size() > pageSize) {
+            keys = keys.subList(0, pageSize);
+            DynamoUpload2 lastKey = Iterables.getLast(keys);
+            nextOffsetKey = new OffsetKey(lastKey.getRequestedOn(), lastKey.getUploadId()).encode();
         }
-
-        int lastIndex = Math.min(pageSize, results.size());
-        return new ForwardCursorPagedResourceList<>(results.subList(0, lastIndex), nextOffsetKey)
+        return new ForwardCursorPagedResourceList<>(batchLoadInOrder(keys), nextOffsetKey)
                 .withRequestParam(ResourceList.OFFSET_KEY, offsetKey)
                 .withRequestParam(ResourceList.PAGE_SIZE, pageSize)
                 .withRequestParam(ResourceList.START_TIME, startTime)
@@ -204,9 +214,45 @@ public class DynamoUploadDao implements UploadDao {
         // only query one page each time client calling this method
         QueryResultPage<DynamoUpload2> page = mapper.queryPage(DynamoUpload2.class,
                 createGetQuery(appId, startTime, endTime, offsetKey, pageSize));
+        List<Upload> uploadList = batchLoadInOrder(page.getResults());
+
+        String nextPageOffsetKey = null;
+        Map<String, AttributeValue> lastEvaluatedKey = page.getLastEvaluatedKey();
+        if (lastEvaluatedKey != null && lastEvaluatedKey.get(UPLOAD_ID).getS() != null) {
+            nextPageOffsetKey = new OffsetKey(Long.parseLong(lastEvaluatedKey.get(REQUESTED_ON).getN()),
+                    lastEvaluatedKey.get(UPLOAD_ID).getS()).encode();
+        }
+        
+        return new ForwardCursorPagedResourceList<>(uploadList, nextPageOffsetKey)
+                .withRequestParam(ResourceList.OFFSET_KEY, offsetKey)
+                .withRequestParam(ResourceList.PAGE_SIZE, pageSize)
+                .withRequestParam(ResourceList.START_TIME, startTime)
+                .withRequestParam(ResourceList.END_TIME, endTime);
+    }
 
-        Map<String, List<Object>> resultMap = mapper.batchLoad(page.getResults());
-        List<Upload> uploadList = new ArrayList<>();
+    /**
+     * Loads the uploads for the given keys, in the order of the keys. Keys with no upload are skipped. batchLoad 
+     * returns uploads in no particular order, so they're put back in key order here. A page has at most 
+     * API_MAXIMUM_PAGE_SIZE keys, which is one batch get.
+     */
+    List<Upload> batchLoadInOrder(List<? extends Upload> keys) {
+        if (keys.isEmpty()) {
+            return ImmutableList.of();
+        }
+        Map<String, Upload> uploadsById = new HashMap<>();
+        addBatchLoadResults(uploadsById, mapper.batchLoad(keys));
+        
+        List<Upload> results = new ArrayList<>(keys.size());
+        for (Upload key : keys) {
+            Upload upload = uploadsById.get(key.getUploadId());
+            if (upload != null) {
+                results.add(upload);
+            }
+        }
+        return results;
+    }
+    
+    private static void addBatchLoadResults(Map<String, Upload> uploadsById, Map<String, List<Object>> resultMap) {
         for (List<Object> resultList : resultMap.values()) {
             for (Object oneResult : resultList) {
                 if (!DynamoUpload2.class.isInstance(oneResult)) {
@@ -215,18 +261,10 @@ public class DynamoUploadDao implements UploadDao {
                             "DynamoDB returned objects of type %s instead of %s",
                             oneResult.getClass().getName(), DynamoUpload2.class.getName()));
                 }
-
-                uploadList.add((DynamoUpload2) oneResult);
+                Upload upload = (DynamoUpload2) oneResult;
+                uploadsById.put(upload.getUploadId(), upload);
             }
         }
-
-        String nextPageOffsetKey = (page.getLastEvaluatedKey() != null) ? page.getLastEvaluatedKey().get(UPLOAD_ID).getS() : null;
-        
-        return new ForwardCursorPagedResourceList<>(uploadList, nextPageOffsetKey)
-                .withRequestParam(ResourceList.OFFSET_KEY, offsetKey)
-                .withRequestParam(ResourceList.PAGE_SIZE, pageSize)
-                .withRequestParam(ResourceList.START_TIME, startTime)
-                .withRequestParam(ResourceList.END_TIME, endTime);
     }
 
     private DynamoDBQueryExpression<DynamoUpload2> createGetQuery(String appId, DateTime startTime, DateTime endTime,
@@ -234,14 +272,18 @@ public class DynamoUploadDao implements UploadDao {
 
         DynamoDBQueryExpression<DynamoUpload2> query = createCountQuery(appId, startTime, endTime);
         if (offsetKey != null) {
-            // load table again to get the one last evaluated upload
-            DynamoUpload2 retLastEvaluatedUpload = mapper.load(DynamoUpload2.class, offsetKey);
-            if (retLastEvaluatedUpload == null) {
-                throw new BadRequestException("Invalid offsetKey: " + offsetKey);
+            OffsetKey key = OffsetKey.decode(offsetKey);
+            if (key == null) {
+                // Older clients may still pass the upload ID of the last upload. Load it to get the rest of the key.
+                DynamoUpload2 retLastEvaluatedUpload = mapper.load(DynamoUpload2.class, offsetKey);
+                if (retLastEvaluatedUpload == null) {
+                    throw new BadRequestException("Invalid offsetKey: " + offsetKey);
+                }
+                key = new OffsetKey(retLastEvaluatedUpload.getRequestedOn(), offsetKey);
             }
             Map<String,AttributeValue> map = new HashMap<>();
-            map.put(UPLOAD_ID, new AttributeValue().withS(offsetKey));
-            map.put(REQUESTED_ON, new AttributeValue().withN(String.valueOf(retLastEvaluatedUpload.getRequestedOn())));
+            map.put(UPLOAD_ID, new AttributeValue().withS(key.uploadId));
+            map.put(REQUESTED_ON, new AttributeValue().withN(String.valueOf(key.requestedOn)));
             map.put(STUDY_ID, new AttributeValue().withS(appId));
             query.withExclusiveStartKey(map);
         }
@@ -317,5 +359,43 @@ public class DynamoUploadDao implements UploadDao {
             BridgeUtils.ifFailuresThrowException(failures);
         }
     }
-}
 
+    /**
+     * The offset key returned to callers. It holds the whole start key of the next page (the upload ID and 
+     * requestedOn of the last upload of this page; the index hash key comes from the request), so the next page can 
+     * be queried directly. It's opaque to callers.
+     */
+    static final class OffsetKey {
+        private final long requestedOn;
+        private final String uploadId;
+        
+        OffsetKey(long requestedOn, String uploadId) {
+            this.requestedOn = requestedOn;
+            this.uploadId = uploadId;
+        }
+        
+        String encode() {
+            String value = requestedOn + OFFSET_KEY_SEPARATOR + uploadId;
+            return OFFSET_KEY_ENCODER.encodeToString(value.getBytes(UTF_8));
+        }
+        
+        /** Returns null if the string isn't an offset key in this format. */
+        static OffsetKey decode(String offsetKey) {
+            String value;
+            try {
+                value = new String(OFFSET_KEY_DECODER.decode(offsetKey), UTF_8);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            int separator = value.indexOf(OFFSET_KEY_SEPARATOR);
+            if (separator < 1 || separator == value.length() - 1) {
+                return null;
+            }
+            try {
+                return new OffsetKey(Long.parseLong(value.substring(0, separator)), value.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -9,9 +9,11 @@ import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
 import com.amazonaws.services.dynamodbv2.model.Condition;
 import org.joda.time.DateTime;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import org.sagebionetworks.bridge.BridgeConstants;
+import org.sagebionetworks.bridge.cache.UploadDedupeFilter;
 import org.sagebionetworks.bridge.dao.UploadDedupeDao;
 
 /** DDB implementation of UploadDedupeDao. */
@@ -20,6 +22,7 @@ public class DynamoUploadDedupeDao implements UploadDedupeDao {
     static final int NUM_DAYS_BEFORE = 7;
 
     private DynamoDBMapper mapper;
+    private UploadDedupeFilter uploadDedupeFilter;
 
     /** UploadDedupe DDB mapper. */
     @Resource(name = "uploadDedupeDdbMapper")
@@ -27,6 +30,12 @@ public class DynamoUploadDedupeDao implements UploadDedupeDao {
         this.mapper = mapper;
     }
 
+    /** Filter of registered uploads, so we can skip the query for uploads that are definitely not dupes. */
+    @Autowired
+    public final void setUploadDedupeFilter(UploadDedupeFilter uploadDedupeFilter) {
+        this.uploadDedupeFilter = uploadDedupeFilter;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String getDuplicate(String healthCode, String uploadMd5, DateTime uploadRequestedOn) {
@@ -39,6 +48,11 @@ public class DynamoUploadDedupeDao implements UploadDedupeDao {
         // certain time. Since apps are known to upload a file, then upload the same file the next day, we'll give it
         // a 7-day buffer period for finding dupes.
         DateTime dupeWindowStartTime = uploadRequestedOn.minusDays(NUM_DAYS_BEFORE);
+        UploadDedupeFilter.Result filterResult = uploadDedupeFilter.check(healthCode, uploadMd5, dupeWindowStartTime,
+                uploadRequestedOn);
+        if (filterResult == UploadDedupeFilter.Result.NOT_SEEN) {
+            return null;
+        }
         Condition requestedOnCondition = new Condition().withComparisonOperator(ComparisonOperator.BETWEEN)
                 .withAttributeValueList(new AttributeValue().withN(String.valueOf(dupeWindowStartTime.getMillis())),
                         new AttributeValue().withN(String.valueOf(uploadRequestedOn.getMillis())));
@@ -49,6 +63,9 @@ public class DynamoUploadDedupeDao implements UploadDedupeDao {
         List<DynamoUploadDedupe> dedupeList = mapper.query(DynamoUploadDedupe.class, query);
 
         if (dedupeList.isEmpty()) {
+            if (filterResult == UploadDedupeFilter.Result.MAYBE_SEEN) {
+                uploadDedupeFilter.recordFalsePositive();
+            }
             return null;
         } else {
             return dedupeList.get(0).getOriginalUploadId();
@@ -65,6 +82,9 @@ public class DynamoUploadDedupeDao implements UploadDedupeDao {
         dedupe.setUploadMd5(uploadMd5);
         dedupe.setUploadRequestedDate(uploadRequestedOn.withZone(BridgeConstants.LOCAL_TIME_ZONE).toLocalDate());
         dedupe.setUploadRequestedOn(uploadRequestedOn.getMillis());
+
+        // Add to the filter first. If the save fails after this, the filter only has an extra false positive.
+        uploadDedupeFilter.put(healthCode, uploadMd5, uploadRequestedOn);
         mapper.save(dedupe);
     }
 }
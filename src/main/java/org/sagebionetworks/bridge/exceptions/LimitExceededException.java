@@ -1,13 +1,28 @@
 package org.sagebionetworks.bridge.exceptions;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  * Requests have exceeded an allowable limit, either in time or in number. The message should explain what 
  * is being gated (e.g. too many requests to sign in via email; too many users enrolled in the app, etc.).
+ * If the caller can simply try again later, the number of seconds to wait is returned in a Retry-After header.
  */
 @NoStackTraceException
 @SuppressWarnings("serial")
 public class LimitExceededException extends BridgeServiceException {
+    private final Integer retryAfterSeconds;
+    
     public LimitExceededException(String message) {
+        this(message, null);
+    }
+    
+    public LimitExceededException(String message, Integer retryAfterSeconds) {
         super(message, 429);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+    
+    @JsonIgnore
+    public Integer getRetryAfterSeconds() {
+        return retryAfterSeconds;
     }
 }
@@ -4,7 +4,10 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.sagebionetworks.bridge.Roles.ADMIN;
 import static org.sagebionetworks.bridge.Roles.WORKER;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -18,6 +21,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 
 import org.sagebionetworks.bridge.BridgeUtils;
@@ -45,6 +49,19 @@ public class HibernateAccountDao implements AccountDao {
     
     static final String COUNT_QUERY = "SELECT COUNT(DISTINCT acct.id) FROM HibernateAccount AS acct";
     
+    static final String SUMMARY_QUERY = "SELECT new org.sagebionetworks.bridge.hibernate.HibernateAccount("
+            + "acct.createdOn, acct.appId, acct.orgMembership, acct.firstName, acct.lastName, acct.email, "
+            + "acct.phone, acct.id, acct.status, acct.synapseUserId) FROM HibernateAccount AS acct "
+            + "WHERE acct.id IN (:ids)";
+    
+    static final String SUMMARY_ATTRIBUTES_QUERY = "SELECT acct.id, KEY(attr), VALUE(attr) FROM "
+            + "HibernateAccount AS acct JOIN acct.attributes AS attr WHERE acct.id IN (:ids)";
+    
+    static final String SUMMARY_ENROLLMENTS_QUERY = "FROM HibernateEnrollment AS enrollment WHERE "
+            + "enrollment.accountId IN (:ids)";
+    
+    static final String IDS_PARAM = "ids";
+    
     private HibernateHelper hibernateHelper;
 
     /** This makes interfacing with Hibernate easier. */
@@ -188,24 +205,27 @@ public class HibernateAccountDao implements AccountDao {
     /** {@inheritDoc} */
     @Override
     public PagedResourceList<AccountSummary> getPagedAccountSummaries(String appId, AccountSummarySearch search) {
-        // Getting the IDs and loading the records individually leads to N+1 queries (one id query and a 
-        // query for each object), whereas querying for a constructor of a subset of columns leads to 
-        // (N*Y)+1 queries as we must load each collection individually... Y=1 in the prior code to load
-        // studies, and Y=2 once we add attributes. On the downside, this approach loads all 
-        // HibernateAccount fields, like clientData, though it is not returned.
+        // Loading each account by ID leads to N+1 queries, and each of those loads every eagerly-fetched
+        // collection of the account. Instead, we get the page of IDs, then load only the summary columns, the
+        // attributes, and the enrollments for the whole page, using one query each.
         QueryBuilder builder = makeQuery(ID_QUERY, appId, null, search, false);
         
         List<String> ids = hibernateHelper.queryGet(builder.getQuery(), builder.getParameters(),
                 search.getOffsetBy(), search.getPageSize(), String.class);
         
-        List<AccountSummary>accountSummaryList = ids.stream()
-                .map(id -> hibernateHelper.getById(HibernateAccount.class, id))
+        List<AccountSummary> accountSummaryList = getAccountsForSummaries(ids).stream()
                 .map(this::unmarshallAccountSummary)
                 .collect(Collectors.toList());
 
-        // Get count of accounts.
-        builder = makeQuery(COUNT_QUERY, appId, null, search, true);
-        int count = hibernateHelper.queryCount(builder.getQuery(), builder.getParameters());
+        // Get count of accounts. If this page is short, it's the last page, and we already know the count (unless
+        // the offset is past the end, in which case we can't tell how far past).
+        int count;
+        if (ids.size() < search.getPageSize() && (!ids.isEmpty() || search.getOffsetBy() == 0)) {
+            count = search.getOffsetBy() + ids.size();
+        } else {
+            builder = makeQuery(COUNT_QUERY, appId, null, search, true);
+            count = hibernateHelper.queryCount(builder.getQuery(), builder.getParameters());
+        }
         
         // Package results and return.
         return new PagedResourceList<>(accountSummaryList, count)
@@ -222,6 +242,36 @@ public class HibernateAccountDao implements AccountDao {
                 .withRequestParam(ResourceList.START_TIME, search.getStartTime());
     }
     
+    // Loads the accounts with the given IDs, with only the fields needed for account summaries, in the same order as
+    // the IDs. Accounts that were deleted since the IDs were queried are skipped.
+    private List<HibernateAccount> getAccountsForSummaries(List<String> ids) {
+        if (ids.isEmpty()) {
+            return ImmutableList.of();
+        }
+        Map<String, Object> params = ImmutableMap.of(IDS_PARAM, ids);
+        
+        Map<String, HibernateAccount> accountsById = new HashMap<>();
+        for (HibernateAccount account : hibernateHelper.queryGet(SUMMARY_QUERY, params, null, null,
+                HibernateAccount.class)) {
+            accountsById.put(account.getId(), account);
+        }
+        for (Object[] row : hibernateHelper.queryGet(SUMMARY_ATTRIBUTES_QUERY, params, null, null,
+                Object[].class)) {
+            HibernateAccount account = accountsById.get((String) row[0]);
+            if (account != null) {
+                account.getAttributes().put((String) row[1], (String) row[2]);
+            }
+        }
+        for (HibernateEnrollment enrollment : hibernateHelper.queryGet(SUMMARY_ENROLLMENTS_QUERY, params, null,
+                null, HibernateEnrollment.class)) {
+            HibernateAccount account = accountsById.get(enrollment.getAccountId());
+            if (account != null) {
+                account.getEnrollments().add(enrollment);
+            }
+        }
+        return ids.stream().map(accountsById::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+    
     // Callers of AccountDao assume that an Account will always a health code and health ID. All accounts created
     // through the DAO will automatically have health code and ID populated, but accounts created in the DB directly
     // are left in a bad state. This method validates the health code mapping on a HibernateAccount and updates it as
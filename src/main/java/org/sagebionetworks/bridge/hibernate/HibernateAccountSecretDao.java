@@ -2,20 +2,22 @@ package org.sagebionetworks.bridge.hibernate;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.security.spec.InvalidKeySpecException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Future;
 
 import javax.annotation.Resource;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import org.sagebionetworks.bridge.crypto.HashingExecutor;
 import org.sagebionetworks.bridge.dao.AccountSecretDao;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.models.accounts.AccountSecret;
@@ -35,16 +37,22 @@ public class HibernateAccountSecretDao implements AccountSecretDao {
             "accountId = :accountId AND type = :type";
     
     private HibernateHelper hibernateHelper;
+    private HashingExecutor hashingExecutor;
     
     @Resource(name = "basicHibernateHelper")
     final void setHibernateHelper(HibernateHelper hibernateHelper) {
         this.hibernateHelper = hibernateHelper;
     }
     
+    @Autowired
+    final void setHashingExecutor(HashingExecutor hashingExecutor) {
+        this.hashingExecutor = hashingExecutor;
+    }
+    
     protected String generateHash(PasswordAlgorithm algorithm, String plaintext) {
         try {
-            return algorithm.generateHash(plaintext);
-        } catch (InvalidKeyException | InvalidKeySpecException | NoSuchAlgorithmException e) {
+            return hashingExecutor.execute(() -> algorithm.generateHash(plaintext));
+        } catch (GeneralSecurityException e) {
             throw new BridgeServiceException("Could not generate secret", e);
         }
     }
@@ -78,16 +86,29 @@ public class HibernateAccountSecretDao implements AccountSecretDao {
         
         List<HibernateAccountSecret> secrets = hibernateHelper.queryGet(
                 GET_QUERY, params, 0, rotations, HibernateAccountSecret.class);
-        for (HibernateAccountSecret accountSecret : secrets) {
-            try {
-                // It's not possible to cache the hashed plaintext, as it is being compared to a hash
-                // that has been seeded with a random salt (in the default algorithm's case). So we
-                // must extract and use that salt + iterations to compare the hashes.
-                if (accountSecret.getAlgorithm().checkHash(accountSecret.getHash(), plaintext)) {
-                    return Optional.of(accountSecret);
+        // It's not possible to cache the hashed plaintext, as it is being compared to a hash
+        // that has been seeded with a random salt (in the default algorithm's case). So we
+        // must extract and use that salt + iterations to compare the hashes. The secrets are 
+        // checked in parallel, but the newest secret that matches is returned.
+        List<Future<Boolean>> futures = new ArrayList<>();
+        try {
+            for (HibernateAccountSecret accountSecret : secrets) {
+                futures.add(hashingExecutor.submit(
+                        () -> accountSecret.getAlgorithm().checkHash(accountSecret.getHash(), plaintext)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    if (hashingExecutor.getResult(futures.get(i))) {
+                        return Optional.of(secrets.get(i));
+                    }
+                } catch (GeneralSecurityException e) {
+                    LOG.error("Error checking reauthentication token", e);
                 }
-            } catch (InvalidKeyException | InvalidKeySpecException | NoSuchAlgorithmException e) {
-                LOG.error("Error checking reauthentication token", e);
+            }
+        } finally {
+            // Don't spend time on the older secrets once one has matched.
+            for (Future<Boolean> future : futures) {
+                future.cancel(true);
             }
         }
         return Optional.empty();
@@ -7,6 +7,7 @@ import java.util.stream.Collectors;
 
 import javax.annotation.Resource;
 
+import com.google.common.collect.Iterables;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -15,6 +16,7 @@ import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.dao.AccountDao;
 import org.sagebionetworks.bridge.dao.ExternalIdDao;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.models.accounts.Account;
 import org.sagebionetworks.bridge.models.accounts.AccountId;
@@ -29,6 +31,7 @@ public class HibernateExternalIdDao implements ExternalIdDao {
             + "WHERE en.appId = :appId AND en.studyId = :studyId "
             + "AND en.externalId IS NOT NULL";
     private static final String FILTER_QUERY = "AND en.externalId LIKE :idFilter";
+    private static final String OFFSET_KEY_QUERY = "AND en.externalId > :offsetKey";
     private static final String ORDER_QUERY = "ORDER BY en.externalId";
 
     private HibernateHelper hibernateHelper;
@@ -72,6 +75,39 @@ public class HibernateExternalIdDao implements ExternalIdDao {
         return new PagedResourceList<>(infos, count, true);
     }
 
+    @Override
+    public ForwardCursorPagedResourceList<ExternalIdentifierInfo> getExternalIdsAfter(String appId, String studyId,
+            String idFilter, String offsetKey, int pageSize) {
+        checkNotNull(appId);
+        checkNotNull(studyId);
+
+        QueryBuilder query = new QueryBuilder();
+        query.append(BASE_QUERY, "appId", appId, "studyId", studyId);
+        if (StringUtils.isNotBlank(idFilter)) {
+            query.append(FILTER_QUERY, "idFilter", idFilter + "%");
+        }
+        if (StringUtils.isNotBlank(offsetKey)) {
+            query.append(OFFSET_KEY_QUERY, "offsetKey", offsetKey);
+        }
+        query.append(ORDER_QUERY);
+
+        // Only select the external ID, so the query can be answered from the index, and seek past the last ID of the
+        // previous page rather than skipping rows. Limit is pageSize+1 so we know if there's another page.
+        List<String> externalIds = hibernateHelper.queryGet("SELECT en.externalId " + query.getQuery(),
+                query.getParameters(), null, pageSize+1, String.class);
+
+        String nextPageOffsetKey = null;
+        if (externalIds.size() > pageSize) {
+            externalIds = externalIds.subList(0, pageSize);
+            nextPageOffsetKey = Iterables.getLast(externalIds);
+        }
+        List<ExternalIdentifierInfo> infos = externalIds.stream()
+                .map(externalId -> new ExternalIdentifierInfo(externalId, studyId, true))
+                .collect(Collectors.toList());
+
+        return new ForwardCursorPagedResourceList<>(infos, nextPageOffsetKey, true);
+    }
+
     @Override
     public void deleteExternalId(ExternalIdentifier extId) {
         checkNotNull(extId);
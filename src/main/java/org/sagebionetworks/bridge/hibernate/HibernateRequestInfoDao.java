@@ -1,6 +1,11 @@
 package org.sagebionetworks.bridge.hibernate;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.stream.Collectors.toList;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Resource;
 
@@ -11,6 +16,11 @@ import org.sagebionetworks.bridge.models.RequestInfo;
 
 @Component
 public class HibernateRequestInfoDao implements RequestInfoDao {
+    // Package-scoped for unit tests.
+    static final String GET_BY_USER_IDS_QUERY = "FROM RequestInfo WHERE userId IN (:userIds)";
+    static final String USER_IDS_PARAM = "userIds";
+    static final int JDBC_BATCH_SIZE = 50;
+
     private HibernateHelper hibernateHelper;
     
     @Resource(name = "basicHibernateHelper")
@@ -31,6 +41,41 @@ public class HibernateRequestInfoDao implements RequestInfoDao {
         }        
     }
 
+    @Override
+    public void updateRequestInfos(List<RequestInfo> requestInfos) {
+        checkNotNull(requestInfos);
+        if (requestInfos.isEmpty()) {
+            return;
+        }
+        List<String> userIds = requestInfos.stream().map(RequestInfo::getUserId).collect(toList());
+        
+        hibernateHelper.executeWithExceptionHandling(null, session -> {
+            // Send the writes in JDBC batches. This is only turned on for this session, since it's the only one that
+            // writes many rows of the same entity.
+            session.setJdbcBatchSize(JDBC_BATCH_SIZE);
+            List<RequestInfo> existingRequestInfos = session.createQuery(GET_BY_USER_IDS_QUERY, RequestInfo.class)
+                    .setParameter(USER_IDS_PARAM, userIds).list();
+            Map<String, RequestInfo> existingByUserId = new HashMap<>();
+            for (RequestInfo existingRequestInfo : existingRequestInfos) {
+                existingByUserId.put(existingRequestInfo.getUserId(), existingRequestInfo);
+            }
+            
+            for (RequestInfo requestInfo : requestInfos) {
+                RequestInfo existingRequestInfo = existingByUserId.get(requestInfo.getUserId());
+                if (existingRequestInfo != null) {
+                    RequestInfo.Builder builder = new RequestInfo.Builder();
+                    builder.copyOf(existingRequestInfo);
+                    builder.copyOf(requestInfo);
+                    // The existing record is already in this session, so merge copies the new state onto it.
+                    session.merge(builder.build());
+                } else {
+                    session.save(requestInfo);
+                }
+            }
+            return null;
+        });
+    }
+
     @Override
     public RequestInfo getRequestInfo(String userId) {
         checkNotNull(userId);
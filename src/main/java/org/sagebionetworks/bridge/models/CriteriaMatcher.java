@@ -0,0 +1,233 @@
+package org.sagebionetworks.bridge.models;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * <p>
+ * A fixed set of candidates whose criteria have been compiled for matching, for callers that match many requests
+ * against the same candidates. {@link #filter} returns the same result as
+ * {@link CriteriaUtils#filterByCriteria}, but without walking the criteria's sets and maps for every candidate.
+ * </p>
+ * <p>
+ * Every data group and study ID named in any candidate's criteria is given a bit position, and each candidate's
+ * required and prohibited groups and studies become bit masks. Data groups and study IDs that no candidate names can't
+ * change the result, so they have no bit. The app version ranges are indexed by operating system. Matching a request
+ * builds the request's masks once, and then each candidate is a few bitwise comparisons. Matching isn't free of
+ * allocation: each call builds the request's data group and study ID masks and the list of matches.
+ * </p>
+ * <p>
+ * Compiling costs more than a single call to filterByCriteria, so a matcher only pays off when it's cached and reused
+ * (see TemplateCache). Callers that load their candidates for each request should keep using filterByCriteria.
+ * </p>
+ * <p>
+ * A matcher is immutable and can be shared between threads. It's a snapshot of the candidates' criteria when it was
+ * compiled, so it must be discarded when those criteria change.
+ * </p>
+ */
+public final class CriteriaMatcher<T extends HasCriteria> {
+    private static final long[] EMPTY_MASK = new long[0];
+
+    private final List<T> candidates;
+    private final CompiledCriteria[] compiledCriteria;
+    private final Map<String, Integer> dataGroupBits;
+    private final Map<String, Integer> studyIdBits;
+    private final Map<String, Integer> osIndexes;
+
+    private CriteriaMatcher(List<T> candidates, CompiledCriteria[] compiledCriteria, Map<String, Integer> dataGroupBits,
+            Map<String, Integer> studyIdBits, Map<String, Integer> osIndexes) {
+        this.candidates = candidates;
+        this.compiledCriteria = compiledCriteria;
+        this.dataGroupBits = dataGroupBits;
+        this.studyIdBits = studyIdBits;
+        this.osIndexes = osIndexes;
+    }
+
+    /** Compiles the criteria of the given candidates. The candidates keep the order they're given in. */
+    public static <T extends HasCriteria> CriteriaMatcher<T> compile(Collection<T> candidates) {
+        checkNotNull(candidates);
+
+        List<T> candidateList = ImmutableList.copyOf(candidates);
+        Map<String, Integer> dataGroupBits = new HashMap<>();
+        Map<String, Integer> studyIdBits = new HashMap<>();
+        Map<String, Integer> osIndexes = new HashMap<>();
+        for (T candidate : candidateList) {
+            Criteria criteria = checkCriteria(candidate.getCriteria());
+            assignBits(dataGroupBits, criteria.getAllOfGroups());
+            assignBits(dataGroupBits, criteria.getNoneOfGroups());
+            assignBits(studyIdBits, criteria.getAllOfStudyIds());
+            assignBits(studyIdBits, criteria.getNoneOfStudyIds());
+            assignBits(osIndexes, criteria.getAppVersionOperatingSystems());
+        }
+
+        CompiledCriteria[] compiledCriteria = new CompiledCriteria[candidateList.size()];
+        for (int i = 0; i < compiledCriteria.length; i++) {
+            Criteria criteria = candidateList.get(i).getCriteria();
+
+            int[] minAppVersions = new int[osIndexes.size()];
+            int[] maxAppVersions = new int[osIndexes.size()];
+            Arrays.fill(minAppVersions, Integer.MIN_VALUE);
+            Arrays.fill(maxAppVersions, Integer.MAX_VALUE);
+            for (String osName : criteria.getAppVersionOperatingSystems()) {
+                int osIndex = osIndexes.get(osName);
+                Integer minAppVersion = criteria.getMinAppVersion(osName);
+                Integer maxAppVersion = criteria.getMaxAppVersion(osName);
+                if (minAppVersion != null) {
+                    minAppVersions[osIndex] = minAppVersion;
+                }
+                if (maxAppVersion != null) {
+                    maxAppVersions[osIndex] = maxAppVersion;
+                }
+            }
+
+            compiledCriteria[i] = new CompiledCriteria(
+                    toMask(dataGroupBits, criteria.getAllOfGroups()),
+                    toMask(dataGroupBits, criteria.getNoneOfGroups()),
+                    toMask(studyIdBits, criteria.getAllOfStudyIds()),
+                    toMask(studyIdBits, criteria.getNoneOfStudyIds()),
+                    minAppVersions, maxAppVersions, criteria.getLanguage());
+        }
+        return new CriteriaMatcher<>(candidateList, compiledCriteria, dataGroupBits, studyIdBits, osIndexes);
+    }
+
+    /** The candidates this matcher was compiled from, in their original order. This list is immutable. */
+    public List<T> getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * Returns the candidates whose criteria match the context, sorted by the caller's language preference and then by
+     * the second comparator, if there is one. This is the same as {@link CriteriaUtils#filterByCriteria}. The returned
+     * list is new for each call, and the caller may modify it.
+     */
+    public List<T> filter(CriteriaContext context, Comparator<T> secondComparator) {
+        checkNotNull(context);
+        checkNotNull(context.getLanguages());
+        checkNotNull(context.getClientInfo());
+        checkNotNull(context.getUserDataGroups());
+
+        long[] dataGroupMask = toMask(dataGroupBits, context.getUserDataGroups());
+        long[] studyIdMask = toMask(studyIdBits, context.getUserStudyIds());
+
+        // If the caller's OS isn't named in any criteria, no candidate has a version range for it.
+        Integer appVersion = context.getClientInfo().getAppVersion();
+        String appOs = context.getClientInfo().getOsName();
+        int osIndex = -1;
+        if (appVersion != null && appOs != null) {
+            Integer index = osIndexes.get(appOs);
+            if (index != null) {
+                osIndex = index;
+            }
+        }
+
+        List<T> matches = new ArrayList<>();
+        for (int i = 0; i < compiledCriteria.length; i++) {
+            CompiledCriteria criteria = compiledCriteria[i];
+            if (osIndex >= 0 && (appVersion < criteria.minAppVersions[osIndex] ||
+                    appVersion > criteria.maxAppVersions[osIndex])) {
+                continue;
+            }
+            if (!containsAll(dataGroupMask, criteria.allOfGroups) ||
+                    intersects(dataGroupMask, criteria.noneOfGroups)) {
+                continue;
+            }
+            if (!containsAll(studyIdMask, criteria.allOfStudyIds) ||
+                    intersects(studyIdMask, criteria.noneOfStudyIds)) {
+                continue;
+            }
+            if (CriteriaUtils.languageDoesNotMatch(context.getLanguages(), criteria.language)) {
+                continue;
+            }
+            matches.add(candidates.get(i));
+        }
+        if (matches.size() > 1) {
+            matches.sort(CriteriaUtils.languageComparator(context, secondComparator));
+        }
+        return matches;
+    }
+
+    private static Criteria checkCriteria(Criteria criteria) {
+        checkNotNull(criteria);
+        checkNotNull(criteria.getAllOfGroups());
+        checkNotNull(criteria.getNoneOfGroups());
+        checkNotNull(criteria.getAllOfStudyIds());
+        checkNotNull(criteria.getNoneOfStudyIds());
+        return criteria;
+    }
+
+    private static void assignBits(Map<String, Integer> bits, Set<String> values) {
+        for (String value : values) {
+            bits.putIfAbsent(value, bits.size());
+        }
+    }
+
+    // Values that have no bit are ignored. Masks are trimmed to the highest bit set, so most are one word or empty.
+    private static long[] toMask(Map<String, Integer> bits, Set<String> values) {
+        long[] mask = EMPTY_MASK;
+        for (String value : values) {
+            Integer bit = bits.get(value);
+            if (bit != null) {
+                int word = bit >>> 6;
+                if (word >= mask.length) {
+                    mask = Arrays.copyOf(mask, word + 1);
+                }
+                mask[word] |= 1L << bit;
+            }
+        }
+        return mask;
+    }
+
+    private static boolean containsAll(long[] mask, long[] required) {
+        if (required.length > mask.length) {
+            // The required mask is trimmed, so it has a bit past the end of this mask.
+            return false;
+        }
+        for (int i = 0; i < required.length; i++) {
+            if ((mask[i] & required[i]) != required[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean intersects(long[] mask, long[] prohibited) {
+        int length = Math.min(mask.length, prohibited.length);
+        for (int i = 0; i < length; i++) {
+            if ((mask[i] & prohibited[i]) != 0L) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class CompiledCriteria {
+        private final long[] allOfGroups;
+        private final long[] noneOfGroups;
+        private final long[] allOfStudyIds;
+        private final long[] noneOfStudyIds;
+        private final int[] minAppVersions;
+        private final int[] maxAppVersions;
+        private final String language;
+
+        CompiledCriteria(long[] allOfGroups, long[] noneOfGroups, long[] allOfStudyIds, long[] noneOfStudyIds,
+                int[] minAppVersions, int[] maxAppVersions, String language) {
+            this.allOfGroups = allOfGroups;
+            this.noneOfGroups = noneOfGroups;
+            this.allOfStudyIds = allOfStudyIds;
+            this.noneOfStudyIds = noneOfStudyIds;
+            this.minAppVersions = minAppVersions;
+            this.maxAppVersions = maxAppVersions;
+            this.language = language;
+        }
+    }
+}
@@ -32,6 +32,18 @@ public class CriteriaUtils {
         checkNotNull(context);
         checkNotNull(coll);
         
+        return coll.stream()
+                .filter((el) -> matchCriteria(context, el.getCriteria()))
+                .sorted(languageComparator(context, secondComparator))
+                .collect(toList());
+    }
+    
+    /**
+     * Sorts matched objects by the position of their language in the caller's language preferences, and then by the 
+     * second comparator, if there is one. Shared with CriteriaMatcher so both sort the same way.
+     */
+    static <T extends HasCriteria> Comparator<T> languageComparator(CriteriaContext context,
+            Comparator<T> secondComparator) {
         // Sort by language
         final List<String> langs = context.getLanguages();
         Comparator<T> comparator = (sel1, sel2) -> {
@@ -43,10 +55,7 @@ public class CriteriaUtils {
         if (secondComparator != null) {
             comparator = comparator.thenComparing(secondComparator);
         }
-        return coll.stream()
-                .filter((el) -> matchCriteria(context, el.getCriteria()))
-                .sorted(comparator)
-                .collect(toList());
+        return comparator;
     }
     
     /**
@@ -141,7 +150,7 @@ public class CriteriaUtils {
 
     // This is a simple match: if a criteria declares a language, the user must declare the language
     // This does NOT necessarily return the user's most desired language.
-    private static boolean languageDoesNotMatch(List<String> preferredLanguages, String targetLanguage) {
+    static boolean languageDoesNotMatch(List<String> preferredLanguages, String targetLanguage) {
         // It doesn't match if 1) target language has been specified or 
         // 2) user has declared the required language. 
         if (targetLanguage == null) {
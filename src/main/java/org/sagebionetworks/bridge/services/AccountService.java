@@ -11,9 +11,7 @@ import static org.sagebionetworks.bridge.models.accounts.PasswordAlgorithm.DEFAU
 import static org.sagebionetworks.bridge.services.AuthenticationService.ChannelType.EMAIL;
 import static org.sagebionetworks.bridge.services.AuthenticationService.ChannelType.PHONE;
 
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.security.spec.InvalidKeySpecException;
+import java.security.GeneralSecurityException;
 import java.util.List;
 import java.util.Optional;
 import java.util.function.Consumer;
@@ -26,6 +24,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.crypto.HashingExecutor;
 import org.sagebionetworks.bridge.dao.AccountDao;
 import org.sagebionetworks.bridge.dao.AccountSecretDao;
 import org.sagebionetworks.bridge.exceptions.AccountDisabledException;
@@ -52,6 +51,7 @@ public class AccountService {
     
     private AccountDao accountDao;
     private AccountSecretDao accountSecretDao;
+    private HashingExecutor hashingExecutor;
 
     @Autowired
     public final void setAccountDao(AccountDao accountDao) {
@@ -63,6 +63,11 @@ public class AccountService {
         this.accountSecretDao = accountSecretDao;
     }
     
+    @Autowired
+    public final void setHashingExecutor(HashingExecutor hashingExecutor) {
+        this.hashingExecutor = hashingExecutor;
+    }
+    
     // Provided to override in tests
     protected String generateGUID() {
         return BridgeUtils.generateGuid();
@@ -339,20 +344,24 @@ public class AccountService {
             LOG.warn("Account " + account.getId() + " is enabled but has no password.");
             throw new EntityNotFoundException(Account.class);
         }
+        PasswordAlgorithm algorithm = account.getPasswordAlgorithm();
+        String passwordHash = account.getPasswordHash();
+        boolean matches;
         try {
-            if (!account.getPasswordAlgorithm().checkHash(account.getPasswordHash(), plaintext)) {
-                // To prevent enumeration attacks, if the credential doesn't match, throw 404 account not found.
-                throw new EntityNotFoundException(Account.class);
-            }
-        } catch (InvalidKeyException | InvalidKeySpecException | NoSuchAlgorithmException ex) {
+            matches = hashingExecutor.execute(() -> algorithm.checkHash(passwordHash, plaintext));
+        } catch (GeneralSecurityException ex) {
             throw new BridgeServiceException("Error validating password: " + ex.getMessage(), ex);
-        }        
+        }
+        if (!matches) {
+            // To prevent enumeration attacks, if the credential doesn't match, throw 404 account not found.
+            throw new EntityNotFoundException(Account.class);
+        }
     }
     
     protected String hashCredential(PasswordAlgorithm algorithm, String type, String value) {
         try {
-            return algorithm.generateHash(value);
-        } catch (InvalidKeyException | InvalidKeySpecException | NoSuchAlgorithmException ex) {
+            return hashingExecutor.execute(() -> algorithm.generateHash(value));
+        } catch (GeneralSecurityException ex) {
             throw new BridgeServiceException("Error creating "+type+": " + ex.getMessage(), ex);
         }
     }    
@@ -7,6 +7,7 @@ import static org.sagebionetworks.bridge.models.activities.ActivityEventObjectTy
 import static org.sagebionetworks.bridge.models.activities.ActivityEventObjectType.ENROLLMENT;
 import static org.sagebionetworks.bridge.models.activities.ActivityEventObjectType.STUDY_START_DATE;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -20,6 +21,7 @@ import org.joda.time.Period;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.cache.ActivitiesRetrievedCoalescer;
 import org.sagebionetworks.bridge.dao.ActivityEventDao;
 import org.sagebionetworks.bridge.dynamodb.DynamoActivityEvent;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
@@ -55,6 +57,7 @@ public class ActivityEventService {
     private ActivityEventDao activityEventDao;
     private ParticipantService participantService;
     private AppService appService;
+    private ActivitiesRetrievedCoalescer activitiesRetrievedCoalescer;
     
     @Autowired
     final void setActivityEventDao(ActivityEventDao activityEventDao) {
@@ -71,6 +74,11 @@ public class ActivityEventService {
         this.appService = appService;
     }
     
+    @Autowired
+    final void setActivitiesRetrievedCoalescer(ActivitiesRetrievedCoalescer activitiesRetrievedCoalescer) {
+        this.activitiesRetrievedCoalescer = activitiesRetrievedCoalescer;
+    }
+    
     /**
      * Publishes a custom event. Note that this automatically prepends "custom:" to the event key to form the event ID
      * (eg, event key "studyBurstStart" becomes event ID "custom:studyBurstStart"). Also note that the event key must
@@ -133,28 +141,31 @@ public class ActivityEventService {
         checkNotNull(healthCode);
         checkNotNull(timestamp);
         
-        ActivityEvent globalEvent = new DynamoActivityEvent.Builder()
-            .withHealthCode(healthCode)
-            .withTimestamp(timestamp)
-            .withObjectType(ACTIVITIES_RETRIEVED).build();
-        
-        if (activityEventDao.publishEvent(globalEvent)) {
-            // Create automatic events, as defined in the app
-            createAutomaticCustomEvents(app, null, healthCode, globalEvent);
-        }
+        publishActivitiesRetrievedEvent(app, null, healthCode, timestamp);
         if (studyId != null) {
-            ActivityEvent studyEvent = new DynamoActivityEvent.Builder()
-                    .withHealthCode(healthCode)
-                    .withTimestamp(timestamp)
-                    .withObjectType(ACTIVITIES_RETRIEVED)
-                    .withStudyId(studyId).build();
-            if (activityEventDao.publishEvent(studyEvent)) {
-                // Create automatic events, as defined in the app
-                createAutomaticCustomEvents(app, studyId, healthCode, studyEvent);
-            }
+            publishActivitiesRetrievedEvent(app, studyId, healthCode, timestamp);
         }
     }
     
+    // This event is immutable, so once it has been published (or found to exist already), publishing it again 
+    // within the app's coalescing window is skipped.
+    private void publishActivitiesRetrievedEvent(App app, String studyId, String healthCode, DateTime timestamp) {
+        String appId = (app != null) ? app.getIdentifier() : null;
+        if (activitiesRetrievedCoalescer.isRecentlyPublished(appId, healthCode, studyId)) {
+            return;
+        }
+        ActivityEvent event = new DynamoActivityEvent.Builder()
+                .withHealthCode(healthCode)
+                .withTimestamp(timestamp)
+                .withObjectType(ACTIVITIES_RETRIEVED)
+                .withStudyId(studyId).build();
+        if (activityEventDao.publishEvent(event)) {
+            // Create automatic events, as defined in the app
+            createAutomaticCustomEvents(app, studyId, healthCode, event);
+        }
+        activitiesRetrievedCoalescer.recordPublished(appId, healthCode, studyId);
+    }
+    
     /**
      * This method does not currently accept a studyId because we don’t anticipate a study-scoped
      * API for this event (it has not been used).
@@ -180,21 +191,44 @@ public class ActivityEventService {
     public void publishActivityFinishedEvent(ScheduledActivity schActivity) {
         checkNotNull(schActivity);
         
+        ActivityEvent event = createActivityFinishedEvent(schActivity);
+        if (event != null) {
+            activityEventDao.publishEvent(event);
+        }
+    }
+    
+    /**
+     * Publishes activity finished events for all of the given activities, which must all belong to the same user, 
+     * in one batch.
+     */
+    public void publishActivityFinishedEvents(List<ScheduledActivity> schActivities) {
+        checkNotNull(schActivities);
+        
+        List<ActivityEvent> events = new ArrayList<>();
+        for (ScheduledActivity schActivity : schActivities) {
+            ActivityEvent event = createActivityFinishedEvent(schActivity);
+            if (event != null) {
+                events.add(event);
+            }
+        }
+        activityEventDao.publishEvents(events);
+    }
+    
+    private ActivityEvent createActivityFinishedEvent(ScheduledActivity schActivity) {
         // If there's no colon, this is an existing activity and it cannot fire an 
         // activity event. Quietly ignore this until we have migrated activities.
-        if (schActivity.getGuid().contains(":")) {
-            String activityGuid = schActivity.getGuid().split(":")[0];
-            
-            ActivityEvent event = new DynamoActivityEvent.Builder()
-                .withHealthCode(schActivity.getHealthCode())
-                .withObjectType(ActivityEventObjectType.ACTIVITY)
-                .withObjectId(activityGuid)
-                .withEventType(ActivityEventType.FINISHED)
-                .withTimestamp(schActivity.getFinishedOn())
-                .build();
-
-            activityEventDao.publishEvent(event);
+        if (!schActivity.getGuid().contains(":")) {
+            return null;
         }
+        String activityGuid = schActivity.getGuid().split(":")[0];
+        
+        return new DynamoActivityEvent.Builder()
+            .withHealthCode(schActivity.getHealthCode())
+            .withObjectType(ActivityEventObjectType.ACTIVITY)
+            .withObjectId(activityGuid)
+            .withEventType(ActivityEventType.FINISHED)
+            .withTimestamp(schActivity.getFinishedOn())
+            .build();
     }
     
     /**
@@ -272,9 +306,12 @@ public class ActivityEventService {
     public void deleteActivityEvents(String studyId, String healthCode) {
         checkNotNull(healthCode);
         activityEventDao.deleteActivityEvents(healthCode, studyId);
+        activitiesRetrievedCoalescer.remove(healthCode, studyId);
     }
 
     private void createAutomaticCustomEvents(App app, String studyId, String healthCode, ActivityEvent event) {
+        // Automatic events are written together in one batch.
+        List<ActivityEvent> automaticEvents = new ArrayList<>();
         for (Map.Entry<String, String> oneAutomaticEvent : app.getAutomaticCustomEvents().entrySet()) {
             String automaticEventKey = oneAutomaticEvent.getKey(); // new event key
             Tuple<String> autoEventSpec = BridgeUtils.parseAutoEventValue(oneAutomaticEvent.getValue()); // originEventId:Period
@@ -290,8 +327,11 @@ public class ActivityEventService {
                         .withObjectId(automaticEventKey)
                         .withTimestamp(automaticEventTime)
                         .withStudyId(studyId).build();
-                activityEventDao.publishEvent(automaticEvent);
+                automaticEvents.add(automaticEvent);
             }
-        }        
+        }
+        if (!automaticEvents.isEmpty()) {
+            activityEventDao.publishEvents(automaticEvents);
+        }
     }
 }
@@ -5,6 +5,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import java.util.List;
 
 import org.joda.time.DateTime;
+import org.sagebionetworks.bridge.cache.ResolvedAppConfigCache;
 import org.sagebionetworks.bridge.dao.AppConfigElementDao;
 import org.sagebionetworks.bridge.exceptions.EntityAlreadyExistsException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
@@ -22,11 +23,19 @@ public class AppConfigElementService {
     
     private AppConfigElementDao appConfigElementDao;
     
+    private ResolvedAppConfigCache resolvedAppConfigCache;
+    
     @Autowired
     final void setAppConfigElementDao(AppConfigElementDao appConfigElementDao) {
         this.appConfigElementDao = appConfigElementDao;
     }
     
+    /** App configs include the data of the elements they reference, so changing an element invalidates them. */
+    @Autowired
+    final void setResolvedAppConfigCache(ResolvedAppConfigCache resolvedAppConfigCache) {
+        this.resolvedAppConfigCache = resolvedAppConfigCache;
+    }
+    
     public List<AppConfigElement> getMostRecentElements(String appId, boolean includeDeleted) {
         checkNotNull(appId);
         
@@ -56,7 +65,9 @@ public class AppConfigElementService {
             throw new EntityAlreadyExistsException(AppConfigElement.class,
                     ImmutableMap.of("id", existing.getId(), "revision", existing.getRevision()));
         }
-        return appConfigElementDao.saveElementRevision(element);
+        VersionHolder version = appConfigElementDao.saveElementRevision(element);
+        resolvedAppConfigCache.invalidate(appId);
+        return version;
     }
 
     public List<AppConfigElement> getElementRevisions(String appId, String id, boolean includeDeleted) {
@@ -103,7 +114,9 @@ public class AppConfigElementService {
         element.setModifiedOn(DateTime.now().getMillis());
         // cannot change the creation timestamp
         element.setCreatedOn(existing.getCreatedOn());
-        return appConfigElementDao.saveElementRevision(element);
+        VersionHolder version = appConfigElementDao.saveElementRevision(element);
+        resolvedAppConfigCache.invalidate(appId);
+        return version;
     }
     
     public void deleteElementRevision(String appId, String id, long revision) {
@@ -114,6 +127,7 @@ public class AppConfigElementService {
         existing.setDeleted(true);
         existing.setModifiedOn(DateTime.now().getMillis());
         appConfigElementDao.saveElementRevision(existing);
+        resolvedAppConfigCache.invalidate(appId);
     }
     
     public void deleteElementAllRevisions(String appId, String id) {
@@ -127,6 +141,7 @@ public class AppConfigElementService {
             oneElement.setModifiedOn(modifiedOn);
             appConfigElementDao.saveElementRevision(oneElement);
         }
+        resolvedAppConfigCache.invalidate(appId);
     }
     
     public void deleteElementRevisionPermanently(String appId, String id, long revision) {
@@ -136,6 +151,7 @@ public class AppConfigElementService {
         // Throws exception if the element does not exist.
         getElementRevision(appId, id, revision);
         appConfigElementDao.deleteElementRevisionPermanently(appId, id, revision);
+        resolvedAppConfigCache.invalidate(appId);
     }
     
     public void deleteElementAllRevisionsPermanently(String appId, String id) {
@@ -146,5 +162,6 @@ public class AppConfigElementService {
         for (AppConfigElement oneElement : elements) {
             appConfigElementDao.deleteElementRevisionPermanently(appId, oneElement.getId(), oneElement.getRevision());
         }
+        resolvedAppConfigCache.invalidate(appId);
     }
 }
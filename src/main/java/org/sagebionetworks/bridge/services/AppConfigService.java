@@ -6,14 +6,23 @@ import static java.util.Comparator.comparingLong;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.sagebionetworks.bridge.BridgeConstants.SHARED_APP_ID;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.annotation.Resource;
 
 import org.joda.time.DateTime;
 import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.cache.ResolvedAppConfigCache;
+import org.sagebionetworks.bridge.cache.ScheduleCache;
 import org.sagebionetworks.bridge.dao.AppConfigDao;
 import org.sagebionetworks.bridge.dynamodb.DynamoAppConfig;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.time.DateUtils;
 import org.sagebionetworks.bridge.models.CriteriaContext;
@@ -59,6 +68,12 @@ public class AppConfigService {
     
     private AssessmentService assessmentService;
     
+    private ScheduleCache scheduleCache;
+    
+    private ResolvedAppConfigCache resolvedAppConfigCache;
+    
+    private ExecutorService fanOutExecutorService;
+    
     @Autowired
     final void setAppConfigDao(AppConfigDao appConfigDao) {
         this.appConfigDao = appConfigDao;
@@ -99,6 +114,23 @@ public class AppConfigService {
         this.assessmentService = assessmentService;
     }
     
+    /** App configs supply the survey and schema references used in schedules. */
+    @Autowired
+    final void setScheduleCache(ScheduleCache scheduleCache) {
+        this.scheduleCache = scheduleCache;
+    }
+    
+    @Autowired
+    final void setResolvedAppConfigCache(ResolvedAppConfigCache resolvedAppConfigCache) {
+        this.resolvedAppConfigCache = resolvedAppConfigCache;
+    }
+    
+    /** Used to look up an app config's references in parallel. */
+    @Resource(name = "fanOutExecutorService")
+    final void setFanOutExecutorService(ExecutorService fanOutExecutorService) {
+        this.fanOutExecutorService = fanOutExecutorService;
+    }
+    
     // In order to mock this value;
     protected long getCurrentTimestamp() {
         return DateUtils.getCurrentMillisFromEpoch(); 
@@ -149,24 +181,70 @@ public class AppConfigService {
     }
     
     protected void resolveReferences(String appId, AppConfig config) {
-        config.setSurveyReferences(config.getSurveyReferences().stream()
-                .map(ref -> resolveSurvey(appId, ref))
-                .collect(Collectors.toList()));
+        resolvedAppConfigCache.resolveReferences(config, toResolve -> resolveReferencesInParallel(appId, toResolve));
+    }
+    
+    // Each reference takes one or more reads to resolve, and none depend on each other, so look them all up at once.
+    private void resolveReferencesInParallel(String appId, AppConfig config) {
+        List<Future<?>> allFutures = new ArrayList<>();
+        try {
+            List<Future<SurveyReference>> surveyFutures = new ArrayList<>();
+            for (SurveyReference ref : config.getSurveyReferences()) {
+                surveyFutures.add(submit(allFutures, () -> resolveSurvey(appId, ref)));
+            }
+            // Resolve the identifiers for the assessment and its shared assessment, if there
+            // is one. These are useful to locate the right reference.
+            List<Future<AssessmentReference>> assessmentFutures = new ArrayList<>();
+            for (AssessmentReference ref : config.getAssessmentReferences()) {
+                assessmentFutures.add(submit(allFutures, () -> resolveAssessment(appId, ref)));
+            }
+            List<Future<AppConfigElement>> elementFutures = new ArrayList<>();
+            for (ConfigReference configRef : config.getConfigReferences()) {
+                elementFutures.add(submit(allFutures,
+                        () -> retrieveConfigElement(config.getAppId(), configRef, config.getGuid())));
+            }
             
-        // Resolve the identifiers for the assessment and its shared assessment, if there
-        // is one. These are useful to locate the right reference.
-        config.setAssessmentReferences(config.getAssessmentReferences().stream()
-                .map(ref -> resolveAssessment(appId, ref))
-                .collect(Collectors.toList()));
-        
-        ImmutableMap.Builder<String, JsonNode> ceBuilder = new ImmutableMap.Builder<>();
-        for (ConfigReference configRef : config.getConfigReferences()) {
-            AppConfigElement element = retrieveConfigElement(config.getAppId(), configRef, config.getGuid());
-            if (element != null) {
-                ceBuilder.put(configRef.getId(), element.getData());    
+            List<SurveyReference> surveyRefs = new ArrayList<>();
+            for (Future<SurveyReference> future : surveyFutures) {
+                surveyRefs.add(future.get());
+            }
+            config.setSurveyReferences(surveyRefs);
+            
+            List<AssessmentReference> assessmentRefs = new ArrayList<>();
+            for (Future<AssessmentReference> future : assessmentFutures) {
+                assessmentRefs.add(future.get());
+            }
+            config.setAssessmentReferences(assessmentRefs);
+            
+            ImmutableMap.Builder<String, JsonNode> ceBuilder = new ImmutableMap.Builder<>();
+            for (int i = 0; i < elementFutures.size(); i++) {
+                AppConfigElement element = elementFutures.get(i).get();
+                if (element != null) {
+                    ceBuilder.put(config.getConfigReferences().get(i).getId(), element.getData());
+                }
+            }
+            config.setConfigElements(ceBuilder.build());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BridgeServiceException(ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new BridgeServiceException(cause);
+        } finally {
+            // If one lookup fails, don't keep running the rest.
+            for (Future<?> future : allFutures) {
+                future.cancel(true);
             }
         }
-        config.setConfigElements(ceBuilder.build());
+    }
+    
+    private <T> Future<T> submit(List<Future<?>> allFutures, Callable<T> task) {
+        Future<T> future = fanOutExecutorService.submit(task);
+        allFutures.add(future);
+        return future;
     }
     
     protected AssessmentReference resolveAssessment(String appId, AssessmentReference ref) {
@@ -267,6 +345,7 @@ public class AppConfigService {
         
         appConfigDao.createAppConfig(newAppConfig);
         newAppConfig.setVersion(newAppConfig.getVersion());
+        scheduleCache.invalidate(appId);
         return newAppConfig;
     }
     
@@ -289,7 +368,9 @@ public class AppConfigService {
         appConfig.setCreatedOn(persistedConfig.getCreatedOn());
         appConfig.setModifiedOn(getCurrentTimestamp());
         
-        return appConfigDao.updateAppConfig(appConfig);
+        AppConfig updatedConfig = appConfigDao.updateAppConfig(appConfig);
+        scheduleCache.invalidate(appId);
+        return updatedConfig;
     }
     
     public void deleteAppConfig(String appId, String guid) {
@@ -297,6 +378,7 @@ public class AppConfigService {
         checkArgument(isNotBlank(guid));
         
         appConfigDao.deleteAppConfig(appId, guid);
+        scheduleCache.invalidate(appId);
     }
     
     public void deleteAppConfigPermanently(String appId, String guid) {
@@ -304,5 +386,6 @@ public class AppConfigService {
         checkArgument(isNotBlank(guid));
         
         appConfigDao.deleteAppConfigPermanently(appId, guid);
+        scheduleCache.invalidate(appId);
     }
 }
@@ -236,7 +236,7 @@ public class AppService {
         App app = cacheProvider.getApp(identifier);
         if (app == null) {
             app = appDao.getApp(identifier);
-            cacheProvider.setApp(app);
+            cacheProvider.cacheLoadedApp(app);
         }
         if (app != null) {
             // If it it exists and has been deactivated, and this call is not supposed to retrieve deactivated
@@ -42,6 +42,7 @@ import org.springframework.stereotype.Component;
 
 import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.RequestContext;
+import org.sagebionetworks.bridge.cache.ResolvedAppConfigCache;
 import org.sagebionetworks.bridge.dao.AssessmentDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.EntityAlreadyExistsException;
@@ -64,6 +65,8 @@ public class AssessmentService {
     
     private OrganizationService organizationService;
     
+    private ResolvedAppConfigCache resolvedAppConfigCache;
+    
     @Autowired
     final void setAssessmentDao(AssessmentDao assessmentDao) {
         this.dao = assessmentDao;
@@ -79,6 +82,12 @@ public class AssessmentService {
         this.organizationService = organizationService;
     }
     
+    /** App configs resolve assessment references to the assessment's identifier and shared identifier. */
+    @Autowired
+    final void setResolvedAppConfigCache(ResolvedAppConfigCache resolvedAppConfigCache) {
+        this.resolvedAppConfigCache = resolvedAppConfigCache;
+    }
+    
     // accessor to mock for tests
     String generateGuid() {
         return BridgeUtils.generateGuid();
@@ -197,7 +206,9 @@ public class AssessmentService {
         AssessmentValidator validator = new AssessmentValidator(appId, organizationService);
         Validate.entityThrowingException(validator, assessment);
 
-        return dao.updateAssessment(appId, assessment);        
+        Assessment updated = dao.updateAssessment(appId, assessment);
+        resolvedAppConfigCache.invalidate(appId);
+        return updated;
     }
         
     public Assessment getAssessmentByGuid(String appId, String guid) {
@@ -313,7 +324,10 @@ public class AssessmentService {
         
         original.setOriginGuid(assessmentToPublish.getGuid());
         
-        return dao.publishAssessment(appId, original, assessmentToPublish, configToPublish);
+        Assessment published = dao.publishAssessment(appId, original, assessmentToPublish, configToPublish);
+        // The local assessment now has an origin GUID, which changes its shared identifier.
+        resolvedAppConfigCache.invalidate(appId);
+        return published;
     }
     
     /**
@@ -367,6 +381,7 @@ public class AssessmentService {
         assessment.setDeleted(true);
         assessment.setModifiedOn(getModifiedOn());
         dao.updateAssessment(appId, assessment);
+        resolvedAppConfigCache.invalidate(appId);
     }
         
     public void deleteAssessmentPermanently(String appId, String guid) {
@@ -376,6 +391,7 @@ public class AssessmentService {
         Optional<Assessment> opt = dao.getAssessment(appId, guid);
         if (opt.isPresent()) {
             dao.deleteAssessment(appId, opt.get());
+            resolvedAppConfigCache.invalidate(appId);
         }
     }
 
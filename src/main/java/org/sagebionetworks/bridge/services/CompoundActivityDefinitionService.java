@@ -6,6 +6,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import org.sagebionetworks.bridge.cache.ScheduleCache;
 import org.sagebionetworks.bridge.dao.CompoundActivityDefinitionDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.ConstraintViolationException;
@@ -25,6 +26,8 @@ public class CompoundActivityDefinitionService {
     
     private CompoundActivityDefinitionDao compoundActivityDefDao;
 
+    private ScheduleCache scheduleCache;
+
     @Autowired
     public final void setSchedulePlanService(SchedulePlanService schedulePlanService) {
         this.schedulePlanService = schedulePlanService;
@@ -36,6 +39,12 @@ public class CompoundActivityDefinitionService {
         this.compoundActivityDefDao = compoundActivityDefDao;
     }
 
+    /** Schedules resolve compound activities against their definitions, so changing a definition invalidates them. */
+    @Autowired
+    public final void setScheduleCache(ScheduleCache scheduleCache) {
+        this.scheduleCache = scheduleCache;
+    }
+
     /** Creates a compound activity definition. */
     public CompoundActivityDefinition createCompoundActivityDefinition(String appId,
             CompoundActivityDefinition compoundActivityDefinition) {
@@ -46,7 +55,10 @@ public class CompoundActivityDefinitionService {
         Validate.entityThrowingException(CompoundActivityDefinitionValidator.INSTANCE, compoundActivityDefinition);
 
         // call through to dao
-        return compoundActivityDefDao.createCompoundActivityDefinition(compoundActivityDefinition);
+        CompoundActivityDefinition createdDef = compoundActivityDefDao.createCompoundActivityDefinition(
+                compoundActivityDefinition);
+        scheduleCache.invalidate(appId);
+        return createdDef;
     }
 
     /** Deletes a compound activity definition. */
@@ -59,6 +71,7 @@ public class CompoundActivityDefinitionService {
         
         // call through to dao
         compoundActivityDefDao.deleteCompoundActivityDefinition(appId, taskId);
+        scheduleCache.invalidate(appId);
     }
 
     /** Deletes all compound activity definitions in the specified app. Used when we physically delete an app. */
@@ -105,7 +118,10 @@ public class CompoundActivityDefinitionService {
         Validate.entityThrowingException(CompoundActivityDefinitionValidator.INSTANCE, compoundActivityDefinition);
 
         // call through to dao
-        return compoundActivityDefDao.updateCompoundActivityDefinition(compoundActivityDefinition);
+        CompoundActivityDefinition updatedDef = compoundActivityDefDao.updateCompoundActivityDefinition(
+                compoundActivityDefinition);
+        scheduleCache.invalidate(appId);
+        return updatedDef;
     }
     
     private void checkConstraintViolations(String appId, String taskId) {
@@ -39,6 +39,7 @@ public final class ConsentPdf {
     private final SharingScope sharingScope;
     private final String studyConsentAgreement;
     private final String xmlTemplateWithSignatureBlock;
+    private final String consentDocument;
     private String formattedConsentDocument;
 
     public ConsentPdf(App app, StudyParticipant signer, ConsentSignature consentSignature,
@@ -49,39 +50,71 @@ public final class ConsentPdf {
         this.sharingScope = checkNotNull(sharingScope);
         this.studyConsentAgreement = checkNotNull(studyConsentAgreement);
         this.xmlTemplateWithSignatureBlock = checkNotNull(xmlTemplateWithSignatureBlock);
+        this.consentDocument = null;
     }
-    
+
+    /**
+     * Constructs a consent PDF from a consent document that has already been assembled with
+     * {@link #assembleConsentDocument}, so the document can be assembled once and shared by every signature to the
+     * same version of the consent.
+     */
+    public ConsentPdf(App app, StudyParticipant signer, ConsentSignature consentSignature,
+            SharingScope sharingScope, String consentDocument) {
+        this.app = checkNotNull(app);
+        this.signer = signer;
+        this.consentSignature = checkNotNull(consentSignature);
+        this.sharingScope = checkNotNull(sharingScope);
+        this.studyConsentAgreement = null;
+        this.xmlTemplateWithSignatureBlock = null;
+        this.consentDocument = checkNotNull(consentDocument);
+    }
+
+    /**
+     * Inserts the study consent agreement into the XHTML page template. The result depends only on the version of the
+     * consent, and has the participant's template variables still to be resolved.
+     */
+    public static String assembleConsentDocument(String studyConsentAgreement, String xmlTemplateWithSignatureBlock) {
+        checkNotNull(studyConsentAgreement);
+        checkNotNull(xmlTemplateWithSignatureBlock);
+        return xmlTemplateWithSignatureBlock.replace("${consent.body}", studyConsentAgreement);
+    }
+
     /**
-     * Get the final, formatted string we supply to the PDF renderer. For unit tests. 
+     * Get the final, formatted string we supply to the PDF renderer.
      */
     protected String getFormattedConsentDocument() { 
         if (formattedConsentDocument == null) {
-            getBytes();
+            final String consentDoc = createSignedDocument();
+
+            String imageMimeType = consentSignature.getImageMimeType();
+            String imageData = consentSignature.getImageData();
+            boolean validConsentSigImage = isImageMimeType(imageMimeType) && isBase64(imageData);
+
+            formattedConsentDocument = consentDoc;
+            if (validConsentSigImage) {
+                // Embed the signature image
+                formattedConsentDocument = consentDoc.replace("cid:consentSignature",
+                        "data:" + imageMimeType + ";base64," + imageData);
+            }
         }
         return formattedConsentDocument;
     }
 
     public byte[] getBytes() {
-        final String consentDoc = createSignedDocument();
-
-        String imageMimeType = consentSignature.getImageMimeType();
-        String imageData = consentSignature.getImageData();
-        boolean validConsentSigImage = isImageMimeType(imageMimeType) && isBase64(imageData);
-
-        // Save this final non-binary output so we can test it is correct.
-        formattedConsentDocument = consentDoc;
-        if (validConsentSigImage) {
-            // Embed the signature image
-            formattedConsentDocument = consentDoc.replace("cid:consentSignature",
-                    "data:" + imageMimeType + ";base64," + imageData);
-        }
+        return getBytes(new ITextRenderer());
+    }
 
-        return createPdf(formattedConsentDocument);
+    /**
+     * Renders the PDF with the given renderer. Renderers are not thread-safe, but one thread can reuse its renderer
+     * (and the fonts it has loaded) for many documents.
+     */
+    byte[] getBytes(ITextRenderer renderer) {
+        checkNotNull(renderer);
+        return createPdf(renderer, getFormattedConsentDocument());
     }
 
-    private byte[] createPdf(final String consentDoc) {
+    private byte[] createPdf(ITextRenderer renderer, final String consentDoc) {
         try (ByteArrayBuilder byteArrayBuilder = new ByteArrayBuilder()) {
-            ITextRenderer renderer = new ITextRenderer();
             renderer.setDocumentFromString(consentDoc);
             renderer.layout();
             renderer.createPDF(byteArrayBuilder);
@@ -129,6 +162,9 @@ public final class ConsentPdf {
         map.put("participant.contactInfo", contactInfo);
         map.put("participant.contactLabel", contactLabel);
         map.put("participant.sharing", sharingLabel);
+        if (consentDocument != null) {
+            return BridgeUtils.resolveTemplate(consentDocument, map);
+        }
         String resolvedStudyConsentAgreement = BridgeUtils.resolveTemplate(studyConsentAgreement, map);
         
         map.put("consent.body", resolvedStudyConsentAgreement);
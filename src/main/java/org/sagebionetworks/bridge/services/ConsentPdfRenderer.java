@@ -0,0 +1,168 @@
+package org.sagebionetworks.bridge.services;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+import javax.annotation.Resource;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+
+import org.sagebionetworks.bridge.RequestContext;
+import org.sagebionetworks.bridge.models.subpopulations.StudyConsentView;
+
+/**
+ * <p>
+ * Renders signed consent PDFs on a bounded background pool, and hands the rendered bytes to a delivery callback (which
+ * sends the email or SMS) on the same pool thread. Rendering a PDF takes hundreds of milliseconds of CPU, and used to
+ * run on the request thread while a participant was consenting.
+ * </p>
+ * <p>
+ * Each pool thread keeps its own renderer, so the fonts a renderer loads are reused for every PDF that thread renders.
+ * Consent documents are assembled once per version of the study consent, since a version's content never changes.
+ * If the pool's queue is full, the PDF is rendered and delivered on the calling thread, so a signed consent is never
+ * dropped.
+ * </p>
+ */
+@Component
+public class ConsentPdfRenderer {
+    private static final Logger LOG = LoggerFactory.getLogger(ConsentPdfRenderer.class);
+
+    // Package-scoped for unit tests.
+    static final String METRIC_RENDER = "consent.pdf.render";
+    static final String METRIC_WAIT = "consent.pdf.wait";
+    static final String METRIC_REJECTED = "consent.pdf.rejected";
+    static final String METRIC_DOCUMENT_HIT = "cache.consent.document.hit";
+    static final String METRIC_DOCUMENT_MISS = "cache.consent.document.miss";
+    static final long DOCUMENT_CACHE_MAX_SIZE = 200L;
+
+    private final Cache<String, String> documentCache = CacheBuilder.newBuilder()
+            .maximumSize(DOCUMENT_CACHE_MAX_SIZE).build();
+    private final ThreadLocal<ITextRenderer> pooledRenderers = new ThreadLocal<>();
+    private ExecutorService executorService;
+    private Timer renderTimer;
+    private Timer waitTimer;
+    private Meter rejectedMeter;
+    private Counter documentHitCounter;
+    private Counter documentMissCounter;
+
+    /** Bounded pool that PDFs are rendered and delivered on. */
+    @Resource(name = "consentPdfExecutorService")
+    final void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /** Metric registry, used to report render latency and rejections. */
+    @Autowired
+    final void setMetricRegistry(MetricRegistry metricRegistry) {
+        renderTimer = metricRegistry.timer(METRIC_RENDER);
+        waitTimer = metricRegistry.timer(METRIC_WAIT);
+        rejectedMeter = metricRegistry.meter(METRIC_REJECTED);
+        documentHitCounter = metricRegistry.counter(METRIC_DOCUMENT_HIT);
+        documentMissCounter = metricRegistry.counter(METRIC_DOCUMENT_MISS);
+    }
+
+    /**
+     * Returns the consent document for this version of the study consent, inserted into the XHTML page template. The
+     * page template is read once at startup, so the document is cached by subpopulation and consent version only.
+     */
+    public String getConsentDocument(StudyConsentView studyConsent, String xmlTemplateWithSignatureBlock) {
+        checkNotNull(studyConsent);
+        checkNotNull(xmlTemplateWithSignatureBlock);
+
+        String key = studyConsent.getSubpopulationGuid() + ":" + studyConsent.getCreatedOn();
+        String document = documentCache.getIfPresent(key);
+        if (document != null) {
+            incrementCounter(documentHitCounter);
+            return document;
+        }
+        incrementCounter(documentMissCounter);
+        document = ConsentPdf.assembleConsentDocument(studyConsent.getDocumentContent(),
+                xmlTemplateWithSignatureBlock);
+        documentCache.put(key, document);
+        return document;
+    }
+
+    /**
+     * Renders the PDF in the background, then calls the delivery callback with the PDF's bytes. The caller's request
+     * context is carried over to the pool thread. Errors are logged, since the request that signed the consent has
+     * already returned.
+     */
+    public void renderAndDeliver(ConsentPdf consentPdf, Consumer<byte[]> delivery) {
+        checkNotNull(consentPdf);
+        checkNotNull(delivery);
+
+        RequestContext requestContext = RequestContext.get();
+        Timer.Context waitContext = time(waitTimer);
+        try {
+            executorService.execute(() -> {
+                stop(waitContext);
+                RequestContext previousContext = RequestContext.get();
+                RequestContext.set(requestContext);
+                try {
+                    delivery.accept(render(consentPdf, true));
+                } catch (RuntimeException ex) {
+                    LOG.error("Error rendering or sending signed consent, request ID=" + requestContext.getId(), ex);
+                } finally {
+                    RequestContext.set(previousContext);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            LOG.warn("Consent PDF queue is full, rendering on request thread, request ID=" + requestContext.getId());
+            if (rejectedMeter != null) {
+                rejectedMeter.mark();
+            }
+            delivery.accept(render(consentPdf, false));
+        }
+    }
+
+    // Pool threads reuse their renderer. Other threads get a new renderer, so we don't leave renderers on threads
+    // that rarely render.
+    private byte[] render(ConsentPdf consentPdf, boolean pooled) {
+        ITextRenderer renderer = pooled ? pooledRenderers.get() : null;
+        if (renderer == null) {
+            renderer = new ITextRenderer();
+            if (pooled) {
+                pooledRenderers.set(renderer);
+            }
+        }
+        Timer.Context renderContext = time(renderTimer);
+        try {
+            return consentPdf.getBytes(renderer);
+        } catch (RuntimeException ex) {
+            // The renderer may be left in a bad state, so don't reuse it.
+            pooledRenderers.remove();
+            throw ex;
+        } finally {
+            stop(renderContext);
+        }
+    }
+
+    private static Timer.Context time(Timer timer) {
+        return (timer != null) ? timer.time() : null;
+    }
+
+    private static void stop(Timer.Context timerContext) {
+        if (timerContext != null) {
+            timerContext.stop();
+        }
+    }
+
+    private static void incrementCounter(Counter counter) {
+        if (counter != null) {
+            counter.inc();
+        }
+    }
+}
@@ -83,6 +83,7 @@ public class ConsentService {
     private UrlShortenerService urlShortenerService;
     private TemplateService templateService;
     private EnrollmentService enrollmentService;
+    private ConsentPdfRenderer consentPdfRenderer;
     
     @Value("classpath:conf/app-defaults/consent-page.xhtml")
     final void setConsentTemplate(org.springframework.core.io.Resource resource) throws IOException {
@@ -135,6 +136,11 @@ public class ConsentService {
     final void setEnrollmentService(EnrollmentService enrollmentService) {
         this.enrollmentService = enrollmentService;
     }
+    /** Renders signed consent PDFs in the background, and sends them once they're rendered. */
+    @Autowired
+    final void setConsentPdfRenderer(ConsentPdfRenderer consentPdfRenderer) {
+        this.consentPdfRenderer = consentPdfRenderer;
+    }
     
     /**
      * Get the user's active consent signature (a signature that has not been withdrawn).
@@ -218,9 +224,6 @@ public class ConsentService {
 
         // Administrative actions, almost exclusively for testing, will send no consent documents
         if (sendSignedConsent) {
-            ConsentPdf consentPdf = new ConsentPdf(app, participant, withConsentCreatedOnSignature, sharingScope,
-                    studyConsent.getDocumentContent(), xmlTemplateWithSignatureBlock);
-            
             boolean verifiedEmail = (participant.getEmail() != null
                     && Boolean.TRUE.equals(participant.getEmailVerified()));
             boolean verifiedPhone = (participant.getPhone() != null
@@ -233,22 +236,34 @@ public class ConsentService {
                 recipientEmails.add(participant.getEmail());    
             }
             addStudyConsentRecipients(app, recipientEmails);
+            TemplateRevision revision = null;
             if (!recipientEmails.isEmpty()) {
-                TemplateRevision revision = templateService.getRevisionForUser(app, EMAIL_SIGNED_CONSENT);
-                
-                BasicEmailProvider.Builder consentEmailBuilder = new BasicEmailProvider.Builder()
-                        .withApp(app)
-                        .withTemplateRevision(revision)
-                        .withBinaryAttachment("consent.pdf", MimeType.PDF, consentPdf.getBytes())
-                        .withType(EmailType.SIGN_CONSENT);
-                for (String recipientEmail : recipientEmails) {
-                    consentEmailBuilder.withRecipientEmail(recipientEmail);
-                }
-                sendMailService.sendEmail(consentEmailBuilder.build());
+                revision = templateService.getRevisionForUser(app, EMAIL_SIGNED_CONSENT);
             }
             // Otherwise if there's no verified email but there is a phone and we're not suppressing, send it there
-            if (!subpop.isAutoSendConsentSuppressed() && !verifiedEmail && verifiedPhone) {
-                sendConsentViaSMS(app, subpop, participant, consentPdf);    
+            boolean sendViaSms = !subpop.isAutoSendConsentSuppressed() && !verifiedEmail && verifiedPhone;
+            
+            // The PDF is rendered once, in the background, and then sent to every channel.
+            if (revision != null || sendViaSms) {
+                ConsentPdf consentPdf = new ConsentPdf(app, participant, withConsentCreatedOnSignature, sharingScope,
+                        consentPdfRenderer.getConsentDocument(studyConsent, xmlTemplateWithSignatureBlock));
+                TemplateRevision emailRevision = revision;
+                consentPdfRenderer.renderAndDeliver(consentPdf, (bytes) -> {
+                    if (emailRevision != null) {
+                        BasicEmailProvider.Builder consentEmailBuilder = new BasicEmailProvider.Builder()
+                                .withApp(app)
+                                .withTemplateRevision(emailRevision)
+                                .withBinaryAttachment("consent.pdf", MimeType.PDF, bytes)
+                                .withType(EmailType.SIGN_CONSENT);
+                        for (String recipientEmail : recipientEmails) {
+                            consentEmailBuilder.withRecipientEmail(recipientEmail);
+                        }
+                        sendMailService.sendEmail(consentEmailBuilder.build());
+                    }
+                    if (sendViaSms) {
+                        sendConsentViaSMS(app, participant, bytes);
+                    }
+                });
             }
         }
     }
@@ -412,35 +427,37 @@ public class ConsentService {
         ConsentSignature consentSignature = getConsentSignature(app, subpopGuid, participant.getId());
         SharingScope sharingScope = participant.getSharingScope();
         Subpopulation subpop = subpopService.getSubpopulation(app.getIdentifier(), subpopGuid);
-        String studyConsentDocument = studyConsentService.getActiveConsent(subpop).getDocumentContent();
+        StudyConsentView studyConsent = studyConsentService.getActiveConsent(subpop);
 
         boolean verifiedEmail = (participant.getEmail() != null
                 && Boolean.TRUE.equals(participant.getEmailVerified()));
         boolean verifiedPhone = (participant.getPhone() != null
                 && Boolean.TRUE.equals(participant.getPhoneVerified()));
+        if (!verifiedEmail && !verifiedPhone) {
+            throw new BadRequestException("Participant does not have a valid email address or phone number");
+        }
         
-        ConsentPdf consentPdf = new ConsentPdf(app, participant, consentSignature, sharingScope, studyConsentDocument,
-                xmlTemplateWithSignatureBlock);
+        ConsentPdf consentPdf = new ConsentPdf(app, participant, consentSignature, sharingScope,
+                consentPdfRenderer.getConsentDocument(studyConsent, xmlTemplateWithSignatureBlock));
         
         if (verifiedEmail) {
             TemplateRevision revision = templateService.getRevisionForUser(app, EMAIL_SIGNED_CONSENT);
             
-            BasicEmailProvider provider = new BasicEmailProvider.Builder()
-                    .withApp(app)
-                    .withTemplateRevision(revision)
-                    .withBinaryAttachment("consent.pdf", MimeType.PDF, consentPdf.getBytes())
-                    .withRecipientEmail(participant.getEmail())
-                    .withType(EmailType.RESEND_CONSENT).build();
-            sendMailService.sendEmail(provider);
-        } else if (verifiedPhone) {
-            sendConsentViaSMS(app, subpop, participant, consentPdf);
+            consentPdfRenderer.renderAndDeliver(consentPdf, (bytes) -> {
+                BasicEmailProvider provider = new BasicEmailProvider.Builder()
+                        .withApp(app)
+                        .withTemplateRevision(revision)
+                        .withBinaryAttachment("consent.pdf", MimeType.PDF, bytes)
+                        .withRecipientEmail(participant.getEmail())
+                        .withType(EmailType.RESEND_CONSENT).build();
+                sendMailService.sendEmail(provider);
+            });
         } else {
-            throw new BadRequestException("Participant does not have a valid email address or phone number");
+            consentPdfRenderer.renderAndDeliver(consentPdf, (bytes) -> sendConsentViaSMS(app, participant, bytes));
         }
     }
     
-    private void sendConsentViaSMS(App app, Subpopulation subpop, StudyParticipant participant,
-            ConsentPdf consentPdf) {
+    private void sendConsentViaSMS(App app, StudyParticipant participant, byte[] consentPdfBytes) {
         String shortUrl;
         try {
             ObjectMetadata metadata = new ObjectMetadata();
@@ -448,7 +465,7 @@ public class ConsentService {
             
             String fileName = getSignedConsentUrl();
             DateTime expiresOn = getDownloadExpiration();
-            s3Helper.writeBytesToS3(USERSIGNED_CONSENTS_BUCKET, fileName, consentPdf.getBytes(), metadata);
+            s3Helper.writeBytesToS3(USERSIGNED_CONSENTS_BUCKET, fileName, consentPdfBytes, metadata);
             URL url = s3Helper.generatePresignedUrl(USERSIGNED_CONSENTS_BUCKET, fileName, expiresOn, HttpMethod.GET);
             shortUrl = urlShortenerService.shortenUrl(url.toString(), SIGNED_CONSENT_DOWNLOAD_EXPIRE_IN_SECONDS);
         } catch(IOException e) {
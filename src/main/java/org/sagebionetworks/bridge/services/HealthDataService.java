@@ -206,7 +206,7 @@ public class HealthDataService {
     private UploadSchema getSchemaForSubmission(String appId, HealthDataSubmission healthDataSubmission) {
         if (healthDataSubmission.getSchemaId() != null) {
             // Note that if there's no schema, we treat this like schemaless.
-            return schemaService.getUploadSchemaByIdAndRevNoThrow(appId, healthDataSubmission.getSchemaId(),
+            return schemaService.getCachedUploadSchemaByIdAndRev(appId, healthDataSubmission.getSchemaId(),
                     healthDataSubmission.getSchemaRevision());
         } else if (healthDataSubmission.getSurveyGuid() != null) {
             // surveyCreatedOn is a timestamp. SurveyService takes long epoch millis. Convert.
@@ -216,7 +216,7 @@ public class HealthDataService {
             // specified.
             String surveyGuid = healthDataSubmission.getSurveyGuid();
             GuidCreatedOnVersionHolder surveyKeys = new GuidCreatedOnVersionHolderImpl(surveyGuid, surveyCreatedOnMillis);
-            Survey survey = surveyService.getSurvey(appId, surveyKeys, false, true);
+            Survey survey = surveyService.getCachedSurvey(appId, surveyKeys);
             String schemaId = survey.getIdentifier();
             Integer schemaRev = survey.getSchemaRevision();
             if (StringUtils.isBlank(schemaId) || schemaRev == null) {
@@ -226,7 +226,7 @@ public class HealthDataService {
 
             // Get the schema with the schema ID and rev.
             // Note that if there's no schema, we treat this like schemaless.
-            return schemaService.getUploadSchemaByIdAndRevNoThrow(appId, schemaId, schemaRev);
+            return schemaService.getCachedUploadSchemaByIdAndRev(appId, schemaId, schemaRev);
         } else {
             // Schemaless.
             return null;
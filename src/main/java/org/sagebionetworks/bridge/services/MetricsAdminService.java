@@ -0,0 +1,78 @@
+package org.sagebionetworks.bridge.services;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+
+/**
+ * Reports the in-process metrics recorded in the metric registry (handler latencies, executor queue depths, cache hit
+ * rates, etc). These metrics are per-node and are reset when the node restarts.
+ */
+@Component
+public class MetricsAdminService {
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private MetricRegistry metricRegistry;
+
+    @Autowired
+    final void setMetricRegistry(MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
+    /**
+     * Returns a snapshot of all metrics whose names start with the given prefix, keyed by metric name. If the prefix
+     * is blank, all metrics are returned. Timer values are in milliseconds.
+     */
+    public JsonNode getMetrics(String prefix) {
+        MetricFilter filter = StringUtils.isBlank(prefix) ? MetricFilter.ALL :
+                (name, metric) -> name.startsWith(prefix);
+
+        ObjectNode node = BridgeObjectMapper.get().createObjectNode();
+        for (Map.Entry<String, Gauge> entry : metricRegistry.getGauges(filter).entrySet()) {
+            ObjectNode gaugeNode = node.putObject(entry.getKey());
+            gaugeNode.put("type", "gauge");
+            gaugeNode.putPOJO("value", entry.getValue().getValue());
+        }
+        for (Map.Entry<String, Counter> entry : metricRegistry.getCounters(filter).entrySet()) {
+            ObjectNode counterNode = node.putObject(entry.getKey());
+            counterNode.put("type", "counter");
+            counterNode.put("count", entry.getValue().getCount());
+        }
+        for (Map.Entry<String, Meter> entry : metricRegistry.getMeters(filter).entrySet()) {
+            Meter meter = entry.getValue();
+            ObjectNode meterNode = node.putObject(entry.getKey());
+            meterNode.put("type", "meter");
+            meterNode.put("count", meter.getCount());
+            meterNode.put("oneMinuteRate", meter.getOneMinuteRate());
+            meterNode.put("fiveMinuteRate", meter.getFiveMinuteRate());
+        }
+        for (Map.Entry<String, Timer> entry : metricRegistry.getTimers(filter).entrySet()) {
+            Timer timer = entry.getValue();
+            Snapshot snapshot = timer.getSnapshot();
+            ObjectNode timerNode = node.putObject(entry.getKey());
+            timerNode.put("type", "timer");
+            timerNode.put("count", timer.getCount());
+            timerNode.put("oneMinuteRate", timer.getOneMinuteRate());
+            timerNode.put("mean", snapshot.getMean() / NANOS_PER_MILLI);
+            timerNode.put("p50", snapshot.getMedian() / NANOS_PER_MILLI);
+            timerNode.put("p95", snapshot.get95thPercentile() / NANOS_PER_MILLI);
+            timerNode.put("p99", snapshot.get99thPercentile() / NANOS_PER_MILLI);
+            timerNode.put("max", snapshot.getMax() / NANOS_PER_MILLI);
+        }
+        return node;
+    }
+}
@@ -7,6 +7,7 @@ import static org.sagebionetworks.bridge.models.CriteriaUtils.filterByCriteria;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -18,6 +19,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import org.sagebionetworks.bridge.async.SnsDispatcher;
+import org.sagebionetworks.bridge.async.SnsDispatcher.Outcome;
 import org.sagebionetworks.bridge.dao.NotificationRegistrationDao;
 import org.sagebionetworks.bridge.dao.NotificationTopicDao;
 import org.sagebionetworks.bridge.dao.TopicSubscriptionDao;
@@ -33,9 +36,11 @@ import org.sagebionetworks.bridge.validators.Validate;
 
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.sns.AmazonSNSClient;
+import com.amazonaws.services.sns.model.GetSubscriptionAttributesResult;
 import com.amazonaws.services.sns.model.NotFoundException;
 import com.amazonaws.services.sns.model.PublishRequest;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 @Component
@@ -51,6 +56,8 @@ public class NotificationTopicService {
     
     private AmazonSNSClient snsClient;
     
+    private SnsDispatcher snsDispatcher;
+    
     @Autowired
     final void setNotificationRegistrationDao(NotificationRegistrationDao registrationDao) {
         this.registrationDao = registrationDao;
@@ -71,6 +78,12 @@ public class NotificationTopicService {
         this.snsClient = snsClient;
     }
     
+    /** Used to check, make and remove a registration's SNS subscriptions concurrently. */
+    @Autowired
+    final void setSnsDispatcher(SnsDispatcher snsDispatcher) {
+        this.snsDispatcher = snsDispatcher;
+    }
+    
     public List<NotificationTopic> listTopics(String appId, boolean includeDeleted) {
         checkNotNull(appId);
         
@@ -214,17 +227,8 @@ public class NotificationTopicService {
             return;
         }
 
-        // Unsubscribe from each subscription.
-        for (TopicSubscription oneSubscription : subscriptionList) {
-            String topicGuid = oneSubscription.getTopicGuid();
-            try {
-                NotificationTopic topic = topicDao.getTopic(appId, topicGuid);
-                subscriptionDao.unsubscribe(registration, topic);
-            } catch (RuntimeException ex) {
-                LOG.error("Error unsubscribing registration " + registrationGuid + " from topic " + topicGuid + ": " +
-                        ex.getMessage(), ex);
-            }
-        }
+        // Unsubscribe from all subscriptions. Failures are logged by the DAO.
+        subscriptionDao.batchUnsubscribe(subscriptionList);
     }
 
     /**
@@ -258,78 +262,73 @@ public class NotificationTopicService {
     // match that set. All topics in the set will be subscribed, and all topics not in that set will be unsubscribed.
     // The list of eligible topics is passed in. This allows us to have separate "namespaces" for criteria managed
     // topics and manually managed topics.
-    @SuppressWarnings("ConstantConditions")
     private List<SubscriptionStatus> setSubscriptionsForRegistration(NotificationRegistration registration,
             List<NotificationTopic> eligibleTopicList, Set<String> desiredTopicGuidSet) {
-        // Get set of currently subscribed. While we're at it, do some sanity checking on subscriptions.
-        Set<String> subscribedTopicGuidSet = cleanupSubscriptions(registration);
+        // Get the current subscriptions. While we're at it, do some sanity checking on subscriptions.
+        Map<String, TopicSubscription> subscriptionsByTopicGuid = cleanupSubscriptions(registration);
 
-        // Set the subscription status of each topic accordingly.
-        List<SubscriptionStatus> statuses = new ArrayList<>(eligibleTopicList.size());
+        // Work out which topics need to be subscribed or unsubscribed, then make all the changes at once.
+        List<NotificationTopic> topicsToSubscribe = new ArrayList<>();
+        List<TopicSubscription> subscriptionsToRemove = new ArrayList<>();
         for (NotificationTopic oneTopic : eligibleTopicList) {
             boolean wantsSubscription = desiredTopicGuidSet.contains(oneTopic.getGuid());
-            boolean isCurrentlySubscribed = subscribedTopicGuidSet.contains(oneTopic.getGuid());
-
-            Boolean isSubscribed = null;
-            if (wantsSubscription && isCurrentlySubscribed) {
-                isSubscribed = Boolean.TRUE;
-            } else if (!wantsSubscription && !isCurrentlySubscribed) {
-                isSubscribed = Boolean.FALSE;
-            } else if (wantsSubscription && !isCurrentlySubscribed) {
-                isSubscribed = doSubscribe(registration, oneTopic);
-            } else /* logically, this is: if (!wantsSubscription && isCurrentlySubscribed) */ {
-                isSubscribed = doUnsubscribe(registration, oneTopic);
+            TopicSubscription currentSubscription = subscriptionsByTopicGuid.get(oneTopic.getGuid());
+            if (wantsSubscription && currentSubscription == null) {
+                topicsToSubscribe.add(oneTopic);
+            } else if (!wantsSubscription && currentSubscription != null) {
+                subscriptionsToRemove.add(currentSubscription);
             }
-            SubscriptionStatus status = new SubscriptionStatus(oneTopic.getGuid(), oneTopic.getName(), isSubscribed);
-            statuses.add(status);
         }
-        return statuses;
-    }
-
-    private Boolean doSubscribe(NotificationRegistration registration, NotificationTopic topic) {
-        try {
-            subscriptionDao.subscribe(registration, topic);
-            return Boolean.TRUE;
-        } catch(Throwable throwable) {
-            // Any exception most likely indicates the subscription did not succeed.
-            LOG.error("Error subscribing to topic " + topic.getName() + " (" + topic.getGuid() + ")", throwable);
+        // If a change fails, the DAO leaves it out of the results, and the subscription keeps its current status.
+        Set<String> subscribedTopicGuidSet = Sets.newHashSet(subscriptionsByTopicGuid.keySet());
+        if (!topicsToSubscribe.isEmpty()) {
+            for (TopicSubscription subscription : subscriptionDao.batchSubscribe(registration, topicsToSubscribe)) {
+                subscribedTopicGuidSet.add(subscription.getTopicGuid());
+            }
+        }
+        if (!subscriptionsToRemove.isEmpty()) {
+            for (TopicSubscription subscription : subscriptionDao.batchUnsubscribe(subscriptionsToRemove)) {
+                subscribedTopicGuidSet.remove(subscription.getTopicGuid());
+            }
         }
-        return Boolean.FALSE;
-    }
 
-    private Boolean doUnsubscribe(NotificationRegistration registration, NotificationTopic topic) {
-        try {
-            subscriptionDao.unsubscribe(registration, topic);
-            return Boolean.FALSE;
-        } catch(Throwable throwable) {
-            // Will have to assume the user is still subscribed.
-            LOG.error("Error unsubscribing to topic " + topic.getName() + " (" + topic.getGuid() + ")", throwable);
+        // Set the subscription status of each topic accordingly.
+        List<SubscriptionStatus> statuses = new ArrayList<>(eligibleTopicList.size());
+        for (NotificationTopic oneTopic : eligibleTopicList) {
+            boolean isSubscribed = subscribedTopicGuidSet.contains(oneTopic.getGuid());
+            SubscriptionStatus status = new SubscriptionStatus(oneTopic.getGuid(), oneTopic.getName(), isSubscribed);
+            statuses.add(status);
         }
-        return Boolean.TRUE;
+        return statuses;
     }
 
     /**
-     * Get a set of the user's current topic subscriptions, but take the opportunity to check for data integrity and 
-     * delete any DDB records that don't have a corresponding SNS record... these are unsuccessful unsubscribes 
-     * and we're trying here again to finish them.
+     * Get the user's current topic subscriptions, mapped by topic GUID, but take the opportunity to check for data 
+     * integrity and delete any DDB records that don't have a corresponding SNS record... these are unsuccessful 
+     * unsubscribes and we're trying here again to finish them. The SNS subscriptions are checked concurrently.
      */
-    private Set<String> cleanupSubscriptions(NotificationRegistration registration) {
-        Set<String> subscribedTopicGuids = Sets.newHashSet();
+    private Map<String, TopicSubscription> cleanupSubscriptions(NotificationRegistration registration) {
+        Map<String, TopicSubscription> subscriptionsByTopicGuid = Maps.newHashMap();
         
         List<? extends TopicSubscription> subscriptions = subscriptionDao.listSubscriptions(registration);
-        for (TopicSubscription subscription : subscriptions) {
-            try {
-                snsClient.getSubscriptionAttributes(subscription.getSubscriptionARN());
-                subscribedTopicGuids.add(subscription.getTopicGuid());    
-            } catch(NotFoundException e) {
-                LOG.warn("SNS topic " + subscription.getTopicGuid() + " not found, deleting DDB record", e);
+        List<Outcome<TopicSubscription, GetSubscriptionAttributesResult>> outcomes = snsDispatcher.dispatch(
+                subscriptions, subscription -> snsClient.getSubscriptionAttributes(subscription.getSubscriptionARN()));
+        for (Outcome<TopicSubscription, GetSubscriptionAttributesResult> outcome : outcomes) {
+            TopicSubscription subscription = outcome.getItem();
+            RuntimeException error = outcome.getError();
+            if (outcome.isSuccess()) {
+                subscriptionsByTopicGuid.put(subscription.getTopicGuid(), subscription);
+            } else if (error instanceof NotFoundException) {
+                LOG.warn("SNS topic " + subscription.getTopicGuid() + " not found, deleting DDB record", error);
                 subscriptionDao.removeOrphanedSubscription(subscription);
-            } catch(AmazonServiceException e) {
-                LOG.warn("Error cleaning up subscriptions", e);
+            } else if (error instanceof AmazonServiceException) {
+                LOG.warn("Error cleaning up subscriptions", error);
                 // However, it is there, so include it in the list of subscriptions.
-                subscribedTopicGuids.add(subscription.getTopicGuid());
+                subscriptionsByTopicGuid.put(subscription.getTopicGuid(), subscription);
+            } else {
+                throw error;
             }
         }
-        return subscribedTopicGuids;
+        return subscriptionsByTopicGuid;
     }
 }
@@ -15,6 +15,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import org.sagebionetworks.bridge.async.SnsDispatcher;
+import org.sagebionetworks.bridge.async.SnsDispatcher.Outcome;
 import org.sagebionetworks.bridge.dao.NotificationRegistrationDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.NotImplementedException;
@@ -48,6 +50,7 @@ public class NotificationsService {
     private NotificationRegistrationDao notificationRegistrationDao;
     private NotificationTopicService notificationTopicService;
     private AmazonSNSClient snsClient;
+    private SnsDispatcher snsDispatcher;
 
     /** Participant service, if we need to get the participant. */
     @Autowired
@@ -79,6 +82,12 @@ public class NotificationsService {
         this.snsClient = snsClient;
     }
 
+    /** Used to publish to each of a participant's registrations concurrently. */
+    @Autowired
+    final void setSnsDispatcher(SnsDispatcher snsDispatcher) {
+        this.snsDispatcher = snsDispatcher;
+    }
+
     /**
      * Return all the registrations for this user. There may be more than one, if a user installs 
      * the application on different devices. It is possible there may be multiple registrations on 
@@ -205,6 +214,9 @@ public class NotificationsService {
      * This mechanism is intended to message specific individuals, <i>and should not be used to send out notifications 
      * to many accounts.</i> Create a topic, ask your users to subscribe to that topic in your application, and message 
      * them via that topic.
+     * 
+     * The message is published to all of the participant's registrations concurrently. Returns the GUIDs of the 
+     * registrations that couldn't be sent the message.
      */
     public Set<String> sendNotificationToUser(String appId, String healthCode, NotificationMessage message) {
         checkNotNull(appId);
@@ -218,20 +230,21 @@ public class NotificationsService {
             throw new BadRequestException("Participant has not registered to receive push notifications.");
         }
         
+        List<Outcome<NotificationRegistration, PublishResult>> outcomes = snsDispatcher.dispatch(registrations,
+                registration -> snsClient.publish(new PublishRequest().withTargetArn(registration.getEndpoint())
+                        .withSubject(message.getSubject()).withMessage(message.getMessage())));
+        
         Set<String> erroredRegistrations = Sets.newHashSet();
-        for (NotificationRegistration registration : registrations) {
-            String endpointARN = registration.getEndpoint();
-            
-            PublishRequest request = new PublishRequest().withTargetArn(endpointARN)
-                    .withSubject(message.getSubject()).withMessage(message.getMessage());
-
-            try {
-                PublishResult result = snsClient.publish(request);
+        for (Outcome<NotificationRegistration, PublishResult> outcome : outcomes) {
+            NotificationRegistration registration = outcome.getItem();
+            if (outcome.isSuccess()) {
                 LOG.debug("Sent message to participant registration=" + registration.getGuid() + ", appId=" +
-                        appId + ", message ID=" + result.getMessageId());
-            } catch(AmazonServiceException e) {
-                LOG.warn("Error publishing SNS message to participant", e);
+                        appId + ", message ID=" + outcome.getResult().getMessageId());
+            } else if (outcome.getError() instanceof AmazonServiceException) {
+                LOG.warn("Error publishing SNS message to participant", outcome.getError());
                 erroredRegistrations.add(registration.getGuid());
+            } else {
+                throw outcome.getError();
             }
         }
         // If none of the registrations succeeds, then throw an error.
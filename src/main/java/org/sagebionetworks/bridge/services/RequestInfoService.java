@@ -15,6 +15,7 @@ public class RequestInfoService {
     
     private CacheProvider cacheProvider;
     private RequestInfoDao requestInfoDao;
+    private RequestInfoWriteBuffer requestInfoWriteBuffer;
     
     @Autowired
     final void setCacheProvider(CacheProvider cacheProvider) {
@@ -24,11 +25,21 @@ public class RequestInfoService {
     final void setRequestInfoDao(RequestInfoDao requestInfoDao) {
         this.requestInfoDao = requestInfoDao;
     }
+    @Autowired
+    final void setRequestInfoWriteBuffer(RequestInfoWriteBuffer requestInfoWriteBuffer) {
+        this.requestInfoWriteBuffer = requestInfoWriteBuffer;
+    }
     
+    /**
+     * Updates are written in the background, in batches. If the write buffer is full, the update is written 
+     * immediately.
+     */
     public void updateRequestInfo(RequestInfo requestInfo) {
         checkNotNull(requestInfo);
         
-        requestInfoDao.updateRequestInfo(requestInfo);
+        if (!requestInfoWriteBuffer.offer(requestInfo)) {
+            requestInfoDao.updateRequestInfo(requestInfo);
+        }
     }
     
     public RequestInfo getRequestInfo(String userId) {
@@ -41,12 +52,18 @@ public class RequestInfoService {
                 requestInfoDao.updateRequestInfo(requestInfo);
             }
         }
+        // Include any updates that haven't been written yet.
+        RequestInfo pendingRequestInfo = requestInfoWriteBuffer.get(userId);
+        if (pendingRequestInfo != null) {
+            requestInfo = new RequestInfo.Builder().copyOf(requestInfo).copyOf(pendingRequestInfo).build();
+        }
         return requestInfo;
     }
     
     public void removeRequestInfo(String userId) {
         isNotBlank(userId);
         
+        requestInfoWriteBuffer.remove(userId);
         requestInfoDao.removeRequestInfo(userId);
         cacheProvider.removeRequestInfo(userId);
     }
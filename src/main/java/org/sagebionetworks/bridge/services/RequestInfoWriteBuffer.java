@@ -0,0 +1,313 @@
+package org.sagebionetworks.bridge.services;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.hibernate.PessimisticLockException;
+import org.hibernate.QueryTimeoutException;
+import org.hibernate.exception.JDBCConnectionException;
+import org.hibernate.exception.LockAcquisitionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.dao.RequestInfoDao;
+import org.sagebionetworks.bridge.models.RequestInfo;
+
+/**
+ * <p>
+ * Write-behind buffer for request info updates. Request info is updated on sign-in, on every activities request, and
+ * on every upload, and each update used to be a read and a write to MySQL on the request thread. Instead, updates are
+ * held in memory, coalesced per user (later fields win, same as the merge in the DAO), and written on a background
+ * thread in batches.
+ * </p>
+ * <p>
+ * The buffer is bounded. If it's full, {@link #offer} returns false, and the caller should write the update directly.
+ * Pending updates are written when the server shuts down. If the server dies without shutting down, pending updates
+ * are lost, which is acceptable for this data, since it's only used for support and troubleshooting.
+ * </p>
+ * <p>
+ * If a batch fails because the database is briefly unavailable (a lost connection, a lock timeout or deadlock, or a
+ * query timeout), the batch goes back into the buffer and is retried on the next flush. Any other failure is likely
+ * caused by a bad record, so the batch's updates are retried one at a time, and only the ones that fail again are
+ * dropped.
+ * </p>
+ */
+@Component
+public class RequestInfoWriteBuffer {
+    private static final Logger LOG = LoggerFactory.getLogger(RequestInfoWriteBuffer.class);
+
+    private static final String CONFIG_KEY_BATCH_SIZE = "request.info.write.batch.size";
+    private static final String CONFIG_KEY_FLUSH_INTERVAL_MILLIS = "request.info.write.flush.interval.millis";
+    private static final String CONFIG_KEY_MAX_SIZE = "request.info.write.max.size";
+
+    // Package-scoped for unit tests.
+    static final String METRIC_PENDING = "request.info.write.buffer.pending";
+    static final String METRIC_REJECTED = "request.info.write.buffer.rejected";
+    static final String METRIC_FAILED = "request.info.write.buffer.failed";
+
+    // Updates waiting to be written, keyed by user ID, in the order the users were first added. Updates that are
+    // being written are kept in a separate map, so that reads still see them until the write completes. Both maps
+    // are guarded by this object's lock.
+    private final LinkedHashMap<String, RequestInfo> pending = new LinkedHashMap<>();
+    private final Map<String, RequestInfo> inFlight = new HashMap<>();
+
+    private int batchSize;
+    private long flushIntervalMillis;
+    private int maxSize;
+    private Counter rejectedCounter;
+    private Counter failedCounter;
+    private RequestInfoDao requestInfoDao;
+    private ScheduledExecutorService flushExecutor;
+
+    /** Config, to get the batch size, flush interval, and max size of the buffer. */
+    @Autowired
+    public final void setBridgeConfig(BridgeConfig config) {
+        batchSize = config.getPropertyAsInt(CONFIG_KEY_BATCH_SIZE);
+        flushIntervalMillis = config.getPropertyAsInt(CONFIG_KEY_FLUSH_INTERVAL_MILLIS);
+        maxSize = config.getPropertyAsInt(CONFIG_KEY_MAX_SIZE);
+    }
+
+    /** Metric registry, used to report pending, rejected, and failed writes. This is configured by Spring. */
+    @Autowired
+    public final void setMetricRegistry(MetricRegistry metricRegistry) {
+        metricRegistry.register(METRIC_PENDING, (Gauge<Integer>) this::getPendingCount);
+        rejectedCounter = metricRegistry.counter(METRIC_REJECTED);
+        failedCounter = metricRegistry.counter(METRIC_FAILED);
+    }
+
+    /** Request info DAO, used to write the buffered updates. This is configured by Spring. */
+    @Autowired
+    public final void setRequestInfoDao(RequestInfoDao requestInfoDao) {
+        this.requestInfoDao = requestInfoDao;
+    }
+
+    /** Max number of updates written in one batch. Separate setter so that tests can change this value. */
+    public final void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /** Max number of users with pending updates. Separate setter so that tests can change this value. */
+    public final void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /** Starts the background flush thread. This is called by Spring. */
+    @PostConstruct
+    public void start() {
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("request-info-writer-%d").setDaemon(true).build());
+        flushExecutor.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /** Stops the background flush thread, then writes all pending updates. This is called by Spring. */
+    @PreDestroy
+    public void shutdown() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+            try {
+                // Let a flush that's already running finish, so we don't write the same batch twice.
+                flushExecutor.awaitTermination(flushIntervalMillis + 5000L, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flushQuietly();
+    }
+
+    /**
+     * Adds the update to the buffer, merging it with any pending update for the same user.
+     *
+     * @return true if the update was buffered, false if the buffer is full and the caller must write the update itself
+     */
+    public synchronized boolean offer(@Nonnull RequestInfo requestInfo) {
+        checkNotNull(requestInfo);
+        checkNotNull(requestInfo.getUserId());
+
+        RequestInfo existing = pending.get(requestInfo.getUserId());
+        if (existing == null && pending.size() >= maxSize) {
+            if (rejectedCounter != null) {
+                rejectedCounter.inc();
+            }
+            return false;
+        }
+        pending.put(requestInfo.getUserId(), merge(existing, requestInfo));
+        return true;
+    }
+
+    /** Returns the updates for this user that have not yet been written, merged together, or null if there are none. */
+    public synchronized RequestInfo get(@Nonnull String userId) {
+        checkNotNull(userId);
+        return merge(inFlight.get(userId), pending.get(userId));
+    }
+
+    /**
+     * Discards any pending update for this user. If an update for this user is already being written, this waits
+     * until the write is done, so callers deleting a user's request info should delete it after calling this method.
+     */
+    public synchronized void remove(@Nonnull String userId) {
+        checkNotNull(userId);
+        pending.remove(userId);
+        try {
+            while (inFlight.containsKey(userId)) {
+                wait();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        // If the write failed, the update was put back in the buffer.
+        pending.remove(userId);
+    }
+
+    /** Number of users with updates that have not yet been written. */
+    public synchronized int getPendingCount() {
+        return pending.size() + inFlight.size();
+    }
+
+    /**
+     * Writes all pending updates, in batches. If a batch fails with a retryable error, it's put back in the buffer and
+     * this flush stops, so the next flush is the retry. Otherwise, the batch's updates are written one at a time, and
+     * the ones that still fail are dropped (and counted), so that one bad record can't block the buffer. Package-scoped
+     * for unit tests.
+     */
+    void flush() {
+        List<RequestInfo> batch = takeBatch();
+        while (!batch.isEmpty()) {
+            try {
+                requestInfoDao.updateRequestInfos(batch);
+            } catch (RuntimeException ex) {
+                if (isRetryable(ex)) {
+                    LOG.warn("Retryable error writing batch of " + batch.size() + " request infos, will retry: " +
+                            ex.getMessage(), ex);
+                    requeue(batch);
+                    return;
+                }
+                LOG.error("Error writing batch of " + batch.size() + " request infos, writing them one at a time: " +
+                        ex.getMessage(), ex);
+                List<RequestInfo> retryLater = writeEach(batch);
+                if (!retryLater.isEmpty()) {
+                    requeue(retryLater);
+                    return;
+                }
+            } finally {
+                clearInFlight();
+            }
+            batch = takeBatch();
+        }
+    }
+
+    // Writes each update on its own. Drops (and counts) the updates that fail, and returns the updates that failed
+    // with a retryable error, which the caller puts back in the buffer.
+    private List<RequestInfo> writeEach(List<RequestInfo> batch) {
+        List<RequestInfo> retryLater = new ArrayList<>();
+        for (RequestInfo requestInfo : batch) {
+            if (!retryLater.isEmpty()) {
+                // The database is having trouble. Don't keep hitting it.
+                retryLater.add(requestInfo);
+                continue;
+            }
+            try {
+                requestInfoDao.updateRequestInfos(ImmutableList.of(requestInfo));
+            } catch (RuntimeException ex) {
+                if (isRetryable(ex)) {
+                    retryLater.add(requestInfo);
+                } else {
+                    if (failedCounter != null) {
+                        failedCounter.inc();
+                    }
+                    LOG.error("Error writing request info for user " + requestInfo.getUserId() + ", dropping it: " +
+                            ex.getMessage(), ex);
+                }
+            }
+        }
+        return retryLater;
+    }
+
+    // Transient database errors, which are worth retrying. Hibernate exceptions are wrapped by HibernateHelper, so
+    // check the whole cause chain.
+    private static boolean isRetryable(RuntimeException ex) {
+        for (Throwable cause : Throwables.getCausalChain(ex)) {
+            if (cause instanceof JDBCConnectionException || cause instanceof LockAcquisitionException ||
+                    cause instanceof PessimisticLockException || cause instanceof QueryTimeoutException ||
+                    cause instanceof SQLTransientException || cause instanceof SQLRecoverableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Exceptions thrown from a scheduled task cancel all later runs, so never let one escape.
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException ex) {
+            LOG.error("Unexpected exception flushing request infos: " + ex.getMessage(), ex);
+        }
+    }
+
+    // Moves up to batchSize updates from pending to in-flight, and returns them.
+    private synchronized List<RequestInfo> takeBatch() {
+        List<RequestInfo> batch = new ArrayList<>();
+        Iterator<RequestInfo> iterator = pending.values().iterator();
+        while (iterator.hasNext() && batch.size() < batchSize) {
+            RequestInfo requestInfo = iterator.next();
+            iterator.remove();
+            inFlight.put(requestInfo.getUserId(), requestInfo);
+            batch.add(requestInfo);
+        }
+        return batch;
+    }
+
+    // Wakes up any callers of remove() that are waiting for these updates to be written.
+    private synchronized void clearInFlight() {
+        inFlight.clear();
+        notifyAll();
+    }
+
+    // Puts updates that failed to write back at the front of the buffer. Updates that arrived while they were being
+    // written are merged on top, so the newer fields still win.
+    private synchronized void requeue(List<RequestInfo> batch) {
+        LinkedHashMap<String, RequestInfo> newer = new LinkedHashMap<>(pending);
+        pending.clear();
+        for (RequestInfo requestInfo : batch) {
+            pending.put(requestInfo.getUserId(), requestInfo);
+        }
+        for (RequestInfo requestInfo : newer.values()) {
+            pending.put(requestInfo.getUserId(), merge(pending.get(requestInfo.getUserId()), requestInfo));
+        }
+    }
+
+    // Merges the update into the older record. Null fields in the update don't overwrite fields in the older record.
+    private static RequestInfo merge(RequestInfo older, RequestInfo update) {
+        if (older == null) {
+            return update;
+        }
+        if (update == null) {
+            return older;
+        }
+        return new RequestInfo.Builder().copyOf(older).copyOf(update).build();
+    }
+}
@@ -7,6 +7,7 @@ import java.util.List;
 import java.util.Set;
 
 import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.cache.ScheduleCache;
 import org.sagebionetworks.bridge.dao.SchedulePlanDao;
 import org.sagebionetworks.bridge.models.ClientInfo;
 import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
@@ -32,6 +33,7 @@ public class SchedulePlanService {
     private SchedulePlanDao schedulePlanDao;
     private SurveyService surveyService;
     private StudyService studyService;
+    private ScheduleCache scheduleCache;
 
     @Autowired
     public final void setSchedulePlanDao(SchedulePlanDao schedulePlanDao) {
@@ -45,6 +47,10 @@ public class SchedulePlanService {
     public final void setStudyService(StudyService studyService) {
         this.studyService = studyService;
     }
+    @Autowired
+    public final void setScheduleCache(ScheduleCache scheduleCache) {
+        this.scheduleCache = scheduleCache;
+    }
 
     public List<SchedulePlan> getSchedulePlans(ClientInfo clientInfo, String appId,
             boolean includeDeleted) {
@@ -83,7 +89,9 @@ public class SchedulePlanService {
                 new SchedulePlanValidator(app.getDataGroups(), studyIds, app.getTaskIdentifiers()), plan);
 
         lookupSurveyReferenceIdentifiers(app.getIdentifier(), plan);
-        return schedulePlanDao.createSchedulePlan(app.getIdentifier(), plan);
+        SchedulePlan createdPlan = schedulePlanDao.createSchedulePlan(app.getIdentifier(), plan);
+        scheduleCache.invalidate(app.getIdentifier());
+        return createdPlan;
     }
     
     public SchedulePlan updateSchedulePlan(App app, SchedulePlan plan) {
@@ -117,7 +125,9 @@ public class SchedulePlanService {
                 new SchedulePlanValidator(app.getDataGroups(), studyIds, app.getTaskIdentifiers()), plan);
         
         lookupSurveyReferenceIdentifiers(plan.getAppId(), plan);
-        return schedulePlanDao.updateSchedulePlan(plan.getAppId(), plan);
+        SchedulePlan updatedPlan = schedulePlanDao.updateSchedulePlan(plan.getAppId(), plan);
+        scheduleCache.invalidate(plan.getAppId());
+        return updatedPlan;
     }
 
     public void deleteSchedulePlan(String appId, String guid) {
@@ -125,6 +135,7 @@ public class SchedulePlanService {
         checkNotNull(isNotBlank(guid));
         
         schedulePlanDao.deleteSchedulePlan(appId, guid);
+        scheduleCache.invalidate(appId);
     }
     
     public void deleteSchedulePlanPermanently(String appId, String guid) {
@@ -132,6 +143,7 @@ public class SchedulePlanService {
         checkNotNull(isNotBlank(guid));
         
         schedulePlanDao.deleteSchedulePlanPermanently(appId, guid);
+        scheduleCache.invalidate(appId);
     }
     
     /**
@@ -13,8 +13,8 @@ import static org.sagebionetworks.bridge.validators.ScheduleContextValidator.MAX
 
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -33,8 +33,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import org.sagebionetworks.bridge.BridgeConstants;
+import org.sagebionetworks.bridge.cache.ScheduleCache;
 import org.sagebionetworks.bridge.dao.ScheduledActivityDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.RangeTuple;
 import org.sagebionetworks.bridge.models.appconfig.AppConfig;
@@ -87,6 +89,8 @@ public class ScheduledActivityService {
     
     private AppConfigService appConfigService;
     
+    private ScheduleCache scheduleCache;
+    
     @Autowired
     final void setScheduledActivityDao(ScheduledActivityDao activityDao) {
         this.activityDao = activityDao;
@@ -125,6 +129,12 @@ public class ScheduledActivityService {
     final void setAppConfigService(AppConfigService appConfigService) {
         this.appConfigService = appConfigService;
     }
+    
+    /** Cache of the activities computed by the scheduler, so repeat polls of the same window skip the scheduler. */
+    @Autowired
+    final void setScheduleCache(ScheduleCache scheduleCache) {
+        this.scheduleCache = scheduleCache;
+    }
 
     public ForwardCursorPagedResourceList<ScheduledActivity> getActivityHistory(String healthCode,
             String activityGuid, DateTime scheduledOnStart, DateTime scheduledOnEnd, String offsetKey,
@@ -221,7 +231,10 @@ public class ScheduledActivityService {
         Map<String, DateTime> events = createEventsMap(context);
         ScheduleContext updatedContext = new ScheduleContext.Builder().withContext(context).withEvents(events).build();
 
-        List<ScheduledActivity> scheduledActivities = scheduleActivitiesForPlans(updatedContext);
+        // Unlike v3, where the window starts at the time of the request, clients request the same v4 window many
+        // times, so the scheduler's output is worth caching.
+        List<ScheduledActivity> scheduledActivities = scheduleCache.getScheduledActivities(updatedContext,
+                () -> scheduleActivitiesForPlans(updatedContext));
 
         // Get all persisted activities within the time frame, not just those found by the scheduler (as in v3).
         Map<String, ScheduledActivity> dbMap = retrieveAllPersistedActivitiesIntoMap(updatedContext, scheduledActivities);
@@ -273,28 +286,21 @@ public class ScheduledActivityService {
         Map<String,ScheduledActivity> dbMap = Maps.newHashMap();
         // IA-545: If a schedule has an identical activity but a new GUID (say if we change the schedule on the user), the user can 
         // lose existing activities. So during the time window the user is looking at, we will return any activities that exist.
-        for (String activityGuid : activityGuids) {
-            ForwardCursorPagedResourceList<ScheduledActivity> list = activityDao.getActivityHistoryV2(
-                    context.getCriteriaContext().getHealthCode(), activityGuid,
-                    context.getStartsOn(), context.getEndsOn(), null,
-                    API_MAXIMUM_PAGE_SIZE);
-            if (list != null) {
-                for(ScheduledActivity activity : list.getItems()) {
-                    dbMap.put(activity.getGuid(), activity);
-                }
-            }
+        String healthCode = context.getCriteriaContext().getHealthCode();
+        List<ScheduledActivity> history = activityDao.getActivityHistoriesV2(healthCode, activityGuids,
+                context.getStartsOn(), context.getEndsOn());
+        for (ScheduledActivity activity : history) {
+            dbMap.put(activity.getGuid(), activity);
         }
         // IA-587: When a one-time task falls outside the schedule window, it's not returned by the 
-        // query above, so it is recreated, and it loses its finished state. Load all remaining scheduled activities.
-        String healthCode = context.getCriteriaContext().getHealthCode();
-        for (ScheduledActivity activity : scheduledActivities) {
-            if (!dbMap.containsKey(activity.getGuid())) {
-                ScheduledActivity dbActivity = activityDao.getActivity(context.getStartsOn().getZone(), healthCode,
-                        activity.getGuid(), false);
-                if (dbActivity != null) {
-                    dbMap.put(dbActivity.getGuid(), dbActivity);    
-                }
-            }
+        // query above, so it is recreated, and it loses its finished state. Load all remaining scheduled activities,
+        // in one batch.
+        List<ScheduledActivity> activitiesToLoad = scheduledActivities.stream()
+                .filter(activity -> !dbMap.containsKey(activity.getGuid())).collect(Collectors.toList());
+        List<ScheduledActivity> dbActivities = activityDao.getActivities(context.getStartsOn().getZone(),
+                activitiesToLoad);
+        for (ScheduledActivity dbActivity : dbActivities) {
+            dbMap.put(dbActivity.getGuid(), dbActivity);
         }
         return dbMap;
     }
@@ -304,13 +310,9 @@ public class ScheduledActivityService {
         checkNotNull(scheduledActivities);
         
         // Remove duplicates sent by the client because these lead to an error when persisting the records
-        // (BRIDGE-2350). Preserve the order the activities were submitted in the list, mostly because tests 
-        // expect that order to be preserved.
-        Set<String> activitiesAlreadySeen = new HashSet<>();
-        List<ScheduledActivity> activitiesToSave = new LinkedList<>();
-        
-        // According to the client team, the last activity is most likely to be correct, so iterate from 
-        // the last one
+        // (BRIDGE-2350). According to the client team, the last activity is most likely to be correct, so iterate from 
+        // the last one and keep the first copy we see.
+        Map<String, ScheduledActivity> activitiesByGuid = new LinkedHashMap<>();
         for (int i=scheduledActivities.size()-1; i >= 0; i--) {
             ScheduledActivity schActivity = scheduledActivities.get(i);
             if (schActivity == null) {
@@ -323,19 +325,30 @@ public class ScheduledActivityService {
                 throw new BadRequestException("Client data too large ("+CLIENT_DATA_MAX_BYTES+" bytes limit) for task "
                         + schActivity.getGuid());
             }
-
-            // This isn't returned to the client, so the exact time zone used does not matter.
-            ScheduledActivity dbActivity = activityDao.getActivity(DateTimeZone.UTC, healthCode, schActivity.getGuid(), true);
-            String key = dbActivity.getHealthCode()+":"+dbActivity.getGuid();
-            if (activitiesAlreadySeen.contains(key)) {
-                ScheduledActivity previouslyAdded = activitiesToSave.stream().filter((sch) -> {
-                    return sch.getHealthCode().equals(dbActivity.getHealthCode()) && 
-                            sch.getGuid().equals(dbActivity.getGuid()); 
-                }).findFirst().get();
-                LOG.warn("Duplicate activities submitted to server, activity to persist: " + previouslyAdded + ", duplicate: " + dbActivity);
-                continue;
+            ScheduledActivity previouslyAdded = activitiesByGuid.putIfAbsent(schActivity.getGuid(), schActivity);
+            if (previouslyAdded != null) {
+                LOG.warn("Duplicate activities submitted to server, activity to persist: " + previouslyAdded + ", duplicate: " + schActivity);
+            }
+        }
+        
+        // Load all the persisted activities in one batch. This isn't returned to the client, so the exact time zone 
+        // used does not matter.
+        List<ScheduledActivity> keys = activitiesByGuid.keySet().stream().map(guid -> {
+            ScheduledActivity key = ScheduledActivity.create();
+            key.setHealthCode(healthCode);
+            key.setGuid(guid);
+            return key;
+        }).collect(Collectors.toList());
+        Map<String, ScheduledActivity> dbActivitiesByGuid = Maps.uniqueIndex(
+                activityDao.getActivities(DateTimeZone.UTC, keys), ScheduledActivity::getGuid);
+        
+        List<ScheduledActivity> activitiesToSave = new ArrayList<>();
+        List<ScheduledActivity> finishedActivities = new ArrayList<>();
+        for (ScheduledActivity schActivity : activitiesByGuid.values()) {
+            ScheduledActivity dbActivity = dbActivitiesByGuid.get(schActivity.getGuid());
+            if (dbActivity == null) {
+                throw new EntityNotFoundException(ScheduledActivity.class);
             }
-            activitiesAlreadySeen.add(key);
             
             boolean addToSaves = false;
             if (hasUpdatedClientData(schActivity, dbActivity)) {
@@ -348,14 +361,19 @@ public class ScheduledActivityService {
             }
             if (schActivity.getFinishedOn() != null) {
                 dbActivity.setFinishedOn(schActivity.getFinishedOn());
-                activityEventService.publishActivityFinishedEvent(dbActivity);
+                finishedActivities.add(dbActivity);
                 addToSaves = true;
             }
             if (addToSaves) {
-                activitiesToSave.add(0, dbActivity);
+                activitiesToSave.add(dbActivity);
             }
-            
         }
+        // We iterated from the last activity, so reverse the lists to preserve the order the activities were 
+        // submitted in, mostly because tests expect that order to be preserved.
+        Collections.reverse(activitiesToSave);
+        Collections.reverse(finishedActivities);
+        
+        activityEventService.publishActivityFinishedEvents(finishedActivities);
         activityDao.updateActivities(healthCode, activitiesToSave);
     }
 
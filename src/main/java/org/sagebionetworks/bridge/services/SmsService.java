@@ -27,7 +27,6 @@ import org.sagebionetworks.bridge.RequestContext;
 import org.sagebionetworks.bridge.dao.SmsMessageDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
-import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.models.accounts.Phone;
 import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
@@ -181,13 +180,8 @@ public class SmsService {
     // Helper method to init the SMS log schema for the app.
     private void initMessageLogSchema(String appId) {
         // See if schema already exists.
-        UploadSchema existingSchema = null;
-        try {
-            existingSchema = schemaService.getUploadSchemaByIdAndRev(appId, MESSAGE_LOG_SCHEMA_ID,
-                    MESSAGE_LOG_SCHEMA_REV);
-        } catch (EntityNotFoundException ex) {
-            // Suppress exception. If get throws, messageLogSchema will be null.
-        }
+        UploadSchema existingSchema = schemaService.getCachedUploadSchemaByIdAndRev(appId, MESSAGE_LOG_SCHEMA_ID,
+                MESSAGE_LOG_SCHEMA_REV);
         if (existingSchema != null) {
             return;
         }
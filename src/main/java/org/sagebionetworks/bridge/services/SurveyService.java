@@ -13,6 +13,9 @@ import java.util.function.BiPredicate;
 import java.util.stream.Collectors;
 
 import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.cache.ImmutableArtifactCache;
+import org.sagebionetworks.bridge.cache.ResolvedAppConfigCache;
+import org.sagebionetworks.bridge.cache.ScheduleCache;
 import org.sagebionetworks.bridge.dao.SurveyDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.ConstraintViolationException;
@@ -49,6 +52,9 @@ public class SurveyService {
     private SchedulePlanService schedulePlanService;
     private SharedModuleMetadataService sharedModuleMetadataService;
     private AppService appService;
+    private ScheduleCache scheduleCache;
+    private ResolvedAppConfigCache resolvedAppConfigCache;
+    private ImmutableArtifactCache immutableArtifactCache;
 
     @Autowired
     final void setSurveyDao(SurveyDao surveyDao) {
@@ -74,6 +80,24 @@ public class SurveyService {
     public final void setAppService(AppService appService) {
         this.appService = appService;
     }
+
+    /** Schedules resolve survey references to the most recently published version, so publishing invalidates them. */
+    @Autowired
+    final void setScheduleCache(ScheduleCache scheduleCache) {
+        this.scheduleCache = scheduleCache;
+    }
+
+    /** App configs resolve survey references to the survey's identifier, so changing a survey invalidates them. */
+    @Autowired
+    final void setResolvedAppConfigCache(ResolvedAppConfigCache resolvedAppConfigCache) {
+        this.resolvedAppConfigCache = resolvedAppConfigCache;
+    }
+
+    /** Upload validation caches published survey versions, so deleting or undeleting a survey invalidates them. */
+    @Autowired
+    final void setImmutableArtifactCache(ImmutableArtifactCache immutableArtifactCache) {
+        this.immutableArtifactCache = immutableArtifactCache;
+    }
     
     public Survey getSurvey(String appId, GuidCreatedOnVersionHolder keys, boolean includeElements, boolean throwException) {
         Survey survey = surveyDao.getSurvey(appId, keys, includeElements);
@@ -85,6 +109,16 @@ public class SurveyService {
         }
         return survey;
     }
+
+    /**
+     * Gets a survey version without its elements, for looking up the schema of an upload or health data submission.
+     * Published survey versions are cached, so callers must not modify the survey. Throws EntityNotFoundException if
+     * the survey doesn't exist.
+     */
+    public Survey getCachedSurvey(String appId, GuidCreatedOnVersionHolder keys) {
+        checkNotNull(appId);
+        return immutableArtifactCache.getSurvey(appId, keys, () -> getSurvey(appId, keys, false, true));
+    }
     
     /**
      * Create a survey.
@@ -137,7 +171,10 @@ public class SurveyService {
             if (existing.isDeleted() && !survey.isDeleted()) {
                 existing = surveyDao.getSurvey(appId, survey, true); // get all the children for the update
                 existing.setDeleted(false);
-                return surveyDao.updateSurvey(appId, existing);
+                Survey updated = surveyDao.updateSurvey(appId, existing);
+                resolvedAppConfigCache.invalidate(appId);
+                immutableArtifactCache.invalidate(appId);
+                return updated;
             } else {
                 throw new PublishedSurveyException(survey);
             }
@@ -150,7 +187,9 @@ public class SurveyService {
         }
         Validate.entityThrowingException(new SurveySaveValidator(dataGroups), survey);
         
-        return surveyDao.updateSurvey(appId, survey);
+        Survey updated = surveyDao.updateSurvey(appId, survey);
+        resolvedAppConfigCache.invalidate(appId);
+        return updated;
     }
 
     /**
@@ -168,7 +207,9 @@ public class SurveyService {
         }
         Validate.entityThrowingException(publishValidator, existing);
 
-        return surveyDao.publishSurvey(appId, existing, newSchemaRev);
+        Survey publishedSurvey = surveyDao.publishSurvey(appId, existing, newSchemaRev);
+        scheduleCache.invalidate(appId);
+        return publishedSurvey;
     }
 
     /**
@@ -204,6 +245,9 @@ public class SurveyService {
         verifySharedModuleExistence(keys);
 
         surveyDao.deleteSurvey(existing);
+        scheduleCache.invalidate(appId);
+        resolvedAppConfigCache.invalidate(appId);
+        immutableArtifactCache.invalidate(appId);
     }
 
     /**
@@ -227,6 +271,9 @@ public class SurveyService {
         }
         checkConstraintsBeforePhysicalDelete(appId, keys);
         surveyDao.deleteSurveyPermanently(appId, keys);
+        scheduleCache.invalidate(appId);
+        resolvedAppConfigCache.invalidate(appId);
+        immutableArtifactCache.invalidate(appId);
     }
 
     // Helper method to verify if there is any shared module related to specified survey
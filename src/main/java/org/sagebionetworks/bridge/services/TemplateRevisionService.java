@@ -9,6 +9,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import org.sagebionetworks.bridge.RequestContext;
+import org.sagebionetworks.bridge.cache.TemplateCache;
 import org.sagebionetworks.bridge.dao.TemplateDao;
 import org.sagebionetworks.bridge.dao.TemplateRevisionDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
@@ -27,6 +28,8 @@ public class TemplateRevisionService {
     
     private TemplateRevisionDao templateRevisionDao;
     
+    private TemplateCache templateCache;
+    
     @Autowired
     final void setTemplateDao(TemplateDao templateDao) {
         this.templateDao = templateDao;
@@ -37,6 +40,12 @@ public class TemplateRevisionService {
         this.templateRevisionDao = templateRevisionDao;
     }
     
+    /** Templates are cached with the creation time of their published revision, so publishing invalidates them. */
+    @Autowired
+    final void setTemplateCache(TemplateCache templateCache) {
+        this.templateCache = templateCache;
+    }
+    
     public PagedResourceList<? extends TemplateRevision> getTemplateRevisions(String appId,
             String templateGuid, Integer offset, Integer pageSize) {
         checkNotNull(appId);
@@ -113,6 +122,7 @@ public class TemplateRevisionService {
         
         template.setPublishedCreatedOn(createdOn);
         templateDao.updateTemplate(template);
+        templateCache.invalidate(appId);
     }
     
     protected String getUserId() {
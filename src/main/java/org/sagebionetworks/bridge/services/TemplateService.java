@@ -26,6 +26,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
 
@@ -41,6 +42,7 @@ import org.springframework.stereotype.Component;
 
 import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.RequestContext;
+import org.sagebionetworks.bridge.cache.TemplateCache;
 import org.sagebionetworks.bridge.dao.CriteriaDao;
 import org.sagebionetworks.bridge.dao.TemplateDao;
 import org.sagebionetworks.bridge.dao.TemplateRevisionDao;
@@ -49,7 +51,7 @@ import org.sagebionetworks.bridge.exceptions.ConstraintViolationException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.models.Criteria;
 import org.sagebionetworks.bridge.models.CriteriaContext;
-import org.sagebionetworks.bridge.models.CriteriaUtils;
+import org.sagebionetworks.bridge.models.CriteriaMatcher;
 import org.sagebionetworks.bridge.models.GuidVersionHolder;
 import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.models.ResourceList;
@@ -72,6 +74,7 @@ public class TemplateService {
     private CriteriaDao criteriaDao;
     private AppService appService;
     private StudyService studyService;
+    private TemplateCache templateCache;
     
     private String defaultEmailVerificationTemplate;
     private String defaultEmailVerificationTemplateSubject;
@@ -113,6 +116,11 @@ public class TemplateService {
         this.studyService = studyService;
     }
 
+    @Autowired
+    final void setTemplateCache(TemplateCache templateCache) {
+        this.templateCache = templateCache;
+    }
+
     @Value("classpath:conf/app-defaults/email-verification.txt")
     final void setDefaultEmailVerificationTemplate(org.springframework.core.io.Resource resource) throws IOException {
         this.defaultEmailVerificationTemplate = IOUtils.toString(resource.getInputStream(), StandardCharsets.UTF_8);
@@ -222,18 +230,15 @@ public class TemplateService {
                 .orElseThrow(() -> new EntityNotFoundException(TemplateRevision.class));
     }
     
-    @SuppressWarnings("unchecked")
     Optional<Template> getTemplateForUser(App app, CriteriaContext context, TemplateType type) {
         checkNotNull(context);
         checkNotNull(type);
 
-        ResourceList<Template> results = (ResourceList<Template>)templateDao.getTemplates(
-                context.getAppId(), type, null, null, false);
-        for (Template template : results.getItems()) {
-            loadCriteria(template);
-        }
+        CriteriaMatcher<Template> matcher = templateCache.getTemplateMatcher(context.getAppId(), type,
+                () -> loadTemplatesForType(context.getAppId(), type));
+        List<Template> templates = matcher.getCandidates();
 
-        List<Template> templateMatches = CriteriaUtils.filterByCriteria(context, results.getItems(), null);
+        List<Template> templateMatches = matcher.filter(context, null);
         
         // The ideal case: one and only one template matches the user's context
         if (templateMatches.size() == 1) {
@@ -242,8 +247,13 @@ public class TemplateService {
         // If not, fall back to the default specified for this app, if it exists. 
         String defaultGuid = app.getDefaultTemplates().get(type.name().toLowerCase());
         if (defaultGuid != null) {
-            // Specified default may not exist, log as integrity violation, but continue
-            Optional<Template> optional = templateDao.getTemplate(context.getAppId(), defaultGuid);
+            // Specified default may not exist, log as integrity violation, but continue. It's almost always one of 
+            // the templates of this type, so only go to the database when it isn't.
+            Optional<Template> optional = templates.stream()
+                    .filter(template -> defaultGuid.equals(template.getGuid())).findFirst();
+            if (!optional.isPresent()) {
+                optional = templateDao.getTemplate(context.getAppId(), defaultGuid);
+            }
             if (optional.isPresent()) {
                 return optional;
             }
@@ -255,9 +265,9 @@ public class TemplateService {
             return Optional.of(templateMatches.get(0));
         }
         // Return any template
-        if (results.getItems().size() > 0) {
+        if (templates.size() > 0) {
             LOG.warn("Template matching failed with no default, returning first template found without matching");
-            return Optional.of(results.getItems().get(0));
+            return Optional.of(templates.get(0));
         }
         // There is nothing to return
         return Optional.empty();
@@ -281,9 +291,7 @@ public class TemplateService {
         }
         
         PagedResourceList<? extends Template> templates = templateDao.getTemplates(appId, type, offset, pageSize, includeDeleted);
-        for (Template template : templates.getItems()) {
-            loadCriteria(template);
-        }
+        loadCriteria(templates.getItems());
         return templates;
     }
     
@@ -337,6 +345,7 @@ public class TemplateService {
 
         templateDao.createTemplate(template);
         templateRevisionDao.createTemplateRevision(revision);
+        templateCache.invalidate(app.getIdentifier());
         return new GuidVersionHolder(template.getGuid(), Long.valueOf(template.getVersion()));
     }
     
@@ -368,6 +377,7 @@ public class TemplateService {
         
         persistCriteria(template);
         templateDao.updateTemplate(template);
+        templateCache.invalidate(appId);
         
         return new GuidVersionHolder(template.getGuid(), Long.valueOf(template.getVersion()));
     }
@@ -388,6 +398,7 @@ public class TemplateService {
         existing.setModifiedOn(getTimestamp());
         
         templateDao.updateTemplate(existing);
+        templateCache.invalidate(appId);
     }
     
     public void deleteTemplatePermanently(String appId, String guid) {
@@ -396,10 +407,12 @@ public class TemplateService {
 
         templateDao.deleteTemplatePermanently(appId, guid);
         criteriaDao.deleteCriteria(getKey(template));
+        templateCache.invalidate(appId);
     }
     
     public void deleteTemplatesForApp(String appId) {
         templateDao.deleteTemplatesForApp(appId);
+        templateCache.invalidate(appId);
     }
 
     private boolean isDefaultTemplate(Template template, String appId) {
@@ -422,6 +435,30 @@ public class TemplateService {
         return criteriaDao.createOrUpdateCriteria(criteria);
     }
 
+    @SuppressWarnings("unchecked")
+    private List<Template> loadTemplatesForType(String appId, TemplateType type) {
+        ResourceList<Template> results = (ResourceList<Template>)templateDao.getTemplates(
+                appId, type, null, null, false);
+        loadCriteria(results.getItems());
+        return results.getItems();
+    }
+    
+    // Loads the criteria of all the templates in one batch.
+    private void loadCriteria(List<? extends Template> templates) {
+        if (templates.isEmpty()) {
+            return;
+        }
+        List<String> keys = templates.stream().map(this::getKey).collect(Collectors.toList());
+        Map<String, Criteria> criteriaMap = criteriaDao.batchGetCriteria(keys);
+        for (Template template : templates) {
+            Criteria criteria = criteriaMap.get(getKey(template));
+            if (criteria == null) {
+                criteria = Criteria.create();
+            }
+            template.setCriteria(criteria);
+        }
+    }
+
     private void loadCriteria(Template template) {
         Criteria criteria = criteriaDao.getCriteria(getKey(template));
         if (criteria == null) {
@@ -19,6 +19,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.cache.ImmutableArtifactCache;
 import org.sagebionetworks.bridge.dao.UploadSchemaDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
@@ -39,9 +40,16 @@ import org.sagebionetworks.bridge.validators.Validate;
  */
 @Component
 public class UploadSchemaService {
+    private ImmutableArtifactCache immutableArtifactCache;
     private SharedModuleMetadataService sharedModuleMetadataService;
     private UploadSchemaDao uploadSchemaDao;
 
+    /** Upload validation caches schema revisions, so updating or deleting a schema invalidates them. */
+    @Autowired
+    public final void setImmutableArtifactCache(ImmutableArtifactCache immutableArtifactCache) {
+        this.immutableArtifactCache = immutableArtifactCache;
+    }
+
     /** DAO for upload schemas. This is configured by Spring. */
     @Autowired
     public final void setUploadSchemaDao(UploadSchemaDao uploadSchemaDao) {
@@ -219,6 +227,7 @@ public class UploadSchemaService {
 
         List<UploadSchema> schemaList = getSchemaRevisionsForDelete(appId, schemaId);
         uploadSchemaDao.deleteUploadSchemas(schemaList);
+        immutableArtifactCache.invalidate(appId);
     }
 
     public void deleteUploadSchemaByIdPermanently(String appId, String schemaId) {
@@ -226,6 +235,7 @@ public class UploadSchemaService {
 
         List<UploadSchema> schemaList = getSchemaRevisionsForDelete(appId, schemaId);
         uploadSchemaDao.deleteUploadSchemasPermanently(schemaList);
+        immutableArtifactCache.invalidate(appId);
     }
 
     protected List<UploadSchema> getSchemaRevisionsForDelete(String appId, String schemaId) {
@@ -260,6 +270,7 @@ public class UploadSchemaService {
             throw new EntityNotFoundException(UploadSchema.class);
         }
         uploadSchemaDao.deleteUploadSchemas(ImmutableList.of(schema));    
+        immutableArtifactCache.invalidate(appId);
     }
     
     public void deleteUploadSchemaByIdAndRevisionPermanently(String appId, String schemaId, int rev) {
@@ -270,6 +281,7 @@ public class UploadSchemaService {
             throw new EntityNotFoundException(UploadSchema.class);
         }
         uploadSchemaDao.deleteUploadSchemasPermanently(ImmutableList.of(schema));    
+        immutableArtifactCache.invalidate(appId);
     }
 
     /** Returns all revisions of all schemas. */
@@ -391,6 +403,19 @@ public class UploadSchemaService {
         return uploadSchemaDao.getUploadSchemaByIdAndRevision(appId, schemaId, revision);
     }
 
+    /**
+     * Fetches the upload schema for the specified app, schema ID, and revision, for validating uploads and health
+     * data submissions. Schema revisions are cached, so callers must not modify the schema. If no schema is found,
+     * this API returns null.
+     */
+    public UploadSchema getCachedUploadSchemaByIdAndRev(String appId, String schemaId, int revision) {
+        if (StringUtils.isBlank(schemaId)) {
+            throw new BadRequestException("Schema ID must be specified");
+        }
+        return immutableArtifactCache.getUploadSchema(appId, schemaId, revision,
+                () -> getUploadSchemaByIdAndRevNoThrow(appId, schemaId, revision));
+    }
+
     /**
      * Gets the latest available revision of the specified schema for the specified client. This API fetches every
      * schema revision for the specified schema ID, then checks the schema's min/maxAppVersion against the clientInfo.
@@ -512,7 +537,9 @@ public class UploadSchemaService {
         }
 
         // Call through to the DAO
-        return uploadSchemaDao.updateSchemaRevision(schemaToUpdate);
+        UploadSchema updatedSchema = uploadSchemaDao.updateSchemaRevision(schemaToUpdate);
+        immutableArtifactCache.invalidate(appId);
+        return updatedSchema;
     }
 
     // Helper method to get a map of fields by name for an Upload Schema. Returns a TreeMap so our error messaging has
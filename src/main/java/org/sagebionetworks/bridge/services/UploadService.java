@@ -441,7 +441,7 @@ public class UploadService {
         }
 
         // kick off upload validation
-        uploadValidationService.validateUpload(appId, upload);
+        uploadValidationService.validateUpload(appId, upload, redrive);
     }
     
     public void deleteUploadsForHealthCode(String healthCode) {
@@ -1,26 +1,57 @@
 package org.sagebionetworks.bridge.services;
 
 import javax.annotation.Nonnull;
-import javax.annotation.Resource;
-
-import java.util.concurrent.ExecutorService;
 
+import com.google.common.collect.ImmutableList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.dao.UploadDao;
 import org.sagebionetworks.bridge.models.upload.Upload;
+import org.sagebionetworks.bridge.models.upload.UploadStatus;
+import org.sagebionetworks.bridge.upload.UploadValidationExecutor;
 import org.sagebionetworks.bridge.upload.UploadValidationTask;
 import org.sagebionetworks.bridge.upload.UploadValidationTaskFactory;
 
 /** Service handler for upload validation. */
 @Component
 public class UploadValidationService {
-    private ExecutorService asyncExecutorService;
+    private static final Logger logger = LoggerFactory.getLogger(UploadValidationService.class);
+
+    private static final String CONFIG_KEY_SMALL_UPLOAD_BYTES = "upload.validation.small.upload.bytes";
+
+    // Package-scoped for unit tests.
+    static final String QUEUE_FULL_MESSAGE = "Upload validation queue is full. Upload must be redriven.";
+
+    private long smallUploadBytes;
+    private UploadDao uploadDao;
+    private UploadValidationExecutor uploadValidationExecutor;
     private UploadValidationTaskFactory taskFactory;
 
-    /** Async thread pool. This is configured by Spring. */
-    @Resource(name = "asyncExecutorService")
-    public void setAsyncExecutorService(ExecutorService asyncExecutorService) {
-        this.asyncExecutorService = asyncExecutorService;
+    /** Config, to get the size threshold for small uploads. */
+    @Autowired
+    public final void setBridgeConfig(BridgeConfig config) {
+        smallUploadBytes = config.getPropertyAsInt(CONFIG_KEY_SMALL_UPLOAD_BYTES);
+    }
+
+    /** Uploads at or below this size are validated at high priority. Separate setter so tests can change this. */
+    public final void setSmallUploadBytes(long smallUploadBytes) {
+        this.smallUploadBytes = smallUploadBytes;
+    }
+
+    /** Upload DAO, used to mark uploads for redrive if the validation queue is full. This is configured by Spring. */
+    @Autowired
+    public final void setUploadDao(UploadDao uploadDao) {
+        this.uploadDao = uploadDao;
+    }
+
+    /** Bounded upload validation thread pool. This is configured by Spring. */
+    @Autowired
+    public final void setUploadValidationExecutor(UploadValidationExecutor uploadValidationExecutor) {
+        this.uploadValidationExecutor = uploadValidationExecutor;
     }
 
     /** Task factory. This is configured by Spring. */
@@ -35,6 +66,11 @@ public class UploadValidationService {
      * method returns immediately. Call UploadService.getUpload() to check for validation status and messages.
      * </p>
      * <p>
+     * Redrives and small uploads are validated at high priority. If the validation queue is full, the upload is moved
+     * back to REQUESTED status, so that it can be validated when uploadComplete is called again or when the upload is
+     * redriven.
+     * </p>
+     * <p>
      * App and user comes from the controller and upload comes from UploadService.getUpload(), so none of the fields
      * are user input, so validation is not needed.
      * </p>
@@ -43,9 +79,17 @@ public class UploadValidationService {
      *         app this upload lives in
      * @param upload
      *         upload metadata object for the upload
+     * @param redrive
+     *         true if this upload is being redriven
      */
-    public void validateUpload(@Nonnull String appId, @Nonnull Upload upload) {
+    public void validateUpload(@Nonnull String appId, @Nonnull Upload upload, boolean redrive) {
         UploadValidationTask task = taskFactory.newTask(appId, upload);
-        asyncExecutorService.execute(task);
+        boolean highPriority = redrive || upload.getContentLength() <= smallUploadBytes;
+        if (!uploadValidationExecutor.submit(appId, task, highPriority)) {
+            logger.warn("Upload validation queue is full, marking upload " + upload.getUploadId() + " in app " +
+                    appId + " for redrive");
+            uploadDao.writeValidationStatus(upload, UploadStatus.REQUESTED, ImmutableList.of(QUEUE_FULL_MESSAGE),
+                    null);
+        }
     }
 }
@@ -67,6 +67,20 @@ public class ExternalIdControllerV4 extends BaseController {
         return externalIdService.getPagedExternalIds(session.getAppId(), studyId, idFilter, offsetByInt, pageSizeInt);
     }
 
+    // Requests that include an offsetKey (empty for the first page) are paged by key rather than by offset.
+    @GetMapping(path = "/v5/studies/{studyId}/externalids", params = "offsetKey")
+    public ForwardCursorPagedResourceList<ExternalIdentifierInfo> getExternalIdentifiersForStudyByOffsetKey(
+            @PathVariable String studyId, @RequestParam String offsetKey,
+            @RequestParam(required = false) String pageSize, @RequestParam(required = false) String idFilter) {
+        UserSession session = getAdministrativeSession();
+
+        IS_COORD_DEV_OR_RESEARCHER.checkAndThrow(STUDY_ID, studyId);
+
+        int pageSizeInt = getIntOrDefault(pageSize, API_DEFAULT_PAGE_SIZE);
+
+        return externalIdService.getExternalIdsAfter(session.getAppId(), studyId, idFilter, offsetKey, pageSizeInt);
+    }
+
     @PostMapping("/v4/externalids")
     @ResponseStatus(HttpStatus.CREATED)
     public StatusMessage createExternalIdentifier() {
@@ -0,0 +1,33 @@
+package org.sagebionetworks.bridge.spring.controllers;
+
+import static org.sagebionetworks.bridge.Roles.SUPERADMIN;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import org.sagebionetworks.bridge.services.MetricsAdminService;
+
+@CrossOrigin
+@RestController
+@RequestMapping("/v3/metrics")
+public class MetricsAdminController extends BaseController {
+
+    private MetricsAdminService metricsAdminService;
+
+    @Autowired
+    final void setMetricsAdminService(MetricsAdminService metricsAdminService) {
+        this.metricsAdminService = metricsAdminService;
+    }
+
+    @GetMapping
+    public JsonNode getMetrics(@RequestParam(required = false) String prefix) {
+        getAuthenticatedSession(SUPERADMIN);
+
+        return metricsAdminService.getMetrics(prefix);
+    }
+}
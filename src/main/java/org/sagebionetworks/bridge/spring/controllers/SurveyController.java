@@ -4,16 +4,23 @@ import static org.sagebionetworks.bridge.Roles.ADMIN;
 import static org.sagebionetworks.bridge.Roles.DEVELOPER;
 import static org.sagebionetworks.bridge.Roles.RESEARCHER;
 import static org.sagebionetworks.bridge.Roles.WORKER;
+import static org.springframework.http.HttpHeaders.ACCEPT_ENCODING;
+import static org.springframework.http.HttpHeaders.CONTENT_ENCODING;
+import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
+import static org.springframework.http.HttpHeaders.VARY;
+import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8;
 import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8_VALUE;
 
 import java.util.List;
 
 import javax.annotation.Resource;
 
+import com.google.common.base.Splitter;
 import com.google.common.base.Supplier;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -24,6 +31,7 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
 import org.sagebionetworks.bridge.cache.CacheKey;
+import org.sagebionetworks.bridge.cache.CachedView;
 import org.sagebionetworks.bridge.cache.ViewCache;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
@@ -43,6 +51,8 @@ public class SurveyController extends BaseController {
     static final String INCLUDE_DELETED = "includeDeleted";
     public static final String MOSTRECENT_KEY = "mostrecent";
     public static final String PUBLISHED_KEY = "published";
+    static final String GZIP = "gzip";
+    private static final Splitter ENCODING_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
 
     private SurveyService surveyService;
 
@@ -53,7 +63,7 @@ public class SurveyController extends BaseController {
         this.surveyService = surveyService;
     }
 
-    @Resource(name = "genericViewCache")
+    @Resource(name = "surveyViewCache")
     final void setViewCache(ViewCache viewCache) {
         this.viewCache = viewCache;
     }
@@ -99,18 +109,20 @@ public class SurveyController extends BaseController {
     }
 
     @GetMapping(path="/api/v2/surveys/{surveyGuid}/revisions/published", produces={APPLICATION_JSON_UTF8_VALUE})
-    public String getSurveyMostRecentlyPublishedVersionForUser(@PathVariable String surveyGuid) {
+    public ResponseEntity<byte[]> getSurveyMostRecentlyPublishedVersionForUser(@PathVariable String surveyGuid) {
         UserSession session = getAuthenticatedAndConsentedSession();
 
         return getCachedSurveyMostRecentlyPublishedInternal(surveyGuid, session);
     }
 
     @GetMapping(path="/v3/surveys/{surveyGuid}/revisions/{createdOn}", produces={APPLICATION_JSON_UTF8_VALUE})
-    public String getSurvey(@PathVariable String surveyGuid, @PathVariable String createdOn) throws Exception {
+    public ResponseEntity<byte[]> getSurvey(@PathVariable String surveyGuid, @PathVariable String createdOn)
+            throws Exception {
         UserSession session = getSessionEitherConsentedOrInRole(WORKER, DEVELOPER);
         if (session.isInRole(WORKER)) {
             // Worker accounts can access surveys across apps. We branch off and call getSurveyForWorker().
-            return MAPPER.writeValueAsString(getSurveyForWorker(surveyGuid, createdOn));
+            return ResponseEntity.ok().contentType(APPLICATION_JSON_UTF8)
+                    .body(MAPPER.writeValueAsBytes(getSurveyForWorker(surveyGuid, createdOn)));
         } else {
             return getCachedSurveyInternal(surveyGuid, createdOn, session);
         }
@@ -139,14 +151,14 @@ public class SurveyController extends BaseController {
     }
 
     @GetMapping(path="/api/v2/surveys/{surveyGuid}/revisions/{createdOn}", produces={APPLICATION_JSON_UTF8_VALUE})
-    public String getSurveyForUser(@PathVariable String surveyGuid, @PathVariable String createdOn) {
+    public ResponseEntity<byte[]> getSurveyForUser(@PathVariable String surveyGuid, @PathVariable String createdOn) {
         UserSession session = getAuthenticatedAndConsentedSession();
 
         return getCachedSurveyInternal(surveyGuid, createdOn, session);
     }
 
     @GetMapping(path="/v3/surveys/{surveyGuid}/revisions/recent", produces={APPLICATION_JSON_UTF8_VALUE})
-    public String getSurveyMostRecentVersion(@PathVariable String surveyGuid) {
+    public ResponseEntity<byte[]> getSurveyMostRecentVersion(@PathVariable String surveyGuid) {
         UserSession session = getAuthenticatedSession(DEVELOPER);
         String appId = session.getAppId();
 
@@ -158,7 +170,7 @@ public class SurveyController extends BaseController {
     }
 
     @GetMapping(path="/v3/surveys/{surveyGuid}/revisions/published", produces={APPLICATION_JSON_UTF8_VALUE})
-    public String getSurveyMostRecentlyPublishedVersion(@PathVariable String surveyGuid) {
+    public ResponseEntity<byte[]> getSurveyMostRecentlyPublishedVersion(@PathVariable String surveyGuid) {
         UserSession session = getSessionEitherConsentedOrInRole(DEVELOPER);
 
         return getCachedSurveyMostRecentlyPublishedInternal(surveyGuid, session);
@@ -268,7 +280,8 @@ public class SurveyController extends BaseController {
         return new GuidCreatedOnVersionHolderImpl(survey);
     }
 
-    private String getCachedSurveyInternal(String surveyGuid, String createdOnString, UserSession session) {
+    private ResponseEntity<byte[]> getCachedSurveyInternal(String surveyGuid, String createdOnString,
+            UserSession session) {
         long createdOn = DateUtils.convertToMillisFromEpoch(createdOnString);
         GuidCreatedOnVersionHolder keys = new GuidCreatedOnVersionHolderImpl(surveyGuid, createdOn);
 
@@ -280,7 +293,8 @@ public class SurveyController extends BaseController {
         });
     }
 
-    private String getCachedSurveyMostRecentlyPublishedInternal(String surveyGuid, UserSession session) {
+    private ResponseEntity<byte[]> getCachedSurveyMostRecentlyPublishedInternal(String surveyGuid,
+            UserSession session) {
         CacheKey cacheKey = viewCache.getCacheKey(Survey.class, surveyGuid, PUBLISHED_KEY,
                 session.getAppId());
 
@@ -289,10 +303,39 @@ public class SurveyController extends BaseController {
         });
     }
 
-    private String getView(CacheKey cacheKey, UserSession session, Supplier<Survey> supplier) {
-        return viewCache.getView(cacheKey, () -> {
+    /**
+     * Survey views are returned as they are cached. If the client already has this version of the survey, it gets a
+     * 304 with no body. Clients that accept gzip get the precompressed JSON, if the view has it.
+     */
+    private ResponseEntity<byte[]> getView(CacheKey cacheKey, UserSession session, Supplier<Survey> supplier) {
+        CachedView view = viewCache.getCachedView(cacheKey, () -> {
             return supplier.get();
         });
+        if (view.matches(request().getHeader(IF_NONE_MATCH))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(view.getEtag()).build();
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok().eTag(view.getEtag())
+                .contentType(APPLICATION_JSON_UTF8).header(VARY, ACCEPT_ENCODING);
+        if (view.getGzippedJson() != null && acceptsGzip(request().getHeader(ACCEPT_ENCODING))) {
+            return builder.header(CONTENT_ENCODING, GZIP).body(view.getGzippedJson());
+        }
+        return builder.body(view.getJson());
+    }
+
+    // Package-scoped for unit tests.
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String encoding : ENCODING_SPLITTER.split(acceptEncoding)) {
+            // Encodings may have a weight (eg "gzip;q=0.8"), where a weight of 0 means not acceptable.
+            String[] parts = encoding.split(";");
+            String name = parts[0].trim();
+            if (GZIP.equalsIgnoreCase(name) || "*".equals(name)) {
+                return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
     }
 
     private void expireCache(String surveyGuid, String createdOnString, String appId) {
@@ -26,6 +26,7 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.exceptions.ConsentRequiredException;
+import org.sagebionetworks.bridge.exceptions.LimitExceededException;
 import org.sagebionetworks.bridge.exceptions.NoStackTraceException;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.models.accounts.UserSessionInfo;
@@ -38,6 +39,8 @@ public class BridgeExceptionHandler {
     public static final Set<String> UNEXPOSED_FIELD_NAMES = ImmutableSet.of("stackTrace", "localizedMessage",
             "suppressed", "cause", "errorType", "errorMessage", "retryable", "requestId", "serviceName", "httpHeaders",
             "errorCode", "rawResponse", "rawResponseContent");
+    
+    static final String RETRY_AFTER_HEADER = "Retry-After";
 
     // Member instance to enable mocking for tests.
     private Logger log = LoggerFactory.getLogger(BridgeExceptionHandler.class);
@@ -99,9 +102,16 @@ public class BridgeExceptionHandler {
         node.put("type", type);
         node.remove(UNEXPOSED_FIELD_NAMES);
         
-        return ResponseEntity.status(status)
-                .header(CONTENT_TYPE_HEADER, CONTENT_TYPE_JSON)
-                .body(node.toString());
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(status)
+                .header(CONTENT_TYPE_HEADER, CONTENT_TYPE_JSON);
+        // Tell the caller when to try again, if we know.
+        if (throwable instanceof LimitExceededException) {
+            Integer retryAfterSeconds = ((LimitExceededException)throwable).getRetryAfterSeconds();
+            if (retryAfterSeconds != null) {
+                builder.header(RETRY_AFTER_HEADER, retryAfterSeconds.toString());
+            }
+        }
+        return builder.body(node.toString());
     }
     
     private String getType(final Throwable throwable, final ObjectNode node) {
@@ -0,0 +1,90 @@
+package org.sagebionetworks.bridge.upload;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * The attachment uploads started while processing a single upload. UploadFileHelper starts each attachment upload in
+ * the background and adds it to the batch. The upload validation handler must call {@link #await} before it finishes,
+ * so that the record isn't written until all of its attachments are in S3, and so that the upload's files aren't
+ * cleaned up while they're still being uploaded.
+ */
+public class AttachmentUploadBatch {
+    private final String uploadId;
+    private final Map<String, Future<?>> futuresByFilename = new LinkedHashMap<>();
+    private volatile boolean cancelled;
+
+    /** Creates an empty batch for the given upload. */
+    public AttachmentUploadBatch(String uploadId) {
+        this.uploadId = uploadId;
+    }
+
+    /** Adds an attachment upload to this batch. */
+    void add(String attachmentFilename, Future<?> future) {
+        checkNotNull(attachmentFilename);
+        checkNotNull(future);
+        futuresByFilename.put(attachmentFilename, future);
+    }
+
+    /** True if the batch was cancelled. Attachment uploads that haven't started yet check this and do nothing. */
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** Number of attachment uploads in this batch. */
+    public int size() {
+        return futuresByFilename.size();
+    }
+
+    /**
+     * Waits for all attachment uploads in this batch to finish. If any of them failed, this throws after all of them
+     * are done.
+     *
+     * @throws UploadValidationException
+     *         if any attachment upload failed, with the first failure as the cause
+     */
+    public void await() throws UploadValidationException {
+        UploadValidationException firstException = null;
+        for (Map.Entry<String, Future<?>> entry : futuresByFilename.entrySet()) {
+            try {
+                entry.getValue().get();
+            } catch (ExecutionException ex) {
+                if (firstException == null) {
+                    firstException = new UploadValidationException("Error uploading attachment, uploadId=" +
+                            uploadId + ", attachment=" + entry.getKey(), ex.getCause());
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new UploadValidationException("Interrupted waiting for attachment uploads, uploadId=" +
+                        uploadId, ex);
+            }
+        }
+        if (firstException != null) {
+            throw firstException;
+        }
+    }
+
+    /**
+     * Cancels the attachment uploads in this batch that haven't started yet, and waits for the ones in progress to
+     * finish. Failures are ignored. Handlers call this when they finish, whether or not they succeeded, so that no
+     * attachments are still being uploaded for a record that won't be written. Once the batch has been awaited, this
+     * does nothing.
+     */
+    public void cancel() {
+        cancelled = true;
+        for (Future<?> future : futuresByFilename.values()) {
+            try {
+                future.get();
+            } catch (ExecutionException ex) {
+                // Already reported by await(), or the record failed anyway.
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -126,7 +126,7 @@ public class GenericUploadFormatHandler implements UploadValidationHandler {
             // Get survey. We use the survey identifier as the schema ID and the schema revision. Both of these must be
             // specified.
             GuidCreatedOnVersionHolder surveyKeys = new GuidCreatedOnVersionHolderImpl(surveyGuid, surveyCreatedOnMillis);
-            Survey survey = surveyService.getSurvey(appId, surveyKeys, false, true);
+            Survey survey = surveyService.getCachedSurvey(appId, surveyKeys);
             String surveySchemaId = survey.getIdentifier();
             Integer surveySchemaRev = survey.getSchemaRevision();
             if (StringUtils.isBlank(surveySchemaId) || surveySchemaRev == null) {
@@ -136,7 +136,7 @@ public class GenericUploadFormatHandler implements UploadValidationHandler {
 
             // Get the schema with the schema ID and rev.
             // Note that if there's no schema, we treat this like schemaless.
-            return uploadSchemaService.getUploadSchemaByIdAndRevNoThrow(appId, surveySchemaId, surveySchemaRev);
+            return uploadSchemaService.getCachedUploadSchemaByIdAndRev(appId, surveySchemaId, surveySchemaRev);
         }
 
         // Fall back to getting by schema.
@@ -144,7 +144,7 @@ public class GenericUploadFormatHandler implements UploadValidationHandler {
         Integer schemaRev = JsonUtils.asInt(infoJson, UploadUtil.FIELD_SCHEMA_REV);
         if (StringUtils.isNotBlank(schemaId) && schemaRev != null) {
             // Note that if there's no schema, we treat this like schemaless.
-            return uploadSchemaService.getUploadSchemaByIdAndRevNoThrow(appId, schemaId, schemaRev);
+            return uploadSchemaService.getCachedUploadSchemaByIdAndRev(appId, schemaId, schemaRev);
         } else {
             // Schemaless.
             return null;
@@ -208,39 +208,49 @@ public class GenericUploadFormatHandler implements UploadValidationHandler {
 
         Map<String, File> sanitizedUnzippedDataFileMap = UploadUtil.sanitizeFieldNames(unzippedDataFileMap);
         Map<String, Map<String, JsonNode>> parsedSanitizedJsonFileCache = new HashMap<>();
+        AttachmentUploadBatch attachmentBatch = new AttachmentUploadBatch(uploadId);
 
-        // Using schema, copy fields over to data map. Or if it's an attachment, add it to the attachment map.
-        for (UploadFieldDefinition oneFieldDef : schema.getFieldDefinitions()) {
-            String fieldName = oneFieldDef.getName();
-            JsonNode fieldNode;
+        try {
+            // Using schema, copy fields over to data map. Or if it's an attachment, add it to the attachment map.
+            for (UploadFieldDefinition oneFieldDef : schema.getFieldDefinitions()) {
+                String fieldName = oneFieldDef.getName();
+                JsonNode fieldNode;
 
-            if (dataFileNode.has(fieldName)) {
-                // If it's in the submitted data file, just use it.
-                JsonNode fieldNodeFromDataFile = dataFileNode.get(fieldName);
+                if (dataFileNode.has(fieldName)) {
+                    // If it's in the submitted data file, just use it.
+                    JsonNode fieldNodeFromDataFile = dataFileNode.get(fieldName);
 
-                if (UploadFieldType.ATTACHMENT_TYPE_SET.contains(oneFieldDef.getType())) {
-                    fieldNode = uploadFileHelper.uploadJsonNodeAsAttachment(fieldNodeFromDataFile, uploadId,
-                            fieldName);
+                    if (UploadFieldType.ATTACHMENT_TYPE_SET.contains(oneFieldDef.getType())) {
+                        fieldNode = uploadFileHelper.uploadJsonNodeAsAttachment(fieldNodeFromDataFile, uploadId,
+                                fieldName, attachmentBatch);
+                    } else {
+                        fieldNode = fieldNodeFromDataFile;
+                    }
                 } else {
-                    fieldNode = fieldNodeFromDataFile;
+                    fieldNode = uploadFileHelper.findValueForField(uploadId, sanitizedUnzippedDataFileMap, oneFieldDef,
+                            parsedSanitizedJsonFileCache, attachmentBatch);
                 }
-            } else {
-                fieldNode = uploadFileHelper.findValueForField(uploadId, sanitizedUnzippedDataFileMap, oneFieldDef,
-                        parsedSanitizedJsonFileCache);
-            }
 
-            if (fieldNode != null && !fieldNode.isNull()) {
-                dataMap.set(fieldName, fieldNode);
-            } else if (UploadUtil.FIELD_ANSWERS.equals(fieldName) && !dataFileNode.isNull()) {
-                // Special case: This is the auto-generated "answers" field for surveys. Since surveys are usually
-                // submitted using the dataFile, this should be populated by just copying over the dataFile.
-                if (UploadFieldType.ATTACHMENT_TYPE_SET.contains(oneFieldDef.getType())) {
-                    fieldNode = uploadFileHelper.uploadJsonNodeAsAttachment(dataFileNode, uploadId, fieldName);
-                } else {
-                    fieldNode = dataFileNode;
+                if (fieldNode != null && !fieldNode.isNull()) {
+                    dataMap.set(fieldName, fieldNode);
+                } else if (UploadUtil.FIELD_ANSWERS.equals(fieldName) && !dataFileNode.isNull()) {
+                    // Special case: This is the auto-generated "answers" field for surveys. Since surveys are usually
+                    // submitted using the dataFile, this should be populated by just copying over the dataFile.
+                    if (UploadFieldType.ATTACHMENT_TYPE_SET.contains(oneFieldDef.getType())) {
+                        fieldNode = uploadFileHelper.uploadJsonNodeAsAttachment(dataFileNode, uploadId, fieldName,
+                                attachmentBatch);
+                    } else {
+                        fieldNode = dataFileNode;
+                    }
+                    dataMap.set(fieldName, fieldNode);
                 }
-                dataMap.set(fieldName, fieldNode);
             }
+
+            // Attachments are uploaded in parallel. Wait for all of them before the record is written.
+            attachmentBatch.await();
+        } finally {
+            // If anything failed, don't leave attachments uploading for a record that won't be written.
+            attachmentBatch.cancel();
         }
     }
 }
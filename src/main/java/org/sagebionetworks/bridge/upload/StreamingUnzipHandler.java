@@ -0,0 +1,128 @@
+package org.sagebionetworks.bridge.upload;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Resource;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.S3Object;
+import com.google.common.io.ByteStreams;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.TeeInputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.config.BridgeConfigFactory;
+import org.sagebionetworks.bridge.file.FileHelper;
+import org.sagebionetworks.bridge.models.upload.Upload;
+import org.sagebionetworks.bridge.services.UploadArchiveService;
+
+/**
+ * <p>
+ * Validation handler which downloads, decrypts, and unzips the upload in a single pass. This replaces the chain of
+ * {@link S3DownloadHandler}, {@link DecryptHandler}, and {@link UnzipHandler}, which each write a full copy of the
+ * upload to the temp dir before the next handler reads it back.
+ * </p>
+ * <p>
+ * The S3 object stream is piped through decryption and then through the unzipper. The decrypted bytes are also teed
+ * into {@link org.sagebionetworks.bridge.upload.UploadValidationContext#setDecryptedDataFile}, since
+ * UploadRawZipHandler still needs the decrypted archive. The encrypted file is never written to disk, and
+ * {@link org.sagebionetworks.bridge.upload.UploadValidationContext#getDataFile} is left unset.
+ * </p>
+ */
+@Component
+public class StreamingUnzipHandler implements UploadValidationHandler {
+    private static final String UPLOAD_BUCKET = BridgeConfigFactory.getConfig().getProperty("upload.bucket");
+
+    private FileHelper fileHelper;
+    private AmazonS3 s3Client;
+    private UploadArchiveService uploadArchiveService;
+
+    /** File helper, used to create the decrypted and unzipped files and to get file streams. */
+    @Autowired
+    public final void setFileHelper(FileHelper fileHelper) {
+        this.fileHelper = fileHelper;
+    }
+
+    /** S3 client, used to stream the upload from S3. This is configured by Spring. */
+    @Resource(name = "s3Client")
+    public final void setS3Client(AmazonS3 s3Client) {
+        this.s3Client = s3Client;
+    }
+
+    /** Upload archive service, which handles decrypting and unzipping of files. This is configured by Spring. */
+    @Autowired
+    public final void setUploadArchiveService(UploadArchiveService uploadArchiveService) {
+        this.uploadArchiveService = uploadArchiveService;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void handle(@Nonnull UploadValidationContext context) throws UploadValidationException {
+        Upload upload = context.getUpload();
+        Map<String, File> unzippedDataFileMap = new HashMap<>();
+        context.setUnzippedDataFileMap(unzippedDataFileMap);
+
+        // Temp file name in the form "[uploadId]-decrypted"
+        File decryptedFile = fileHelper.newFile(context.getTempDir(), context.getUploadId() + "-decrypted");
+
+        // Note: Neither FileHelper, the S3 client, nor CmsEncryptor introduce any buffering. Since we're creating and
+        // closing streams, it's our responsibility to add the buffered streams.
+        try (S3Object s3Object = s3Client.getObject(UPLOAD_BUCKET, upload.getObjectId());
+             InputStream s3InputStream = getBufferedInputStream(s3Object.getObjectContent());
+             InputStream decryptedInputStream = upload.isEncrypted() ?
+                     uploadArchiveService.decrypt(context.getAppId(), s3InputStream) : s3InputStream;
+             OutputStream decryptedOutputStream = new BufferedOutputStream(fileHelper.getOutputStream(
+                     decryptedFile));
+             InputStream teeInputStream = new TeeInputStream(decryptedInputStream, decryptedOutputStream)) {
+            if (upload.isZipped()) {
+                // The unzipper closes the stream it's given. Shield the tee stream so we can finish draining it.
+                uploadArchiveService.unzip(new CloseShieldInputStream(teeInputStream),
+                        entryName -> {
+                            File unzippedFile = fileHelper.newFile(context.getTempDir(), entryName);
+                            unzippedDataFileMap.put(entryName, unzippedFile);
+                            try {
+                                return fileHelper.getOutputStream(unzippedFile);
+                            } catch (FileNotFoundException ex) {
+                                // Function doesn't throw, so wrap this in a RuntimeException.
+                                throw new RuntimeException(ex);
+                            }
+                        },
+                        (entryName, outputStream) -> {
+                            try {
+                                outputStream.close();
+                            } catch (IOException ex) {
+                                // BiConsumer doesn't throw, so wrap this in a RuntimeException.
+                                throw new RuntimeException(ex);
+                            }
+                        });
+            }
+
+            // ZipInputStream stops reading at the central directory. Drain the rest of the stream so that the
+            // decrypted file is complete.
+            ByteStreams.exhaust(teeInputStream);
+        } catch (IOException ex) {
+            throw new UploadValidationException("Error streaming upload: " + ex.getMessage(), ex);
+        }
+
+        context.setDecryptedDataFile(decryptedFile);
+        if (!upload.isZipped()) {
+            // Shortcut: If this isn't a zip file, then the decrypted data file is the only entry in our map.
+            unzippedDataFileMap.put(upload.getFilename(), decryptedFile);
+        }
+    }
+
+    // This helper method wraps a stream inside a buffered stream. Package-scoped so unit tests can bypass the
+    // buffering, similar to DecryptHandler.
+    InputStream getBufferedInputStream(InputStream inputStream) {
+        return new BufferedInputStream(inputStream);
+    }
+}
@@ -15,6 +15,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.models.apps.App;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
 import org.sagebionetworks.bridge.models.upload.UploadFieldDefinition;
@@ -83,7 +84,11 @@ public class StrictValidationHandler implements UploadValidationHandler {
         int schemaRev = record.getSchemaRevision();
 
         // get schema
-        UploadSchema schema = uploadSchemaService.getUploadSchemaByIdAndRev(context.getAppId(), schemaId, schemaRev);
+        UploadSchema schema = uploadSchemaService.getCachedUploadSchemaByIdAndRev(context.getAppId(), schemaId,
+                schemaRev);
+        if (schema == null) {
+            throw new EntityNotFoundException(UploadSchema.class, "Can't find schema " + schemaId + "-v" + schemaRev);
+        }
         List<UploadFieldDefinition> fieldDefList = schema.getFieldDefinitions();
 
         List<String> errorList = validateAllFields(fieldDefList, recordDataNode);
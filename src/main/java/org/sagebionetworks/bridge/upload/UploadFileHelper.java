@@ -5,14 +5,19 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
 
 import javax.annotation.Resource;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.transfer.TransferManager;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.TextNode;
 import com.google.common.base.Charsets;
-import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,8 +33,15 @@ import org.sagebionetworks.bridge.s3.S3Helper;
 import org.sagebionetworks.bridge.schema.SchemaUtils;
 
 /**
+ * <p>
  * Utility helper class for uploads, which wraps FileHelper and S3Helper and handles various tasks of parsing files and
  * uploading attachments.
+ * </p>
+ * <p>
+ * Attachments are uploaded in parallel on the shared attachment upload executor. Callers pass in an
+ * {@link AttachmentUploadBatch} and must await it before writing the record. Attachment files larger than the multipart
+ * threshold are uploaded with multipart upload.
+ * </p>
  */
 @Component
 public class UploadFileHelper {
@@ -39,12 +51,26 @@ public class UploadFileHelper {
     static final String ATTACHMENT_BUCKET = BridgeConfigFactory.getConfig().getProperty("attachment.bucket");
     static final String KEY_CUSTOM_CONTENT_MD5 = "Custom-Content-MD5";
 
+    /** Attachment files larger than this are uploaded with multipart upload. */
+    public static final long MULTIPART_THRESHOLD_BYTES = 16L * 1024 * 1024;
+
+    private ExecutorService attachmentUploadExecutorService;
     private FileHelper fileHelper;
     private int inlineFileSizeLimit = UploadUtil.FILE_SIZE_LIMIT_INLINE_FIELD;
-    private DigestUtils md5DigestUtils;
+    private long multipartThresholdBytes = MULTIPART_THRESHOLD_BYTES;
     private int parsedJsonFileSizeLimit = UploadUtil.FILE_SIZE_LIMIT_PARSED_JSON;
     private int parsedJsonWarningLimit = UploadUtil.WARNING_LIMIT_PARSED_JSON;
     private S3Helper s3Helper;
+    private TransferManager transferManager;
+
+    /**
+     * Bounded executor shared by all upload validation tasks, used to upload attachments in parallel. If this is not
+     * set, attachments are uploaded on the calling thread.
+     */
+    @Resource(name = "attachmentUploadExecutorService")
+    public final void setAttachmentUploadExecutorService(ExecutorService attachmentUploadExecutorService) {
+        this.attachmentUploadExecutorService = attachmentUploadExecutorService;
+    }
 
     /** File helper, used to check file sizes before parsing them into memory. */
     @Autowired
@@ -57,10 +83,9 @@ public class UploadFileHelper {
         this.inlineFileSizeLimit = inlineFileSizeLimit;
     }
 
-    /** Used to calculate the MD5 hash, used to submit S3 file metadata. */
-    @Resource(name = "md5DigestUtils")
-    public final void setMd5DigestUtils(DigestUtils md5DigestUtils) {
-        this.md5DigestUtils = md5DigestUtils;
+    /** Sets the size above which attachment files use multipart upload. This setter is to allow unit tests to override. */
+    final void setMultipartThresholdBytes(long multipartThresholdBytes) {
+        this.multipartThresholdBytes = multipartThresholdBytes;
     }
 
     /** Sets the file size limit for parsed JSON files. This setter is to allow unit tests to override. */
@@ -81,6 +106,30 @@ public class UploadFileHelper {
         this.s3Helper = s3Helper;
     }
 
+    /** Transfer manager, used to upload large attachments with multipart upload. */
+    @Resource(name = "attachmentTransferManager")
+    public final void setTransferManager(TransferManager transferManager) {
+        this.transferManager = transferManager;
+    }
+
+    /**
+     * Same as {@link #findValueForField(String, Map, UploadFieldDefinition, Map, AttachmentUploadBatch)}, but waits
+     * for the attachment upload (if any) to finish before returning.
+     */
+    public JsonNode findValueForField(String uploadId, Map<String, File> sanitizedUnzippedDataFileMap,
+            UploadFieldDefinition fieldDef, Map<String, Map<String, JsonNode>> parsedSanitizedJsonFileCache)
+            throws UploadValidationException {
+        AttachmentUploadBatch attachmentBatch = new AttachmentUploadBatch(uploadId);
+        try {
+            JsonNode fieldNode = findValueForField(uploadId, sanitizedUnzippedDataFileMap, fieldDef,
+                    parsedSanitizedJsonFileCache, attachmentBatch);
+            attachmentBatch.await();
+            return fieldNode;
+        } finally {
+            attachmentBatch.cancel();
+        }
+    }
+
     /**
      * Given some upload parameters and a list of files, find the value that matches the given upload schema field. The
      * field definition could refer to a file, or it can refer to the top-level key within a JSON file.
@@ -95,13 +144,16 @@ public class UploadFileHelper {
      *         a cache of parsed sanitized JSON nodes, so that we don't have to parse and sanitize any JSON file more
      *         than once; the caller should initially pass in an empty writable map and reuse the same map for
      *         subsequent calls in a single upload
+     * @param attachmentBatch
+     *         if the field is an attachment, the attachment upload is started in the background and added to this
+     *         batch; the caller must await the batch before writing the record
      * @return the JSON node that matches field, or a TextNode with the attachment ID if it's an attachment
      * @throws UploadValidationException
-     *         if parsing JSON files or uploading attachments fails
+     *         if parsing JSON files fails
      */
     public JsonNode findValueForField(String uploadId, Map<String, File> sanitizedUnzippedDataFileMap,
-            UploadFieldDefinition fieldDef, Map<String, Map<String, JsonNode>> parsedSanitizedJsonFileCache)
-            throws UploadValidationException {
+            UploadFieldDefinition fieldDef, Map<String, Map<String, JsonNode>> parsedSanitizedJsonFileCache,
+            AttachmentUploadBatch attachmentBatch) throws UploadValidationException {
         String fieldName = fieldDef.getName();
         boolean isAttachment = UploadFieldType.ATTACHMENT_TYPE_SET.contains(fieldDef.getType());
         JsonNode fieldNode;
@@ -115,13 +167,10 @@ public class UploadFileHelper {
                     // Case 1a: The whole file is an attachment. Upload the file. Field JSON is attachment filename.
                     String attachmentFilename = uploadId + '-' + fieldName;
                     fieldNode = TextNode.valueOf(attachmentFilename);
-
-                    try {
+                    submitAttachmentUpload(attachmentBatch, attachmentFilename, () -> {
                         uploadFileAsAttachment(attachmentFilename, fieldFile);
-                    } catch (IOException ex) {
-                        throw new UploadValidationException("Error uploading file as attachment, uploadId=" +
-                                uploadId + ", fieldName=" + fieldName, ex);
-                    }
+                        return null;
+                    });
                 } else {
                     // Case 1b: The file is an empty attachment. Skip and return null.
                     fieldNode = null;
@@ -212,7 +261,7 @@ public class UploadFileHelper {
                 fieldNode = null;
             } else if (isAttachment) {
                 // Case 2b: This is an attachment. Write the found value as bytes and upload it.
-                fieldNode = uploadJsonNodeAsAttachment(foundValue, uploadId, fieldName);
+                fieldNode = uploadJsonNodeAsAttachment(foundValue, uploadId, fieldName, attachmentBatch);
             } else {
                 // Case 2c: Not an attachment. The field value is just the value we found.
                 fieldNode = foundValue;
@@ -224,27 +273,48 @@ public class UploadFileHelper {
 
     /**
      * Uploads a JSON node as an upload attachment, then returns a JsonNode containing the attachment's filename in S3,
-     * ready for use in a health data record.
+     * ready for use in a health data record. Waits for the upload to finish before returning.
      */
     public JsonNode uploadJsonNodeAsAttachment(JsonNode node, String uploadId, String fieldName)
             throws UploadValidationException {
+        AttachmentUploadBatch attachmentBatch = new AttachmentUploadBatch(uploadId);
+        JsonNode attachmentNode = uploadJsonNodeAsAttachment(node, uploadId, fieldName, attachmentBatch);
+        attachmentBatch.await();
+        return attachmentNode;
+    }
+
+    /**
+     * Starts uploading a JSON node as an upload attachment in the background, adding the upload to the given batch.
+     * Returns a JsonNode containing the attachment's filename in S3, ready for use in a health data record.
+     */
+    public JsonNode uploadJsonNodeAsAttachment(JsonNode node, String uploadId, String fieldName,
+            AttachmentUploadBatch attachmentBatch) {
         String filename = uploadId + '-' + fieldName;
-        String jsonText = node.toString();
-        
-        try {
-            uploadBytesAsAttachment(filename, jsonText.getBytes(Charsets.UTF_8));
-        } catch (IOException ex) {
-            throw new UploadValidationException("Error writing attachment to S3, uploadId=" + uploadId +
-                    ", fieldName=" + fieldName, ex);
-        }
+        byte[] bytes = node.toString().getBytes(Charsets.UTF_8);
+        submitAttachmentUpload(attachmentBatch, filename, () -> {
+            uploadBytesAsAttachment(filename, bytes);
+            return null;
+        });
         return TextNode.valueOf(filename);
     }
 
+    // Runs the attachment upload on the attachment upload executor and adds it to the batch. Failures are reported
+    // when the batch is awaited.
+    private void submitAttachmentUpload(AttachmentUploadBatch attachmentBatch, String filename,
+            Callable<Void> upload) {
+        FutureTask<Void> task = new FutureTask<>(() -> attachmentBatch.isCancelled() ? null : upload.call());
+        if (attachmentUploadExecutorService != null) {
+            attachmentUploadExecutorService.execute(task);
+        } else {
+            task.run();
+        }
+        attachmentBatch.add(filename, task);
+    }
+
     /** Upload bytes to the attachment bucket and apply the correct metadata. */
     public void uploadBytesAsAttachment(String filename, byte[] bytes) throws IOException {
         // Calculate MD5 (hex-encoded).
-        byte[] md5 = md5DigestUtils.digest(bytes);
-        String md5HexEncoded = Hex.encodeHexString(md5);
+        String md5HexEncoded = DigestUtils.md5Hex(bytes);
 
         // S3 Metadata must include encryption and MD5. Note that for some reason setContentMD5() doesn't work, so we
         // have to use addUserMetadata().
@@ -256,9 +326,13 @@ public class UploadFileHelper {
 
     /** Upload a file to the attachment bucket and apply the correct metadata. */
     public void uploadFileAsAttachment(String filename, File file) throws IOException {
-        // Calculate MD5 (hex-encoded).
-        byte[] md5 = md5DigestUtils.digest(file);
-        String md5HexEncoded = Hex.encodeHexString(md5);
+        // Calculate MD5 (hex-encoded). The MD5 goes into the object metadata, which S3 needs before the upload starts,
+        // so this is a separate pass over the file. DigestUtils.md5Hex() uses a new MessageDigest for each call, so
+        // this is safe to call from multiple threads.
+        String md5HexEncoded;
+        try (InputStream fileInputStream = fileHelper.getInputStream(file)) {
+            md5HexEncoded = DigestUtils.md5Hex(fileInputStream);
+        }
 
         // S3 Metadata must include encryption and MD5. Note that for some reason setContentMD5() doesn't work, so we
         // have to use addUserMetadata().
@@ -266,6 +340,20 @@ public class UploadFileHelper {
         LOG.info("Writing MD5 for attachment " + filename + ": " + md5HexEncoded);
         metadata.addUserMetadata(KEY_CUSTOM_CONTENT_MD5, md5HexEncoded);
         metadata.setSSEAlgorithm(ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION);
-        s3Helper.writeFileToS3(ATTACHMENT_BUCKET, filename, file, metadata);
+
+        if (fileHelper.fileSize(file) > multipartThresholdBytes) {
+            // Large attachment. Upload the parts in parallel with multipart upload.
+            PutObjectRequest request = new PutObjectRequest(ATTACHMENT_BUCKET, filename, file).withMetadata(metadata);
+            try {
+                transferManager.upload(request).waitForCompletion();
+            } catch (AmazonClientException ex) {
+                throw new IOException("Error in multipart upload of attachment " + filename, ex);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted in multipart upload of attachment " + filename, ex);
+            }
+        } else {
+            s3Helper.writeFileToS3(ATTACHMENT_BUCKET, filename, file, metadata);
+        }
     }
 }
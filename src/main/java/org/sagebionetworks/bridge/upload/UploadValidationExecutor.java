@@ -0,0 +1,225 @@
+package org.sagebionetworks.bridge.upload;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+
+/**
+ * <p>
+ * Dedicated executor for upload validation tasks. Unlike the shared async executor, this executor has a bounded queue,
+ * so a flood of uploads can't grow the heap without limit.
+ * </p>
+ * <p>
+ * Queued tasks are scheduled round-robin across apps, so one app with many uploads can't starve the others. There are
+ * two priority levels. High priority tasks (redrives and small uploads) are always scheduled before normal priority
+ * tasks.
+ * </p>
+ */
+@Component
+public class UploadValidationExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(UploadValidationExecutor.class);
+
+    private static final String CONFIG_KEY_MAX_QUEUE_SIZE = "upload.validation.max.queue.size";
+    private static final String CONFIG_KEY_THREAD_COUNT = "upload.validation.thread.count";
+
+    // Package-scoped for unit tests.
+    static final String METRIC_ACTIVE = "upload.validation.executor.active";
+    static final String METRIC_QUEUED = "upload.validation.executor.queued";
+    static final String METRIC_REJECTED = "upload.validation.executor.rejected";
+
+    // Queued tasks, keyed by app ID. The iteration order of each map is the round-robin order of the apps.
+    private final LinkedHashMap<String, Deque<Runnable>> highPriorityQueues = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Deque<Runnable>> normalPriorityQueues = new LinkedHashMap<>();
+    private final Lock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private int queuedCount;
+
+    private int maxQueueSize;
+    private int threadCount;
+    private Counter rejectedCounter;
+    private ExecutorService workerPool;
+
+    /** Config, to get the thread count and max queue size. */
+    @Autowired
+    public final void setBridgeConfig(BridgeConfig config) {
+        maxQueueSize = config.getPropertyAsInt(CONFIG_KEY_MAX_QUEUE_SIZE);
+        threadCount = config.getPropertyAsInt(CONFIG_KEY_THREAD_COUNT);
+    }
+
+    /** Metric registry, used to report active, queued, and rejected task counts. This is configured by Spring. */
+    @Autowired
+    public final void setMetricRegistry(MetricRegistry metricRegistry) {
+        metricRegistry.register(METRIC_ACTIVE, (Gauge<Integer>) activeCount::get);
+        metricRegistry.register(METRIC_QUEUED, (Gauge<Integer>) this::getQueuedCount);
+        rejectedCounter = metricRegistry.counter(METRIC_REJECTED);
+    }
+
+    /** Max number of tasks that can be queued. Separate setter so that tests can change this value. */
+    public final void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    /** Number of worker threads. Separate setter so that tests can change this value. */
+    public final void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    /** Starts the worker threads. This is called by Spring. */
+    @PostConstruct
+    public void start() {
+        workerPool = Executors.newFixedThreadPool(threadCount, new ThreadFactoryBuilder()
+                .setNameFormat("upload-validation-%d").setDaemon(true).build());
+        for (int i = 0; i < threadCount; i++) {
+            workerPool.execute(this::runWorker);
+        }
+    }
+
+    /** Stops the worker threads. Tasks that are still queued are abandoned. This is called by Spring. */
+    @PreDestroy
+    public void shutdown() {
+        if (workerPool != null) {
+            workerPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Queues the given task for execution.
+     *
+     * @param appId
+     *         app the task belongs to, used for fair scheduling across apps
+     * @param task
+     *         task to execute
+     * @param highPriority
+     *         true if the task should be scheduled before normal priority tasks
+     * @return true if the task was queued, false if the queue is full and the task was rejected
+     */
+    public boolean submit(@Nonnull String appId, @Nonnull Runnable task, boolean highPriority) {
+        checkNotNull(appId);
+        checkNotNull(task);
+
+        lock.lock();
+        try {
+            if (queuedCount >= maxQueueSize) {
+                if (rejectedCounter != null) {
+                    rejectedCounter.inc();
+                }
+                return false;
+            }
+            LinkedHashMap<String, Deque<Runnable>> queues = highPriority ? highPriorityQueues : normalPriorityQueues;
+            queues.computeIfAbsent(appId, key -> new ArrayDeque<>()).add(task);
+            queuedCount++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Number of tasks currently waiting in the queue. */
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return queuedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Removes and returns the next task to run, or returns null if the queue is empty. Package-scoped for tests. */
+    Runnable poll() {
+        lock.lock();
+        try {
+            Runnable task = pollRoundRobin(highPriorityQueues);
+            if (task == null) {
+                task = pollRoundRobin(normalPriorityQueues);
+            }
+            if (task != null) {
+                queuedCount--;
+            }
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Takes the next task from the first app in the rotation, then moves that app to the back of the rotation.
+    // Must be called while holding the lock.
+    private static Runnable pollRoundRobin(LinkedHashMap<String, Deque<Runnable>> queues) {
+        Iterator<Map.Entry<String, Deque<Runnable>>> iterator = queues.entrySet().iterator();
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        Map.Entry<String, Deque<Runnable>> entry = iterator.next();
+        iterator.remove();
+
+        Deque<Runnable> appQueue = entry.getValue();
+        Runnable task = appQueue.poll();
+        if (!appQueue.isEmpty()) {
+            queues.put(entry.getKey(), appQueue);
+        }
+        return task;
+    }
+
+    // Blocks until a task is available, then returns it.
+    private Runnable take() throws InterruptedException {
+        lock.lock();
+        try {
+            Runnable task = poll();
+            while (task == null) {
+                notEmpty.await();
+                task = poll();
+            }
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runWorker() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Runnable task;
+            try {
+                task = take();
+            } catch (InterruptedException ex) {
+                // Executor is shutting down.
+                return;
+            }
+
+            activeCount.incrementAndGet();
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                // UploadValidationTask handles its own exceptions, so this should never happen. But if it does, log it
+                // and keep the worker alive.
+                logger.error("Unexpected exception in upload validation executor: " + ex.getMessage(), ex);
+            } finally {
+                activeCount.decrementAndGet();
+            }
+        }
+    }
+}
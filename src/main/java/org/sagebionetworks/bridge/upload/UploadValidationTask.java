@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Stopwatch;
 
 import org.sagebionetworks.bridge.file.FileHelper;
@@ -23,10 +24,14 @@ import org.sagebionetworks.bridge.models.upload.UploadStatus;
 public class UploadValidationTask implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(UploadValidationTask.class);
 
+    // Package-scoped for unit tests.
+    static final String METRIC_PREFIX = "upload.validation";
+
     private final UploadValidationContext context;
 
     private FileHelper fileHelper;
     private List<UploadValidationHandler> handlerList;
+    private MetricRegistry metricRegistry;
     private UploadDao uploadDao;
     private HealthDataService healthDataService;
 
@@ -72,6 +77,19 @@ public class UploadValidationTask implements Runnable {
         return handlerList;
     }
 
+    /**
+     * Metric registry, for recording per-handler latency and success/failure counts. This is configured by Spring
+     * through the task factory.
+     */
+    public final void setMetricRegistry(MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
+    /** This is package-scoped to facilitate unit tests. */
+    /* package-scoped*/ MetricRegistry getMetricRegistry() {
+        return metricRegistry;
+    }
+
     /** Upload DAO, for writing upload validation status. This is configured by Spring through the task factory. */
     public final void setUploadDao(UploadDao uploadDao) {
         this.uploadDao = uploadDao;
@@ -92,10 +110,12 @@ public class UploadValidationTask implements Runnable {
         Stopwatch stopwatch = Stopwatch.createUnstarted();
         for (UploadValidationHandler oneHandler : handlerList) {
             String handlerName = oneHandler.getClass().getName();
+            boolean handlerSuccess = false;
             stopwatch.start();
 
             try {
                 oneHandler.handle(context);
+                handlerSuccess = true;
             } catch (Throwable ex) {
                 context.setSuccess(false);
                 context.addMessage(String.format("Exception thrown from upload validation handler %s: %s: %s",
@@ -118,15 +138,17 @@ public class UploadValidationTask implements Runnable {
                 }
                 break;
             } finally {
-                long elapsedMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+                long elapsedNanos = stopwatch.elapsed(TimeUnit.NANOSECONDS);
                 stopwatch.reset();
-                // TODO: send this to somewhere other than the logs
-                logger.info(String.format("Upload validation handler %s took %d ms", handlerName, elapsedMillis));
+                recordHandlerMetrics(oneHandler, elapsedNanos, handlerSuccess);
+                logger.info(String.format("Upload validation handler %s took %d ms", handlerName,
+                        TimeUnit.NANOSECONDS.toMillis(elapsedNanos)));
             }
         }
 
         // write validation status to the upload DAO
         UploadStatus status = context.getSuccess() ? UploadStatus.SUCCEEDED : UploadStatus.VALIDATION_FAILED;
+        metricRegistry.counter(MetricRegistry.name(METRIC_PREFIX, status.name().toLowerCase())).inc();
         try {
             uploadDao.writeValidationStatus(context.getUpload(), status, context.getMessageList(),
                     context.getRecordId());
@@ -149,6 +171,19 @@ public class UploadValidationTask implements Runnable {
         }
     }
 
+    // Records handler latency, both overall and for this app, so we can see which stage is slowing down the pipeline.
+    // Metric names are in the form "upload.validation.[HandlerName].latency" and
+    // "upload.validation.[HandlerName].[appId].latency".
+    private void recordHandlerMetrics(UploadValidationHandler handler, long elapsedNanos, boolean handlerSuccess) {
+        String handlerName = handler.getClass().getSimpleName();
+        metricRegistry.timer(MetricRegistry.name(METRIC_PREFIX, handlerName, "latency")).update(elapsedNanos,
+                TimeUnit.NANOSECONDS);
+        metricRegistry.timer(MetricRegistry.name(METRIC_PREFIX, handlerName, context.getAppId(), "latency"))
+                .update(elapsedNanos, TimeUnit.NANOSECONDS);
+        metricRegistry.counter(MetricRegistry.name(METRIC_PREFIX, handlerName,
+                handlerSuccess ? "success" : "failure")).inc();
+    }
+
     // Log helper. Unit tests will mock (spy) this, so we verify that we're catching and logging the exception.
     // Package-scoped so unit tests have access to this.
     void logWriteValidationStatusException(UploadStatus status, Exception ex) {
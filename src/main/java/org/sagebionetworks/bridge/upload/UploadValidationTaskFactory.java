@@ -5,6 +5,8 @@ import java.util.List;
 import javax.annotation.Nonnull;
 import javax.annotation.Resource;
 
+import com.codahale.metrics.MetricRegistry;
+
 import org.sagebionetworks.bridge.dao.UploadDao;
 import org.sagebionetworks.bridge.file.FileHelper;
 import org.sagebionetworks.bridge.models.upload.Upload;
@@ -21,6 +23,7 @@ import org.springframework.stereotype.Component;
 public class UploadValidationTaskFactory {
     private FileHelper fileHelper;
     private List<UploadValidationHandler> handlerList;
+    private MetricRegistry metricRegistry;
     private UploadDao uploadDao;
     private HealthDataService healthDataService;
 
@@ -36,6 +39,12 @@ public class UploadValidationTaskFactory {
         this.handlerList = handlerList;
     }
 
+    /** Metric registry, used to record handler latency. This is configured by Spring. */
+    @Autowired
+    public final void setMetricRegistry(MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
     /** Upload DAO, used to write validation status. This is configured by Spring. */
     @Autowired
     public final void setUploadDao(UploadDao uploadDao) {
@@ -67,6 +76,7 @@ public class UploadValidationTaskFactory {
         UploadValidationTask task = new UploadValidationTask(context);
         task.setFileHelper(fileHelper);
         task.setHandlerList(handlerList);
+        task.setMetricRegistry(metricRegistry);
         task.setUploadDao(uploadDao);
         task.setHealthDataService(healthDataService);
         return task;
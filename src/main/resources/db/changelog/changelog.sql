@@ -428,3 +428,9 @@ MODIFY COLUMN `role` enum('DEVELOPER','RESEARCHER','ADMIN','ORG_ADMIN','WORKER',
 
 ALTER TABLE `AccountRoles`
 MODIFY COLUMN `role` enum('DEVELOPER','RESEARCHER','ADMIN','ORG_ADMIN','WORKER','SUPERADMIN','STUDY_COORDINATOR') NOT NULL;
+
+-- changeset bridge:24
+
+-- Covers the external ID listing for a study, which selects only the external ID in order, so pages can be read
+-- from the index and seek past the last ID of the previous page.
+CREATE INDEX `AccountsSubstudies-StudyExternalId` ON `AccountsSubstudies` (`studyId`, `substudyId`, `externalId`);
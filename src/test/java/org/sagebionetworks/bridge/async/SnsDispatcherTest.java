@@ -0,0 +1,149 @@
+package org.sagebionetworks.bridge.async;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.sagebionetworks.bridge.async.SnsDispatcher.Outcome;
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+
+public class SnsDispatcherTest {
+    @Mock
+    private BridgeConfig mockConfig;
+
+    @Mock
+    private ExecutorService mockExecutorService;
+
+    @Mock
+    private Future<?> mockFuture;
+
+    private SnsDispatcher dispatcher;
+
+    @BeforeMethod
+    public void before() {
+        MockitoAnnotations.initMocks(this);
+        when(mockConfig.getPropertyAsInt(SnsDispatcher.CONFIG_KEY_MAX_CONCURRENCY)).thenReturn(4);
+
+        dispatcher = new SnsDispatcher();
+        dispatcher.setBridgeConfig(mockConfig);
+        dispatcher.setFanOutExecutorService(MoreExecutors.newDirectExecutorService());
+    }
+
+    @Test
+    public void emptyList() {
+        List<Outcome<String, String>> outcomes = dispatcher.dispatch(ImmutableList.<String>of(), String::toUpperCase);
+        assertTrue(outcomes.isEmpty());
+    }
+
+    @Test
+    public void outcomesInOrder() {
+        List<Outcome<String, String>> outcomes = dispatcher.dispatch(ImmutableList.of("a", "b", "c", "d", "e"),
+                String::toUpperCase);
+        assertEquals(outcomes.size(), 5);
+        assertOutcome(outcomes.get(0), "a", "A");
+        assertOutcome(outcomes.get(1), "b", "B");
+        assertOutcome(outcomes.get(2), "c", "C");
+        assertOutcome(outcomes.get(3), "d", "D");
+        assertOutcome(outcomes.get(4), "e", "E");
+    }
+
+    @Test
+    public void failuresAreReturned() {
+        IllegalStateException ex = new IllegalStateException();
+        List<Outcome<String, String>> outcomes = dispatcher.dispatch(ImmutableList.of("a", "b", "c"), item -> {
+            if (item.equals("b")) {
+                throw ex;
+            }
+            return item.toUpperCase();
+        });
+        assertEquals(outcomes.size(), 3);
+        assertOutcome(outcomes.get(0), "a", "A");
+        assertOutcome(outcomes.get(2), "c", "C");
+
+        Outcome<String, String> failed = outcomes.get(1);
+        assertEquals(failed.getItem(), "b");
+        assertFalse(failed.isSuccess());
+        assertNull(failed.getResult());
+        assertSame(failed.getError(), ex);
+    }
+
+    @Test(expectedExceptions = BridgeServiceException.class)
+    public void errorIsThrown() {
+        dispatcher.dispatch(ImmutableList.of("a"), item -> {
+            throw new AssertionError();
+        });
+    }
+
+    @Test
+    public void concurrencyIsBounded() {
+        // The calling thread is one of the workers, so with a max of 2, only 1 worker is submitted. Since the mock
+        // executor never runs it, the calling thread makes every call.
+        when(mockConfig.getPropertyAsInt(SnsDispatcher.CONFIG_KEY_MAX_CONCURRENCY)).thenReturn(2);
+        dispatcher.setBridgeConfig(mockConfig);
+        dispatcher.setFanOutExecutorService(mockExecutorService);
+        when(mockExecutorService.submit(any(Runnable.class))).thenAnswer(invocation -> mockFuture);
+
+        List<Outcome<String, String>> outcomes = dispatcher.dispatch(ImmutableList.of("a", "b", "c", "d", "e"),
+                String::toUpperCase);
+        assertEquals(outcomes.size(), 5);
+        assertOutcome(outcomes.get(4), "e", "E");
+
+        verify(mockExecutorService, times(1)).submit(any(Runnable.class));
+
+        // The queued worker has nothing left to do, so it's cancelled.
+        verify(mockFuture).cancel(false);
+    }
+
+    @Test
+    public void fewerItemsThanMaxConcurrency() {
+        dispatcher.setFanOutExecutorService(mockExecutorService);
+        when(mockExecutorService.submit(any(Runnable.class))).thenAnswer(invocation -> mockFuture);
+
+        dispatcher.dispatch(ImmutableList.of("a", "b"), String::toUpperCase);
+
+        verify(mockExecutorService, times(1)).submit(any(Runnable.class));
+    }
+
+    @Test
+    public void realExecutor() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            dispatcher.setFanOutExecutorService(executorService);
+
+            List<String> items = ImmutableList.of("a", "b", "c", "d", "e", "f", "g", "h");
+            List<Outcome<String, String>> outcomes = dispatcher.dispatch(items, String::toUpperCase);
+            assertEquals(outcomes.size(), items.size());
+            for (int i = 0; i < items.size(); i++) {
+                assertOutcome(outcomes.get(i), items.get(i), items.get(i).toUpperCase());
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private static void assertOutcome(Outcome<String, String> outcome, String item, String result) {
+        assertEquals(outcome.getItem(), item);
+        assertTrue(outcome.isSuccess());
+        assertEquals(outcome.getResult(), result);
+        assertNull(outcome.getError());
+    }
+}
@@ -0,0 +1,167 @@
+package org.sagebionetworks.bridge.cache;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+import static org.sagebionetworks.bridge.TestConstants.HEALTH_CODE;
+import static org.sagebionetworks.bridge.TestConstants.TEST_APP_ID;
+import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY_ID;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import org.joda.time.DateTimeUtils;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+
+public class ActivitiesRetrievedCoalescerTest {
+    private static final long NOW = 1591005600000L;
+    private static final String OTHER_APP_ID = "other-app";
+    private static final String DISABLED_APP_ID = "disabled-app";
+    private static final CacheKey GLOBAL_KEY = CacheKey.activitiesRetrieved(HEALTH_CODE, null);
+    private static final CacheKey STUDY_KEY = CacheKey.activitiesRetrieved(HEALTH_CODE, TEST_STUDY_ID);
+
+    @Mock
+    private BridgeConfig mockConfig;
+
+    @Mock
+    private CacheProvider mockCacheProvider;
+
+    private MetricRegistry metricRegistry;
+    private ActivitiesRetrievedCoalescer coalescer;
+
+    @BeforeMethod
+    public void before() {
+        MockitoAnnotations.initMocks(this);
+        DateTimeUtils.setCurrentMillisFixed(NOW);
+
+        when(mockConfig.getProperty("activities.retrieved.coalesce.shared")).thenReturn("false");
+        when(mockConfig.getPropertyAsInt("activities.retrieved.coalesce.window.seconds")).thenReturn(3600);
+        when(mockConfig.getPropertyAsList("activities.retrieved.coalesce.app.window.seconds"))
+                .thenReturn(ImmutableList.of(OTHER_APP_ID + ":86400", " " + DISABLED_APP_ID + " : 0 ", ""));
+
+        metricRegistry = new MetricRegistry();
+        coalescer = new ActivitiesRetrievedCoalescer();
+        coalescer.setBridgeConfig(mockConfig);
+        coalescer.setCacheProvider(mockCacheProvider);
+        coalescer.setMetricRegistry(metricRegistry);
+    }
+
+    @AfterMethod
+    public void after() {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    @Test
+    public void windowSecondsPerApp() {
+        assertEquals(coalescer.getWindowSeconds(TEST_APP_ID), 3600);
+        assertEquals(coalescer.getWindowSeconds(null), 3600);
+        assertEquals(coalescer.getWindowSeconds(OTHER_APP_ID), 86400);
+        assertEquals(coalescer.getWindowSeconds(DISABLED_APP_ID), 0);
+    }
+
+    @Test
+    public void localSet() {
+        assertFalse(coalescer.isRecentlyPublished(TEST_APP_ID, HEALTH_CODE, null));
+
+        coalescer.recordPublished(TEST_APP_ID, HEALTH_CODE, null);
+        assertTrue(coalescer.isRecentlyPublished(TEST_APP_ID, HEALTH_CODE, null));
+
+        // The study-scoped event is published separately.
+        assertFalse(coalescer.isRecentlyPublished(TEST_APP_ID, HEALTH_CODE, TEST_STUDY_ID));
+
+        // The window ends.
+        DateTimeUtils.setCurrentMillisFixed(NOW + 3600000L);
+        assertFalse(coalescer.isRecentlyPublished(TEST_APP_ID, HEALTH_CODE, null));
+
+        assertEquals(metricRegistry.meter(ActivitiesRetrievedCoalescer.METRIC_COALESCED).getCount(), 1L);
+        verifyZeroInteractions(mockCacheProvider);
+    }
+
+    @Test
+    public void localSetUsesAppWindow() {
+        coalescer.recordPublished(OTHER_APP_ID, HEALTH_CODE, null);
+
+        DateTimeUtils.setCurrentMillisFixed(NOW + 3600000L);
+        assertTrue(coalescer.isRecentlyPublished(OTHER_APP_ID, HEALTH_CODE, null));
+    }
+
+    @Test
+    public void disabledForApp() {
+        coalescer.recordPublished(DISABLED_APP_ID, HEALTH_CODE, null);
+        assertFalse(coalescer.isRecentlyPublished(DISABLED_APP_ID, HEALTH_CODE, null));
+    }
+
+    @Test
+    public void localRemove() {
+        coalescer.recordPublished(TEST_APP_ID, HEALTH_CODE, TEST_STUDY_ID);
+        coalescer.remove(HEALTH_CODE, TEST_STUDY_ID);
+        assertFalse(coalescer.isRecentlyPublished(TEST_APP_ID, HEALTH_CODE, TEST_STUDY_ID));
+    }
+
+    @Test
+    public void sharedSet() {
+        setShared();
+        when(mockCacheProvider.getObject(STUDY_KEY, Long.class)).thenReturn(NOW);
+
+        assertFalse(coalescer.isRecentlyPublished(TEST_APP_ID, HEALTH_CODE, null));
+        assertTrue(coalescer.isRecentlyPublished(TEST_APP_ID, HEALTH_CODE, TEST_STUDY_ID));
+
+        coalescer.recordPublished(OTHER_APP_ID, HEALTH_CODE, null);
+        verify(mockCacheProvider).setObject(GLOBAL_KEY, NOW, 86400);
+
+        coalescer.remove(HEALTH_CODE, TEST_STUDY_ID);
+        verify(mockCacheProvider).removeObject(STUDY_KEY);
+    }
+
+    @Test
+    public void sharedSetDisabledForApp() {
+        setShared();
+        assertFalse(coalescer.isRecentlyPublished(DISABLED_APP_ID, HEALTH_CODE, null));
+        coalescer.recordPublished(DISABLED_APP_ID, HEALTH_CODE, null);
+
+        verify(mockCacheProvider, never()).getObject(any(), eq(Long.class));
+        verify(mockCacheProvider, never()).setObject(any(), any(), anyInt());
+    }
+
+    @Test
+    public void sharedSetErrorsAreNotCoalesced() {
+        setShared();
+        when(mockCacheProvider.getObject(GLOBAL_KEY, Long.class)).thenThrow(new BridgeServiceException("test"));
+        doThrow(new BridgeServiceException("test")).when(mockCacheProvider).setObject(any(), any(), anyInt());
+        doThrow(new BridgeServiceException("test")).when(mockCacheProvider).removeObject(any());
+
+        // None of these throw.
+        assertFalse(coalescer.isRecentlyPublished(TEST_APP_ID, HEALTH_CODE, null));
+        coalescer.recordPublished(TEST_APP_ID, HEALTH_CODE, null);
+        coalescer.remove(HEALTH_CODE, null);
+
+        assertEquals(metricRegistry.meter(ActivitiesRetrievedCoalescer.METRIC_UNAVAILABLE).getCount(), 3L);
+    }
+
+    @Test
+    public void worksWithoutOverrides() {
+        when(mockConfig.getPropertyAsList("activities.retrieved.coalesce.app.window.seconds")).thenReturn(null);
+        coalescer.setBridgeConfig(mockConfig);
+
+        assertEquals(coalescer.getWindowSeconds(OTHER_APP_ID), 3600);
+    }
+
+    private void setShared() {
+        when(mockConfig.getProperty("activities.retrieved.coalesce.shared")).thenReturn("true");
+        coalescer.setBridgeConfig(mockConfig);
+    }
+}
@@ -0,0 +1,104 @@
+package org.sagebionetworks.bridge.cache;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+public class CacheInvalidationBusTest {
+    private static final String CACHE_NAME = "my-cache";
+    private static final String KEY = "my-key";
+
+    @Mock
+    private JedisPool mockJedisPool;
+
+    @Mock
+    private Jedis mockJedis;
+
+    private CacheInvalidationBus bus;
+
+    @BeforeMethod
+    public void before() {
+        MockitoAnnotations.initMocks(this);
+        when(mockJedisPool.getResource()).thenReturn(mockJedis);
+
+        bus = new CacheInvalidationBus();
+        bus.setJedisPool(mockJedisPool);
+    }
+
+    @Test
+    public void publish() {
+        bus.publish(CACHE_NAME, KEY);
+        verify(mockJedis).publish(CacheInvalidationBus.CHANNEL, bus.getNodeId() + "|" + CACHE_NAME + "|" + KEY);
+        verify(mockJedis).close();
+    }
+
+    @Test
+    public void publishSwallowsErrors() {
+        doThrow(new JedisConnectionException("test")).when(mockJedis).publish(CacheInvalidationBus.CHANNEL,
+                bus.getNodeId() + "|" + CACHE_NAME + "|" + KEY);
+
+        // Does not throw.
+        bus.publish(CACHE_NAME, KEY);
+    }
+
+    @Test
+    public void handleMessageFromOtherNode() {
+        List<String> invalidatedKeys = new ArrayList<>();
+        bus.addListener(CACHE_NAME, invalidatedKeys::add);
+
+        bus.handleMessage("other-node|" + CACHE_NAME + "|" + KEY);
+        assertEquals(invalidatedKeys.size(), 1);
+        assertEquals(invalidatedKeys.get(0), KEY);
+    }
+
+    @Test
+    public void handleMessageKeyWithSeparator() {
+        List<String> invalidatedKeys = new ArrayList<>();
+        bus.addListener(CACHE_NAME, invalidatedKeys::add);
+
+        bus.handleMessage("other-node|" + CACHE_NAME + "|key|with|pipes");
+        assertEquals(invalidatedKeys.size(), 1);
+        assertEquals(invalidatedKeys.get(0), "key|with|pipes");
+    }
+
+    @Test
+    public void handleMessageIgnoresOwnMessages() {
+        List<String> invalidatedKeys = new ArrayList<>();
+        bus.addListener(CACHE_NAME, invalidatedKeys::add);
+
+        bus.handleMessage(bus.getNodeId() + "|" + CACHE_NAME + "|" + KEY);
+        assertTrue(invalidatedKeys.isEmpty());
+    }
+
+    @Test
+    public void handleMessageIgnoresOtherCaches() {
+        List<String> invalidatedKeys = new ArrayList<>();
+        bus.addListener(CACHE_NAME, invalidatedKeys::add);
+
+        bus.handleMessage("other-node|other-cache|" + KEY);
+        assertTrue(invalidatedKeys.isEmpty());
+    }
+
+    @Test
+    public void handleMalformedMessage() {
+        List<String> invalidatedKeys = new ArrayList<>();
+        bus.addListener(CACHE_NAME, invalidatedKeys::add);
+
+        bus.handleMessage("malformed");
+        assertTrue(invalidatedKeys.isEmpty());
+    }
+}
@@ -2,6 +2,7 @@ package org.sagebionetworks.bridge.cache;
 
 import static org.sagebionetworks.bridge.TestConstants.TEST_APP_ID;
 import static org.sagebionetworks.bridge.TestConstants.TEST_ORG_ID;
+import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY_ID;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
@@ -54,6 +55,14 @@ public class CacheKeyTest {
     public void appConfigList() {
         assertEquals(CacheKey.appConfigList(TEST_APP_ID).toString(),  TEST_APP_ID + ":AppConfigList");
     }
+    
+    @Test
+    public void activitiesRetrieved() {
+        assertEquals(CacheKey.activitiesRetrieved("healthCode", null).toString(),
+                "healthCode:activitiesRetrieved");
+        assertEquals(CacheKey.activitiesRetrieved("healthCode", TEST_STUDY_ID).toString(),
+                "healthCode:" + TEST_STUDY_ID + ":activitiesRetrieved");
+    }
 
     @Test
     public void channelSignInToSessionToken() {
@@ -144,7 +153,18 @@ public class CacheKeyTest {
     
     @Test
     public void viewKey() {
-        assertEquals(CacheKey.viewKey(StringBuilder.class, "a", "b").toString(), "a:b:StringBuilder:view");
+        assertEquals(CacheKey.viewKey(StringBuilder.class, "a", "b").toString(), "a:b:StringBuilder:view:v2");
+    }
+    
+    @Test
+    public void legacyViewKey() {
+        CacheKey viewKey = CacheKey.viewKey(StringBuilder.class, "a", "b");
+        assertEquals(CacheKey.legacyViewKey(viewKey).toString(), "a:b:StringBuilder:view");
+    }
+    
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void legacyViewKeyRejectsOtherKeys() {
+        CacheKey.legacyViewKey(CacheKey.app(TEST_APP_ID));
     }
     
     @Test
@@ -164,5 +184,9 @@ public class CacheKeyTest {
         
         CacheKey publicKey = CacheKey.app(TEST_APP_ID);
         assertTrue(CacheKey.isPublic(publicKey.toString()));
+        
+        CacheKey viewKey = CacheKey.viewKey(StringBuilder.class, "a");
+        assertTrue(CacheKey.isPublic(viewKey.toString()));
+        assertTrue(CacheKey.isPublic(CacheKey.legacyViewKey(viewKey).toString()));
     }
 }
@@ -23,12 +23,21 @@ import org.sagebionetworks.bridge.models.subpopulations.Subpopulation;
 import org.sagebionetworks.bridge.models.subpopulations.SubpopulationGuid;
 import org.sagebionetworks.bridge.redis.JedisOps;
 
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
 public class CacheProviderStudyMigrationTest extends Mockito {
     private static final TypeReference<List<Subpopulation>> SURVEY_LIST_REF = new TypeReference<List<Subpopulation>>() {};
     
     @Mock
     JedisOps mockJedisOps;
     
+    @Mock
+    JedisPool mockJedisPool;
+    
+    @Mock
+    Jedis mockJedis;
+    
     @InjectMocks
     CacheProvider provider;
     
@@ -36,6 +45,9 @@ public class CacheProviderStudyMigrationTest extends Mockito {
     public void beforeMethod() {
         MockitoAnnotations.initMocks(this);
         provider.setSessionExpireInSeconds(10);
+        provider.setJedisPool(mockJedisPool);
+        when(mockJedisPool.getResource()).thenReturn(mockJedis);
+        CacheProviderTest.mockSessionScript(mockJedis, mockJedisOps);
     }
 
     @Test
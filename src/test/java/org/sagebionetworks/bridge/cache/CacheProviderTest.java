@@ -1,19 +1,25 @@
 package org.sagebionetworks.bridge.cache;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.anyList;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 import static org.sagebionetworks.bridge.TestConstants.TEST_APP_ID;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
@@ -21,9 +27,11 @@ import static org.testng.Assert.fail;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.joda.time.DateTime;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -37,6 +45,7 @@ import org.sagebionetworks.bridge.config.BridgeConfigFactory;
 import org.sagebionetworks.bridge.config.Environment;
 import org.sagebionetworks.bridge.crypto.AesGcmEncryptor;
 import org.sagebionetworks.bridge.crypto.Encryptor;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.models.RequestInfo;
 import org.sagebionetworks.bridge.models.accounts.ConsentStatus;
@@ -49,10 +58,14 @@ import org.sagebionetworks.bridge.models.subpopulations.SubpopulationGuid;
 import org.sagebionetworks.bridge.redis.JedisOps;
 import org.sagebionetworks.bridge.redis.JedisTransaction;
 
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
 
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -76,6 +89,18 @@ public class CacheProviderTest {
     @Mock
     private JedisOps jedisOps;
 
+    @Mock
+    private JedisPool jedisPool;
+
+    @Mock
+    private Jedis jedis;
+
+    @Mock
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    @Captor
+    private ArgumentCaptor<Consumer<String>> listenerCaptor;
+
     @Captor
     private ArgumentCaptor<String> stringCaptor;
 
@@ -121,6 +146,7 @@ public class CacheProviderTest {
         when(jedisOps.get(USER_ID_TO_SESSION.toString())).thenReturn(json);
         
         cacheProvider.setJedisOps(jedisOps);
+        mockSessionScript(jedis, jedisOps);
         
         UserSession session = cacheProvider.getUserSession(DECRYPTED_SESSION_TOKEN);
 
@@ -161,8 +187,28 @@ public class CacheProviderTest {
         when(jedisOps.getTransaction()).thenReturn(transaction);
         when(jedisOps.get(TOKEN_TO_USER_ID.toString())).thenReturn(USER_ID);
 
+        when(jedisPool.getResource()).thenReturn(jedis);
+        mockSessionScript(jedis, jedisOps);
+
         cacheProvider = new CacheProvider();
         cacheProvider.setJedisOps(jedisOps);
+        cacheProvider.setJedisPool(jedisPool);
+    }
+
+    /**
+     * Emulates the session lookup script by delegating its two GETs to the given JedisOps, so tests can mock the
+     * token and session keys individually.
+     */
+    static void mockSessionScript(Jedis jedis, JedisOps jedisOps) {
+        doAnswer(invocation -> {
+            List<String> keys = invocation.getArgument(1);
+            List<String> args = invocation.getArgument(2);
+            String userId = jedisOps.get(keys.get(0));
+            if (userId == null) {
+                return null;
+            }
+            return Arrays.asList(userId, jedisOps.get(args.get(0) + userId + args.get(1)));
+        }).when(jedis).eval(eq(CacheProvider.GET_SESSION_SCRIPT), anyList(), anyList());
     }
 
     private UserSession createUserSession() {
@@ -366,6 +412,49 @@ public class CacheProviderTest {
         assertEquals(retrieved.getSessionToken(), session.getSessionToken());
     }
     
+    @Test
+    public void getUserSessionUsesSingleRoundTrip() throws Exception {
+        UserSession session = new UserSession(new StudyParticipant.Builder().build());
+        session.setSessionToken(DECRYPTED_SESSION_TOKEN);
+        doReturn(Arrays.asList(USER_ID, CacheProvider.serializeSession(session))).when(jedis).eval(
+                CacheProvider.GET_SESSION_SCRIPT, ImmutableList.of(TOKEN_TO_USER_ID.toString()),
+                ImmutableList.of(CacheProvider.USER_ID_TO_SESSION_PREFIX, CacheProvider.USER_ID_TO_SESSION_SUFFIX));
+
+        UserSession retrieved = cacheProvider.getUserSession(DECRYPTED_SESSION_TOKEN);
+        assertEquals(retrieved.getSessionToken(), DECRYPTED_SESSION_TOKEN);
+        verify(jedis).close();
+        verify(jedisOps, never()).get(any());
+    }
+
+    @Test
+    public void sessionKeyAffixesMatchCacheKey() {
+        // The script builds the session key from these, so they must produce the same key as CacheKey.
+        assertEquals(CacheProvider.USER_ID_TO_SESSION_PREFIX + USER_ID + CacheProvider.USER_ID_TO_SESSION_SUFFIX,
+                USER_ID_TO_SESSION.toString());
+    }
+
+    @Test
+    public void serializeSessionWritesFormatMarker() throws Exception {
+        StudyParticipant participant = new StudyParticipant.Builder().withId(USER_ID)
+                .withEncryptedHealthCode(ENCRYPTED_SESSION_TOKEN).build();
+        UserSession session = new UserSession(participant);
+        session.setSessionToken(DECRYPTED_SESSION_TOKEN);
+        session.setAppId(TEST_APP_ID);
+
+        String ser = CacheProvider.serializeSession(session);
+        assertTrue(ser.startsWith(CacheProvider.SESSION_FORMAT_PREFIX));
+
+        // Still valid JSON that older nodes can read.
+        UserSession legacyRead = BridgeObjectMapper.get().readValue(ser, UserSession.class);
+        assertEquals(legacyRead.getSessionToken(), DECRYPTED_SESSION_TOKEN);
+
+        when(jedisOps.get(USER_ID_TO_SESSION.toString())).thenReturn(ser);
+        UserSession retrieved = cacheProvider.getUserSession(DECRYPTED_SESSION_TOKEN);
+        assertEquals(retrieved.getSessionToken(), DECRYPTED_SESSION_TOKEN);
+        assertEquals(retrieved.getAppId(), TEST_APP_ID);
+        assertEquals(retrieved.getId(), USER_ID);
+    }
+
     @Test
     public void getUserSessionTokenNotFound() {
         // When nothing is mocked, the session token is not found
@@ -617,4 +706,184 @@ public class CacheProviderTest {
         cacheProvider.removeApp(TEST_APP_ID);
         verify(jedisOps).del(TEST_ID_KEY);
     }
+
+    @Test
+    public void getAppFromNearCache() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        cacheProvider.setMetricRegistry(metricRegistry);
+
+        App app = App.create();
+        app.setIdentifier(TEST_APP_ID);
+        app.setName("App Name");
+        when(jedisOps.get(TEST_ID_KEY)).thenReturn(BridgeObjectMapper.get().writeValueAsString(app));
+
+        // First call goes to Redis.
+        App first = cacheProvider.getApp(TEST_APP_ID);
+        assertEquals(first, app);
+
+        // Callers can modify the app without affecting the cached copy.
+        first.setName("Modified Name");
+
+        // Second call is served from the near cache, without calling Redis.
+        App second = cacheProvider.getApp(TEST_APP_ID);
+        assertEquals(second.getName(), "App Name");
+        assertNotSame(second, first);
+
+        verify(jedisOps).get(TEST_ID_KEY);
+        verify(jedisOps).expire(TEST_ID_KEY, BridgeConstants.BRIDGE_SESSION_EXPIRE_IN_SECONDS);
+        verifyNoMoreInteractions(jedisOps);
+
+        assertEquals(metricRegistry.counter(CacheProvider.METRIC_APP_NEAR_CACHE_HIT).getCount(), 1L);
+        assertEquals(metricRegistry.counter(CacheProvider.METRIC_APP_NEAR_CACHE_MISS).getCount(), 1L);
+    }
+
+    @Test
+    public void setAppPopulatesNearCache() {
+        App app = App.create();
+        app.setIdentifier(TEST_APP_ID);
+        app.setVersion(2L);
+        when(jedisOps.setex(any(), anyInt(), any())).thenReturn("OK");
+
+        cacheProvider.setApp(app);
+
+        App returned = cacheProvider.getApp(TEST_APP_ID);
+        assertEquals(returned, app);
+        assertNotSame(returned, app);
+        verify(jedisOps, never()).get(TEST_ID_KEY);
+    }
+
+    @Test
+    public void nearCacheReturnsNewAppOnEveryHit() {
+        App app = App.create();
+        app.setIdentifier(TEST_APP_ID);
+        app.setName("App Name");
+        app.setDataGroups(ImmutableSet.of("group1"));
+        when(jedisOps.setex(any(), anyInt(), any())).thenReturn("OK");
+        cacheProvider.setApp(app);
+
+        // Changing the app after caching it doesn't change the cached app.
+        app.setName("Modified Name");
+
+        App first = cacheProvider.getApp(TEST_APP_ID);
+        first.setDataGroups(ImmutableSet.of("group2"));
+        App second = cacheProvider.getApp(TEST_APP_ID);
+
+        assertNotSame(second, first);
+        assertEquals(second.getName(), "App Name");
+        assertEquals(second.getDataGroups(), ImmutableSet.of("group1"));
+    }
+
+    @Test
+    public void setAppDoesNotReplaceNewerVersionInNearCache() {
+        when(jedisOps.setex(any(), anyInt(), any())).thenReturn("OK");
+
+        App newApp = App.create();
+        newApp.setIdentifier(TEST_APP_ID);
+        newApp.setName("New Name");
+        newApp.setVersion(3L);
+        cacheProvider.setApp(newApp);
+
+        App oldApp = App.create();
+        oldApp.setIdentifier(TEST_APP_ID);
+        oldApp.setName("Old Name");
+        oldApp.setVersion(2L);
+        cacheProvider.setApp(oldApp);
+
+        assertEquals(cacheProvider.getApp(TEST_APP_ID).getName(), "New Name");
+    }
+
+    @Test
+    public void removeAppInvalidatesNearCacheAndPublishes() throws Exception {
+        App app = App.create();
+        app.setIdentifier(TEST_APP_ID);
+        when(jedisOps.setex(any(), anyInt(), any())).thenReturn("OK");
+        cacheProvider.setApp(app);
+
+        cacheProvider.setCacheInvalidationBus(cacheInvalidationBus);
+
+        cacheProvider.removeApp(TEST_APP_ID);
+        verify(jedisOps).del(TEST_ID_KEY);
+        verify(cacheInvalidationBus).publish(CacheProvider.APP_NEAR_CACHE_NAME, TEST_APP_ID);
+
+        // Near cache was invalidated, so this falls through to Redis.
+        assertNull(cacheProvider.getApp(TEST_APP_ID));
+        verify(jedisOps).get(TEST_ID_KEY);
+    }
+
+    @Test
+    public void setAppPublishesAfterWritingRedis() {
+        cacheProvider.setCacheInvalidationBus(cacheInvalidationBus);
+
+        App app = App.create();
+        app.setIdentifier(TEST_APP_ID);
+        when(jedisOps.setex(any(), anyInt(), any())).thenReturn("OK");
+        cacheProvider.setApp(app);
+
+        InOrder inOrder = inOrder(jedisOps, cacheInvalidationBus);
+        inOrder.verify(jedisOps).setex(eq(TEST_ID_KEY), anyInt(), any());
+        inOrder.verify(cacheInvalidationBus).publish(CacheProvider.APP_NEAR_CACHE_NAME, TEST_APP_ID);
+    }
+
+    @Test
+    public void cacheLoadedAppDoesNotPublish() {
+        cacheProvider.setCacheInvalidationBus(cacheInvalidationBus);
+
+        App app = App.create();
+        app.setIdentifier(TEST_APP_ID);
+        when(jedisOps.setex(any(), anyInt(), any())).thenReturn("OK");
+        cacheProvider.cacheLoadedApp(app);
+
+        verify(jedisOps).setex(eq(TEST_ID_KEY), eq(BridgeConstants.BRIDGE_SESSION_EXPIRE_IN_SECONDS), any());
+        verify(cacheInvalidationBus, never()).publish(any(), any());
+
+        // The app is still served from the near cache.
+        assertEquals(cacheProvider.getApp(TEST_APP_ID), app);
+        verify(jedisOps, never()).get(TEST_ID_KEY);
+    }
+
+    @Test
+    public void invalidationFromOtherNodeClearsNearCache() {
+        cacheProvider.setCacheInvalidationBus(cacheInvalidationBus);
+        verify(cacheInvalidationBus).addListener(eq(CacheProvider.APP_NEAR_CACHE_NAME), listenerCaptor.capture());
+
+        App app = App.create();
+        app.setIdentifier(TEST_APP_ID);
+        when(jedisOps.setex(any(), anyInt(), any())).thenReturn("OK");
+        cacheProvider.setApp(app);
+
+        listenerCaptor.getValue().accept(TEST_APP_ID);
+
+        assertNull(cacheProvider.getApp(TEST_APP_ID));
+        verify(jedisOps).get(TEST_ID_KEY);
+    }
+
+    @Test
+    public void getBytes() {
+        byte[] bytes = new byte[] { 0, 1, 2 };
+        when(jedis.get(CACHE_KEY.toString().getBytes(UTF_8))).thenReturn(bytes);
+
+        assertEquals(cacheProvider.getBytes(CACHE_KEY), bytes);
+        verify(jedis).close();
+    }
+
+    @Test(expectedExceptions = BridgeServiceException.class)
+    public void getBytesError() {
+        when(jedis.get(any(byte[].class))).thenThrow(new JedisConnectionException("test"));
+        cacheProvider.getBytes(CACHE_KEY);
+    }
+
+    @Test
+    public void setBytes() {
+        byte[] bytes = new byte[] { 0, 1, 2 };
+        when(jedis.setex(CACHE_KEY.toString().getBytes(UTF_8), 100, bytes)).thenReturn("OK");
+
+        cacheProvider.setBytes(CACHE_KEY, bytes, 100);
+        verify(jedis).setex(CACHE_KEY.toString().getBytes(UTF_8), 100, bytes);
+    }
+
+    @Test(expectedExceptions = BridgeServiceException.class)
+    public void setBytesError() {
+        when(jedis.setex(any(byte[].class), anyInt(), any(byte[].class))).thenReturn("ERR");
+        cacheProvider.setBytes(CACHE_KEY, new byte[] { 0 }, 100);
+    }
 }
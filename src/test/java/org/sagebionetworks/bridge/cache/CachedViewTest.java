@@ -0,0 +1,78 @@
+package org.sagebionetworks.bridge.cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+public class CachedViewTest {
+    private static final byte[] JSON = "{\"name\":\"Test Survey\"}".getBytes(UTF_8);
+    private static final byte[] GZIPPED_JSON = new byte[] { 31, -117, 8, 0, 1, 2, 3 };
+
+    @Test
+    public void serializeAndDeserialize() {
+        CachedView view = new CachedView(JSON, GZIPPED_JSON);
+
+        CachedView deserialized = CachedView.deserialize(view.serialize());
+        assertEquals(deserialized.getJson(), JSON);
+        assertEquals(deserialized.getGzippedJson(), GZIPPED_JSON);
+        assertEquals(deserialized.getEtag(), view.getEtag());
+    }
+
+    @Test
+    public void serializeAndDeserializeWithoutGzip() {
+        CachedView view = new CachedView(JSON, null);
+
+        CachedView deserialized = CachedView.deserialize(view.serialize());
+        assertEquals(deserialized.getJson(), JSON);
+        assertNull(deserialized.getGzippedJson());
+        assertEquals(deserialized.getEtag(), view.getEtag());
+    }
+
+    @Test
+    public void deserializeStringViewIsNull() {
+        // Views used to be cached as JSON strings.
+        assertNull(CachedView.deserialize("\"{\\\"name\\\":\\\"Test Survey\\\"}\"".getBytes(UTF_8)));
+    }
+
+    @Test
+    public void deserializeNullOrTruncatedIsNull() {
+        assertNull(CachedView.deserialize(null));
+        assertNull(CachedView.deserialize(new byte[] { 0 }));
+
+        byte[] bytes = new CachedView(JSON, null).serialize();
+        assertNull(CachedView.deserialize(Arrays.copyOf(bytes, bytes.length - 1)));
+    }
+
+    @Test
+    public void etagIsWeakAndBasedOnJson() {
+        String etag = new CachedView(JSON, null).getEtag();
+        assertTrue(etag.matches("W/\"[0-9a-f]{32}\""));
+
+        // The same JSON has the same ETag, whether or not it's compressed.
+        assertEquals(new CachedView(JSON, GZIPPED_JSON).getEtag(), etag);
+        assertNotEquals(new CachedView("{}".getBytes(UTF_8), null).getEtag(), etag);
+    }
+
+    @Test
+    public void matches() {
+        CachedView view = new CachedView(JSON, null);
+        String etag = view.getEtag();
+        String strongEtag = etag.substring(2);
+
+        assertTrue(view.matches(etag));
+        assertTrue(view.matches(strongEtag));
+        assertTrue(view.matches("W/\"other\", " + etag));
+        assertTrue(view.matches("*"));
+
+        assertFalse(view.matches(null));
+        assertFalse(view.matches(""));
+        assertFalse(view.matches("W/\"other\""));
+    }
+}
@@ -0,0 +1,191 @@
+package org.sagebionetworks.bridge.cache;
+
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.sagebionetworks.bridge.TestConstants.TEST_APP_ID;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.codahale.metrics.Counter;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class GenerationalCacheTest {
+    private static final String CACHE_NAME = "test-cache";
+    private static final String GLOBAL_APP_ID = "global-app";
+    private static final String OTHER_APP_ID = "other-app";
+    private static final String KEY = "key";
+    private static final String VALUE = "value";
+
+    @Mock
+    private CacheInvalidationBus mockBus;
+
+    @Captor
+    private ArgumentCaptor<Consumer<String>> listenerCaptor;
+
+    private GenerationalCache<String, String> cache;
+    private Counter hitCounter;
+    private Counter missCounter;
+    private AtomicInteger loaderCalls;
+
+    @BeforeMethod
+    public void before() {
+        MockitoAnnotations.initMocks(this);
+        hitCounter = new Counter();
+        missCounter = new Counter();
+        loaderCalls = new AtomicInteger();
+
+        cache = new GenerationalCache<>(CACHE_NAME, GLOBAL_APP_ID, 100L, 900);
+        cache.setCacheInvalidationBus(mockBus);
+        cache.setCounters(hitCounter, missCounter);
+        verify(mockBus).addListener(eq(CACHE_NAME), listenerCaptor.capture());
+    }
+
+    @Test
+    public void valueIsCached() {
+        String first = cache.get(TEST_APP_ID, KEY, loader(VALUE), value -> true);
+        String second = cache.get(TEST_APP_ID, KEY, loader(VALUE), value -> true);
+
+        assertSame(first, VALUE);
+        assertSame(second, VALUE);
+        assertEquals(loaderCalls.get(), 1);
+        assertEquals(hitCounter.getCount(), 1L);
+        assertEquals(missCounter.getCount(), 1L);
+    }
+
+    @Test
+    public void keysAreSeparatePerApp() {
+        cache.get(TEST_APP_ID, KEY, loader(VALUE), value -> true);
+        cache.get(OTHER_APP_ID, KEY, loader(VALUE), value -> true);
+        cache.get(TEST_APP_ID, "other-key", loader(VALUE), value -> true);
+
+        assertEquals(loaderCalls.get(), 3);
+    }
+
+    @Test
+    public void rejectedValueIsNotCached() {
+        cache.get(TEST_APP_ID, KEY, loader(VALUE), value -> false);
+        cache.get(TEST_APP_ID, KEY, loader(VALUE), value -> false);
+
+        assertEquals(loaderCalls.get(), 2);
+    }
+
+    @Test
+    public void nullValueIsNotCached() {
+        assertNull(cache.get(TEST_APP_ID, KEY, loader(null), value -> true));
+        assertNull(cache.get(TEST_APP_ID, KEY, loader(null), value -> true));
+
+        assertEquals(loaderCalls.get(), 2);
+    }
+
+    @Test
+    public void loaderExceptionIsThrown() {
+        try {
+            cache.get(TEST_APP_ID, KEY, () -> {
+                throw new IllegalStateException();
+            }, value -> true);
+            fail("expected exception");
+        } catch (IllegalStateException ex) {
+            // expected exception
+        }
+
+        assertSame(cache.get(TEST_APP_ID, KEY, loader(VALUE), value -> true), VALUE);
+        assertEquals(loaderCalls.get(), 1);
+    }
+
+    @Test
+    public void invalidateDiscardsApp() {
+        cache.get(TEST_APP_ID, KEY, loader(VALUE), value -> true);
+        cache.get(OTHER_APP_ID, KEY, loader(VALUE), value -> true);
+
+        cache.invalidate(TEST_APP_ID);
+        verify(mockBus).publish(CACHE_NAME, TEST_APP_ID);
+
+        // App is loaded again, other app is not.
+        cache.get(TEST_APP_ID, KEY, loader(VALUE), value -> true);
+        cache.get(OTHER_APP_ID, KEY, loader(VALUE), value -> true);
+        assertEquals(loaderCalls.get(), 3);
+    }
+
+    @Test
+    public void invalidateGlobalAppDiscardsEveryApp() {
+        cache.get(TEST_APP_ID, KEY, loader(VALUE), value -> true);
+        cache.get(OTHER_APP_ID, KEY, loader(VALUE), value -> true);
+
+        cache.invalidate(GLOBAL_APP_ID);
+
+        cache.get(TEST_APP_ID, KEY, loader(VALUE), value -> true);
+        cache.get(OTHER_APP_ID, KEY, loader(VALUE), value -> true);
+        assertEquals(loaderCalls.get(), 4);
+    }
+
+    @Test
+    public void invalidationFromOtherNode() {
+        cache.get(TEST_APP_ID, KEY, loader(VALUE), value -> true);
+
+        listenerCaptor.getValue().accept(TEST_APP_ID);
+
+        cache.get(TEST_APP_ID, KEY, loader(VALUE), value -> true);
+        assertEquals(loaderCalls.get(), 2);
+    }
+
+    @Test
+    public void invalidateDuringLoadIsNotCached() {
+        // The value changes while it's being loaded. The loaded value is stale and must not be returned to later
+        // requests.
+        Supplier<String> loader = loader(VALUE);
+        cache.get(TEST_APP_ID, KEY, () -> {
+            cache.invalidate(TEST_APP_ID);
+            return loader.get();
+        }, value -> true);
+        cache.get(TEST_APP_ID, KEY, loader(VALUE), value -> true);
+
+        assertEquals(loaderCalls.get(), 2);
+    }
+
+    @Test
+    public void setSizeEmptiesCache() {
+        cache.get(TEST_APP_ID, KEY, loader(VALUE), value -> true);
+
+        cache.setSize(0L, 900);
+
+        // A cache with no room keeps nothing.
+        cache.get(TEST_APP_ID, KEY, loader(VALUE), value -> true);
+        cache.get(TEST_APP_ID, KEY, loader(VALUE), value -> true);
+        assertEquals(loaderCalls.get(), 3);
+    }
+
+    @Test
+    public void worksWithoutBusOrCounters() {
+        GenerationalCache<String, String> bareCache = new GenerationalCache<>(CACHE_NAME, null, 100L, 900);
+        bareCache.get(TEST_APP_ID, KEY, loader(VALUE), value -> true);
+
+        // Does not throw.
+        bareCache.invalidate(TEST_APP_ID);
+
+        bareCache.get(TEST_APP_ID, KEY, loader(VALUE), value -> true);
+        assertEquals(loaderCalls.get(), 2);
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void nullAppIdThrows() {
+        cache.get(null, KEY, loader(VALUE), value -> true);
+    }
+
+    private Supplier<String> loader(String value) {
+        return () -> {
+            loaderCalls.incrementAndGet();
+            return value;
+        };
+    }
+}
@@ -0,0 +1,226 @@
+package org.sagebionetworks.bridge.cache;
+
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sagebionetworks.bridge.TestConstants.TEST_APP_ID;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
+import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolderImpl;
+import org.sagebionetworks.bridge.models.surveys.Survey;
+import org.sagebionetworks.bridge.models.upload.UploadSchema;
+
+public class ImmutableArtifactCacheTest {
+    private static final String OTHER_APP_ID = "other-app";
+    private static final String SCHEMA_ID = "test-schema";
+    private static final int SCHEMA_REV = 3;
+    private static final GuidCreatedOnVersionHolder SURVEY_KEYS = new GuidCreatedOnVersionHolderImpl("survey-guid",
+            1337L);
+
+    @Mock
+    private CacheInvalidationBus mockBus;
+
+    @Mock
+    private BridgeConfig mockConfig;
+
+    private MetricRegistry metricRegistry;
+    private ImmutableArtifactCache cache;
+    private AtomicInteger loaderCalls;
+
+    @BeforeMethod
+    public void before() {
+        MockitoAnnotations.initMocks(this);
+        metricRegistry = new MetricRegistry();
+        loaderCalls = new AtomicInteger();
+
+        cache = new ImmutableArtifactCache();
+        cache.setCacheInvalidationBus(mockBus);
+        cache.setMetricRegistry(metricRegistry);
+    }
+
+    @Test
+    public void publishedSurveyIsCached() {
+        Survey survey = makeSurvey(true);
+        Survey first = cache.getSurvey(TEST_APP_ID, SURVEY_KEYS, loader(survey));
+        Survey second = cache.getSurvey(TEST_APP_ID, SURVEY_KEYS, loader(survey));
+
+        assertSame(first, survey);
+        assertSame(second, survey);
+        assertEquals(loaderCalls.get(), 1);
+        assertEquals(metricRegistry.counter(ImmutableArtifactCache.METRIC_MISS).getCount(), 1L);
+        assertEquals(metricRegistry.counter(ImmutableArtifactCache.METRIC_HIT).getCount(), 1L);
+        assertEquals(metricRegistry.getGauges().get(ImmutableArtifactCache.METRIC_HIT_RATIO).getValue(), 0.5);
+    }
+
+    @Test
+    public void draftSurveyIsNotCached() {
+        Survey survey = makeSurvey(false);
+        cache.getSurvey(TEST_APP_ID, SURVEY_KEYS, loader(survey));
+        cache.getSurvey(TEST_APP_ID, SURVEY_KEYS, loader(survey));
+
+        assertEquals(loaderCalls.get(), 2);
+    }
+
+    @Test
+    public void otherSurveyVersionMisses() {
+        Survey survey = makeSurvey(true);
+        cache.getSurvey(TEST_APP_ID, SURVEY_KEYS, loader(survey));
+        cache.getSurvey(TEST_APP_ID, new GuidCreatedOnVersionHolderImpl(SURVEY_KEYS.getGuid(), 2000L),
+                loader(survey));
+
+        assertEquals(loaderCalls.get(), 2);
+    }
+
+    @Test
+    public void schemaIsCached() {
+        UploadSchema schema = UploadSchema.create();
+        UploadSchema first = cache.getUploadSchema(TEST_APP_ID, SCHEMA_ID, SCHEMA_REV, loader(schema));
+        UploadSchema second = cache.getUploadSchema(TEST_APP_ID, SCHEMA_ID, SCHEMA_REV, loader(schema));
+
+        assertSame(first, schema);
+        assertSame(second, schema);
+        assertEquals(loaderCalls.get(), 1);
+
+        // Other revisions are separate.
+        cache.getUploadSchema(TEST_APP_ID, SCHEMA_ID, SCHEMA_REV + 1, loader(schema));
+        assertEquals(loaderCalls.get(), 2);
+    }
+
+    @Test
+    public void missingSchemaIsNotCached() {
+        assertNull(cache.getUploadSchema(TEST_APP_ID, SCHEMA_ID, SCHEMA_REV, loader(null)));
+        assertNull(cache.getUploadSchema(TEST_APP_ID, SCHEMA_ID, SCHEMA_REV, loader(null)));
+
+        assertEquals(loaderCalls.get(), 2);
+    }
+
+    @Test
+    public void loaderExceptionIsThrown() {
+        try {
+            cache.getUploadSchema(TEST_APP_ID, SCHEMA_ID, SCHEMA_REV, () -> {
+                throw new IllegalStateException();
+            });
+            fail("expected exception");
+        } catch (IllegalStateException ex) {
+            // expected exception
+        }
+
+        UploadSchema schema = UploadSchema.create();
+        assertSame(cache.getUploadSchema(TEST_APP_ID, SCHEMA_ID, SCHEMA_REV, loader(schema)), schema);
+        assertEquals(loaderCalls.get(), 1);
+    }
+
+    @Test
+    public void cacheIsBoundedByEntryCount() {
+        when(mockConfig.getPropertyAsInt("immutable.artifact.cache.max.size")).thenReturn(0);
+        when(mockConfig.getPropertyAsInt("immutable.artifact.cache.ttl.seconds")).thenReturn(3600);
+        cache.setBridgeConfig(mockConfig);
+
+        // The cache has no room for any entries, so nothing is kept.
+        Survey survey = makeSurvey(true);
+        cache.getSurvey(TEST_APP_ID, SURVEY_KEYS, loader(survey));
+        cache.getSurvey(TEST_APP_ID, SURVEY_KEYS, loader(survey));
+
+        assertEquals(loaderCalls.get(), 2);
+    }
+
+    @Test
+    public void invalidateDiscardsApp() {
+        Survey survey = makeSurvey(true);
+        UploadSchema schema = UploadSchema.create();
+        cache.getSurvey(TEST_APP_ID, SURVEY_KEYS, loader(survey));
+        cache.getUploadSchema(TEST_APP_ID, SCHEMA_ID, SCHEMA_REV, loader(schema));
+        cache.getUploadSchema(OTHER_APP_ID, SCHEMA_ID, SCHEMA_REV, loader(schema));
+
+        cache.invalidate(TEST_APP_ID);
+        verify(mockBus).publish(ImmutableArtifactCache.CACHE_NAME, TEST_APP_ID);
+
+        // App is loaded again, other app is not.
+        cache.getSurvey(TEST_APP_ID, SURVEY_KEYS, loader(survey));
+        cache.getUploadSchema(TEST_APP_ID, SCHEMA_ID, SCHEMA_REV, loader(schema));
+        cache.getUploadSchema(OTHER_APP_ID, SCHEMA_ID, SCHEMA_REV, loader(schema));
+        assertEquals(loaderCalls.get(), 5);
+    }
+
+    @Test
+    public void invalidationFromOtherNode() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Consumer<String>> listenerCaptor = ArgumentCaptor.forClass(Consumer.class);
+        verify(mockBus).addListener(eq(ImmutableArtifactCache.CACHE_NAME), listenerCaptor.capture());
+
+        UploadSchema schema = UploadSchema.create();
+        cache.getUploadSchema(TEST_APP_ID, SCHEMA_ID, SCHEMA_REV, loader(schema));
+
+        listenerCaptor.getValue().accept(TEST_APP_ID);
+
+        cache.getUploadSchema(TEST_APP_ID, SCHEMA_ID, SCHEMA_REV, loader(schema));
+        assertEquals(loaderCalls.get(), 2);
+    }
+
+    @Test
+    public void invalidateDuringLoadIsNotCached() {
+        // The schema changes while it's being loaded. The loaded copy is stale and must not be returned to later
+        // requests.
+        UploadSchema schema = UploadSchema.create();
+        Supplier<UploadSchema> loader = loader(schema);
+        cache.getUploadSchema(TEST_APP_ID, SCHEMA_ID, SCHEMA_REV, () -> {
+            cache.invalidate(TEST_APP_ID);
+            return loader.get();
+        });
+        cache.getUploadSchema(TEST_APP_ID, SCHEMA_ID, SCHEMA_REV, loader(schema));
+
+        assertEquals(loaderCalls.get(), 2);
+    }
+
+    @Test
+    public void worksWithoutBusOrMetrics() {
+        ImmutableArtifactCache bareCache = new ImmutableArtifactCache();
+        UploadSchema schema = UploadSchema.create();
+        bareCache.getUploadSchema(TEST_APP_ID, SCHEMA_ID, SCHEMA_REV, loader(schema));
+
+        // Does not throw.
+        bareCache.invalidate(TEST_APP_ID);
+
+        bareCache.getUploadSchema(TEST_APP_ID, SCHEMA_ID, SCHEMA_REV, loader(schema));
+        assertEquals(loaderCalls.get(), 2);
+    }
+
+    @Test
+    public void hitRatioWithNoRequests() {
+        Gauge<?> gauge = metricRegistry.getGauges().get(ImmutableArtifactCache.METRIC_HIT_RATIO);
+        assertEquals(gauge.getValue(), Double.NaN);
+    }
+
+    private <T> Supplier<T> loader(T value) {
+        return () -> {
+            loaderCalls.incrementAndGet();
+            return value;
+        };
+    }
+
+    private static Survey makeSurvey(boolean published) {
+        Survey survey = Survey.create();
+        survey.setAppId(TEST_APP_ID);
+        survey.setGuid(SURVEY_KEYS.getGuid());
+        survey.setCreatedOn(SURVEY_KEYS.getCreatedOn());
+        survey.setPublished(published);
+        return survey;
+    }
+}
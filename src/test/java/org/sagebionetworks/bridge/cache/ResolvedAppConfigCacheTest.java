@@ -0,0 +1,195 @@
+package org.sagebionetworks.bridge.cache;
+
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.sagebionetworks.bridge.BridgeConstants.SHARED_APP_ID;
+import static org.sagebionetworks.bridge.TestConstants.TEST_APP_ID;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.joda.time.DateTime;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.models.appconfig.AppConfig;
+import org.sagebionetworks.bridge.models.assessments.AssessmentReference;
+import org.sagebionetworks.bridge.models.schedules.ConfigReference;
+import org.sagebionetworks.bridge.models.schedules.SurveyReference;
+
+public class ResolvedAppConfigCacheTest {
+    private static final String OTHER_APP_ID = "other-app";
+    private static final String CONFIG_GUID = "config-guid";
+    private static final DateTime SURVEY_CREATED_ON = DateTime.parse("2020-03-01T00:00:00.000Z");
+    private static final SurveyReference UNRESOLVED_SURVEY_REF = new SurveyReference(null, "survey-guid",
+            SURVEY_CREATED_ON);
+    private static final SurveyReference RESOLVED_SURVEY_REF = new SurveyReference("survey-id", "survey-guid",
+            SURVEY_CREATED_ON);
+    private static final AssessmentReference UNRESOLVED_ASSESSMENT_REF = new AssessmentReference("assessment-guid",
+            null, null);
+    private static final AssessmentReference RESOLVED_ASSESSMENT_REF = new AssessmentReference("assessment-guid",
+            "assessment-id", "shared-id");
+
+    @Mock
+    private CacheInvalidationBus mockBus;
+
+    private MetricRegistry metricRegistry;
+    private ResolvedAppConfigCache cache;
+    private AtomicInteger resolverCalls;
+
+    @BeforeMethod
+    public void before() {
+        MockitoAnnotations.initMocks(this);
+        metricRegistry = new MetricRegistry();
+        resolverCalls = new AtomicInteger();
+
+        cache = new ResolvedAppConfigCache();
+        cache.setCacheInvalidationBus(mockBus);
+        cache.setMetricRegistry(metricRegistry);
+    }
+
+    @Test
+    public void repeatRequestSkipsResolver() {
+        AppConfig first = makeAppConfig(TEST_APP_ID, 1L);
+        cache.resolveReferences(first, resolver());
+        AppConfig second = makeAppConfig(TEST_APP_ID, 1L);
+        cache.resolveReferences(second, resolver());
+
+        assertEquals(resolverCalls.get(), 1);
+        assertEquals(second.getSurveyReferences(), ImmutableList.of(RESOLVED_SURVEY_REF));
+        assertEquals(second.getAssessmentReferences(), ImmutableList.of(RESOLVED_ASSESSMENT_REF));
+        assertEquals(second.getConfigElements(), ImmutableMap.of("clientData", TestUtils.getClientData()));
+        assertEquals(metricRegistry.counter(ResolvedAppConfigCache.METRIC_MISS).getCount(), 1L);
+        assertEquals(metricRegistry.counter(ResolvedAppConfigCache.METRIC_HIT).getCount(), 1L);
+    }
+
+    @Test
+    public void newVersionMisses() {
+        cache.resolveReferences(makeAppConfig(TEST_APP_ID, 1L), resolver());
+        cache.resolveReferences(makeAppConfig(TEST_APP_ID, 2L), resolver());
+
+        assertEquals(resolverCalls.get(), 2);
+    }
+
+    @Test
+    public void unsavedConfigIsNotCached() {
+        cache.resolveReferences(makeAppConfig(TEST_APP_ID, null), resolver());
+        cache.resolveReferences(makeAppConfig(TEST_APP_ID, null), resolver());
+
+        assertEquals(resolverCalls.get(), 2);
+        assertEquals(metricRegistry.counter(ResolvedAppConfigCache.METRIC_MISS).getCount(), 0L);
+    }
+
+    @Test
+    public void returnsCopiesOfConfigElements() {
+        AppConfig first = makeAppConfig(TEST_APP_ID, 1L);
+        cache.resolveReferences(first, resolver());
+        ((ObjectNode) first.getConfigElements().get("clientData")).put("foo", "bar");
+
+        AppConfig second = makeAppConfig(TEST_APP_ID, 1L);
+        cache.resolveReferences(second, resolver());
+        JsonNode clientData = second.getConfigElements().get("clientData");
+        assertNotSame(clientData, first.getConfigElements().get("clientData"));
+        assertFalse(clientData.has("foo"));
+        assertEquals(clientData, TestUtils.getClientData());
+    }
+
+    @Test
+    public void invalidateDiscardsAppConfigs() {
+        cache.resolveReferences(makeAppConfig(TEST_APP_ID, 1L), resolver());
+        cache.resolveReferences(makeAppConfig(OTHER_APP_ID, 1L), resolver());
+
+        cache.invalidate(TEST_APP_ID);
+        verify(mockBus).publish(ResolvedAppConfigCache.CACHE_NAME, TEST_APP_ID);
+
+        // App is resolved again, other app is not.
+        cache.resolveReferences(makeAppConfig(TEST_APP_ID, 1L), resolver());
+        cache.resolveReferences(makeAppConfig(OTHER_APP_ID, 1L), resolver());
+        assertEquals(resolverCalls.get(), 3);
+    }
+
+    @Test
+    public void invalidateSharedAppDiscardsAllAppConfigs() {
+        cache.resolveReferences(makeAppConfig(TEST_APP_ID, 1L), resolver());
+        cache.resolveReferences(makeAppConfig(OTHER_APP_ID, 1L), resolver());
+
+        cache.invalidate(SHARED_APP_ID);
+        verify(mockBus).publish(ResolvedAppConfigCache.CACHE_NAME, SHARED_APP_ID);
+
+        cache.resolveReferences(makeAppConfig(TEST_APP_ID, 1L), resolver());
+        cache.resolveReferences(makeAppConfig(OTHER_APP_ID, 1L), resolver());
+        assertEquals(resolverCalls.get(), 4);
+    }
+
+    @Test
+    public void invalidationFromOtherNode() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Consumer<String>> listenerCaptor = ArgumentCaptor.forClass(Consumer.class);
+        verify(mockBus).addListener(eq(ResolvedAppConfigCache.CACHE_NAME), listenerCaptor.capture());
+
+        cache.resolveReferences(makeAppConfig(TEST_APP_ID, 1L), resolver());
+
+        listenerCaptor.getValue().accept(TEST_APP_ID);
+
+        cache.resolveReferences(makeAppConfig(TEST_APP_ID, 1L), resolver());
+        assertEquals(resolverCalls.get(), 2);
+    }
+
+    @Test
+    public void invalidateDuringResolutionIsNotCached() {
+        // A survey changes while the references are being resolved. The result of this run is stale and must not be
+        // returned to later requests.
+        Consumer<AppConfig> resolver = resolver();
+        cache.resolveReferences(makeAppConfig(TEST_APP_ID, 1L), appConfig -> {
+            cache.invalidate(TEST_APP_ID);
+            resolver.accept(appConfig);
+        });
+        cache.resolveReferences(makeAppConfig(TEST_APP_ID, 1L), resolver());
+
+        assertEquals(resolverCalls.get(), 2);
+    }
+
+    @Test
+    public void worksWithoutBus() {
+        ResolvedAppConfigCache cacheWithoutBus = new ResolvedAppConfigCache();
+        cacheWithoutBus.resolveReferences(makeAppConfig(TEST_APP_ID, 1L), resolver());
+
+        // Does not throw.
+        cacheWithoutBus.invalidate(TEST_APP_ID);
+
+        cacheWithoutBus.resolveReferences(makeAppConfig(TEST_APP_ID, 1L), resolver());
+        assertEquals(resolverCalls.get(), 2);
+    }
+
+    private Consumer<AppConfig> resolver() {
+        return appConfig -> {
+            resolverCalls.incrementAndGet();
+            appConfig.setSurveyReferences(ImmutableList.of(RESOLVED_SURVEY_REF));
+            appConfig.setAssessmentReferences(ImmutableList.of(RESOLVED_ASSESSMENT_REF));
+            appConfig.setConfigElements(ImmutableMap.of("clientData", TestUtils.getClientData()));
+        };
+    }
+
+    private static AppConfig makeAppConfig(String appId, Long version) {
+        AppConfig appConfig = AppConfig.create();
+        appConfig.setAppId(appId);
+        appConfig.setGuid(CONFIG_GUID);
+        appConfig.setVersion(version);
+        appConfig.setSurveyReferences(ImmutableList.of(UNRESOLVED_SURVEY_REF));
+        appConfig.setAssessmentReferences(ImmutableList.of(UNRESOLVED_ASSESSMENT_REF));
+        appConfig.setConfigReferences(ImmutableList.of(new ConfigReference("clientData", 1L)));
+        return appConfig;
+    }
+}
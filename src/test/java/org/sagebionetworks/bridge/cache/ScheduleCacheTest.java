@@ -0,0 +1,185 @@
+package org.sagebionetworks.bridge.cache;
+
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.sagebionetworks.bridge.TestConstants.TEST_APP_ID;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDateTime;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.sagebionetworks.bridge.models.schedules.Activity;
+import org.sagebionetworks.bridge.models.schedules.ScheduleContext;
+import org.sagebionetworks.bridge.models.schedules.ScheduledActivity;
+
+public class ScheduleCacheTest {
+    private static final String HEALTH_CODE = "health-code";
+    private static final String OTHER_APP_ID = "other-app";
+    private static final DateTimeZone TIME_ZONE = DateTimeZone.forOffsetHours(-7);
+    private static final DateTime STARTS_ON = DateTime.parse("2020-03-01T00:00:00.000-07:00");
+    private static final DateTime ENDS_ON = STARTS_ON.plusDays(4);
+    private static final DateTime ENROLLMENT = DateTime.parse("2020-02-20T10:00:00.000Z");
+
+    @Mock
+    private CacheInvalidationBus mockBus;
+
+    private MetricRegistry metricRegistry;
+    private ScheduleCache scheduleCache;
+    private AtomicInteger schedulerCalls;
+
+    @BeforeMethod
+    public void before() {
+        MockitoAnnotations.initMocks(this);
+        metricRegistry = new MetricRegistry();
+        schedulerCalls = new AtomicInteger();
+
+        scheduleCache = new ScheduleCache();
+        scheduleCache.setCacheInvalidationBus(mockBus);
+        scheduleCache.setMetricRegistry(metricRegistry);
+    }
+
+    @Test
+    public void repeatPollSkipsScheduler() {
+        ScheduleContext context = makeContext(TEST_APP_ID, ENROLLMENT);
+
+        List<ScheduledActivity> first = scheduleCache.getScheduledActivities(context, scheduler());
+        List<ScheduledActivity> second = scheduleCache.getScheduledActivities(context, scheduler());
+
+        assertEquals(schedulerCalls.get(), 1);
+        assertEquals(second, first);
+        assertEquals(metricRegistry.counter(ScheduleCache.METRIC_MISS).getCount(), 1L);
+        assertEquals(metricRegistry.counter(ScheduleCache.METRIC_HIT).getCount(), 1L);
+    }
+
+    @Test
+    public void returnsCopies() {
+        ScheduleContext context = makeContext(TEST_APP_ID, ENROLLMENT);
+
+        List<ScheduledActivity> first = scheduleCache.getScheduledActivities(context, scheduler());
+        ScheduledActivity activity = first.get(0);
+        activity.setStartedOn(ENROLLMENT.getMillis());
+        first.clear();
+
+        List<ScheduledActivity> second = scheduleCache.getScheduledActivities(context, scheduler());
+        assertEquals(second.size(), 1);
+        assertNotSame(second.get(0), activity);
+        assertNull(second.get(0).getStartedOn());
+
+        // The copy has all the fields of the scheduled activity, including the ones that aren't serialized.
+        ScheduledActivity copy = second.get(0);
+        assertEquals(copy.getHealthCode(), HEALTH_CODE);
+        assertEquals(copy.getGuid(), "activity-guid:2020-03-01T09:00:00.000");
+        assertEquals(copy.getSchedulePlanGuid(), "plan-guid");
+        assertEquals(copy.getTimeZone(), TIME_ZONE);
+        assertEquals(copy.getLocalScheduledOn(), LocalDateTime.parse("2020-03-01T09:00:00.000"));
+        assertEquals(copy.getLocalExpiresOn(), LocalDateTime.parse("2020-03-02T09:00:00.000"));
+        assertEquals(copy.getActivity().getGuid(), "activity-guid");
+        assertEquals(copy.getReferentGuid(), "referent-guid");
+    }
+
+    @Test
+    public void differentEventsMiss() {
+        scheduleCache.getScheduledActivities(makeContext(TEST_APP_ID, ENROLLMENT), scheduler());
+        scheduleCache.getScheduledActivities(makeContext(TEST_APP_ID, ENROLLMENT.plusDays(1)), scheduler());
+
+        assertEquals(schedulerCalls.get(), 2);
+    }
+
+    @Test
+    public void invalidateDiscardsAppSchedules() {
+        ScheduleContext context = makeContext(TEST_APP_ID, ENROLLMENT);
+        ScheduleContext otherAppContext = makeContext(OTHER_APP_ID, ENROLLMENT);
+        scheduleCache.getScheduledActivities(context, scheduler());
+        scheduleCache.getScheduledActivities(otherAppContext, scheduler());
+
+        scheduleCache.invalidate(TEST_APP_ID);
+        verify(mockBus).publish(ScheduleCache.CACHE_NAME, TEST_APP_ID);
+
+        // App is re-scheduled, other app is not.
+        scheduleCache.getScheduledActivities(context, scheduler());
+        scheduleCache.getScheduledActivities(otherAppContext, scheduler());
+        assertEquals(schedulerCalls.get(), 3);
+    }
+
+    @Test
+    public void invalidationFromOtherNode() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Consumer<String>> listenerCaptor = ArgumentCaptor.forClass(Consumer.class);
+        verify(mockBus).addListener(eq(ScheduleCache.CACHE_NAME), listenerCaptor.capture());
+
+        ScheduleContext context = makeContext(TEST_APP_ID, ENROLLMENT);
+        scheduleCache.getScheduledActivities(context, scheduler());
+
+        listenerCaptor.getValue().accept(TEST_APP_ID);
+
+        scheduleCache.getScheduledActivities(context, scheduler());
+        assertEquals(schedulerCalls.get(), 2);
+    }
+
+    @Test
+    public void invalidateDuringSchedulingIsNotCached() {
+        ScheduleContext context = makeContext(TEST_APP_ID, ENROLLMENT);
+
+        // The plans change while the scheduler is running. The result of this run is stale and must not be returned
+        // to later polls.
+        scheduleCache.getScheduledActivities(context, () -> {
+            scheduleCache.invalidate(TEST_APP_ID);
+            return scheduler().get();
+        });
+        scheduleCache.getScheduledActivities(context, scheduler());
+
+        assertEquals(schedulerCalls.get(), 2);
+    }
+
+    @Test
+    public void worksWithoutBus() {
+        ScheduleCache cache = new ScheduleCache();
+        ScheduleContext context = makeContext(TEST_APP_ID, ENROLLMENT);
+        cache.getScheduledActivities(context, scheduler());
+
+        // Does not throw.
+        cache.invalidate(TEST_APP_ID);
+
+        cache.getScheduledActivities(context, scheduler());
+        assertEquals(schedulerCalls.get(), 2);
+    }
+
+    private Supplier<List<ScheduledActivity>> scheduler() {
+        return () -> {
+            schedulerCalls.incrementAndGet();
+
+            ScheduledActivity activity = ScheduledActivity.create();
+            activity.setHealthCode(HEALTH_CODE);
+            activity.setGuid("activity-guid:2020-03-01T09:00:00.000");
+            activity.setSchedulePlanGuid("plan-guid");
+            activity.setTimeZone(TIME_ZONE);
+            activity.setLocalScheduledOn(LocalDateTime.parse("2020-03-01T09:00:00.000"));
+            activity.setLocalExpiresOn(LocalDateTime.parse("2020-03-02T09:00:00.000"));
+            activity.setActivity(new Activity.Builder().withGuid("activity-guid").withLabel("label").build());
+            activity.setReferentGuid("referent-guid");
+            return ImmutableList.of(activity);
+        };
+    }
+
+    private static ScheduleContext makeContext(String appId, DateTime enrollment) {
+        return new ScheduleContext.Builder().withAppId(appId).withHealthCode(HEALTH_CODE)
+                .withInitialTimeZone(TIME_ZONE).withStartsOn(STARTS_ON).withEndsOn(ENDS_ON)
+                .withEvents(ImmutableMap.of("enrollment", enrollment)).build();
+    }
+}
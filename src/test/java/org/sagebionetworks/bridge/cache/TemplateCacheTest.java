@@ -0,0 +1,131 @@
+package org.sagebionetworks.bridge.cache;
+
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.sagebionetworks.bridge.TestConstants.TEST_APP_ID;
+import static org.sagebionetworks.bridge.models.templates.TemplateType.EMAIL_RESET_PASSWORD;
+import static org.sagebionetworks.bridge.models.templates.TemplateType.SMS_RESET_PASSWORD;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.sagebionetworks.bridge.models.Criteria;
+import org.sagebionetworks.bridge.models.CriteriaMatcher;
+import org.sagebionetworks.bridge.models.templates.Template;
+
+public class TemplateCacheTest {
+    private static final String OTHER_APP_ID = "other-app";
+
+    @Mock
+    private CacheInvalidationBus mockBus;
+
+    private MetricRegistry metricRegistry;
+    private TemplateCache cache;
+    private AtomicInteger loaderCalls;
+
+    @BeforeMethod
+    public void before() {
+        MockitoAnnotations.initMocks(this);
+        metricRegistry = new MetricRegistry();
+        loaderCalls = new AtomicInteger();
+
+        cache = new TemplateCache();
+        cache.setCacheInvalidationBus(mockBus);
+        cache.setMetricRegistry(metricRegistry);
+    }
+
+    @Test
+    public void repeatRequestSkipsLoader() {
+        CriteriaMatcher<Template> first = cache.getTemplateMatcher(TEST_APP_ID, EMAIL_RESET_PASSWORD, loader());
+        CriteriaMatcher<Template> second = cache.getTemplateMatcher(TEST_APP_ID, EMAIL_RESET_PASSWORD, loader());
+
+        assertSame(second, first);
+        assertEquals(second.getCandidates().size(), 1);
+        assertEquals(loaderCalls.get(), 1);
+        assertEquals(metricRegistry.counter(TemplateCache.METRIC_MISS).getCount(), 1L);
+        assertEquals(metricRegistry.counter(TemplateCache.METRIC_HIT).getCount(), 1L);
+    }
+
+    @Test
+    public void typesAreCachedSeparately() {
+        cache.getTemplateMatcher(TEST_APP_ID, EMAIL_RESET_PASSWORD, loader());
+        cache.getTemplateMatcher(TEST_APP_ID, SMS_RESET_PASSWORD, loader());
+
+        assertEquals(loaderCalls.get(), 2);
+    }
+
+    @Test
+    public void invalidateDiscardsTemplates() {
+        cache.getTemplateMatcher(TEST_APP_ID, EMAIL_RESET_PASSWORD, loader());
+        cache.getTemplateMatcher(OTHER_APP_ID, EMAIL_RESET_PASSWORD, loader());
+
+        cache.invalidate(TEST_APP_ID);
+        verify(mockBus).publish(TemplateCache.CACHE_NAME, TEST_APP_ID);
+
+        // App is loaded again, other app is not.
+        cache.getTemplateMatcher(TEST_APP_ID, EMAIL_RESET_PASSWORD, loader());
+        cache.getTemplateMatcher(OTHER_APP_ID, EMAIL_RESET_PASSWORD, loader());
+        assertEquals(loaderCalls.get(), 3);
+    }
+
+    @Test
+    public void invalidationFromOtherNode() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Consumer<String>> listenerCaptor = ArgumentCaptor.forClass(Consumer.class);
+        verify(mockBus).addListener(eq(TemplateCache.CACHE_NAME), listenerCaptor.capture());
+
+        cache.getTemplateMatcher(TEST_APP_ID, EMAIL_RESET_PASSWORD, loader());
+
+        listenerCaptor.getValue().accept(TEST_APP_ID);
+
+        cache.getTemplateMatcher(TEST_APP_ID, EMAIL_RESET_PASSWORD, loader());
+        assertEquals(loaderCalls.get(), 2);
+    }
+
+    @Test
+    public void invalidateDuringLoadIsNotCached() {
+        // A template changes while the templates are being loaded. The result of this load is stale and must not be
+        // returned to later requests.
+        Supplier<List<Template>> loader = loader();
+        cache.getTemplateMatcher(TEST_APP_ID, EMAIL_RESET_PASSWORD, () -> {
+            cache.invalidate(TEST_APP_ID);
+            return loader.get();
+        });
+        cache.getTemplateMatcher(TEST_APP_ID, EMAIL_RESET_PASSWORD, loader());
+
+        assertEquals(loaderCalls.get(), 2);
+    }
+
+    @Test
+    public void worksWithoutBus() {
+        TemplateCache cacheWithoutBus = new TemplateCache();
+        cacheWithoutBus.getTemplateMatcher(TEST_APP_ID, EMAIL_RESET_PASSWORD, loader());
+
+        // Does not throw.
+        cacheWithoutBus.invalidate(TEST_APP_ID);
+
+        cacheWithoutBus.getTemplateMatcher(TEST_APP_ID, EMAIL_RESET_PASSWORD, loader());
+        assertEquals(loaderCalls.get(), 2);
+    }
+
+    private Supplier<List<Template>> loader() {
+        return () -> {
+            loaderCalls.incrementAndGet();
+            Template template = Template.create();
+            template.setCriteria(Criteria.create());
+            return ImmutableList.of(template);
+        };
+    }
+}
@@ -0,0 +1,349 @@
+package org.sagebionetworks.bridge.cache;
+
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sagebionetworks.bridge.cache.UploadDedupeFilter.Result.MAYBE_SEEN;
+import static org.sagebionetworks.bridge.cache.UploadDedupeFilter.Result.NOT_SEEN;
+import static org.sagebionetworks.bridge.cache.UploadDedupeFilter.Result.UNKNOWN;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import com.codahale.metrics.MetricRegistry;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import org.sagebionetworks.bridge.config.BridgeConfig;
+
+public class UploadDedupeFilterTest {
+    private static final String HEALTH_CODE = "health-code";
+    private static final String MD5 = "upload-md5";
+    private static final String OTHER_MD5 = "other-md5";
+    private static final DateTime STARTED_ON = DateTime.parse("2020-06-01T10:00:00.000Z");
+    private static final int WINDOW_DAYS = 7;
+
+    @Mock
+    private BridgeConfig mockConfig;
+
+    @Mock
+    private JedisPool mockJedisPool;
+
+    @Mock
+    private Jedis mockJedis;
+
+    @Mock
+    private Pipeline mockPipeline;
+
+    @Mock
+    private CacheInvalidationBus mockCacheInvalidationBus;
+
+    @Captor
+    private ArgumentCaptor<Consumer<String>> listenerCaptor;
+
+    private MetricRegistry metricRegistry;
+    private UploadDedupeFilter filter;
+    private Map<String, Set<Long>> redisBits;
+    private Map<String, String> redisValues;
+
+    @BeforeMethod
+    public void before() {
+        MockitoAnnotations.initMocks(this);
+        DateTimeUtils.setCurrentMillisFixed(STARTED_ON.getMillis());
+
+        when(mockConfig.getProperty("upload.dedupe.filter.enabled")).thenReturn("true");
+        when(mockConfig.getProperty("upload.dedupe.filter.shared")).thenReturn("false");
+        when(mockConfig.getPropertyAsInt("upload.dedupe.filter.bits")).thenReturn(4096);
+        when(mockConfig.getPropertyAsInt("upload.dedupe.filter.hashes")).thenReturn(3);
+
+        metricRegistry = new MetricRegistry();
+        filter = new UploadDedupeFilter();
+        filter.setBridgeConfig(mockConfig);
+        filter.setMetricRegistry(metricRegistry);
+        filter.setCacheInvalidationBus(mockCacheInvalidationBus);
+        verify(mockCacheInvalidationBus).addListener(eq(UploadDedupeFilter.CACHE_NAME), listenerCaptor.capture());
+    }
+
+    @AfterMethod
+    public void after() {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    @Test
+    public void unknownUntilWindowIsRecorded() {
+        filter.put(HEALTH_CODE, MD5, STARTED_ON);
+
+        // The window starts before the filter started recording.
+        DateTime requestedOn = STARTED_ON.plusDays(WINDOW_DAYS);
+        assertEquals(check(OTHER_MD5, requestedOn), UNKNOWN);
+
+        // The window starts after the filter started recording, with allowance for clock skew.
+        requestedOn = STARTED_ON.plusDays(WINDOW_DAYS).plusHours(2);
+        assertEquals(check(OTHER_MD5, requestedOn), NOT_SEEN);
+        assertEquals(metricRegistry.meter(UploadDedupeFilter.METRIC_UNAVAILABLE).getCount(), 1L);
+        assertEquals(metricRegistry.meter(UploadDedupeFilter.METRIC_SKIPPED).getCount(), 1L);
+    }
+
+    @Test
+    public void unknownBeforeFirstPut() {
+        assertEquals(check(MD5, STARTED_ON.plusDays(30)), UNKNOWN);
+    }
+
+    @Test
+    public void localFilter() {
+        filter.put(HEALTH_CODE, "warm-up", STARTED_ON);
+        DateTime registeredOn = STARTED_ON.plusDays(10);
+        filter.put(HEALTH_CODE, MD5, registeredOn);
+
+        // Seen in the same day, and days later within the window.
+        assertEquals(check(MD5, registeredOn), MAYBE_SEEN);
+        assertEquals(check(MD5, registeredOn.plusDays(WINDOW_DAYS - 1)), MAYBE_SEEN);
+
+        // Not seen for another health code or MD5.
+        assertEquals(filter.check("other-health-code", MD5, registeredOn.minusDays(WINDOW_DAYS), registeredOn),
+                NOT_SEEN);
+        assertEquals(check(OTHER_MD5, registeredOn), NOT_SEEN);
+
+        // Not seen once the window has passed.
+        assertEquals(check(MD5, registeredOn.plusDays(WINDOW_DAYS + 2)), NOT_SEEN);
+
+        assertEquals(metricRegistry.meter(UploadDedupeFilter.METRIC_MAYBE).getCount(), 2L);
+        assertEquals(metricRegistry.meter(UploadDedupeFilter.METRIC_SKIPPED).getCount(), 3L);
+    }
+
+    @Test
+    public void localFilterHasNoFalseNegatives() {
+        filter.put(HEALTH_CODE, "warm-up", STARTED_ON);
+        DateTime registeredOn = STARTED_ON.plusDays(10);
+        for (int i = 0; i < 200; i++) {
+            filter.put(HEALTH_CODE, "md5-" + i, registeredOn);
+        }
+        for (int i = 0; i < 200; i++) {
+            assertEquals(check("md5-" + i, registeredOn.plusDays(1)), MAYBE_SEEN);
+        }
+    }
+
+    @Test
+    public void recordFalsePositive() {
+        filter.recordFalsePositive();
+        assertEquals(metricRegistry.meter(UploadDedupeFilter.METRIC_FALSE_POSITIVE).getCount(), 1L);
+    }
+
+    @Test
+    public void disabled() {
+        when(mockConfig.getProperty("upload.dedupe.filter.enabled")).thenReturn("false");
+        filter.setBridgeConfig(mockConfig);
+
+        filter.put(HEALTH_CODE, "warm-up", STARTED_ON);
+        assertEquals(check(MD5, STARTED_ON.plusDays(30)), UNKNOWN);
+        assertEquals(metricRegistry.meter(UploadDedupeFilter.METRIC_UNAVAILABLE).getCount(), 0L);
+    }
+
+    @Test
+    public void offsetsAreInRange() {
+        long[] offsets = filter.getOffsets(HEALTH_CODE, MD5);
+        assertEquals(offsets.length, 3);
+        for (long offset : offsets) {
+            assertTrue(offset >= 0 && offset < 4096);
+        }
+    }
+
+    @Test
+    public void sharedFilter() {
+        setUpRedis();
+        DateTime registeredOn = STARTED_ON.plusDays(10);
+        filter.put(HEALTH_CODE, MD5, registeredOn);
+
+        String bucketKey = UploadDedupeFilter.getBucketKey(registeredOn.getMillis() / 86400000L);
+        verify(mockPipeline).setnx(UploadDedupeFilter.SINCE_KEY, String.valueOf(STARTED_ON.getMillis()));
+        verify(mockPipeline).expire(bucketKey, UploadDedupeFilter.BUCKET_TTL_SECONDS);
+        Set<Long> expectedBits = new HashSet<>();
+        for (long offset : filter.getOffsets(HEALTH_CODE, MD5)) {
+            expectedBits.add(offset);
+        }
+        expectedBits.add(filter.getSentinelOffset());
+        assertEquals(redisBits.get(bucketKey), expectedBits);
+
+        putEveryDay(registeredOn.minusDays(WINDOW_DAYS), registeredOn.plusDays(1));
+        assertEquals(check(MD5, registeredOn.plusDays(1)), MAYBE_SEEN);
+        assertEquals(check(OTHER_MD5, registeredOn.plusDays(1)), NOT_SEEN);
+    }
+
+    @Test
+    public void sharedFilterWithMissingBucketIsUnknown() {
+        setUpRedis();
+        DateTime registeredOn = STARTED_ON.plusDays(10);
+        putEveryDay(registeredOn.minusDays(WINDOW_DAYS), registeredOn);
+        assertEquals(check(MD5, registeredOn), NOT_SEEN);
+
+        // Redis dropped a bucket in the window, which may have held this upload.
+        redisBits.remove(UploadDedupeFilter.getBucketKey(registeredOn.minusDays(2).getMillis() / 86400000L));
+        assertEquals(check(MD5, registeredOn), UNKNOWN);
+    }
+
+    @Test
+    public void sharedFilterWithoutStartIsUnknown() {
+        setUpRedis();
+        DateTime registeredOn = STARTED_ON.plusDays(10);
+        filter.put(HEALTH_CODE, MD5, registeredOn);
+
+        // Redis lost the start of the filter.
+        redisValues.clear();
+        assertEquals(check(OTHER_MD5, registeredOn.plusDays(1)), UNKNOWN);
+    }
+
+    @Test
+    public void sharedFilterErrorIsUnknown() {
+        setUpRedis();
+        filter.put(HEALTH_CODE, MD5, STARTED_ON);
+        when(mockJedisPool.getResource()).thenThrow(new JedisConnectionException("test"));
+
+        assertEquals(check(OTHER_MD5, STARTED_ON.plusDays(10)), UNKNOWN);
+        assertEquals(metricRegistry.meter(UploadDedupeFilter.METRIC_UNAVAILABLE).getCount(), 1L);
+    }
+
+    @Test
+    public void failedPutRestartsFilter() {
+        setUpRedis();
+        filter.put(HEALTH_CODE, MD5, STARTED_ON);
+        DateTime now = STARTED_ON.plusDays(10);
+        DateTimeUtils.setCurrentMillisFixed(now.getMillis());
+
+        // Put fails, so the filter may be missing this upload.
+        when(mockPipeline.setbit(anyString(), anyLong(), anyBoolean()))
+                .thenThrow(new JedisConnectionException("test"));
+        filter.put(HEALTH_CODE, OTHER_MD5, now);
+
+        // The failed put restarts the shared filter right away, and tells the other nodes.
+        verify(mockJedis).set(UploadDedupeFilter.SINCE_KEY, String.valueOf(now.getMillis()));
+        verify(mockCacheInvalidationBus).publish(UploadDedupeFilter.CACHE_NAME, UploadDedupeFilter.RESTART_KEY);
+
+        // So the window isn't covered.
+        assertEquals(check(OTHER_MD5, now), UNKNOWN);
+
+        // Until the filter has recorded a whole window since the restart.
+        stubSetbit();
+        DateTime later = now.plusDays(WINDOW_DAYS).plusHours(2);
+        putEveryDay(now, later);
+        assertEquals(check(OTHER_MD5, later), NOT_SEEN);
+    }
+
+    @Test
+    public void failedRestartIsUnknown() {
+        setUpRedis();
+        filter.put(HEALTH_CODE, MD5, STARTED_ON);
+        when(mockPipeline.setbit(anyString(), anyLong(), anyBoolean()))
+                .thenThrow(new JedisConnectionException("test"));
+        when(mockJedis.set(anyString(), anyString())).thenThrow(new JedisConnectionException("test"));
+        filter.put(HEALTH_CODE, OTHER_MD5, STARTED_ON);
+
+        assertEquals(check(OTHER_MD5, STARTED_ON.plusDays(10)), UNKNOWN);
+        verify(mockPipeline, never()).getbit(anyString(), anyLong());
+    }
+
+    @Test
+    public void restartFromOtherNodeRestartsLocalFilter() {
+        filter.put(HEALTH_CODE, MD5, STARTED_ON);
+        DateTime now = STARTED_ON.plusDays(10);
+        DateTimeUtils.setCurrentMillisFixed(now.getMillis());
+        assertEquals(check(OTHER_MD5, now), NOT_SEEN);
+
+        // Another node failed to record an upload.
+        listenerCaptor.getValue().accept(UploadDedupeFilter.RESTART_KEY);
+
+        // This node restarts before answering, so the window isn't covered.
+        assertEquals(check(OTHER_MD5, now), UNKNOWN);
+        assertEquals(check(OTHER_MD5, now.plusDays(WINDOW_DAYS).plusHours(2)), NOT_SEEN);
+    }
+
+    @Test
+    public void restartFromOtherNodeRestartsSharedFilter() {
+        setUpRedis();
+        filter.put(HEALTH_CODE, MD5, STARTED_ON);
+        DateTime now = STARTED_ON.plusDays(10);
+        DateTimeUtils.setCurrentMillisFixed(now.getMillis());
+
+        // Another node failed to record an upload, and couldn't restart the shared filter.
+        listenerCaptor.getValue().accept(UploadDedupeFilter.RESTART_KEY);
+
+        // This node restarts it before answering.
+        assertEquals(check(OTHER_MD5, now), UNKNOWN);
+        verify(mockJedis).set(UploadDedupeFilter.SINCE_KEY, String.valueOf(now.getMillis()));
+    }
+
+    // Registers an unrelated upload on every day from start to end, so the shared filter has a bucket for each day.
+    private void putEveryDay(DateTime start, DateTime end) {
+        for (DateTime day = start; !day.isAfter(end); day = day.plusDays(1)) {
+            filter.put(HEALTH_CODE, "warm-up", day);
+        }
+    }
+
+    private UploadDedupeFilter.Result check(String md5, DateTime requestedOn) {
+        return filter.check(HEALTH_CODE, md5, requestedOn.minusDays(WINDOW_DAYS), requestedOn);
+    }
+
+    // Fakes the Redis commands the shared filter uses.
+    @SuppressWarnings("unchecked")
+    private void setUpRedis() {
+        when(mockConfig.getProperty("upload.dedupe.filter.shared")).thenReturn("true");
+        filter.setBridgeConfig(mockConfig);
+        filter.setJedisPool(mockJedisPool);
+        when(mockJedisPool.getResource()).thenReturn(mockJedis);
+        when(mockJedis.pipelined()).thenReturn(mockPipeline);
+
+        redisBits = new HashMap<>();
+        redisValues = new HashMap<>();
+        when(mockPipeline.setnx(anyString(), anyString())).thenAnswer(invocation -> {
+            redisValues.putIfAbsent(invocation.getArgument(0), invocation.getArgument(1));
+            return null;
+        });
+        when(mockJedis.set(anyString(), anyString())).thenAnswer(invocation -> {
+            redisValues.put(invocation.getArgument(0), invocation.getArgument(1));
+            return "OK";
+        });
+        when(mockPipeline.get(anyString())).thenAnswer(invocation -> {
+            Response<String> response = mock(Response.class);
+            when(response.get()).thenReturn(redisValues.get(invocation.<String>getArgument(0)));
+            return response;
+        });
+        stubSetbit();
+        when(mockPipeline.getbit(anyString(), anyLong())).thenAnswer(invocation -> {
+            Set<Long> bits = redisBits.get(invocation.<String>getArgument(0));
+            Response<Boolean> response = mock(Response.class);
+            when(response.get()).thenReturn(bits != null && bits.contains(invocation.<Long>getArgument(1)));
+            return response;
+        });
+    }
+
+    // Uses doAnswer, so this can replace a stub that throws.
+    private void stubSetbit() {
+        doAnswer(invocation -> {
+            redisBits.computeIfAbsent(invocation.getArgument(0), key -> new HashSet<>())
+                    .add(invocation.getArgument(1));
+            return null;
+        }).when(mockPipeline).setbit(anyString(), anyLong(), anyBoolean());
+    }
+}
@@ -1,13 +1,28 @@
 package org.sagebionetworks.bridge.cache;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
 
+import org.apache.commons.io.IOUtils;
+import org.mockito.ArgumentCaptor;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -23,6 +38,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ser.FilterProvider;
 import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 
 public class ViewCacheTest {
@@ -45,7 +61,7 @@ public class ViewCacheTest {
         
         CacheKey cacheKey = cache.getCacheKey(App.class, app.getIdentifier());
         CacheProvider provider = mock(CacheProvider.class);
-        when(provider.getObject(cacheKey, String.class)).thenReturn(null);
+        when(provider.getBytes(cacheKey)).thenReturn(null);
         cache.setCacheProvider(provider);
         
         String json = cache.getView(cacheKey, new Supplier<App>() {
@@ -69,7 +85,7 @@ public class ViewCacheTest {
         CacheKey cacheKey = cache.getCacheKey(App.class, app.getIdentifier());
         
         CacheProvider provider = mock(CacheProvider.class);
-        when(provider.getObject(cacheKey, String.class)).thenReturn(null);
+        when(provider.getBytes(cacheKey)).thenReturn(null);
         cache.setCacheProvider(provider);
         
         // It doesn't get wrapped or transformed or anything
@@ -95,7 +111,8 @@ public class ViewCacheTest {
         
         CacheKey cacheKey = cache.getCacheKey(App.class, app.getIdentifier());
         CacheProvider provider = mock(CacheProvider.class);
-        when(provider.getObject(cacheKey, String.class)).thenReturn(originalStudyJson);
+        when(provider.getBytes(cacheKey)).thenReturn(new CachedView(originalStudyJson.getBytes(UTF_8), null)
+                .serialize());
         cache.setCacheProvider(provider);
         
         String json = cache.getView(cacheKey, new Supplier<App>() {
@@ -138,7 +155,20 @@ public class ViewCacheTest {
         ViewCache cache = new ViewCache();
         
         CacheKey cacheKey = cache.getCacheKey(App.class, "mostRandom", "leastRandom");
-        assertEquals(cacheKey.toString(), "mostRandom:leastRandom:App:view");
+        assertEquals(cacheKey.toString(), "mostRandom:leastRandom:App:view:v2");
+    }
+    
+    @Test
+    public void removeViewRemovesLegacyView() {
+        CacheProvider provider = mock(CacheProvider.class);
+        ViewCache cache = new ViewCache();
+        cache.setCacheProvider(provider);
+        
+        CacheKey cacheKey = cache.getCacheKey(App.class, "mostRandom");
+        cache.removeView(cacheKey);
+        
+        verify(provider).removeObject(cacheKey);
+        verify(provider).removeObject(CacheKey.legacyViewKey(cacheKey));
     }
     
     @Test
@@ -163,35 +193,127 @@ public class ViewCacheTest {
         
         // The string from this mapper doesn't have the "type" attribute, so if this passes, we
         // can be confident that the right mapper has been used.
-        verify(provider).setObject(cacheKey, mapper.writeValueAsString(survey), 1000);
+        ArgumentCaptor<byte[]> bytesCaptor = ArgumentCaptor.forClass(byte[].class);
+        verify(provider).setBytes(eq(cacheKey), bytesCaptor.capture(), eq(1000));
+        CachedView view = CachedView.deserialize(bytesCaptor.getValue());
+        assertEquals(new String(view.getJson(), UTF_8), mapper.writeValueAsString(survey));
+        assertNull(view.getGzippedJson());
+    }
+    
+    @Test
+    public void stringViewIsAMiss() throws Exception {
+        // Views used to be cached as JSON strings. These are replaced.
+        ViewCache cache = new ViewCache();
+        cache.setObjectMapper(BridgeObjectMapper.get());
+        cache.setCachePeriod(BridgeConstants.BRIDGE_VIEW_EXPIRE_IN_SECONDS);
+        
+        CacheKey cacheKey = cache.getCacheKey(App.class, app.getIdentifier());
+        CacheProvider provider = mock(CacheProvider.class);
+        when(provider.getBytes(cacheKey)).thenReturn(mapper.writeValueAsBytes(mapper.writeValueAsString(app)));
+        cache.setCacheProvider(provider);
+        
+        String json = cache.getView(cacheKey, () -> app);
+        
+        App foundApp = BridgeObjectMapper.get().readValue(json, DynamoApp.class);
+        assertEquals(foundApp.getName(), "Test App [ViewCacheTest]");
+        verify(provider).setBytes(eq(cacheKey), any(), eq(BridgeConstants.BRIDGE_VIEW_EXPIRE_IN_SECONDS));
+    }
+    
+    @Test
+    public void largeViewsAreCompressed() throws Exception {
+        ViewCache cache = new ViewCache();
+        cache.setObjectMapper(BridgeObjectMapper.get());
+        cache.setCachePeriod(BridgeConstants.BRIDGE_VIEW_EXPIRE_IN_SECONDS);
+        cache.setCompressionThreshold(100);
+        cache.setCacheProvider(mock(CacheProvider.class));
+        
+        CachedView view = cache.getCachedView(cache.getCacheKey(App.class, app.getIdentifier()), () -> app);
+        
+        byte[] unzipped = IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(view.getGzippedJson())));
+        assertEquals(unzipped, view.getJson());
+        
+        // Views under the threshold aren't compressed.
+        view = cache.getCachedView(cache.getCacheKey(App.class, "small"), () -> ImmutableMap.of("a", "b"));
+        assertNull(view.getGzippedJson());
+    }
+    
+    @Test
+    public void concurrentMissesLoadOnce() throws Exception {
+        ViewCache cache = new ViewCache();
+        cache.setObjectMapper(BridgeObjectMapper.get());
+        cache.setCachePeriod(BridgeConstants.BRIDGE_VIEW_EXPIRE_IN_SECONDS);
+        CacheProvider provider = mock(CacheProvider.class);
+        CountDownLatch cacheReads = new CountDownLatch(2);
+        when(provider.getBytes(any())).thenAnswer(invocation -> {
+            cacheReads.countDown();
+            return null;
+        });
+        cache.setCacheProvider(provider);
+        CacheKey cacheKey = cache.getCacheKey(App.class, app.getIdentifier());
+        
+        // The first load blocks until the second request is waiting on it.
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch finishLoad = new CountDownLatch(1);
+        AtomicInteger loadCount = new AtomicInteger();
+        Supplier<App> supplier = () -> {
+            loadCount.incrementAndGet();
+            loadStarted.countDown();
+            try {
+                finishLoad.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return app;
+        };
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executorService.submit(() -> cache.getView(cacheKey, supplier));
+            assertTrue(loadStarted.await(30, TimeUnit.SECONDS));
+            Future<String> second = executorService.submit(() -> cache.getView(cacheKey, supplier));
+            // Once the second request has missed, give it time to find the first request's load.
+            assertTrue(cacheReads.await(30, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            finishLoad.countDown();
+            
+            assertEquals(second.get(30, TimeUnit.SECONDS), first.get(30, TimeUnit.SECONDS));
+            assertEquals(loadCount.get(), 1);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void loadExceptionIsNotCached() {
+        ViewCache cache = new ViewCache();
+        cache.setObjectMapper(BridgeObjectMapper.get());
+        cache.setCacheProvider(mock(CacheProvider.class));
+        CacheKey cacheKey = cache.getCacheKey(App.class, app.getIdentifier());
+        
+        try {
+            cache.getView(cacheKey, () -> {
+                throw new BridgeServiceException("test");
+            });
+            fail("expected exception");
+        } catch (BridgeServiceException e) {
+            // expected
+        }
+        
+        // The failed load doesn't block the next one.
+        String json = cache.getView(cacheKey, () -> app);
+        assertTrue(json.contains("Test App [ViewCacheTest]"));
     }
     
     private CacheProvider getSimpleCacheProvider(final CacheKey cacheKey, final String originalStudyJson) {
         return new CacheProvider() {
-            private Map<CacheKey,String> map = Maps.newHashMap();
+            private Map<CacheKey,byte[]> map = Maps.newHashMap();
             {
-                map.put(cacheKey, originalStudyJson);
+                map.put(cacheKey, new CachedView(originalStudyJson.getBytes(UTF_8), null).serialize());
             }
-            public <T> T getObject(CacheKey cacheKey, Class<T> clazz) {
-                try {
-                    return BridgeObjectMapper.get().readValue(map.get(cacheKey), clazz);    
-                } catch(Exception e) {
-                    return null;
-                }
+            public byte[] getBytes(CacheKey cacheKey) {
+                return map.get(cacheKey);
             }
-            public void setObject(CacheKey cacheKey, Object object) {
-                try {
-                    String ser = BridgeObjectMapper.get().writeValueAsString(object);
-                    map.put(cacheKey, ser);
-                } catch(Exception e) {
-                }
-            }
-            public void setObject(CacheKey cacheKey, Object object, int secondsUntilExpire) {
-                try {
-                    String ser = BridgeObjectMapper.get().writeValueAsString(object);
-                    map.put(cacheKey, ser);
-                } catch(Exception e) {
-                }
+            public void setBytes(CacheKey cacheKey, byte[] bytes, int secondsUntilExpire) {
+                map.put(cacheKey, bytes);
             }
             public void removeObject(CacheKey cacheKey) {
                 map.remove(cacheKey);
@@ -0,0 +1,86 @@
+package org.sagebionetworks.bridge.crypto;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.security.InvalidKeyException;
+import java.util.concurrent.ExecutorService;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.exceptions.LimitExceededException;
+
+public class HashingExecutorTest {
+    private MetricRegistry metricRegistry;
+    private HashingExecutor hashingExecutor;
+
+    @BeforeMethod
+    public void before() {
+        metricRegistry = new MetricRegistry();
+        hashingExecutor = new HashingExecutor();
+        hashingExecutor.setExecutorService(MoreExecutors.newDirectExecutorService());
+        hashingExecutor.setMetricRegistry(metricRegistry);
+    }
+
+    @Test
+    public void execute() throws Exception {
+        assertEquals(hashingExecutor.execute(() -> "hash"), "hash");
+        assertEquals(metricRegistry.timer(HashingExecutor.METRIC_TASKS).getCount(), 1L);
+    }
+
+    @Test
+    public void executeRethrowsSecurityException() throws Exception {
+        InvalidKeyException ex = new InvalidKeyException();
+        try {
+            hashingExecutor.execute(() -> {
+                throw ex;
+            });
+            fail("expected exception");
+        } catch (InvalidKeyException thrown) {
+            assertSame(thrown, ex);
+        }
+    }
+
+    @Test
+    public void executeRethrowsRuntimeException() throws Exception {
+        IllegalStateException ex = new IllegalStateException();
+        try {
+            hashingExecutor.execute(() -> {
+                throw ex;
+            });
+            fail("expected exception");
+        } catch (IllegalStateException thrown) {
+            assertSame(thrown, ex);
+        }
+    }
+
+    @Test(expectedExceptions = BridgeServiceException.class)
+    public void executeWrapsCheckedException() throws Exception {
+        hashingExecutor.execute(() -> {
+            throw new Exception();
+        });
+    }
+
+    @Test
+    public void rejectedTaskFailsFast() throws Exception {
+        ExecutorService executorService = MoreExecutors.newDirectExecutorService();
+        executorService.shutdown();
+        hashingExecutor.setExecutorService(executorService);
+
+        try {
+            hashingExecutor.execute(() -> "hash");
+            fail("expected exception");
+        } catch (LimitExceededException ex) {
+            assertEquals(ex.getStatusCode(), 429);
+            assertEquals(ex.getRetryAfterSeconds(), Integer.valueOf(HashingExecutor.RETRY_AFTER_SECONDS));
+            assertEquals(ex.getMessage(), HashingExecutor.REJECTED_MESSAGE);
+        }
+        assertEquals(metricRegistry.meter(HashingExecutor.METRIC_REJECTED).getCount(), 1L);
+        assertEquals(metricRegistry.timer(HashingExecutor.METRIC_TASKS).getCount(), 0L);
+    }
+}
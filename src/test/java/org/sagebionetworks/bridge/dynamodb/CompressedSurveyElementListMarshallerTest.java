@@ -0,0 +1,80 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMappingException;
+import com.google.common.collect.ImmutableList;
+import org.testng.annotations.Test;
+
+import org.sagebionetworks.bridge.models.surveys.IntegerConstraints;
+import org.sagebionetworks.bridge.models.surveys.SurveyElement;
+import org.sagebionetworks.bridge.models.surveys.SurveyInfoScreen;
+import org.sagebionetworks.bridge.models.surveys.SurveyQuestion;
+import org.sagebionetworks.bridge.models.surveys.SurveyRule;
+import org.sagebionetworks.bridge.models.surveys.UIHint;
+
+public class CompressedSurveyElementListMarshallerTest {
+
+    private static final CompressedSurveyElementListMarshaller MARSHALLER =
+            new CompressedSurveyElementListMarshaller();
+
+    @Test
+    public void testSerialization() {
+        SurveyRule rule = new SurveyRule.Builder().withOperator(SurveyRule.Operator.EQ).withValue(1)
+                .withEndSurvey(true).build();
+
+        DynamoSurveyQuestion question = new DynamoSurveyQuestion();
+        question.setSurveyKeyComponents("survey-guid", 1000L);
+        question.setGuid("question-guid");
+        question.setIdentifier("question");
+        question.setPrompt("How many?");
+        question.setUiHint(UIHint.NUMBERFIELD);
+        question.setConstraints(new IntegerConstraints());
+        question.setAfterRules(ImmutableList.of(rule));
+
+        DynamoSurveyInfoScreen infoScreen = new DynamoSurveyInfoScreen();
+        infoScreen.setGuid("info-screen-guid");
+        infoScreen.setIdentifier("info-screen");
+        infoScreen.setTitle("Title");
+        infoScreen.setPrompt("Prompt");
+
+        byte[] document = MARSHALLER.convert(ImmutableList.of(question, infoScreen));
+        List<SurveyElement> elements = MARSHALLER.unconvert(document);
+        assertEquals(elements.size(), 2);
+
+        SurveyQuestion questionCopy = (SurveyQuestion) elements.get(0);
+        assertEquals(questionCopy.getGuid(), "question-guid");
+        assertEquals(questionCopy.getIdentifier(), "question");
+        assertEquals(questionCopy.getPrompt(), "How many?");
+        assertEquals(questionCopy.getUiHint(), UIHint.NUMBERFIELD);
+        assertTrue(questionCopy.getConstraints() instanceof IntegerConstraints);
+        assertEquals(questionCopy.getAfterRules(), ImmutableList.of(rule));
+        // Keys aren't stored in the document.
+        assertNull(questionCopy.getSurveyCompoundKey());
+
+        SurveyInfoScreen infoScreenCopy = (SurveyInfoScreen) elements.get(1);
+        assertEquals(infoScreenCopy.getGuid(), "info-screen-guid");
+        assertEquals(infoScreenCopy.getIdentifier(), "info-screen");
+        assertEquals(infoScreenCopy.getTitle(), "Title");
+        assertEquals(infoScreenCopy.getPrompt(), "Prompt");
+    }
+
+    @Test
+    public void documentIsCompressed() {
+        List<SurveyElement> elements = ImmutableList.of(new DynamoSurveyInfoScreen());
+        byte[] document = MARSHALLER.convert(elements);
+
+        // gzip magic number
+        assertEquals(document[0], (byte) 0x1f);
+        assertEquals(document[1], (byte) 0x8b);
+    }
+
+    @Test(expectedExceptions = DynamoDBMappingException.class)
+    public void unconvertInvalidDocument() {
+        MARSHALLER.unconvert("[]".getBytes());
+    }
+}
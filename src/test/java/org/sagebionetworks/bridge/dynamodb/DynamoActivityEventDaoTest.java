@@ -10,16 +10,28 @@ import static org.sagebionetworks.bridge.models.activities.ActivityEventType.ANS
 import static org.sagebionetworks.bridge.models.activities.ActivityEventType.FINISHED;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBSaveExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.PaginatedQueryList;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ConditionalOperator;
+import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -33,6 +45,10 @@ import org.mockito.MockitoAnnotations;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import org.sagebionetworks.bridge.async.SnsDispatcher;
+import org.sagebionetworks.bridge.config.BridgeConfig;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+
 public class DynamoActivityEventDaoTest extends Mockito {
     
     // timestamp is in milliseconds since the epoch, so use UTC here
@@ -74,50 +90,198 @@ public class DynamoActivityEventDaoTest extends Mockito {
     @Captor
     ArgumentCaptor<List<DynamoActivityEvent>> listCaptor;
     
+    @Captor
+    ArgumentCaptor<DynamoDBSaveExpression> saveExpressionCaptor;
+    
+    @Mock
+    BridgeConfig mockConfig;
+    
     @BeforeMethod
     public void before() {
         MockitoAnnotations.initMocks(this);
+        when(mockConfig.getPropertyAsInt("sns.dispatch.max.concurrency")).thenReturn(4);
+        SnsDispatcher dispatcher = new SnsDispatcher();
+        dispatcher.setBridgeConfig(mockConfig);
+        dispatcher.setFanOutExecutorService(MoreExecutors.newDirectExecutorService());
+        dao.setDispatcher(dispatcher);
     }
     
     @Test
-    public void publishEventIsNew() {
+    public void publishEventIsMutable() {
         boolean result = dao.publishEvent(SURVEY_FINISHED_EVENT);
         assertTrue(result);
         
-        verify(mockMapper).load(eventCaptor.capture());
-        DynamoActivityEvent loadKey = eventCaptor.getValue();
-        assertEquals(loadKey.getHealthCode(), HEALTH_CODE);
-        assertEquals(loadKey.getEventId(), "survey:AAA-BBB-CCC:finished");
-        
-        verify(mockMapper).save(eventCaptor.capture());
+        verify(mockMapper, never()).load(any());
+        verify(mockMapper).save(eventCaptor.capture(), saveExpressionCaptor.capture());
         assertSame(eventCaptor.getValue(), SURVEY_FINISHED_EVENT);
+        
+        // Written if there's no event yet, or the saved event is earlier.
+        DynamoDBSaveExpression saveExpression = saveExpressionCaptor.getValue();
+        assertEquals(saveExpression.getConditionalOperator(), ConditionalOperator.OR.toString());
+        Map<String, ExpectedAttributeValue> expected = saveExpression.getExpected();
+        assertEquals(expected.size(), 2);
+        assertFalse(expected.get("healthCode").getExists());
+        ExpectedAttributeValue timestampCondition = expected.get("timestamp");
+        assertEquals(timestampCondition.getComparisonOperator(), ComparisonOperator.LT.toString());
+        assertEquals(timestampCondition.getAttributeValueList().get(0).getN(),
+                String.valueOf(TIMESTAMP.getMillis()));
     }
     
     @Test
-    public void publishEventIsMutableAndLater() {
-        DynamoActivityEvent earlierEvent = new DynamoActivityEvent.Builder().withHealthCode(HEALTH_CODE)
-                .withObjectType(SURVEY).withEventType(FINISHED).withTimestamp(TIMESTAMP.minusHours(1))
-                .withObjectId("AAA-BBB-CCC").build();
-        when(mockMapper.load(any())).thenReturn(earlierEvent);
-        
-        boolean result = dao.publishEvent(SURVEY_FINISHED_EVENT);
+    public void publishEventIsImmutable() {
+        boolean result = dao.publishEvent(ENROLLMENT_EVENT);
         assertTrue(result);
         
-        verify(mockMapper).save(eventCaptor.capture());
-        assertSame(eventCaptor.getValue(), SURVEY_FINISHED_EVENT);
+        // Only written if there's no event yet.
+        verify(mockMapper).save(eventCaptor.capture(), saveExpressionCaptor.capture());
+        assertSame(eventCaptor.getValue(), ENROLLMENT_EVENT);
+        DynamoDBSaveExpression saveExpression = saveExpressionCaptor.getValue();
+        assertNull(saveExpression.getConditionalOperator());
+        Map<String, ExpectedAttributeValue> expected = saveExpression.getExpected();
+        assertEquals(expected.size(), 1);
+        assertFalse(expected.get("healthCode").getExists());
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void publishEvents() {
+        // Activity AAA is submitted twice; only the later one is recorded.
+        DynamoActivityEvent earlierActivityEvent = new DynamoActivityEvent.Builder().withHealthCode(HEALTH_CODE)
+                .withObjectType(ACTIVITY).withObjectId("AAA-BBB-CCC").withEventType(FINISHED)
+                .withTimestamp(TIMESTAMP.minusHours(1)).build();
+        // Survey has a later event in the database, so the write's condition fails.
+        doThrow(new ConditionalCheckFailedException("")).when(mockMapper).save(same(SURVEY_FINISHED_EVENT),
+                any(DynamoDBSaveExpression.class));
+        
+        dao.publishEvents(ImmutableList.of(earlierActivityEvent, SURVEY_FINISHED_EVENT, ACTIVITY_FINISHED_EVENT,
+                QUESTION_ANSWERED_EVENT));
+        
+        // Each event is written conditionally, without loading it first.
+        verify(mockMapper, times(3)).save(eventCaptor.capture(), saveExpressionCaptor.capture());
+        assertEquals(eventCaptor.getAllValues(), ImmutableList.of(SURVEY_FINISHED_EVENT, ACTIVITY_FINISHED_EVENT,
+                QUESTION_ANSWERED_EVENT));
+        for (DynamoDBSaveExpression saveExpression : saveExpressionCaptor.getAllValues()) {
+            assertEquals(saveExpression.getExpected().get("timestamp").getComparisonOperator(),
+                    ComparisonOperator.LT.toString());
+        }
+        verify(mockMapper, never()).batchLoad(any(List.class));
+        verify(mockMapper, never()).batchSave(any(List.class));
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void publishEventsWithStudyIdDoesNotOverwriteLaterEvent() {
+        // The stored study-scoped event is later, so the write's condition fails and the event isn't overwritten.
+        DynamoActivityEvent earlierEvent = new DynamoActivityEvent.Builder().withStudyId(TEST_STUDY_ID)
+                .withHealthCode(HEALTH_CODE).withObjectType(SURVEY).withEventType(FINISHED)
+                .withObjectId("AAA-BBB-CCC").withTimestamp(TIMESTAMP.minusHours(1)).build();
+        doThrow(new ConditionalCheckFailedException("")).when(mockMapper).save(any(),
+                any(DynamoDBSaveExpression.class));
+        
+        dao.publishEvents(ImmutableList.of(earlierEvent));
+        
+        // The key is the study-scoped health code, and the write is only made if the stored event is earlier.
+        verify(mockMapper).save(eventCaptor.capture(), saveExpressionCaptor.capture());
+        assertEquals(eventCaptor.getValue().getHealthCode(), HEALTH_CODE + ":" + TEST_STUDY_ID);
+        ExpectedAttributeValue timestampCondition = saveExpressionCaptor.getValue().getExpected().get("timestamp");
+        assertEquals(timestampCondition.getComparisonOperator(), ComparisonOperator.LT.toString());
+        assertEquals(timestampCondition.getAttributeValueList().get(0).getN(),
+                String.valueOf(TIMESTAMP.minusHours(1).getMillis()));
+        
+        // Nothing else writes the event.
+        verify(mockMapper, never()).save(any());
+        verify(mockMapper, never()).batchSave(any(List.class));
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void publishEventsImmutableEvent() {
+        DynamoActivityEvent laterEvent = new DynamoActivityEvent.Builder().withStudyId(TEST_STUDY_ID)
+                .withHealthCode(HEALTH_CODE).withObjectType(ENROLLMENT).withTimestamp(TIMESTAMP.plusHours(1)).build();
+        doThrow(new ConditionalCheckFailedException("")).when(mockMapper).save(any(),
+                any(DynamoDBSaveExpression.class));
+        
+        dao.publishEvents(ImmutableList.of(laterEvent));
+        
+        // Only written if there's no event yet.
+        verify(mockMapper).save(same(laterEvent), saveExpressionCaptor.capture());
+        Map<String, ExpectedAttributeValue> expected = saveExpressionCaptor.getValue().getExpected();
+        assertEquals(expected.size(), 1);
+        assertFalse(expected.get("healthCode").getExists());
+        verify(mockMapper, never()).batchSave(any(List.class));
+    }
+    
+    @Test
+    public void publishEventsWritesConcurrently() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            SnsDispatcher dispatcher = new SnsDispatcher();
+            dispatcher.setBridgeConfig(mockConfig);
+            dispatcher.setFanOutExecutorService(executorService);
+            dao.setDispatcher(dispatcher);
+            
+            // No write finishes until all three have started, which can only happen if they're made concurrently.
+            CountDownLatch allStarted = new CountDownLatch(3);
+            doAnswer(invocation -> {
+                allStarted.countDown();
+                if (!allStarted.await(5, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Writes were made one after another");
+                }
+                return null;
+            }).when(mockMapper).save(any(), any(DynamoDBSaveExpression.class));
+            
+            dao.publishEvents(ImmutableList.of(SURVEY_FINISHED_EVENT, ACTIVITY_FINISHED_EVENT,
+                    QUESTION_ANSWERED_EVENT));
+            
+            verify(mockMapper, times(3)).save(any(), any(DynamoDBSaveExpression.class));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void publishEventsAggregatesFailures() {
+        doThrow(new IllegalStateException("survey failed")).when(mockMapper).save(same(SURVEY_FINISHED_EVENT),
+                any(DynamoDBSaveExpression.class));
+        doThrow(new IllegalStateException("question failed")).when(mockMapper).save(same(QUESTION_ANSWERED_EVENT),
+                any(DynamoDBSaveExpression.class));
+        
+        try {
+            dao.publishEvents(ImmutableList.of(SURVEY_FINISHED_EVENT, ACTIVITY_FINISHED_EVENT,
+                    QUESTION_ANSWERED_EVENT));
+            fail("expected exception");
+        } catch (BridgeServiceException ex) {
+            assertTrue(ex.getMessage().contains(SURVEY_FINISHED_EVENT.getEventId() + ": survey failed"));
+            assertTrue(ex.getMessage().contains(QUESTION_ANSWERED_EVENT.getEventId() + ": question failed"));
+        }
+        // The other write is still made.
+        verify(mockMapper).save(same(ACTIVITY_FINISHED_EVENT), any(DynamoDBSaveExpression.class));
+    }
+    
+    @Test
+    public void publishEventsEmptyList() {
+        dao.publishEvents(ImmutableList.of());
+        verifyNoMoreInteractions(mockMapper);
+    }
+    
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void publishEventsRejectsMultipleUsers() {
+        DynamoActivityEvent otherUserEvent = new DynamoActivityEvent.Builder().withHealthCode("otherHealthCode")
+                .withObjectType(SURVEY).withEventType(FINISHED).withTimestamp(TIMESTAMP)
+                .withObjectId("AAA-BBB-CCC").build();
+        dao.publishEvents(ImmutableList.of(SURVEY_FINISHED_EVENT, otherUserEvent));
     }
     
     @Test
     public void publishEventIsImmutableFails() {
-        when(mockMapper.load(any())).thenReturn(ENROLLMENT_EVENT);
+        doThrow(new ConditionalCheckFailedException("")).when(mockMapper).save(any(),
+                any(DynamoDBSaveExpression.class));
         
         DynamoActivityEvent laterEvent = new DynamoActivityEvent.Builder().withHealthCode(HEALTH_CODE)
                 .withObjectType(ENROLLMENT).withTimestamp(TIMESTAMP.plusHours(1)).build();
         
         boolean result = dao.publishEvent(laterEvent);
         assertFalse(result);
-        
-        verify(mockMapper, never()).save(any());
     }
     
     @Test
@@ -125,7 +289,7 @@ public class DynamoActivityEventDaoTest extends Mockito {
         boolean result = dao.publishEvent(ENROLLMENT_EVENT_WITH_STUDY_ID);
         assertTrue(result);
         
-        verify(mockMapper).save(eventCaptor.capture());
+        verify(mockMapper).save(eventCaptor.capture(), any(DynamoDBSaveExpression.class));
         
         DynamoActivityEvent event = eventCaptor.getValue();
         assertEquals(event.getEventId(), "enrollment");
@@ -135,15 +299,11 @@ public class DynamoActivityEventDaoTest extends Mockito {
     
     @Test
     public void publishEventIsEarlierFails() {
-        DynamoActivityEvent laterEvent = new DynamoActivityEvent.Builder().withHealthCode(HEALTH_CODE)
-                .withObjectType(SURVEY).withEventType(FINISHED).withTimestamp(TIMESTAMP.plusHours(1))
-                .withObjectId("AAA-BBB-CCC").build();
-        when(mockMapper.load(any())).thenReturn(laterEvent);
+        doThrow(new ConditionalCheckFailedException("")).when(mockMapper).save(any(),
+                any(DynamoDBSaveExpression.class));
         
         boolean result = dao.publishEvent(SURVEY_FINISHED_EVENT);
         assertFalse(result);
-        
-        verify(mockMapper, never()).save(any());
     }
 
     @Test
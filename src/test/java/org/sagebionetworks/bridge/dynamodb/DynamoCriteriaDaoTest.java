@@ -3,8 +3,14 @@ package org.sagebionetworks.bridge.dynamodb;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
@@ -15,6 +21,7 @@ import org.mockito.MockitoAnnotations;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.models.Criteria;
 
 public class DynamoCriteriaDaoTest extends Mockito {
@@ -27,6 +34,9 @@ public class DynamoCriteriaDaoTest extends Mockito {
     @Captor
     ArgumentCaptor<DynamoCriteria> criteriaCaptor;
     
+    @Captor
+    ArgumentCaptor<List<DynamoCriteria>> criteriaListCaptor;
+    
     @InjectMocks
     DynamoCriteriaDao dao;
     
@@ -84,4 +94,42 @@ public class DynamoCriteriaDaoTest extends Mockito {
         
         verify(mockMapper, never()).delete(any());
     }
+    
+    @Test
+    public void batchGetCriteria() {
+        DynamoCriteria criteria1 = new DynamoCriteria();
+        criteria1.setKey(CRITERIA_KEY);
+        DynamoCriteria criteria2 = new DynamoCriteria();
+        criteria2.setKey("criteria:key2");
+        when(mockMapper.batchLoad(anyList())).thenReturn(ImmutableMap.<String, List<Object>>of("Criteria", 
+                ImmutableList.<Object>of(criteria1, criteria2)));
+        
+        Map<String, Criteria> results = dao.batchGetCriteria(ImmutableList.of(CRITERIA_KEY, "criteria:key2",
+                "criteria:missing"));
+        assertEquals(results.size(), 2);
+        assertSame(results.get(CRITERIA_KEY), criteria1);
+        assertSame(results.get("criteria:key2"), criteria2);
+        
+        verify(mockMapper).batchLoad(criteriaListCaptor.capture());
+        List<DynamoCriteria> hashKeys = criteriaListCaptor.getValue();
+        assertEquals(hashKeys.size(), 3);
+        assertEquals(hashKeys.get(0).getKey(), CRITERIA_KEY);
+        assertEquals(hashKeys.get(1).getKey(), "criteria:key2");
+        assertEquals(hashKeys.get(2).getKey(), "criteria:missing");
+    }
+    
+    @Test
+    public void batchGetCriteriaNoKeys() {
+        assertTrue(dao.batchGetCriteria(ImmutableList.of()).isEmpty());
+        
+        verify(mockMapper, never()).batchLoad(anyList());
+    }
+    
+    @Test(expectedExceptions = BridgeServiceException.class)
+    public void batchGetCriteriaWrongType() {
+        when(mockMapper.batchLoad(anyList())).thenReturn(ImmutableMap.<String, List<Object>>of("Criteria",
+                ImmutableList.<Object>of("wrong")));
+        
+        dao.batchGetCriteria(ImmutableList.of(CRITERIA_KEY));
+    }
 }
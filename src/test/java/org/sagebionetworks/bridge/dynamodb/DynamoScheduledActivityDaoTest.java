@@ -18,6 +18,7 @@ import static org.testng.Assert.assertTrue;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeUtils;
@@ -53,8 +54,10 @@ import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.Condition;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.MoreExecutors;
 
 public class DynamoScheduledActivityDaoTest {
 
@@ -328,6 +331,56 @@ public class DynamoScheduledActivityDaoTest {
         assertEquals(results.getRequestParams().get("scheduledOnEnd"), SCHEDULED_ON_END.toString());
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void getActivityHistoriesV2() {
+        activityDao.setFanOutExecutorService(MoreExecutors.newDirectExecutorService());
+        
+        // Each query returns one activity, whose GUID is the start of the queried range.
+        when(mapper.queryPage(eq(DynamoScheduledActivity.class), any())).thenAnswer(invocation -> {
+            DynamoDBQueryExpression<DynamoScheduledActivity> query = invocation.getArgument(1);
+            DynamoScheduledActivity activity = new DynamoScheduledActivity();
+            activity.setGuid(query.getRangeKeyConditions().get("guid").getAttributeValueList().get(0).getS());
+            
+            QueryResultPage<DynamoScheduledActivity> queryResult = mock(QueryResultPage.class);
+            when(queryResult.getResults()).thenReturn(ImmutableList.of(activity));
+            return queryResult;
+        });
+        
+        List<ScheduledActivity> results = activityDao.getActivityHistoriesV2(HEALTH_CODE,
+                ImmutableSet.of("guidA", "guidB", "guidC"), SCHEDULED_ON_START, SCHEDULED_ON_END);
+        
+        String start = ":" + SCHEDULED_ON_START.toLocalDateTime().toString();
+        assertEquals(results.stream().map(ScheduledActivity::getGuid).collect(Collectors.toSet()),
+                ImmutableSet.of("guidA" + start, "guidB" + start, "guidC" + start));
+        
+        ArgumentCaptor<DynamoDBQueryExpression<DynamoScheduledActivity>> queryCaptor = ArgumentCaptor
+                .forClass(DynamoDBQueryExpression.class);
+        verify(mapper, times(3)).queryPage(eq(DynamoScheduledActivity.class), queryCaptor.capture());
+        for (DynamoDBQueryExpression<DynamoScheduledActivity> query : queryCaptor.getAllValues()) {
+            assertEquals(query.getHashKeyValues().getHealthCode(), HEALTH_CODE);
+            assertEquals((int) query.getLimit(), BridgeConstants.API_MAXIMUM_PAGE_SIZE);
+            assertNull(query.getExclusiveStartKey());
+        }
+    }
+    
+    @Test
+    public void getActivityHistoriesV2NoGuids() {
+        List<ScheduledActivity> results = activityDao.getActivityHistoriesV2(HEALTH_CODE, ImmutableSet.of(),
+                SCHEDULED_ON_START, SCHEDULED_ON_END);
+        assertTrue(results.isEmpty());
+        verify(mapper, never()).queryPage(eq(DynamoScheduledActivity.class), any());
+    }
+    
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void getActivityHistoriesV2PropagatesQueryFailure() {
+        activityDao.setFanOutExecutorService(MoreExecutors.newDirectExecutorService());
+        when(mapper.queryPage(eq(DynamoScheduledActivity.class), any())).thenThrow(new IllegalStateException());
+        
+        activityDao.getActivityHistoriesV2(HEALTH_CODE, ImmutableSet.of("guidA", "guidB"), SCHEDULED_ON_START,
+                SCHEDULED_ON_END);
+    }
+
     @Test(expectedExceptions = BadRequestException.class)
     public void getActivityHistoryV2PageBelowMinSize() {
         activityDao.getActivityHistoryV2(HEALTH_CODE, ACTIVITY_GUID, SCHEDULED_ON_START, SCHEDULED_ON_END, OFFSET_KEY,
@@ -15,10 +15,12 @@ import java.util.List;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBSaveExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.PaginatedQueryList;
 import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
 import com.amazonaws.services.dynamodbv2.model.Condition;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
@@ -37,6 +39,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import org.sagebionetworks.bridge.TestConstants;
+import org.sagebionetworks.bridge.config.BridgeConfig;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
@@ -70,9 +73,15 @@ public class DynamoSurveyDaoTest extends Mockito {
     @Mock
     DynamoDBMapper mockSurveyElementMapper;
     
+    @Mock
+    DynamoDBMapper mockSurveyDocumentMapper;
+    
     @Mock
     UploadSchemaService mockUploadSchemaService;
     
+    @Mock
+    BridgeConfig mockConfig;
+    
     @Mock
     PaginatedQueryList<DynamoSurveyElement> mockElementQueryList;
     
@@ -94,6 +103,12 @@ public class DynamoSurveyDaoTest extends Mockito {
     @Captor
     ArgumentCaptor<List<DynamoSurveyElement>> elementsCaptor;
     
+    @Captor
+    ArgumentCaptor<DynamoSurveyDocument> documentCaptor;
+    
+    @Captor
+    ArgumentCaptor<DynamoDBSaveExpression> saveExpressionCaptor;
+    
     @InjectMocks
     @Spy
     DynamoSurveyDao dao;
@@ -106,6 +121,7 @@ public class DynamoSurveyDaoTest extends Mockito {
         // These are not injected correctly
         dao.setSurveyMapper(mockSurveyMapper);
         dao.setSurveyElementMapper(mockSurveyElementMapper);
+        dao.setSurveyDocumentMapper(mockSurveyDocumentMapper);
         
         doReturn(GUID).when(dao).generateGuid();
         DateTimeUtils.setCurrentMillisFixed(CREATED_ON);
@@ -190,6 +206,49 @@ public class DynamoSurveyDaoTest extends Mockito {
         assertEquals(retval.getSchemaRevision().intValue(), SCHEMA_REV);
 
         verify(mockSurveyMapper).save(same(retval));
+        verifyZeroInteractions(mockSurveyDocumentMapper);
+    }
+
+    @Test
+    public void publishSurveyStoresDocument() {
+        enableDocumentStorage();
+        SurveyQuestion surveyQuestion = new DynamoSurveyQuestion();
+        surveyQuestion.setIdentifier("int");
+        surveyQuestion.setConstraints(new IntegerConstraints());
+        survey.setElements(ImmutableList.of(surveyQuestion));
+
+        Survey retval = dao.publishSurvey(TEST_APP_ID, survey, true);
+        assertTrue(retval.isPublished());
+
+        verify(mockSurveyDocumentMapper).save(documentCaptor.capture(), saveExpressionCaptor.capture());
+        DynamoSurveyDocument document = documentCaptor.getValue();
+        assertEquals(document.getSurveyCompoundKey(), GUID + ":" + CREATED_ON);
+        assertEquals(document.getElements(), ImmutableList.of(surveyQuestion));
+
+        // Documents are never overwritten.
+        ExpectedAttributeValue expected = saveExpressionCaptor.getValue().getExpected().get("surveyCompoundKey");
+        assertFalse(expected.isExists());
+    }
+
+    @Test
+    public void publishSurveyDocumentAlreadyStored() {
+        enableDocumentStorage();
+        doThrow(new ConditionalCheckFailedException("")).when(mockSurveyDocumentMapper).save(any(),
+                any(DynamoDBSaveExpression.class));
+
+        Survey retval = dao.publishSurvey(TEST_APP_ID, survey, true);
+        assertTrue(retval.isPublished());
+    }
+
+    @Test
+    public void publishSurveyDocumentErrorIsNotThrown() {
+        enableDocumentStorage();
+        doThrow(new RuntimeException()).when(mockSurveyDocumentMapper).save(any(), any(DynamoDBSaveExpression.class));
+
+        // The elements are still in the element table, so the survey is published anyway.
+        Survey retval = dao.publishSurvey(TEST_APP_ID, survey, true);
+        assertTrue(retval.isPublished());
+        verify(mockSurveyMapper).save(same(retval));
     }
 
     @Test
@@ -477,6 +536,9 @@ public class DynamoSurveyDaoTest extends Mockito {
         
         verify(mockSurveyMapper).delete(survey);
         verify(mockUploadSchemaService).deleteUploadSchemaByIdPermanently(TEST_APP_ID, SURVEY_ID);
+        
+        verify(mockSurveyDocumentMapper).delete(documentCaptor.capture());
+        assertEquals(documentCaptor.getValue().getSurveyCompoundKey(), GUID + ":" + survey.getCreatedOn());
     }
     
     @Test
@@ -486,6 +548,7 @@ public class DynamoSurveyDaoTest extends Mockito {
         dao.deleteSurveyPermanently(TEST_APP_ID, SURVEY_KEY);
         
         verify(mockSurveyMapper, never()).delete(any());
+        verify(mockSurveyDocumentMapper, never()).delete(any());
         verify(mockUploadSchemaService, never()).deleteUploadSchemaByIdPermanently(any(), any());
     }
     
@@ -536,6 +599,95 @@ public class DynamoSurveyDaoTest extends Mockito {
         assertEquals(elementQuery.getHashKeyValues().getSurveyCompoundKey(), GUID + ":" + CREATED_ON);
     }
 
+    @Test
+    public void getPublishedSurveyFromDocument() {
+        enableDocumentStorage();
+        DynamoSurvey survey = new DynamoSurvey();
+        survey.setGuid(GUID);
+        survey.setCreatedOn(CREATED_ON);
+        survey.setPublished(true);
+        mockSurveyMapper(survey);
+        
+        DynamoSurveyQuestion question = new DynamoSurveyQuestion();
+        question.setType(SurveyElementConstants.SURVEY_QUESTION_TYPE);
+        DynamoSurveyInfoScreen infoScreen = new DynamoSurveyInfoScreen();
+        infoScreen.setType(SurveyElementConstants.SURVEY_INFO_SCREEN_TYPE);
+        DynamoSurveyDocument document = new DynamoSurveyDocument(GUID, CREATED_ON);
+        document.setElements(ImmutableList.of(question, infoScreen));
+        when(mockSurveyDocumentMapper.load(any(DynamoSurveyDocument.class))).thenReturn(document);
+        
+        Survey result = dao.getSurvey(TEST_APP_ID, SURVEY_KEY, true);
+        assertSame(result, survey);
+        assertEquals(result.getElements().size(), 2);
+        assertSame(result.getElements().get(0), question);
+        assertEquals(question.getSurveyCompoundKey(), GUID + ":" + CREATED_ON);
+        assertEquals(question.getOrder(), 0);
+        assertEquals(infoScreen.getSurveyCompoundKey(), GUID + ":" + CREATED_ON);
+        assertEquals(infoScreen.getOrder(), 1);
+        
+        verify(mockSurveyDocumentMapper).load(documentCaptor.capture());
+        assertEquals(documentCaptor.getValue().getSurveyCompoundKey(), GUID + ":" + CREATED_ON);
+        verify(mockSurveyElementMapper, never()).queryPage(eq(DynamoSurveyElement.class), any());
+        verify(mockSurveyDocumentMapper, never()).save(any(), any(DynamoDBSaveExpression.class));
+    }
+
+    @Test
+    public void getPublishedSurveyWithoutDocumentStoresDocument() {
+        enableDocumentStorage();
+        DynamoSurvey survey = new DynamoSurvey();
+        survey.setGuid(GUID);
+        survey.setCreatedOn(CREATED_ON);
+        survey.setPublished(true);
+        mockSurveyMapper(survey);
+        
+        DynamoSurveyQuestion element = new DynamoSurveyQuestion();
+        element.setType(SurveyElementConstants.SURVEY_QUESTION_TYPE);
+        element.setUiHint(UIHint.BLOODPRESSURE);
+        element.setConstraints(new BloodPressureConstraints());
+        when(mockSurveyElementMapper.queryPage(eq(DynamoSurveyElement.class), any())).thenReturn(mockElementResultsPage);
+        when(mockElementResultsPage.getResults()).thenReturn(ImmutableList.of(element));
+        
+        Survey result = dao.getSurvey(TEST_APP_ID, SURVEY_KEY, true);
+        assertEquals(result.getElements().size(), 1);
+        
+        verify(mockSurveyDocumentMapper).save(documentCaptor.capture(), any(DynamoDBSaveExpression.class));
+        DynamoSurveyDocument document = documentCaptor.getValue();
+        assertEquals(document.getSurveyCompoundKey(), GUID + ":" + CREATED_ON);
+        assertEquals(document.getElements(), result.getElements());
+    }
+
+    @Test
+    public void getDraftSurveyDoesNotUseDocument() {
+        enableDocumentStorage();
+        DynamoSurvey survey = new DynamoSurvey();
+        survey.setGuid(GUID);
+        survey.setCreatedOn(CREATED_ON);
+        mockSurveyMapper(survey);
+        when(mockSurveyElementMapper.queryPage(eq(DynamoSurveyElement.class), any())).thenReturn(mockElementResultsPage);
+        when(mockElementResultsPage.getResults()).thenReturn(ImmutableList.of());
+        
+        dao.getSurvey(TEST_APP_ID, SURVEY_KEY, true);
+        
+        verify(mockSurveyElementMapper).queryPage(eq(DynamoSurveyElement.class), any());
+        verifyZeroInteractions(mockSurveyDocumentMapper);
+    }
+
+    @Test
+    public void getPublishedSurveyWithoutDocumentStorage() {
+        DynamoSurvey survey = new DynamoSurvey();
+        survey.setGuid(GUID);
+        survey.setCreatedOn(CREATED_ON);
+        survey.setPublished(true);
+        mockSurveyMapper(survey);
+        when(mockSurveyElementMapper.queryPage(eq(DynamoSurveyElement.class), any())).thenReturn(mockElementResultsPage);
+        when(mockElementResultsPage.getResults()).thenReturn(ImmutableList.of());
+        
+        dao.getSurvey(TEST_APP_ID, SURVEY_KEY, true);
+        
+        verify(mockSurveyElementMapper).queryPage(eq(DynamoSurveyElement.class), any());
+        verifyZeroInteractions(mockSurveyDocumentMapper);
+    }
+
     @Test
     public void getSurveyExcludeElements() {
         DynamoSurvey survey = new DynamoSurvey();
@@ -1020,6 +1172,11 @@ public class DynamoSurveyDaoTest extends Mockito {
         when(mockResultsPage.getResults()).thenReturn(surveys);
     }
     
+    private void enableDocumentStorage() {
+        when(mockConfig.getProperty(DynamoSurveyDao.DOCUMENT_STORAGE_ENABLED_PROPERTY)).thenReturn("true");
+        dao.setBridgeConfig(mockConfig);
+    }
+    
     private void mockSurveyMapper(DynamoSurvey... surveys) {
         when(mockSurveyMapper.queryPage(eq(DynamoSurvey.class), any())).thenReturn(mockResultsPage);
         if (surveys.length > 0) {
@@ -3,14 +3,22 @@ package org.sagebionetworks.bridge.dynamodb;
 import static org.sagebionetworks.bridge.TestUtils.getNotificationRegistration;
 import static org.sagebionetworks.bridge.TestUtils.getNotificationTopic;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
 
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
@@ -18,6 +26,8 @@ import org.mockito.MockitoAnnotations;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import org.sagebionetworks.bridge.async.SnsDispatcher;
+import org.sagebionetworks.bridge.config.BridgeConfig;
 import org.sagebionetworks.bridge.models.notifications.NotificationProtocol;
 import org.sagebionetworks.bridge.models.notifications.NotificationRegistration;
 import org.sagebionetworks.bridge.models.notifications.NotificationTopic;
@@ -25,6 +35,7 @@ import org.sagebionetworks.bridge.models.notifications.TopicSubscription;
 
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
 import com.amazonaws.services.sns.AmazonSNSClient;
 import com.amazonaws.services.sns.model.SubscribeRequest;
 import com.amazonaws.services.sns.model.SubscribeResult;
@@ -49,6 +60,9 @@ public class DynamoTopicSubscriptionDaoTest {
     @Mock
     private DynamoTopicSubscription mockSubscription;
     
+    @Mock
+    private BridgeConfig mockConfig;
+    
     @Captor
     private ArgumentCaptor<SubscribeRequest> subscribeRequestCaptor;
     
@@ -64,6 +78,12 @@ public class DynamoTopicSubscriptionDaoTest {
         subDao = new DynamoTopicSubscriptionDao();
         subDao.setTopicSubscriptionMapper(mockMapper);
         subDao.setSnsClient(mockSnsClient);
+
+        when(mockConfig.getPropertyAsInt("sns.dispatch.max.concurrency")).thenReturn(4);
+        SnsDispatcher snsDispatcher = new SnsDispatcher();
+        snsDispatcher.setBridgeConfig(mockConfig);
+        snsDispatcher.setFanOutExecutorService(MoreExecutors.newDirectExecutorService());
+        subDao.setSnsDispatcher(snsDispatcher);
     }
     
     @Test
@@ -302,4 +322,159 @@ public class DynamoTopicSubscriptionDaoTest {
         DynamoTopicSubscription capturedSub = subscriptionCaptor.getValue();
         assertEquals(capturedSub, subscription);
     }
+    
+    @Test
+    public void batchSubscribe() {
+        NotificationRegistration registration = getNotificationRegistration();
+        registration.setProtocol(NotificationProtocol.APPLICATION);
+        registration.setEndpoint(ENDPOINT_ARN);
+
+        // Subscribing to topic 2 fails.
+        NotificationTopic topic1 = makeTopic("topicGuid1");
+        NotificationTopic topic2 = makeTopic("topicGuid2");
+        NotificationTopic topic3 = makeTopic("topicGuid3");
+        mockSubscribe(registration, topic1, "subscriptionARN1");
+        when(mockSnsClient.subscribe(subscribeRequest(registration, topic2))).thenThrow(EXCEPTION);
+        mockSubscribe(registration, topic3, "subscriptionARN3");
+
+        when(mockMapper.batchSave(any(Iterable.class))).thenReturn(ImmutableList.of());
+
+        // Execute and validate.
+        List<TopicSubscription> subList = subDao.batchSubscribe(registration, ImmutableList.of(topic1, topic2,
+                topic3));
+        assertEquals(subList.size(), 2);
+        assertSubscription(subList.get(0), "topicGuid1", "subscriptionARN1");
+        assertSubscription(subList.get(1), "topicGuid3", "subscriptionARN3");
+
+        verify(mockMapper).batchSave(subList);
+        verify(mockMapper, never()).save(any());
+        verify(mockSnsClient, never()).unsubscribe(anyString());
+    }
+
+    @Test
+    public void batchSubscribeWhenSnsFails() {
+        NotificationRegistration registration = getNotificationRegistration();
+        when(mockSnsClient.subscribe(any(SubscribeRequest.class))).thenThrow(EXCEPTION);
+
+        List<TopicSubscription> subList = subDao.batchSubscribe(registration, ImmutableList.of(
+                makeTopic("topicGuid1")));
+        assertTrue(subList.isEmpty());
+
+        // Nothing is saved.
+        verifyZeroInteractions(mockMapper);
+    }
+
+    @Test
+    public void batchSubscribeWhenBatchSaveFails() {
+        NotificationRegistration registration = getNotificationRegistration();
+        NotificationTopic topic1 = makeTopic("topicGuid1");
+        NotificationTopic topic2 = makeTopic("topicGuid2");
+        mockSubscribe(registration, topic1, "subscriptionARN1");
+        mockSubscribe(registration, topic2, "subscriptionARN2");
+
+        // The batch fails, so we save them one at a time. Saving topic 2 fails.
+        when(mockMapper.batchSave(any(Iterable.class))).thenReturn(ImmutableList.of(new FailedBatch()));
+        doThrow(EXCEPTION).when(mockMapper).save(argThatTopic("topicGuid2"));
+
+        // Execute and validate.
+        List<TopicSubscription> subList = subDao.batchSubscribe(registration, ImmutableList.of(topic1, topic2));
+        assertEquals(subList.size(), 1);
+        assertSubscription(subList.get(0), "topicGuid1", "subscriptionARN1");
+
+        verify(mockMapper).save(argThatTopic("topicGuid1"));
+        verify(mockMapper).save(argThatTopic("topicGuid2"));
+
+        // The SNS subscription that couldn't be saved is removed.
+        verify(mockSnsClient).unsubscribe("subscriptionARN2");
+        verify(mockSnsClient, never()).unsubscribe("subscriptionARN1");
+    }
+
+    @Test
+    public void batchUnsubscribe() {
+        // Unsubscribing from topic 2 fails.
+        TopicSubscription sub1 = makeSubscription("topicGuid1", "subscriptionARN1");
+        TopicSubscription sub2 = makeSubscription("topicGuid2", "subscriptionARN2");
+        TopicSubscription sub3 = makeSubscription("topicGuid3", "subscriptionARN3");
+        doThrow(EXCEPTION).when(mockSnsClient).unsubscribe("subscriptionARN2");
+
+        when(mockMapper.batchDelete(any(Iterable.class))).thenReturn(ImmutableList.of());
+
+        // Execute and validate.
+        List<TopicSubscription> subList = subDao.batchUnsubscribe(ImmutableList.of(sub1, sub2, sub3));
+        assertEquals(subList, ImmutableList.of(sub1, sub3));
+
+        verify(mockSnsClient).unsubscribe("subscriptionARN1");
+        verify(mockSnsClient).unsubscribe("subscriptionARN3");
+
+        // Don't delete the DDB record if the unsubscribe call fails.
+        verify(mockMapper).batchDelete(ImmutableList.of(sub1, sub3));
+        verify(mockMapper, never()).delete(any());
+    }
+
+    @Test
+    public void batchUnsubscribeWhenSnsFails() {
+        doThrow(EXCEPTION).when(mockSnsClient).unsubscribe(anyString());
+
+        List<TopicSubscription> subList = subDao.batchUnsubscribe(ImmutableList.of(makeSubscription("topicGuid1",
+                "subscriptionARN1")));
+        assertTrue(subList.isEmpty());
+
+        // Nothing is deleted.
+        verifyZeroInteractions(mockMapper);
+    }
+
+    @Test
+    public void batchUnsubscribeWhenBatchDeleteFails() {
+        TopicSubscription sub1 = makeSubscription("topicGuid1", "subscriptionARN1");
+        TopicSubscription sub2 = makeSubscription("topicGuid2", "subscriptionARN2");
+
+        // The batch fails, so we delete them one at a time. Deleting sub 2 fails.
+        when(mockMapper.batchDelete(any(Iterable.class))).thenReturn(ImmutableList.of(new FailedBatch()));
+        doThrow(EXCEPTION).when(mockMapper).delete(sub2);
+
+        // Execute and validate. Sub 2 is left in DDB, to be cleaned up later.
+        List<TopicSubscription> subList = subDao.batchUnsubscribe(ImmutableList.of(sub1, sub2));
+        assertEquals(subList, ImmutableList.of(sub1));
+
+        verify(mockMapper).delete(sub1);
+        verify(mockMapper).delete(sub2);
+    }
+
+    private void mockSubscribe(NotificationRegistration registration, NotificationTopic topic,
+            String subscriptionARN) {
+        SubscribeResult result = new SubscribeResult().withSubscriptionArn(subscriptionARN);
+        when(mockSnsClient.subscribe(subscribeRequest(registration, topic))).thenReturn(result);
+    }
+
+    private static SubscribeRequest subscribeRequest(NotificationRegistration registration,
+            NotificationTopic topic) {
+        return new SubscribeRequest().withEndpoint(registration.getEndpoint())
+                .withProtocol(registration.getProtocol().getAwsName()).withTopicArn(topic.getTopicARN());
+    }
+
+    private static DynamoTopicSubscription argThatTopic(String topicGuid) {
+        return argThat(sub -> sub != null && topicGuid.equals(sub.getTopicGuid()));
+    }
+
+    private static NotificationTopic makeTopic(String topicGuid) {
+        NotificationTopic topic = getNotificationTopic();
+        topic.setGuid(topicGuid);
+        topic.setTopicARN("arn:" + topicGuid);
+        return topic;
+    }
+
+    private static TopicSubscription makeSubscription(String topicGuid, String subscriptionARN) {
+        TopicSubscription subscription = TopicSubscription.create();
+        subscription.setRegistrationGuid("registrationGuid");
+        subscription.setTopicGuid(topicGuid);
+        subscription.setSubscriptionARN(subscriptionARN);
+        return subscription;
+    }
+
+    private static void assertSubscription(TopicSubscription subscription, String topicGuid,
+            String subscriptionARN) {
+        assertEquals(subscription.getRegistrationGuid(), "registrationGuid");
+        assertEquals(subscription.getTopicGuid(), topicGuid);
+        assertEquals(subscription.getSubscriptionARN(), subscriptionARN);
+    }
 }
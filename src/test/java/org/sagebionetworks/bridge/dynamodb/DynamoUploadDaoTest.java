@@ -4,8 +4,10 @@ import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.sagebionetworks.bridge.BridgeConstants.API_MAXIMUM_PAGE_SIZE;
 import static org.sagebionetworks.bridge.TestConstants.TEST_APP_ID;
 import static org.sagebionetworks.bridge.models.upload.UploadCompletionClient.APP;
 import static org.testng.Assert.assertEquals;
@@ -15,7 +17,9 @@ import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -33,6 +37,7 @@ import org.testng.annotations.Test;
 
 import org.sagebionetworks.bridge.dao.HealthCodeDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.exceptions.NotFoundException;
@@ -48,6 +53,7 @@ import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
 import com.amazonaws.services.dynamodbv2.document.Index;
 import com.amazonaws.services.dynamodbv2.document.Item;
 import com.amazonaws.services.dynamodbv2.document.ItemCollection;
+import com.amazonaws.services.dynamodbv2.document.KeyAttribute;
 import com.amazonaws.services.dynamodbv2.document.QueryOutcome;
 import com.amazonaws.services.dynamodbv2.document.internal.IteratorSupport;
 import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
@@ -291,20 +297,17 @@ public class DynamoUploadDaoTest {
         DateTime endTime = DateTime.now();
         int pageSize = 50;
 
-        // The mock items are not in order, the later one is returned before the earlier one,
-        // and the order should be reversed by sorting.
-        Item mockItem1 = new Item().withLong("requestedOn", 30000).with("uploadId", UPLOAD_ID);
-        Item mockItem2 = new Item().withLong("requestedOn", 10000).with("uploadId", UPLOAD_ID_2);
+        // The index returns the items in order, but batchLoad does not, so the uploads are put back in index order.
+        Item mockItem1 = new Item().withLong("requestedOn", 10000).with("uploadId", UPLOAD_ID);
+        Item mockItem2 = new Item().withLong("requestedOn", 30000).with("uploadId", UPLOAD_ID_2);
 
-        when(upload1.getRequestedOn()).thenReturn(30000L);
-        when(upload2.getRequestedOn()).thenReturn(10000L);
+        mockUpload(upload1, UPLOAD_ID, 10000L);
+        mockUpload(upload2, UPLOAD_ID_2, 30000L);
 
         when(mockIndexHelper.query(any(QuerySpec.class))).thenReturn(lastQueryOutcome);
         when(lastQueryOutcome.getItems()).thenReturn(Lists.newArrayList(mockItem1, mockItem2));
 
-        Map<String, List<Object>> batchLoadMap = new ImmutableMap.Builder<String, List<Object>>()
-                .put(UPLOAD_ID, Lists.newArrayList(upload1)).put(UPLOAD_ID_2, Lists.newArrayList(upload2)).build();
-
+        Map<String, List<Object>> batchLoadMap = ImmutableMap.of("Upload2", Lists.newArrayList(upload2, upload1));
         when(mockMapper.batchLoad(any(List.class))).thenReturn(batchLoadMap);
 
         ForwardCursorPagedResourceList<Upload> page = dao.getUploads(healthCode, startTime, endTime, pageSize, null);
@@ -313,15 +316,19 @@ public class DynamoUploadDaoTest {
         QuerySpec mockSpec = querySpecCaptor.getValue();
         assertEquals(mockSpec.getMaxPageSize(), new Integer(51));
         assertEquals(mockSpec.getHashKey().getValue(), healthCode);
+        assertNull(mockSpec.getExclusiveStartKey());
 
         verify(mockMapper).batchLoad(uploadListCaptor.capture());
         List<Upload> uploads = uploadListCaptor.getValue();
         assertEquals(uploads.size(), 2);
+        assertEquals(uploads.get(0).getUploadId(), UPLOAD_ID);
+        assertEquals(uploads.get(1).getUploadId(), UPLOAD_ID_2);
 
-        // These have been sorted.
+        // These are in index order.
         assertEquals(page.getItems().size(), 2);
-        assertEquals(page.getItems().get(0).getRequestedOn(), 10000);
-        assertEquals(page.getItems().get(1).getRequestedOn(), 30000);
+        assertSame(page.getItems().get(0), upload1);
+        assertSame(page.getItems().get(1), upload2);
+        assertNull(page.getNextPageOffsetKey());
 
         // All parameters were returned. No paging in this test
         assertEquals(page.getRequestParams().get("pageSize"), (Integer) pageSize);
@@ -360,27 +367,25 @@ public class DynamoUploadDaoTest {
         Item mockItem3 = new Item().withLong("requestedOn", 30000).with("uploadId", UPLOAD_ID_3);
         Item mockItem4 = new Item().withLong("requestedOn", 40000).with("uploadId", UPLOAD_ID_4);
 
-        when(upload1.getRequestedOn()).thenReturn(10000L);
-        when(upload2.getRequestedOn()).thenReturn(20000L);
-        when(upload3.getRequestedOn()).thenReturn(30000L);
-        when(upload4.getRequestedOn()).thenReturn(40000L);
+        mockUpload(upload1, UPLOAD_ID, 10000L);
+        mockUpload(upload2, UPLOAD_ID_2, 20000L);
+        mockUpload(upload3, UPLOAD_ID_3, 30000L);
+        mockUpload(upload4, UPLOAD_ID_4, 40000L);
 
         when(mockIndexHelper.query(any(QuerySpec.class))).thenReturn(lastQueryOutcome);
 
-        when(lastQueryOutcome.getItems()).thenReturn(Lists.newArrayList(mockItem1, mockItem2),
+        when(lastQueryOutcome.getItems()).thenReturn(Lists.newArrayList(mockItem1, mockItem2, mockItem3),
                 Lists.newArrayList(mockItem3, mockItem4));
 
-        Map<String, List<Object>> batchLoadMap1 = new ImmutableMap.Builder<String, List<Object>>()
-                .put(UPLOAD_ID, Lists.newArrayList(upload1)).put(UPLOAD_ID_2, Lists.newArrayList(upload2))
-                .put(UPLOAD_ID_3, Lists.newArrayList(upload3)).build();
-
-        Map<String, List<Object>> batchLoadMap2 = new ImmutableMap.Builder<String, List<Object>>()
-                .put(UPLOAD_ID_3, Lists.newArrayList(upload3)).put(UPLOAD_ID_4, Lists.newArrayList(upload4)).build();
+        // The indicator record is not loaded.
+        Map<String, List<Object>> batchLoadMap1 = ImmutableMap.of("Upload2", Lists.newArrayList(upload1, upload2));
+        Map<String, List<Object>> batchLoadMap2 = ImmutableMap.of("Upload2", Lists.newArrayList(upload3, upload4));
 
         when(mockMapper.batchLoad(any(List.class))).thenReturn(batchLoadMap1, batchLoadMap2);
 
         ForwardCursorPagedResourceList<Upload> page1 = dao.getUploads(healthCode, startTime, endTime, pageSize, null);
-        assertEquals(page1.getNextPageOffsetKey(), "30000");
+        assertEquals(page1.getItems(), ImmutableList.of(upload1, upload2));
+        assertNotNull(page1.getNextPageOffsetKey());
         assertNull(page1.getRequestParams().get("offsetKey"));
         assertEquals(page1.getRequestParams().get("pageSize"), pageSize);
         assertEquals(page1.getRequestParams().get("startTime"), startTime.toString());
@@ -388,11 +393,56 @@ public class DynamoUploadDaoTest {
 
         ForwardCursorPagedResourceList<Upload> page2 = dao.getUploads(healthCode, startTime, endTime, pageSize,
                 page1.getNextPageOffsetKey());
+        assertEquals(page2.getItems(), ImmutableList.of(upload3, upload4));
         assertNull(page2.getNextPageOffsetKey());
-        assertEquals(page2.getRequestParams().get("offsetKey"), "30000");
+        assertEquals(page2.getRequestParams().get("offsetKey"), page1.getNextPageOffsetKey());
         assertEquals(page2.getRequestParams().get("pageSize"), pageSize);
         assertEquals(page2.getRequestParams().get("startTime"), startTime.toString());
         assertEquals(page2.getRequestParams().get("endTime"), endTime.toString());
+
+        // The second page starts after the last upload of the first page.
+        verify(mockIndexHelper, times(2)).query(querySpecCaptor.capture());
+        QuerySpec spec2 = querySpecCaptor.getAllValues().get(1);
+        Map<String, Object> startKey = new HashMap<>();
+        for (KeyAttribute attr : spec2.getExclusiveStartKey()) {
+            startKey.put(attr.getName(), attr.getValue());
+        }
+        assertEquals(startKey, ImmutableMap.of("uploadId", UPLOAD_ID_2, "healthCode", healthCode,
+                "requestedOn", 20000L));
+        assertEquals(spec2.getRangeKeyCondition().getValues()[0], startTime.getMillis());
+    }
+
+    @Test
+    public void getUploadsWithLegacyOffsetKey() {
+        String healthCode = "abc";
+        DateTime startTime = new DateTime(10000L);
+        DateTime endTime = new DateTime(50000L);
+
+        when(mockIndexHelper.query(any(QuerySpec.class))).thenReturn(lastQueryOutcome);
+        when(lastQueryOutcome.getItems()).thenReturn(ImmutableList.of());
+
+        ForwardCursorPagedResourceList<Upload> page = dao.getUploads(healthCode, startTime, endTime, 2, "30000");
+        assertTrue(page.getItems().isEmpty());
+
+        // The timestamp is used as the start of the range.
+        verify(mockIndexHelper).query(querySpecCaptor.capture());
+        QuerySpec spec = querySpecCaptor.getValue();
+        assertNull(spec.getExclusiveStartKey());
+        assertEquals(spec.getRangeKeyCondition().getValues()[0], 30000L);
+        verify(mockMapper, never()).batchLoad(any(List.class));
+    }
+
+    @Test
+    public void getUploadsBadOffsetKey() {
+        DateTime startTime = DateTime.now().minusDays(4);
+        DateTime endTime = DateTime.now();
+
+        try {
+            dao.getUploads("abc", startTime, endTime, 2, "bad-key");
+            fail("Should have thrown an exception");
+        } catch (BadRequestException e) {
+            assertEquals(e.getMessage(), "Invalid offsetKey: bad-key");
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -402,10 +452,10 @@ public class DynamoUploadDaoTest {
         DateTime endTime = DateTime.now();
         int pageSize = 2;
 
-        when(upload3.getRequestedOn()).thenReturn(30000L);
-        when(upload3.getUploadId()).thenReturn(UPLOAD_ID_3);
-
-        when(mockMapper.load(DynamoUpload2.class, upload3.getUploadId())).thenReturn(upload3);
+        mockUpload(upload1, UPLOAD_ID, 40000L);
+        mockUpload(upload2, UPLOAD_ID_2, 30000L);
+        mockUpload(upload3, UPLOAD_ID_3, 20000L);
+        mockUpload(upload4, UPLOAD_ID_4, 10000L);
 
         when(mockMapper.queryPage(eq(DynamoUpload2.class), any(DynamoDBQueryExpression.class))).thenReturn(queryPage1,
                 queryPage2);
@@ -413,26 +463,22 @@ public class DynamoUploadDaoTest {
         when(queryPage1.getResults()).thenReturn(Lists.newArrayList(upload1, upload2));
 
         Map<String, AttributeValue> lastKey1 = new ImmutableMap.Builder<String, AttributeValue>()
-                .put(UPLOAD_ID, new AttributeValue().withS(upload3.getUploadId())).build();
+                .put("uploadId", new AttributeValue().withS(UPLOAD_ID_2))
+                .put("requestedOn", new AttributeValue().withN("30000"))
+                .put("studyId", new AttributeValue().withS(TEST_APP_ID)).build();
         when(queryPage1.getLastEvaluatedKey()).thenReturn(lastKey1);
 
-        Map<String, AttributeValue> lastKey2 = new ImmutableMap.Builder<String, AttributeValue>()
-                .put(UPLOAD_ID, new AttributeValue().withS(null)).build();
-        when(queryPage2.getLastEvaluatedKey()).thenReturn(lastKey2);
-
         when(queryPage2.getResults()).thenReturn(Lists.newArrayList(upload3, upload4));
 
-        Map<String, List<Object>> batchLoadMap1 = new ImmutableMap.Builder<String, List<Object>>()
-                .put(UPLOAD_ID, Lists.newArrayList(upload1)).put(UPLOAD_ID_2, Lists.newArrayList(upload2))
-                .put(UPLOAD_ID_3, Lists.newArrayList(upload3)).build();
-
-        Map<String, List<Object>> batchLoadMap2 = new ImmutableMap.Builder<String, List<Object>>()
-                .put(UPLOAD_ID_3, Lists.newArrayList(upload3)).put(UPLOAD_ID_4, Lists.newArrayList(upload4)).build();
+        // batchLoad returns the uploads out of order.
+        Map<String, List<Object>> batchLoadMap1 = ImmutableMap.of("Upload2", Lists.newArrayList(upload2, upload1));
+        Map<String, List<Object>> batchLoadMap2 = ImmutableMap.of("Upload2", Lists.newArrayList(upload4, upload3));
 
         when(mockMapper.batchLoad(any(List.class))).thenReturn(batchLoadMap1, batchLoadMap2);
 
         ForwardCursorPagedResourceList<Upload> page1 = dao.getAppUploads(TEST_APP_ID, startTime, endTime, pageSize, null);
-        assertEquals(page1.getNextPageOffsetKey(), "uploadId3");
+        assertEquals(page1.getItems(), ImmutableList.of(upload1, upload2));
+        assertNotNull(page1.getNextPageOffsetKey());
         assertNull(page1.getRequestParams().get("offsetKey"));
         assertEquals(page1.getRequestParams().get("pageSize"), pageSize);
         assertEquals(page1.getRequestParams().get("startTime"), startTime.toString());
@@ -440,11 +486,100 @@ public class DynamoUploadDaoTest {
 
         ForwardCursorPagedResourceList<Upload> page2 = dao.getAppUploads(TEST_APP_ID, startTime, endTime, pageSize,
                 page1.getNextPageOffsetKey());
+        assertEquals(page2.getItems(), ImmutableList.of(upload3, upload4));
         assertNull(page2.getNextPageOffsetKey());
-        assertEquals(page2.getRequestParams().get("offsetKey"), "uploadId3");
+        assertEquals(page2.getRequestParams().get("offsetKey"), page1.getNextPageOffsetKey());
         assertEquals(page1.getRequestParams().get("pageSize"), pageSize);
         assertEquals(page1.getRequestParams().get("startTime"), startTime.toString());
         assertEquals(page1.getRequestParams().get("endTime"), endTime.toString());
+
+        // The second page is queried from the offset key alone.
+        verify(mockMapper, never()).load(eq(DynamoUpload2.class), any(String.class));
+        ArgumentCaptor<DynamoDBQueryExpression<DynamoUpload2>> queryCaptor = ArgumentCaptor.forClass(
+                DynamoDBQueryExpression.class);
+        verify(mockMapper, times(2)).queryPage(eq(DynamoUpload2.class), queryCaptor.capture());
+        assertEquals(queryCaptor.getAllValues().get(1).getExclusiveStartKey(), lastKey1);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void getAppUploadsWithLegacyOffsetKey() {
+        DateTime startTime = DateTime.now().minusDays(4);
+        DateTime endTime = DateTime.now();
+
+        mockUpload(upload3, UPLOAD_ID_3, 30000L);
+        when(mockMapper.load(DynamoUpload2.class, UPLOAD_ID_3)).thenReturn(upload3);
+        when(mockMapper.queryPage(eq(DynamoUpload2.class), any(DynamoDBQueryExpression.class)))
+                .thenReturn(queryPage1);
+        when(queryPage1.getResults()).thenReturn(ImmutableList.of());
+
+        dao.getAppUploads(TEST_APP_ID, startTime, endTime, 2, UPLOAD_ID_3);
+
+        ArgumentCaptor<DynamoDBQueryExpression<DynamoUpload2>> queryCaptor = ArgumentCaptor.forClass(
+                DynamoDBQueryExpression.class);
+        verify(mockMapper).queryPage(eq(DynamoUpload2.class), queryCaptor.capture());
+        Map<String, AttributeValue> startKey = queryCaptor.getValue().getExclusiveStartKey();
+        assertEquals(startKey.get("uploadId").getS(), UPLOAD_ID_3);
+        assertEquals(startKey.get("requestedOn").getN(), "30000");
+        assertEquals(startKey.get("studyId").getS(), TEST_APP_ID);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void batchLoadInOrderRestoresKeyOrder() {
+        int keyCount = API_MAXIMUM_PAGE_SIZE;
+        List<DynamoUpload2> keys = new ArrayList<>();
+        for (int i = 0; i < keyCount; i++) {
+            DynamoUpload2 key = new DynamoUpload2();
+            key.setUploadId("upload" + i);
+            keys.add(key);
+        }
+        // The batch is returned in reverse order. One upload doesn't exist.
+        when(mockMapper.batchLoad(any(List.class))).thenAnswer(invocation -> {
+            List<DynamoUpload2> batch = invocation.getArgument(0);
+            List<Object> results = new ArrayList<>();
+            for (DynamoUpload2 key : Lists.reverse(batch)) {
+                if (!key.getUploadId().equals("upload5")) {
+                    DynamoUpload2 upload = new DynamoUpload2();
+                    upload.setUploadId(key.getUploadId());
+                    results.add(upload);
+                }
+            }
+            return ImmutableMap.of("Upload2", results);
+        });
+
+        List<Upload> results = dao.batchLoadInOrder(keys);
+
+        // A full page is a single batch get.
+        verify(mockMapper).batchLoad(uploadListCaptor.capture());
+        assertEquals(uploadListCaptor.getValue().size(), keyCount);
+
+        assertEquals(results.size(), keyCount - 1);
+        int resultIndex = 0;
+        for (DynamoUpload2 key : keys) {
+            if (!key.getUploadId().equals("upload5")) {
+                assertEquals(results.get(resultIndex++).getUploadId(), key.getUploadId());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test(expectedExceptions = BridgeServiceException.class)
+    public void batchLoadInOrderRejectsWrongType() {
+        DynamoUpload2 key = new DynamoUpload2();
+        key.setUploadId(UPLOAD_ID);
+        when(mockMapper.batchLoad(any(List.class))).thenReturn(ImmutableMap.of("Upload2",
+                ImmutableList.<Object>of("not an upload")));
+
+        dao.batchLoadInOrder(ImmutableList.of(key));
+    }
+
+    @Test
+    public void offsetKeyRoundTrips() {
+        String encoded = new DynamoUploadDao.OffsetKey(30000L, UPLOAD_ID).encode();
+        assertEquals(DynamoUploadDao.OffsetKey.decode(encoded).encode(), encoded);
+        assertNull(DynamoUploadDao.OffsetKey.decode("bad-key"));
+        assertNull(DynamoUploadDao.OffsetKey.decode("30000"));
     }
 
     @Test
@@ -515,4 +650,9 @@ public class DynamoUploadDaoTest {
                 .withContentLength((long) text.getBytes().length)
                 .withContentMd5(Base64.encodeBase64String(DigestUtils.md5(text))).build();
     }
+
+    private static void mockUpload(DynamoUpload2 mockUpload, String uploadId, long requestedOn) {
+        when(mockUpload.getUploadId()).thenReturn(uploadId);
+        when(mockUpload.getRequestedOn()).thenReturn(requestedOn);
+    }
 }
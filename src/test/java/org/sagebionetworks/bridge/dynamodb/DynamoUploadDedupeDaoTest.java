@@ -21,6 +21,8 @@ import org.mockito.MockitoAnnotations;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import org.sagebionetworks.bridge.cache.UploadDedupeFilter;
+
 public class DynamoUploadDedupeDaoTest extends Mockito {
     private static final String HEALTHCODE = "test-healthcode";
     private static final String UPLOAD_ID = "original-upload";
@@ -36,6 +38,9 @@ public class DynamoUploadDedupeDaoTest extends Mockito {
     @Mock
     PaginatedQueryList<DynamoUploadDedupe> mockQueryList;
 
+    @Mock
+    UploadDedupeFilter mockFilter;
+
     @Captor
     ArgumentCaptor<DynamoDBQueryExpression<DynamoUploadDedupe>> queryCaptor;
     
@@ -45,6 +50,7 @@ public class DynamoUploadDedupeDaoTest extends Mockito {
     @BeforeMethod
     public void setup() {
         MockitoAnnotations.initMocks(this);
+        when(mockFilter.check(any(), any(), any(), any())).thenReturn(UploadDedupeFilter.Result.UNKNOWN);
     }
 
     @Test
@@ -96,4 +102,50 @@ public class DynamoUploadDedupeDaoTest extends Mockito {
         String originalUploadId = dao.getDuplicate(HEALTHCODE, UPLOAD_MD5, UPLOAD_REQUESTED_ON);
         assertNull(originalUploadId);
     }
+
+    @Test
+    public void registerUploadAddsToFilter() {
+        dao.registerUpload(HEALTHCODE, UPLOAD_MD5, UPLOAD_REQUESTED_ON, UPLOAD_ID);
+
+        verify(mockFilter).put(HEALTHCODE, UPLOAD_MD5, UPLOAD_REQUESTED_ON);
+        verify(mockMapper).save(any());
+    }
+
+    @Test
+    public void getDuplicateSkipsQueryWhenFilterHasNotSeenUpload() {
+        when(mockFilter.check(HEALTHCODE, UPLOAD_MD5, UPLOAD_REQUESTED_ON.minusDays(NUM_DAYS_BEFORE),
+                UPLOAD_REQUESTED_ON)).thenReturn(UploadDedupeFilter.Result.NOT_SEEN);
+
+        String originalUploadId = dao.getDuplicate(HEALTHCODE, UPLOAD_MD5, UPLOAD_REQUESTED_ON);
+        assertNull(originalUploadId);
+
+        verify(mockMapper, never()).query(eq(DynamoUploadDedupe.class), any());
+    }
+
+    @Test
+    public void getDuplicateRecordsFilterFalsePositive() {
+        when(mockFilter.check(HEALTHCODE, UPLOAD_MD5, UPLOAD_REQUESTED_ON.minusDays(NUM_DAYS_BEFORE),
+                UPLOAD_REQUESTED_ON)).thenReturn(UploadDedupeFilter.Result.MAYBE_SEEN);
+        when(mockMapper.query(eq(DynamoUploadDedupe.class), any())).thenReturn(mockQueryList);
+        when(mockQueryList.isEmpty()).thenReturn(true);
+
+        String originalUploadId = dao.getDuplicate(HEALTHCODE, UPLOAD_MD5, UPLOAD_REQUESTED_ON);
+        assertNull(originalUploadId);
+
+        verify(mockFilter).recordFalsePositive();
+    }
+
+    @Test
+    public void getDuplicateQueriesWhenFilterCannotTell() {
+        when(mockFilter.check(HEALTHCODE, UPLOAD_MD5, UPLOAD_REQUESTED_ON.minusDays(NUM_DAYS_BEFORE),
+                UPLOAD_REQUESTED_ON)).thenReturn(UploadDedupeFilter.Result.UNKNOWN);
+        when(mockMapper.query(eq(DynamoUploadDedupe.class), any())).thenReturn(mockQueryList);
+        when(mockQueryList.isEmpty()).thenReturn(true);
+
+        String originalUploadId = dao.getDuplicate(HEALTHCODE, UPLOAD_MD5, UPLOAD_REQUESTED_ON);
+        assertNull(originalUploadId);
+
+        verify(mockMapper).query(eq(DynamoUploadDedupe.class), any());
+        verify(mockFilter, never()).recordFalsePositive();
+    }
 }
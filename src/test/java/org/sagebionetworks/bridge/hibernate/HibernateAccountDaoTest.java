@@ -449,41 +449,40 @@ public class HibernateAccountDaoTest extends Mockito {
                 +"WHERE acct.appId = :appId AND size(acct.roles) > 0 AND acct.orgMembership = "
                 +":orgId";
         
-        Set<Enrollment> set = ImmutableSet.of(
-                Enrollment.create(TEST_APP_ID, STUDY_A, ACCOUNT_ID),
-                Enrollment.create(TEST_APP_ID, STUDY_B, ACCOUNT_ID));
-
         // mock hibernate
         HibernateAccount hibernateAccount1 = makeValidHibernateAccount(false);
         hibernateAccount1.setId("account-1");
         hibernateAccount1.setEmail("email1@example.com");
-        hibernateAccount1.setEnrollments(set);
 
         HibernateAccount hibernateAccount2 = makeValidHibernateAccount(false);
         hibernateAccount2.setId("account-2");
         hibernateAccount2.setEmail("email2@example.com");
-        hibernateAccount2.setEnrollments(set);
 
-        when(mockHibernateHelper.queryGet(expQuery, APP_QUERY_PARAMS, 10, 5, String.class))
+        when(mockHibernateHelper.queryGet(expQuery, APP_QUERY_PARAMS, 10, 2, String.class))
                 .thenReturn(ImmutableList.of("account-1", "account-2"));
-        when(mockHibernateHelper.getById(HibernateAccount.class, "account-1")).thenReturn(hibernateAccount1);        
-        when(mockHibernateHelper.getById(HibernateAccount.class, "account-2")).thenReturn(hibernateAccount2);
+        // Summaries are loaded in one query, in any order.
+        mockSummaryQueries(ImmutableList.of(hibernateAccount2, hibernateAccount1), ImmutableList.of(
+                new Object[] { "account-1", "attrKey", "attrValue" }), ImmutableList.of(
+                        Enrollment.create(TEST_APP_ID, STUDY_A, "account-1"),
+                        Enrollment.create(TEST_APP_ID, STUDY_B, "account-1"),
+                        Enrollment.create(TEST_APP_ID, STUDY_A, "account-2"),
+                        Enrollment.create(TEST_APP_ID, STUDY_B, "account-2")));
         when(mockHibernateHelper.queryCount(eq(expCountQuery), any())).thenReturn(12);
 
         // execute and validate
         AccountSummarySearch search = new AccountSummarySearch.Builder().withOffsetBy(10)
-                .withAdminOnly(true).withOrgMembership(TEST_ORG_ID).withPageSize(5).build();
+                .withAdminOnly(true).withOrgMembership(TEST_ORG_ID).withPageSize(2).build();
 
         PagedResourceList<AccountSummary> accountSummaryResourceList = dao.getPagedAccountSummaries(TEST_APP_ID, search);
         assertEquals(accountSummaryResourceList.getRequestParams().get("offsetBy"), 10);
-        assertEquals(accountSummaryResourceList.getRequestParams().get("pageSize"), 5);
+        assertEquals(accountSummaryResourceList.getRequestParams().get("pageSize"), 2);
         assertEquals(accountSummaryResourceList.getRequestParams().get("orgMembership"), TEST_ORG_ID);
         assertTrue((Boolean)accountSummaryResourceList.getRequestParams().get("adminOnly"));
         assertEquals(accountSummaryResourceList.getTotal(), (Integer) 12);
 
         Map<String, Object> paramsMap = accountSummaryResourceList.getRequestParams();
         assertEquals(paramsMap.get("offsetBy"), 10);
-        assertEquals(paramsMap.get("pageSize"), 5);
+        assertEquals(paramsMap.get("pageSize"), 2);
         assertEquals(paramsMap.get("adminOnly"), Boolean.TRUE);
         assertEquals(paramsMap.get("orgMembership"), TEST_ORG_ID);
 
@@ -495,39 +494,92 @@ public class HibernateAccountDaoTest extends Mockito {
         assertEquals(accountSummaryList.get(0).getAppId(), TEST_APP_ID);
         assertEquals(accountSummaryList.get(0).getEmail(), "email1@example.com");
         assertEquals(accountSummaryList.get(0).getStudyIds(), ImmutableSet.of(STUDY_A, STUDY_B));
+        assertEquals(accountSummaryList.get(0).getAttributes(), ImmutableMap.of("attrKey", "attrValue"));
 
         assertEquals(accountSummaryList.get(1).getId(), "account-2");
         assertEquals(accountSummaryList.get(1).getAppId(), TEST_APP_ID);
         assertEquals(accountSummaryList.get(1).getEmail(), "email2@example.com");
         assertEquals(accountSummaryList.get(1).getStudyIds(), ImmutableSet.of(STUDY_A, STUDY_B));
+        assertTrue(accountSummaryList.get(1).getAttributes().isEmpty());
 
         // verify hibernate calls
-        verify(mockHibernateHelper).queryGet(eq(expQuery), eq(APP_QUERY_PARAMS), eq(10), eq(5), eq(String.class));
-        verify(mockHibernateHelper).getById(HibernateAccount.class, "account-1");
-        verify(mockHibernateHelper).getById(HibernateAccount.class, "account-2");
+        Map<String, Object> idsParams = ImmutableMap.of(HibernateAccountDao.IDS_PARAM,
+                ImmutableList.of("account-1", "account-2"));
+        verify(mockHibernateHelper).queryGet(eq(expQuery), eq(APP_QUERY_PARAMS), eq(10), eq(2), eq(String.class));
+        verify(mockHibernateHelper).queryGet(HibernateAccountDao.SUMMARY_QUERY, idsParams, null, null,
+                HibernateAccount.class);
+        verify(mockHibernateHelper).queryGet(HibernateAccountDao.SUMMARY_ATTRIBUTES_QUERY, idsParams, null, null,
+                Object[].class);
+        verify(mockHibernateHelper).queryGet(HibernateAccountDao.SUMMARY_ENROLLMENTS_QUERY, idsParams, null, null,
+                HibernateEnrollment.class);
+        verify(mockHibernateHelper, never()).getById(eq(HibernateAccount.class), any());
         verify(mockHibernateHelper).queryCount(expCountQuery, APP_QUERY_PARAMS);
     }
 
+    @Test
+    public void getPagedShortPageSkipsCountQuery() throws Exception {
+        HibernateAccount hibernateAccount = makeValidHibernateAccount(false);
+        when(mockHibernateHelper.queryGet(any(), any(), eq(10), eq(5), eq(String.class)))
+                .thenReturn(ImmutableList.of(ACCOUNT_ID));
+        mockSummaryQueries(ImmutableList.of(hibernateAccount), ImmutableList.of(), ImmutableList.of());
+
+        AccountSummarySearch search = new AccountSummarySearch.Builder().withOffsetBy(10).withPageSize(5).build();
+        PagedResourceList<AccountSummary> page = dao.getPagedAccountSummaries(TEST_APP_ID, search);
+
+        // This is the last page, so we know the total without counting.
+        assertEquals(page.getItems().size(), 1);
+        assertEquals(page.getTotal(), (Integer) 11);
+        verify(mockHibernateHelper, never()).queryCount(any(), any());
+    }
+
+    @Test
+    public void getPagedEmptyPastEndCountsAccounts() throws Exception {
+        when(mockHibernateHelper.queryCount(any(), any())).thenReturn(7);
+
+        AccountSummarySearch search = new AccountSummarySearch.Builder().withOffsetBy(10).withPageSize(5).build();
+        PagedResourceList<AccountSummary> page = dao.getPagedAccountSummaries(TEST_APP_ID, search);
+
+        // We can't tell where the end is from an empty page past the end, so we count. We also don't query for
+        // summaries of an empty page.
+        assertTrue(page.getItems().isEmpty());
+        assertEquals(page.getTotal(), (Integer) 7);
+        verify(mockHibernateHelper, never()).queryGet(eq(HibernateAccountDao.SUMMARY_QUERY), any(), any(), any(),
+                any());
+    }
+
+    @Test
+    public void getPagedSkipsAccountsDeletedSinceIdQuery() throws Exception {
+        HibernateAccount hibernateAccount = makeValidHibernateAccount(false);
+        hibernateAccount.setId("account-2");
+        when(mockHibernateHelper.queryGet(any(), any(), any(), any(), eq(String.class)))
+                .thenReturn(ImmutableList.of("account-1", "account-2"));
+        mockSummaryQueries(ImmutableList.of(hibernateAccount), ImmutableList.<Object[]>of(
+                new Object[] { "account-1", "attrKey", "attrValue" }), ImmutableList.of(
+                        Enrollment.create(TEST_APP_ID, STUDY_A, "account-1")));
+
+        AccountSummarySearch search = new AccountSummarySearch.Builder().build();
+        List<AccountSummary> summaries = dao.getPagedAccountSummaries(TEST_APP_ID, search).getItems();
+        assertEquals(summaries.size(), 1);
+        assertEquals(summaries.get(0).getId(), "account-2");
+    }
+
     @Test
     public void getPagedRemovesStudiesNotInCaller() throws Exception {
         RequestContext.set(new RequestContext.Builder()
                 .withCallerRoles(ImmutableSet.of(RESEARCHER))
                 .withOrgSponsoredStudies(ImmutableSet.of(STUDY_A)).build());
         
-        Set<Enrollment> set = ImmutableSet.of(
-                Enrollment.create(TEST_APP_ID, STUDY_A, ACCOUNT_ID),
-                Enrollment.create(TEST_APP_ID, STUDY_B, ACCOUNT_ID));
-
         HibernateAccount hibernateAccount1 = makeValidHibernateAccount(false);
         hibernateAccount1.setId("account-1");
-        hibernateAccount1.setEnrollments(set);
         HibernateAccount hibernateAccount2 = makeValidHibernateAccount(false);
         hibernateAccount2.setId("account-2");
-        hibernateAccount2.setEnrollments(set);
-        when(mockHibernateHelper.queryGet(any(), any(), any(), any(), any()))
+        when(mockHibernateHelper.queryGet(any(), any(), any(), any(), eq(String.class)))
                 .thenReturn(ImmutableList.of("account-1", "account-2"));
-        when(mockHibernateHelper.getById(HibernateAccount.class, "account-1")).thenReturn(hibernateAccount1);
-        when(mockHibernateHelper.getById(HibernateAccount.class, "account-2")).thenReturn(hibernateAccount2);
+        mockSummaryQueries(ImmutableList.of(hibernateAccount1, hibernateAccount2), ImmutableList.of(),
+                ImmutableList.of(Enrollment.create(TEST_APP_ID, STUDY_A, "account-1"),
+                        Enrollment.create(TEST_APP_ID, STUDY_B, "account-1"),
+                        Enrollment.create(TEST_APP_ID, STUDY_A, "account-2"),
+                        Enrollment.create(TEST_APP_ID, STUDY_B, "account-2")));
 
         AccountSummarySearch search = new AccountSummarySearch.Builder().build();
         PagedResourceList<AccountSummary> accountSummaryResourceList = dao.getPagedAccountSummaries(TEST_APP_ID, search);
@@ -563,12 +615,12 @@ public class HibernateAccountDaoTest extends Mockito {
         // mock hibernate
         when(mockHibernateHelper.queryGet(eq(expQuery), any(), any(), any(), any()))
                 .thenReturn(ImmutableList.of(ACCOUNT_ID));
-        when(mockHibernateHelper.getById(HibernateAccount.class, ACCOUNT_ID))
-                .thenReturn(makeValidHibernateAccount(false));
+        mockSummaryQueries(ImmutableList.of(makeValidHibernateAccount(false)), ImmutableList.of(),
+                ImmutableList.of());
         when(mockHibernateHelper.queryCount(eq(expCountQuery), any())).thenReturn(11);
 
         // execute and validate - Just validate filters and query, since everything else is tested in getPaged().
-        AccountSummarySearch search = new AccountSummarySearch.Builder().withOffsetBy(10).withPageSize(5)
+        AccountSummarySearch search = new AccountSummarySearch.Builder().withOffsetBy(10).withPageSize(1)
                 .withEmailFilter(EMAIL).withPhoneFilter(PHONE.getNationalFormat())
                 .withAllOfGroups(Sets.newHashSet("a", "b")).withNoneOfGroups(Sets.newHashSet("c", "d"))
                 .withLanguage("de").withStartTime(startDate).withEndTime(endDate).withAdminOnly(true)
@@ -578,7 +630,7 @@ public class HibernateAccountDaoTest extends Mockito {
 
         Map<String, Object> paramsMap = accountSummaryResourceList.getRequestParams();
         assertEquals(paramsMap.size(), 12);
-        assertEquals(paramsMap.get("pageSize"), 5);
+        assertEquals(paramsMap.get("pageSize"), 1);
         assertEquals(paramsMap.get("offsetBy"), 10);
         assertEquals(paramsMap.get("emailFilter"), EMAIL);
         assertEquals(paramsMap.get("phoneFilter"), PHONE.getNationalFormat());
@@ -607,8 +659,7 @@ public class HibernateAccountDaoTest extends Mockito {
         params.put("language", "de");
         params.put("orgId", TEST_ORG_ID);
 
-        verify(mockHibernateHelper).queryGet(eq(expQuery), paramCaptor.capture(), eq(10), eq(5), eq(String.class));
-        verify(mockHibernateHelper).getById(HibernateAccount.class, ACCOUNT_ID);
+        verify(mockHibernateHelper).queryGet(eq(expQuery), paramCaptor.capture(), eq(10), eq(1), eq(String.class));
         verify(mockHibernateHelper).queryCount(eq(expCountQuery), paramCaptor.capture());
 
         Map<String, Object> capturedParams = paramCaptor.getAllValues().get(0);
@@ -648,7 +699,12 @@ public class HibernateAccountDaoTest extends Mockito {
             RequestContext.set(new RequestContext.Builder().withCallerRoles(ImmutableSet.of(RESEARCHER))
                     .withOrgSponsoredStudies(studyIds).build());
 
-            AccountSummarySearch search = new AccountSummarySearch.Builder().build();
+            when(mockHibernateHelper.queryGet(any(), any(), any(), any(), eq(String.class)))
+                    .thenReturn(ImmutableList.of(ACCOUNT_ID));
+            mockSummaryQueries(ImmutableList.of(makeValidHibernateAccount(false)), ImmutableList.of(),
+                    ImmutableList.of());
+
+            AccountSummarySearch search = new AccountSummarySearch.Builder().withPageSize(1).build();
             dao.getPagedAccountSummaries(TEST_APP_ID, search);
 
             verify(mockHibernateHelper).queryCount(eq(expCountQuery), paramCaptor.capture());
@@ -681,19 +737,19 @@ public class HibernateAccountDaoTest extends Mockito {
         // mock hibernate
         when(mockHibernateHelper.queryGet(eq(expQuery), any(), any(), any(), any()))
                 .thenReturn(ImmutableList.of(ACCOUNT_ID));
-        when(mockHibernateHelper.getById(HibernateAccount.class, ACCOUNT_ID))
-            .thenReturn(makeValidHibernateAccount(false));
+        mockSummaryQueries(ImmutableList.of(makeValidHibernateAccount(false)), ImmutableList.of(),
+                ImmutableList.of());
         when(mockHibernateHelper.queryCount(any(), any())).thenReturn(11);
 
         // execute and validate - Just validate filters and query, since everything else is tested in getPaged().
-        AccountSummarySearch search = new AccountSummarySearch.Builder().withOffsetBy(10).withPageSize(5)
+        AccountSummarySearch search = new AccountSummarySearch.Builder().withOffsetBy(10).withPageSize(1)
                 .withEmailFilter(EMAIL).withPhoneFilter(PHONE.getNationalFormat()).withLanguage("de")
                 .withStartTime(startDate).withEndTime(endDate).build();
         PagedResourceList<AccountSummary> accountSummaryResourceList = dao.getPagedAccountSummaries(TEST_APP_ID, search);
 
         Map<String, Object> paramsMap = accountSummaryResourceList.getRequestParams();
         assertEquals(paramsMap.size(), 10);
-        assertEquals(paramsMap.get("pageSize"), 5);
+        assertEquals(paramsMap.get("pageSize"), 1);
         assertEquals(paramsMap.get("offsetBy"), 10);
         assertEquals(paramsMap.get("emailFilter"), EMAIL);
         assertEquals(paramsMap.get("phoneFilter"), PHONE.getNationalFormat());
@@ -715,8 +771,7 @@ public class HibernateAccountDaoTest extends Mockito {
         params.put("endTime", endDate);
         params.put("language", "de");
 
-        verify(mockHibernateHelper).queryGet(eq(expQuery), paramCaptor.capture(), eq(10), eq(5), eq(String.class));
-        verify(mockHibernateHelper).getById(HibernateAccount.class, ACCOUNT_ID);
+        verify(mockHibernateHelper).queryGet(eq(expQuery), paramCaptor.capture(), eq(10), eq(1), eq(String.class));
         verify(mockHibernateHelper).queryCount(eq(expCountQuery), paramCaptor.capture());
 
         Map<String, Object> capturedParams = paramCaptor.getAllValues().get(0);
@@ -1088,6 +1143,17 @@ public class HibernateAccountDaoTest extends Mockito {
         assertEquals(updatedAccount.getModifiedOn().getMillis(), MOCK_DATETIME.getMillis());
     }
 
+    private void mockSummaryQueries(List<HibernateAccount> accounts, List<Object[]> attributeRows,
+            List<Enrollment> enrollments) {
+        doReturn(accounts).when(mockHibernateHelper).queryGet(eq(HibernateAccountDao.SUMMARY_QUERY), any(),
+                isNull(), isNull(), eq(HibernateAccount.class));
+        doReturn(attributeRows).when(mockHibernateHelper).queryGet(
+                eq(HibernateAccountDao.SUMMARY_ATTRIBUTES_QUERY), any(), isNull(), isNull(), eq(Object[].class));
+        doReturn(enrollments).when(mockHibernateHelper).queryGet(
+                eq(HibernateAccountDao.SUMMARY_ENROLLMENTS_QUERY), any(), isNull(), isNull(),
+                eq(HibernateEnrollment.class));
+    }
+
     // Create minimal generic account for everything that will be used by HibernateAccountDao.
     private static Account makeValidGenericAccount() {
         Account genericAccount = Account.create();
@@ -8,6 +8,7 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
 import java.security.InvalidKeyException;
@@ -16,8 +17,11 @@ import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeUtils;
@@ -31,7 +35,9 @@ import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import org.sagebionetworks.bridge.crypto.HashingExecutor;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.exceptions.LimitExceededException;
 import org.sagebionetworks.bridge.models.accounts.AccountSecret;
 import org.sagebionetworks.bridge.models.accounts.AccountSecretType;
 import org.sagebionetworks.bridge.models.accounts.PasswordAlgorithm;
@@ -59,6 +65,7 @@ public class HibernateAccountSecretDaoTest {
     public void before() {
         MockitoAnnotations.initMocks(this);
         dao.setHibernateHelper(helper);
+        dao.setHashingExecutor(makeHashingExecutor(MoreExecutors.newDirectExecutorService()));
         //when(dao.generateHash(PasswordAlgorithm.DEFAULT_PASSWORD_ALGORITHM, TOKEN)).thenReturn(TOKEN);
         DateTimeUtils.setCurrentMillisFixed(CREATED_ON.getMillis());
     }
@@ -118,6 +125,30 @@ public class HibernateAccountSecretDaoTest {
         assertFalse(dao.verifySecret(AccountSecretType.REAUTH, ACCOUNT_ID, TOKEN, ROTATIONS).isPresent());
     }
     
+    @Test
+    public void verifySecretReturnsNewestMatchWhenCheckedInParallel() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(ROTATIONS);
+        try {
+            dao.setHashingExecutor(makeHashingExecutor(executorService));
+            List<HibernateAccountSecret> results = makeResults("ABC", TOKEN, TOKEN, "DEF");
+            
+            AccountSecret secret = dao.verifySecret(AccountSecretType.REAUTH, ACCOUNT_ID, TOKEN, ROTATIONS).get();
+            assertSame(secret, results.get(1));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+    
+    @Test(expectedExceptions = LimitExceededException.class)
+    public void verifySecretFailsFastWhenHashingIsSaturated() throws Exception {
+        ExecutorService executorService = MoreExecutors.newDirectExecutorService();
+        executorService.shutdown();
+        dao.setHashingExecutor(makeHashingExecutor(executorService));
+        makeResults(TOKEN);
+        
+        dao.verifySecret(AccountSecretType.REAUTH, ACCOUNT_ID, TOKEN, ROTATIONS);
+    }
+    
     @Test
     public void verifySecretExceptionIsSuppressed() throws Exception {
         PasswordAlgorithm algorithm = Mockito.mock(PasswordAlgorithm.class);
@@ -152,6 +183,12 @@ public class HibernateAccountSecretDaoTest {
         dao.generateHash(algorithm, "whatever");
     }
     
+    private static HashingExecutor makeHashingExecutor(ExecutorService executorService) {
+        HashingExecutor hashingExecutor = new HashingExecutor();
+        hashingExecutor.setExecutorService(executorService);
+        return hashingExecutor;
+    }
+    
     private List<HibernateAccountSecret> makeResults(String... hashes) throws InvalidKeyException, InvalidKeySpecException, NoSuchAlgorithmException {
         List<HibernateAccountSecret> results = new ArrayList<>();
         for (String hash : hashes) {
@@ -29,6 +29,7 @@ import org.testng.annotations.Test;
 import org.sagebionetworks.bridge.RequestContext;
 import org.sagebionetworks.bridge.dao.AccountDao;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.models.accounts.Account;
 import org.sagebionetworks.bridge.models.accounts.AccountId;
@@ -44,6 +45,8 @@ public class HibernateExternalIdDaoTest extends Mockito {
     private static final String FULL_COUNT_QUERY = "SELECT count(en) from HibernateEnrollment as en WHERE en.appId = :appId AND en.studyId = :studyId AND en.externalId IS NOT NULL AND en.externalId LIKE :idFilter ORDER BY en.externalId";
     private static final String QUERY = "SELECT en from HibernateEnrollment as en WHERE en.appId = :appId AND en.studyId = :studyId AND en.externalId IS NOT NULL ORDER BY en.externalId";
     private static final String COUNT_QUERY = "SELECT count(en) from HibernateEnrollment as en WHERE en.appId = :appId AND en.studyId = :studyId AND en.externalId IS NOT NULL ORDER BY en.externalId";
+    private static final String FULL_KEYSET_QUERY = "SELECT en.externalId from HibernateEnrollment as en WHERE en.appId = :appId AND en.studyId = :studyId AND en.externalId IS NOT NULL AND en.externalId LIKE :idFilter AND en.externalId > :offsetKey ORDER BY en.externalId";
+    private static final String KEYSET_QUERY = "SELECT en.externalId from HibernateEnrollment as en WHERE en.appId = :appId AND en.studyId = :studyId AND en.externalId IS NOT NULL ORDER BY en.externalId";
     
     @Mock
     HibernateHelper mockHelper;
@@ -145,6 +148,45 @@ public class HibernateExternalIdDaoTest extends Mockito {
         assertNull(params1.get("idFilter"));        
     }
 
+    @Test
+    public void getExternalIdsAfter() {
+        when(mockHelper.queryGet(any(), any(), any(), any(), eq(String.class)))
+            .thenReturn(ImmutableList.of("extId1", "extId2", "extId3"));
+        
+        ForwardCursorPagedResourceList<ExternalIdentifierInfo> retValue = dao.getExternalIdsAfter(TEST_APP_ID,
+                TEST_STUDY_ID, "idFilter", "extId0", 2);
+        assertEquals(retValue.getItems(), ImmutableList.of(new ExternalIdentifierInfo("extId1", TEST_STUDY_ID, true),
+                new ExternalIdentifierInfo("extId2", TEST_STUDY_ID, true)));
+        assertEquals(retValue.getNextPageOffsetKey(), "extId2");
+        
+        // One more than the page size is requested, to know if there's another page. No count query is made.
+        verify(mockHelper).queryGet(queryCaptor.capture(), paramsCaptor.capture(), isNull(), eq(3), eq(String.class));
+        verify(mockHelper, never()).queryCount(any(), any());
+        
+        assertEquals(queryCaptor.getValue(), FULL_KEYSET_QUERY);
+        Map<String,Object> params = paramsCaptor.getValue();
+        assertEquals(params.get("appId"), TEST_APP_ID);
+        assertEquals(params.get("studyId"), TEST_STUDY_ID);
+        assertEquals(params.get("idFilter"), "idFilter%");
+        assertEquals(params.get("offsetKey"), "extId0");
+    }
+    
+    @Test
+    public void getExternalIdsAfterFirstAndLastPage() {
+        when(mockHelper.queryGet(any(), any(), any(), any(), eq(String.class)))
+            .thenReturn(ImmutableList.of("extId1", "extId2"));
+        
+        ForwardCursorPagedResourceList<ExternalIdentifierInfo> retValue = dao.getExternalIdsAfter(TEST_APP_ID,
+                TEST_STUDY_ID, null, "", 2);
+        assertEquals(retValue.getItems().size(), 2);
+        assertNull(retValue.getNextPageOffsetKey());
+        
+        verify(mockHelper).queryGet(queryCaptor.capture(), paramsCaptor.capture(), isNull(), eq(3), eq(String.class));
+        assertEquals(queryCaptor.getValue(), KEYSET_QUERY);
+        assertNull(paramsCaptor.getValue().get("idFilter"));
+        assertNull(paramsCaptor.getValue().get("offsetKey"));
+    }
+
     @Test
     public void deleteExternalId() {
         Enrollment en = Enrollment.create(TEST_APP_ID, TEST_STUDY_ID, TEST_USER_ID);
@@ -1,8 +1,18 @@
 package org.sagebionetworks.bridge.hibernate;
 
 import static org.sagebionetworks.bridge.TestConstants.TEST_USER_ID;
+import static org.sagebionetworks.bridge.hibernate.HibernateRequestInfoDao.GET_BY_USER_IDS_QUERY;
+import static org.sagebionetworks.bridge.hibernate.HibernateRequestInfoDao.USER_IDS_PARAM;
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertSame;
 
+import java.util.List;
+import java.util.function.Function;
+
+import com.google.common.collect.ImmutableList;
+import org.hibernate.Session;
+import org.hibernate.query.Query;
 import org.joda.time.DateTime;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
@@ -23,6 +33,12 @@ public class HibernateRequestInfoDaoTest extends Mockito {
     @Mock
     HibernateHelper mockHelper;
     
+    @Mock
+    Session mockSession;
+    
+    @Mock
+    Query<RequestInfo> mockQuery;
+    
     @Captor
     ArgumentCaptor<RequestInfo> requestInfoCaptor;
     
@@ -58,6 +74,37 @@ public class HibernateRequestInfoDaoTest extends Mockito {
         assertNotNull(captured.getSignedInOn());
     }
 
+    @Test
+    public void updateRequestInfos() {
+        DateTime signedInOn = DateTime.now();
+        RequestInfo existingInfo = new RequestInfo.Builder().withUserId(TEST_USER_ID)
+                .withSignedInOn(signedInOn).build();
+        RequestInfo updatedInfo = new RequestInfo.Builder().withUserId(TEST_USER_ID)
+                .withActivitiesAccessedOn(signedInOn.plusMinutes(1)).build();
+        RequestInfo newInfo = new RequestInfo.Builder().withUserId("other-user").withSignedInOn(signedInOn).build();
+        mockSession(ImmutableList.of(existingInfo));
+        
+        dao.updateRequestInfos(ImmutableList.of(updatedInfo, newInfo));
+        
+        verify(mockSession).setJdbcBatchSize(HibernateRequestInfoDao.JDBC_BATCH_SIZE);
+        verify(mockSession).createQuery(GET_BY_USER_IDS_QUERY, RequestInfo.class);
+        verify(mockQuery).setParameter(USER_IDS_PARAM, ImmutableList.of(TEST_USER_ID, "other-user"));
+        
+        verify(mockSession).merge(requestInfoCaptor.capture());
+        RequestInfo merged = requestInfoCaptor.getValue();
+        assertEquals(merged.getSignedInOn(), signedInOn);
+        assertEquals(merged.getActivitiesAccessedOn(), updatedInfo.getActivitiesAccessedOn());
+        
+        verify(mockSession).save(requestInfoCaptor.capture());
+        assertSame(requestInfoCaptor.getValue(), newInfo);
+    }
+    
+    @Test
+    public void updateRequestInfosEmptyList() {
+        dao.updateRequestInfos(ImmutableList.of());
+        verify(mockHelper, never()).executeWithExceptionHandling(any(), any());
+    }
+    
     @Test
     public void getRequestInfo() {
         dao.getRequestInfo(TEST_USER_ID);
@@ -78,5 +125,16 @@ public class HibernateRequestInfoDaoTest extends Mockito {
     public void removeRequestInfoNoObject() {
         dao.removeRequestInfo(TEST_USER_ID);
         verify(mockHelper, never()).deleteById(any(), any());
-    }       
+    }
+    
+    @SuppressWarnings("unchecked")
+    private void mockSession(List<RequestInfo> existingInfos) {
+        when(mockHelper.executeWithExceptionHandling(any(), any())).then(answer -> {
+            Function<Session, Object> func = answer.getArgument(1);
+            return func.apply(mockSession);
+        });
+        when(mockSession.createQuery(GET_BY_USER_IDS_QUERY, RequestInfo.class)).thenReturn(mockQuery);
+        when(mockQuery.setParameter(any(String.class), any())).thenReturn(mockQuery);
+        when(mockQuery.list()).thenReturn(existingInfos);
+    }
 }
@@ -0,0 +1,185 @@
+package org.sagebionetworks.bridge.models;
+
+import static java.util.Comparator.comparingLong;
+import static org.sagebionetworks.bridge.TestConstants.TEST_APP_ID;
+import static org.sagebionetworks.bridge.models.OperatingSystem.ANDROID;
+import static org.sagebionetworks.bridge.models.OperatingSystem.IOS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.testng.annotations.Test;
+
+import org.sagebionetworks.bridge.models.appconfig.AppConfig;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+public class CriteriaMatcherTest {
+
+    private static final ClientInfo IOS_CLIENT_INFO = ClientInfo.fromUserAgentCache(
+            "app/4 (deviceName; iPhone OS/3.9) BridgeJavaSDK/12");
+    private static final ClientInfo ANDROID_CLIENT_INFO = ClientInfo.fromUserAgentCache(
+            "app/4 (deviceName; Android/3.9) BridgeJavaSDK/12");
+    private static final List<String> LANGUAGES = ImmutableList.of("en", "fr", "de", "zh");
+
+    @Test
+    public void matchesAppRange() {
+        AppConfig inRange = appConfig(criteria -> criteria.setMinAppVersion(IOS, 1));
+        AppConfig tooNew = appConfig(criteria -> criteria.setMinAppVersion(IOS, 5));
+        AppConfig tooOld = appConfig(criteria -> criteria.setMaxAppVersion(IOS, 2));
+        AppConfig otherOs = appConfig(criteria -> criteria.setMinAppVersion(ANDROID, 5));
+        CriteriaMatcher<AppConfig> matcher = CriteriaMatcher.compile(
+                ImmutableList.of(inRange, tooNew, tooOld, otherOs));
+
+        CriteriaContext context = getContext().withClientInfo(IOS_CLIENT_INFO).build();
+        assertEquals(matcher.filter(context, null), ImmutableList.of(inRange, otherOs));
+
+        context = getContext().withClientInfo(ANDROID_CLIENT_INFO).build();
+        assertEquals(matcher.filter(context, null), ImmutableList.of(inRange, tooNew, tooOld));
+
+        // Without a version, ranges are ignored.
+        context = getContext().build();
+        assertEquals(matcher.filter(context, null), ImmutableList.of(inRange, tooNew, tooOld, otherOs));
+    }
+
+    @Test
+    public void matchesGroupsAndStudies() {
+        AppConfig allOfGroups = appConfig(criteria -> criteria.setAllOfGroups(ImmutableSet.of("group1", "group2")));
+        AppConfig noneOfGroups = appConfig(criteria -> criteria.setNoneOfGroups(ImmutableSet.of("group2")));
+        AppConfig allOfStudies = appConfig(criteria -> criteria.setAllOfStudyIds(ImmutableSet.of("studyA")));
+        AppConfig noneOfStudies = appConfig(criteria -> criteria.setNoneOfStudyIds(ImmutableSet.of("studyA")));
+        CriteriaMatcher<AppConfig> matcher = CriteriaMatcher.compile(
+                ImmutableList.of(allOfGroups, noneOfGroups, allOfStudies, noneOfStudies));
+
+        CriteriaContext context = getContext().withUserDataGroups(ImmutableSet.of("group1", "group2", "group3"))
+                .withUserStudyIds(ImmutableSet.of("studyA", "studyB")).build();
+        assertEquals(matcher.filter(context, null), ImmutableList.of(allOfGroups, allOfStudies));
+
+        context = getContext().withUserDataGroups(ImmutableSet.of("group1", "group3"))
+                .withUserStudyIds(ImmutableSet.of("studyB")).build();
+        assertEquals(matcher.filter(context, null), ImmutableList.of(noneOfGroups, noneOfStudies));
+    }
+
+    @Test
+    public void matchesLanguageRegardlessOfCase() {
+        AppConfig en = appConfig(criteria -> criteria.setLanguage("EN"));
+        AppConfig fr = appConfig(criteria -> criteria.setLanguage("fr"));
+        CriteriaMatcher<AppConfig> matcher = CriteriaMatcher.compile(ImmutableList.of(en, fr));
+
+        CriteriaContext context = getContext().withLanguages(ImmutableList.of("en")).build();
+        assertEquals(matcher.filter(context, null), ImmutableList.of(en));
+    }
+
+    @Test
+    public void sortsByLanguageAndSecondComparator() {
+        AppConfig appConfig1 = appConfig(criteria -> criteria.setLanguage("de"));
+        appConfig1.setCreatedOn(3L);
+        AppConfig appConfig2 = appConfig(criteria -> criteria.setLanguage("de"));
+        appConfig2.setCreatedOn(2L);
+        AppConfig appConfig3 = appConfig(criteria -> criteria.setLanguage("en"));
+        appConfig3.setCreatedOn(1L);
+        CriteriaMatcher<AppConfig> matcher = CriteriaMatcher.compile(
+                ImmutableList.of(appConfig3, appConfig1, appConfig2));
+
+        CriteriaContext context = getContext().withLanguages(ImmutableList.of("de", "en")).build();
+        List<AppConfig> selected = matcher.filter(context, comparingLong(AppConfig::getCreatedOn));
+        assertSame(selected.get(0), appConfig2);
+        assertSame(selected.get(1), appConfig1);
+        assertSame(selected.get(2), appConfig3);
+    }
+
+    @Test
+    public void matchesGroupsBeyondOneWord() {
+        // 100 candidates, each requiring its own group, so the masks span two words.
+        List<AppConfig> candidates = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String group = "group" + i;
+            candidates.add(appConfig(criteria -> criteria.setAllOfGroups(ImmutableSet.of(group))));
+        }
+        CriteriaMatcher<AppConfig> matcher = CriteriaMatcher.compile(candidates);
+
+        CriteriaContext context = getContext().withUserDataGroups(ImmutableSet.of("group3", "group97")).build();
+        assertEquals(matcher.filter(context, null), ImmutableList.of(candidates.get(3), candidates.get(97)));
+
+        // The user has only low groups, so their mask is shorter than the high candidates' masks.
+        context = getContext().withUserDataGroups(ImmutableSet.of("group3")).build();
+        assertEquals(matcher.filter(context, null), ImmutableList.of(candidates.get(3)));
+    }
+
+    @Test
+    public void matchesSameAsFilterByCriteria() {
+        Random random = new Random(42L);
+        List<AppConfig> candidates = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Criteria criteria = Criteria.create();
+            criteria.setAllOfGroups(randomSet(random, "group", 80, 2));
+            criteria.setNoneOfGroups(randomSet(random, "group", 80, 2));
+            criteria.setAllOfStudyIds(randomSet(random, "study", 10, 1));
+            criteria.setNoneOfStudyIds(randomSet(random, "study", 10, 1));
+            if (random.nextBoolean()) {
+                criteria.setMinAppVersion(random.nextBoolean() ? IOS : ANDROID, random.nextInt(8));
+            }
+            if (random.nextBoolean()) {
+                criteria.setMaxAppVersion(random.nextBoolean() ? IOS : ANDROID, random.nextInt(8));
+            }
+            if (random.nextInt(4) == 0) {
+                criteria.setLanguage(LANGUAGES.get(random.nextInt(LANGUAGES.size())));
+            }
+            AppConfig appConfig = AppConfig.create();
+            appConfig.setCriteria(criteria);
+            candidates.add(appConfig);
+        }
+        CriteriaMatcher<AppConfig> matcher = CriteriaMatcher.compile(candidates);
+        assertEquals(matcher.getCandidates(), candidates);
+
+        int totalMatches = 0;
+        for (int i = 0; i < 500; i++) {
+            CriteriaContext context = getContext()
+                    .withClientInfo(random.nextBoolean() ? IOS_CLIENT_INFO : ANDROID_CLIENT_INFO)
+                    .withUserDataGroups(randomSet(random, "group", 90, 40))
+                    .withUserStudyIds(randomSet(random, "study", 12, 6))
+                    .withLanguages(ImmutableList.of(LANGUAGES.get(random.nextInt(LANGUAGES.size())), "en"))
+                    .build();
+            List<AppConfig> expected = CriteriaUtils.filterByCriteria(context, candidates, null);
+            assertEquals(matcher.filter(context, null), expected);
+            totalMatches += expected.size();
+        }
+        // Make sure the comparison wasn't trivially between empty lists.
+        assertTrue(totalMatches > 0);
+    }
+
+    @Test
+    public void emptyCandidates() {
+        CriteriaMatcher<AppConfig> matcher = CriteriaMatcher.compile(ImmutableList.of());
+        assertTrue(matcher.filter(getContext().build(), null).isEmpty());
+    }
+
+    private static CriteriaContext.Builder getContext() {
+        return new CriteriaContext.Builder().withAppId(TEST_APP_ID);
+    }
+
+    private static AppConfig appConfig(Consumer<Criteria> consumer) {
+        Criteria criteria = Criteria.create();
+        consumer.accept(criteria);
+        AppConfig appConfig = AppConfig.create();
+        appConfig.setCriteria(criteria);
+        return appConfig;
+    }
+
+    private static Set<String> randomSet(Random random, String prefix, int range, int maxSize) {
+        Set<String> set = new HashSet<>();
+        int size = random.nextInt(maxSize + 1);
+        for (int i = 0; i < size; i++) {
+            set.add(prefix + random.nextInt(range));
+        }
+        return set;
+    }
+}
@@ -28,11 +28,13 @@ import static org.testng.Assert.fail;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeUtils;
@@ -50,11 +52,13 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import org.sagebionetworks.bridge.RequestContext;
+import org.sagebionetworks.bridge.crypto.HashingExecutor;
 import org.sagebionetworks.bridge.dao.AccountDao;
 import org.sagebionetworks.bridge.dao.AccountSecretDao;
 import org.sagebionetworks.bridge.exceptions.AccountDisabledException;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.exceptions.LimitExceededException;
 import org.sagebionetworks.bridge.exceptions.UnauthorizedException;
 import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.models.accounts.Account;
@@ -128,6 +132,10 @@ public class AccountServiceTest extends Mockito {
     @BeforeMethod
     public void beforeMethod() {
         MockitoAnnotations.initMocks(this);
+        
+        HashingExecutor hashingExecutor = new HashingExecutor();
+        hashingExecutor.setExecutorService(MoreExecutors.newDirectExecutorService());
+        service.setHashingExecutor(hashingExecutor);
     }
 
     @Test
@@ -499,6 +507,20 @@ public class AccountServiceTest extends Mockito {
         assertEquals(account.getVersion(), 1); // version not incremented by update
     }
 
+    @Test(expectedExceptions = LimitExceededException.class)
+    public void authenticateFailsFastWhenHashingIsSaturated() throws Exception {
+        mockGetAccountById(PASSWORD_SIGNIN.getAccountId(), true);
+        
+        // A shut down executor rejects new tasks, the same as a full queue.
+        ExecutorService executorService = MoreExecutors.newDirectExecutorService();
+        executorService.shutdown();
+        HashingExecutor hashingExecutor = new HashingExecutor();
+        hashingExecutor.setExecutorService(executorService);
+        service.setHashingExecutor(hashingExecutor);
+        
+        service.authenticate(App.create(), PASSWORD_SIGNIN);
+    }
+
     // This test is just a negative test to verify that the reauth token is not being rotated...
     // regardless of how app.reauthenticationEnabled is set, it will succeed because we don't
     // touch the reauth token
@@ -20,12 +20,14 @@ import static org.testng.Assert.fail;
 import java.util.List;
 import java.util.Map;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import org.joda.time.DateTime;
 import org.joda.time.LocalDateTime;
 import org.joda.time.Period;
 import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.Spy;
@@ -33,6 +35,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.cache.ActivitiesRetrievedCoalescer;
 import org.sagebionetworks.bridge.dao.ActivityEventDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.time.DateUtils;
@@ -63,6 +66,12 @@ public class ActivityEventServiceTest {
     @Mock
     private ParticipantService mockParticipantService;
     
+    @Mock
+    private ActivitiesRetrievedCoalescer mockCoalescer;
+    
+    @Captor
+    private ArgumentCaptor<List<ActivityEvent>> eventListCaptor;
+    
     @BeforeMethod
     public void before() {
         MockitoAnnotations.initMocks(this);
@@ -71,6 +80,7 @@ public class ActivityEventServiceTest {
         activityEventService.setActivityEventDao(activityEventDao);
         activityEventService.setAppService(mockAppService);
         activityEventService.setParticipantService(mockParticipantService);
+        activityEventService.setActivitiesRetrievedCoalescer(mockCoalescer);
     }
 
     @Test
@@ -125,14 +135,16 @@ public class ActivityEventServiceTest {
 
         activityEventService.publishCustomEvent(app, null, HEALTH_CODE, "myEvent", timestamp1);
 
-        verify(activityEventDao, times(2)).publishEvent(any());
+        verify(activityEventDao, times(1)).publishEvent(any());
 
-        ActivityEvent activityEvent = activityEventArgumentCaptor.getAllValues().get(0);
+        ActivityEvent activityEvent = activityEventArgumentCaptor.getValue();
         assertEquals(activityEvent.getEventId(), "custom:myEvent");
         assertEquals(activityEvent.getHealthCode(), HEALTH_CODE);
         assertEquals(activityEvent.getTimestamp().longValue(), timestamp1.getMillis());
 
-        activityEvent = activityEventArgumentCaptor.getAllValues().get(1);
+        verify(activityEventDao).publishEvents(eventListCaptor.capture());
+        assertEquals(eventListCaptor.getValue().size(), 1);
+        activityEvent = eventListCaptor.getValue().get(0);
         assertEquals(activityEvent.getEventId(), "custom:3-days-after-enrollment");
         assertEquals(activityEvent.getHealthCode(), HEALTH_CODE);
         assertEquals(activityEvent.getTimestamp().longValue(), timestamp2.getMillis());
@@ -152,6 +164,7 @@ public class ActivityEventServiceTest {
         activityEventService.publishCustomEvent(app, null, HEALTH_CODE, "myEvent", timestamp1);
 
         verify(activityEventDao, times(1)).publishEvent(any());
+        verify(activityEventDao, never()).publishEvents(any());
 
         ActivityEvent activityEvent = activityEventArgumentCaptor.getAllValues().get(0);
         assertEquals(activityEvent.getEventId(), "custom:myEvent");
@@ -304,6 +317,7 @@ public class ActivityEventServiceTest {
         
         verify(activityEventDao).deleteActivityEvents(HEALTH_CODE, null);
         verifyNoMoreInteractions(activityEventDao);
+        verify(mockCoalescer).remove(HEALTH_CODE, null);
     }
     
     @Test
@@ -312,6 +326,7 @@ public class ActivityEventServiceTest {
         
         verify(activityEventDao).deleteActivityEvents(HEALTH_CODE, TEST_STUDY_ID);
         verifyNoMoreInteractions(activityEventDao);
+        verify(mockCoalescer).remove(HEALTH_CODE, TEST_STUDY_ID);
     }
     
     @Test
@@ -374,14 +389,12 @@ public class ActivityEventServiceTest {
         activityEventService.publishEnrollmentEvent(app, TEST_STUDY_ID, HEALTH_CODE, signature);
         
         ArgumentCaptor<ActivityEvent> argument = ArgumentCaptor.forClass(ActivityEvent.class);
-        verify(activityEventDao, times(4)).publishEvent(argument.capture());
+        verify(activityEventDao, times(2)).publishEvent(argument.capture());
         
-        System.out.println(argument.getAllValues());/*
-        DynamoActivityEvent [studyId=null, healthCode=oneHealthCode, answerValue=null, timestamp=1611261669421, eventId=enrollment], 
-        DynamoActivityEvent [studyId=null, healthCode=oneHealthCode, answerValue=null, timestamp=1611520869421, eventId=custom:3-days-after], 
-        DynamoActivityEvent [studyId=test-study, healthCode=oneHealthCode, answerValue=null, timestamp=1611261669421, eventId=enrollment], 
-        DynamoActivityEvent [studyId=test-study, healthCode=oneHealthCode, answerValue=null, timestamp=1611520869421, eventId=custom:3-days-after]]
-        */
+        // Automatic events are published in a batch for the global and the study-scoped events.
+        verify(activityEventDao, times(2)).publishEvents(eventListCaptor.capture());
+        assertEquals(eventListCaptor.getAllValues().get(0).size(), 1);
+        assertEquals(eventListCaptor.getAllValues().get(1).size(), 1);
         
         ActivityEvent event1 = argument.getAllValues().get(0);
         assertEquals(event1.getEventId(), "enrollment");
@@ -389,19 +402,19 @@ public class ActivityEventServiceTest {
         assertNull(event1.getStudyId());
         assertEquals(event1.getHealthCode(), HEALTH_CODE);
 
-        ActivityEvent event2 = argument.getAllValues().get(1);
+        ActivityEvent event2 = eventListCaptor.getAllValues().get(0).get(0);
         assertEquals(event2.getEventId(), "custom:3-days-after");
         assertEquals(event2.getTimestamp(), new Long(now3DaysLater.getMillis()));
         assertNull(event2.getStudyId());
         assertEquals(event2.getHealthCode(), HEALTH_CODE);
 
-        ActivityEvent event3 = argument.getAllValues().get(2);
+        ActivityEvent event3 = argument.getAllValues().get(1);
         assertEquals(event3.getEventId(), "enrollment");
         assertEquals(event3.getTimestamp(), new Long(now.getMillis()));
         assertEquals(event3.getStudyId(), TEST_STUDY_ID);
         assertEquals(event3.getHealthCode(), HEALTH_CODE + ":" + TEST_STUDY_ID);
 
-        ActivityEvent event4 = argument.getAllValues().get(3);
+        ActivityEvent event4 = eventListCaptor.getAllValues().get(1).get(0);
         assertEquals(event4.getEventId(), "custom:3-days-after");
         assertEquals(event4.getTimestamp(), new Long(now3DaysLater.getMillis()));
         assertEquals(event4.getStudyId(), TEST_STUDY_ID);
@@ -456,11 +469,14 @@ public class ActivityEventServiceTest {
         // Execute
         activityEventService.publishEnrollmentEvent(app,null, "AAA-BBB-CCC", signature);
 
-        // Verify published events (4)
+        // Verify published events (4), with the automatic events in one batch
         ArgumentCaptor<ActivityEvent> publishedEventCaptor = ArgumentCaptor.forClass(ActivityEvent.class);
-        verify(activityEventDao, times(4)).publishEvent(publishedEventCaptor.capture());
+        verify(activityEventDao).publishEvent(publishedEventCaptor.capture());
+        verify(activityEventDao).publishEvents(eventListCaptor.capture());
 
-        List<ActivityEvent> publishedEventList = publishedEventCaptor.getAllValues();
+        List<ActivityEvent> publishedEventList = ImmutableList.<ActivityEvent>builder()
+                .add(publishedEventCaptor.getValue()).addAll(eventListCaptor.getValue()).build();
+        assertEquals(publishedEventList.size(), 4);
 
         assertEquals(publishedEventList.get(0).getEventId(), "enrollment");
         assertEquals(publishedEventList.get(0).getTimestamp().longValue(), enrollment.getMillis());
@@ -585,11 +601,14 @@ public class ActivityEventServiceTest {
         // Execute
         activityEventService.publishActivitiesRetrieved(app, null, "AAA-BBB-CCC", retrieved);
 
-        // Verify published events (4)
+        // Verify published events (4), with the automatic events in one batch
         ArgumentCaptor<ActivityEvent> publishedEventCaptor = ArgumentCaptor.forClass(ActivityEvent.class);
-        verify(activityEventDao, times(4)).publishEvent(publishedEventCaptor.capture());
+        verify(activityEventDao).publishEvent(publishedEventCaptor.capture());
+        verify(activityEventDao).publishEvents(eventListCaptor.capture());
 
-        List<ActivityEvent> publishedEventList = publishedEventCaptor.getAllValues();
+        List<ActivityEvent> publishedEventList = ImmutableList.<ActivityEvent>builder()
+                .add(publishedEventCaptor.getValue()).addAll(eventListCaptor.getValue()).build();
+        assertEquals(publishedEventList.size(), 4);
 
         assertEquals(publishedEventList.get(0).getEventId(), "activities_retrieved");
         assertEquals(publishedEventList.get(0).getTimestamp().longValue(), retrieved.getMillis());
@@ -629,12 +648,13 @@ public class ActivityEventServiceTest {
 
         ArgumentCaptor<ActivityEvent> publishedEventCaptor = ArgumentCaptor.forClass(ActivityEvent.class);
         
-        verify(activityEventDao, times(4)).publishEvent(publishedEventCaptor.capture());
+        verify(activityEventDao, times(2)).publishEvent(publishedEventCaptor.capture());
+        verify(activityEventDao, times(2)).publishEvents(eventListCaptor.capture());
         
         ActivityEvent event1 = publishedEventCaptor.getAllValues().get(0);
-        ActivityEvent event2 = publishedEventCaptor.getAllValues().get(1);
-        ActivityEvent event3 = publishedEventCaptor.getAllValues().get(2);
-        ActivityEvent event4 = publishedEventCaptor.getAllValues().get(3);
+        ActivityEvent event2 = eventListCaptor.getAllValues().get(0).get(0);
+        ActivityEvent event3 = publishedEventCaptor.getAllValues().get(1);
+        ActivityEvent event4 = eventListCaptor.getAllValues().get(1).get(0);
         
         assertEquals(event1.getEventId(), "activities_retrieved");
         assertEquals(event1.getTimestamp().longValue(), retrieved.getMillis());
@@ -688,6 +708,48 @@ public class ActivityEventServiceTest {
         assertEquals(event2.getTimestamp().longValue(), retrieved.getMillis());
         assertEquals(event2.getHealthCode(), "AAA-BBB-CCC:" + TEST_STUDY_ID);
         assertEquals(event2.getStudyId(), TEST_STUDY_ID);
+        
+        // The events already exist, so they're not published again for a while.
+        verify(mockCoalescer).recordPublished(null, "AAA-BBB-CCC", null);
+        verify(mockCoalescer).recordPublished(null, "AAA-BBB-CCC", TEST_STUDY_ID);
+    }
+    
+    @Test
+    public void publishActivitiesRetrievedSkipsRecentlyPublishedEvents() {
+        App app = App.create();
+        app.setIdentifier(TEST_APP_ID);
+        app.setAutomaticCustomEvents(ImmutableMap.<String, String>builder()
+                .put("3-days-after", "activities_retrieved:P3D").build());
+        when(mockCoalescer.isRecentlyPublished(TEST_APP_ID, "AAA-BBB-CCC", null)).thenReturn(true);
+        when(activityEventDao.publishEvent(any())).thenReturn(true);
+        
+        DateTime retrieved = DateTime.parse("2018-04-04T16:00-0700");
+        activityEventService.publishActivitiesRetrieved(app, TEST_STUDY_ID, "AAA-BBB-CCC", retrieved);
+        
+        // Only the study-scoped event is published.
+        ArgumentCaptor<ActivityEvent> publishedEventCaptor = ArgumentCaptor.forClass(ActivityEvent.class);
+        verify(activityEventDao).publishEvent(publishedEventCaptor.capture());
+        assertEquals(publishedEventCaptor.getValue().getEventId(), "activities_retrieved");
+        assertEquals(publishedEventCaptor.getValue().getStudyId(), TEST_STUDY_ID);
+        assertEquals(publishedEventCaptor.getValue().getTimestamp().longValue(), retrieved.getMillis());
+        verify(activityEventDao).publishEvents(eventListCaptor.capture());
+        assertEquals(eventListCaptor.getValue().get(0).getStudyId(), TEST_STUDY_ID);
+        
+        verify(mockCoalescer, never()).recordPublished(TEST_APP_ID, "AAA-BBB-CCC", null);
+        verify(mockCoalescer).recordPublished(TEST_APP_ID, "AAA-BBB-CCC", TEST_STUDY_ID);
+    }
+    
+    @Test
+    public void publishActivitiesRetrievedNotRecordedOnError() {
+        when(activityEventDao.publishEvent(any())).thenThrow(new IllegalStateException());
+        
+        try {
+            activityEventService.publishActivitiesRetrieved(App.create(), null, "AAA-BBB-CCC", DateTime.now());
+            fail("expected exception");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        verify(mockCoalescer, never()).recordPublished(any(), any(), any());
     }
     
     @Test
@@ -705,11 +767,14 @@ public class ActivityEventServiceTest {
         // Execute
         activityEventService.publishCustomEvent(app, null, "AAA-BBB-CCC", "myEvent", timestamp);
 
-        // Verify published events (3)
+        // Verify published events (3), with the automatic events in one batch
         ArgumentCaptor<ActivityEvent> publishedEventCaptor = ArgumentCaptor.forClass(ActivityEvent.class);
-        verify(activityEventDao, times(3)).publishEvent(publishedEventCaptor.capture());
+        verify(activityEventDao).publishEvent(publishedEventCaptor.capture());
+        verify(activityEventDao).publishEvents(eventListCaptor.capture());
 
-        List<ActivityEvent> publishedEventList = publishedEventCaptor.getAllValues();
+        List<ActivityEvent> publishedEventList = ImmutableList.<ActivityEvent>builder()
+                .add(publishedEventCaptor.getValue()).addAll(eventListCaptor.getValue()).build();
+        assertEquals(publishedEventList.size(), 3);
         
         assertEquals(publishedEventList.get(0).getEventId(), "custom:myEvent");
         assertEquals(publishedEventList.get(0).getTimestamp().longValue(), timestamp.getMillis());
@@ -777,6 +842,42 @@ public class ActivityEventServiceTest {
         assertEquals(event.getTimestamp().longValue(), finishedOn);
     }
     
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Test
+    public void canPublishActivityFinishedEventsInBatch() {
+        long finishedOn = DateTime.now().getMillis();
+        
+        ScheduledActivity activity1 = ScheduledActivity.create();
+        activity1.setGuid("AAA:"+DateTime.now().toLocalDateTime());
+        activity1.setFinishedOn(finishedOn);
+        activity1.setHealthCode(HEALTH_CODE);
+        
+        // Old activity without a colon does not generate an event.
+        ScheduledActivity oldActivity = ScheduledActivity.create();
+        oldActivity.setGuid("BBB");
+        oldActivity.setFinishedOn(finishedOn);
+        oldActivity.setHealthCode(HEALTH_CODE);
+        
+        ScheduledActivity activity2 = ScheduledActivity.create();
+        activity2.setGuid("CCC:"+DateTime.now().toLocalDateTime());
+        activity2.setFinishedOn(finishedOn+1);
+        activity2.setHealthCode(HEALTH_CODE);
+        
+        activityEventService.publishActivityFinishedEvents(ImmutableList.of(activity1, oldActivity, activity2));
+        
+        ArgumentCaptor<List> argument = ArgumentCaptor.forClass(List.class);
+        verify(activityEventDao).publishEvents(argument.capture());
+        verify(activityEventDao, never()).publishEvent(any());
+        
+        List<ActivityEvent> events = argument.getValue();
+        assertEquals(events.size(), 2);
+        assertEquals(events.get(0).getHealthCode(), HEALTH_CODE);
+        assertEquals(events.get(0).getEventId(), "activity:AAA:finished");
+        assertEquals(events.get(0).getTimestamp().longValue(), finishedOn);
+        assertEquals(events.get(1).getEventId(), "activity:CCC:finished");
+        assertEquals(events.get(1).getTimestamp().longValue(), finishedOn+1);
+    }
+    
     @Test
     public void getGlobalActivityEventList() {
         Map<String, DateTime> map = Maps.newHashMap();
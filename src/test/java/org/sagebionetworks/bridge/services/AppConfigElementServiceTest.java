@@ -25,6 +25,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.cache.ResolvedAppConfigCache;
 import org.sagebionetworks.bridge.dao.AppConfigElementDao;
 import org.sagebionetworks.bridge.exceptions.EntityAlreadyExistsException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
@@ -44,6 +45,9 @@ public class AppConfigElementServiceTest {
     @Mock
     private AppConfigElementDao dao;
     
+    @Mock
+    private ResolvedAppConfigCache mockResolvedAppConfigCache;
+    
     @Captor
     private ArgumentCaptor<AppConfigElement> elementCaptor;
     
@@ -55,6 +59,7 @@ public class AppConfigElementServiceTest {
         MockitoAnnotations.initMocks(this);
         DateTimeUtils.setCurrentMillisFixed(TIMESTAMP.getMillis());
         service.setAppConfigElementDao(dao);
+        service.setResolvedAppConfigCache(mockResolvedAppConfigCache);
         elements = ImmutableList.of(AppConfigElement.create(), AppConfigElement.create());
     }
     
@@ -105,6 +110,7 @@ public class AppConfigElementServiceTest {
         assertEquals(captured.getKey(), TEST_APP_ID + ":id");
         assertEquals(captured.getCreatedOn(), TIMESTAMP.getMillis());
         assertEquals(captured.getModifiedOn(), TIMESTAMP.getMillis());
+        verify(mockResolvedAppConfigCache).invalidate(TEST_APP_ID);
     }
     
     @Test(expectedExceptions = InvalidEntityException.class)
@@ -208,6 +214,7 @@ public class AppConfigElementServiceTest {
         assertEquals(captured.getKey(), TEST_APP_ID + ":id");
         assertNotEquals(captured.getCreatedOn(), TIMESTAMP.getMillis());
         assertEquals(captured.getModifiedOn(), TIMESTAMP.getMillis());
+        verify(mockResolvedAppConfigCache).invalidate(TEST_APP_ID);
     }
     
     @Test(expectedExceptions = InvalidEntityException.class)
@@ -276,6 +283,7 @@ public class AppConfigElementServiceTest {
         verify(dao, times(2)).saveElementRevision(elementCaptor.capture());
         assertTrue(elementCaptor.getAllValues().get(0).isDeleted());
         assertTrue(elementCaptor.getAllValues().get(1).isDeleted());
+        verify(mockResolvedAppConfigCache).invalidate(TEST_APP_ID);
     }
     
     @Test
@@ -291,6 +299,7 @@ public class AppConfigElementServiceTest {
         verify(dao).getElementRevisions(TEST_APP_ID, "id", true);
         verify(dao).deleteElementRevisionPermanently(TEST_APP_ID, "id", 1);
         verify(dao).deleteElementRevisionPermanently(TEST_APP_ID, "id", 2);
+        verify(mockResolvedAppConfigCache).invalidate(TEST_APP_ID);
     }
     
     @Test
@@ -306,6 +315,7 @@ public class AppConfigElementServiceTest {
         assertNotEquals(captured.getCreatedOn(), TIMESTAMP.getMillis());
         assertEquals(captured.getModifiedOn(), TIMESTAMP.getMillis());
         assertTrue(elementCaptor.getValue().isDeleted());
+        verify(mockResolvedAppConfigCache).invalidate(TEST_APP_ID);
     }
     
     @Test(expectedExceptions = EntityNotFoundException.class)
@@ -322,6 +332,7 @@ public class AppConfigElementServiceTest {
         service.deleteElementRevisionPermanently(TEST_APP_ID, "id", 3L);
         
         verify(dao).deleteElementRevisionPermanently(TEST_APP_ID, "id", 3L);
+        verify(mockResolvedAppConfigCache).invalidate(TEST_APP_ID);
     }
     
     @Test(expectedExceptions = EntityNotFoundException.class)
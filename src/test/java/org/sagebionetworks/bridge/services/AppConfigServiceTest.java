@@ -8,6 +8,7 @@ import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.anyLong;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.sagebionetworks.bridge.BridgeConstants.SHARED_APP_ID;
@@ -31,7 +32,10 @@ import org.testng.annotations.Test;
 import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.TestConstants;
 import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.cache.ResolvedAppConfigCache;
+import org.sagebionetworks.bridge.cache.ScheduleCache;
 import org.sagebionetworks.bridge.dao.AppConfigDao;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.exceptions.InvalidEntityException;
 import org.sagebionetworks.bridge.models.ClientInfo;
@@ -56,6 +60,7 @@ import org.sagebionetworks.bridge.models.upload.UploadSchema;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
 
 public class AppConfigServiceTest {
     
@@ -108,6 +113,9 @@ public class AppConfigServiceTest {
     @Mock
     private ReferenceResolver mockReferenceResolver;
     
+    @Mock
+    private ScheduleCache mockScheduleCache;
+    
     @Captor
     private ArgumentCaptor<AppConfig> appConfigCaptor;
     
@@ -130,6 +138,10 @@ public class AppConfigServiceTest {
         when(service.getCurrentTimestamp()).thenReturn(TIMESTAMP.getMillis());
         when(service.getGUID()).thenReturn(GUID);
         
+        // App configs without a version aren't cached, and lookups run on the calling thread.
+        service.setResolvedAppConfigCache(new ResolvedAppConfigCache());
+        service.setFanOutExecutorService(MoreExecutors.newDirectExecutorService());
+        
         AppConfig savedAppConfig = AppConfig.create();
         savedAppConfig.setLabel("AppConfig");
         savedAppConfig.setGuid(GUID);
@@ -224,6 +236,43 @@ public class AppConfigServiceTest {
         assertEquals(retValue, appConfig2);
     }
     
+    @Test
+    public void getAppConfigForUserCachesResolvedReferences() {
+        CriteriaContext context = new CriteriaContext.Builder()
+                .withClientInfo(ClientInfo.fromUserAgentCache("app/7 (Motorola Flip-Phone; Android/14) BridgeJavaSDK/10"))
+                .withAppId(TEST_APP_ID).build();
+        
+        AppConfig appConfig2 = setupConfigsForUser();
+        appConfig2.setGuid(GUID);
+        appConfig2.setVersion(2L);
+        setupAndTestConfigResolution(() -> service.getAppConfigForUser(context, true));
+        
+        // The DAO returns the unresolved config again. The references are resolved from the cache.
+        appConfig2.setSurveyReferences(SURVEY_REF_LIST);
+        appConfig2.setAssessmentReferences(ASSESSMENT_REF_LIST);
+        appConfig2.setConfigElements(null);
+        AppConfig retValue = setupAndTestConfigResolution(() -> service.getAppConfigForUser(context, true));
+        assertEquals(retValue, appConfig2);
+        
+        verify(mockSurveyService, times(1)).getSurvey(TEST_APP_ID, SURVEY_KEY, false, false);
+        verify(mockAssessmentService, times(1)).getAssessmentByGuid(TEST_APP_ID, GUID);
+        verify(mockAssessmentService, times(1)).getAssessmentByGuid(SHARED_APP_ID, "originGuid");
+        verify(mockAppConfigElementService, times(1)).getElementRevision(TEST_APP_ID, "clientData", 1);
+    }
+    
+    @Test(expectedExceptions = BadRequestException.class)
+    public void getAppConfigForUserRethrowsLookupException() {
+        when(mockSurveyService.getSurvey(TEST_APP_ID, SURVEY_KEY, false, false))
+                .thenThrow(new BadRequestException("test"));
+        
+        CriteriaContext context = new CriteriaContext.Builder()
+                .withClientInfo(ClientInfo.fromUserAgentCache("app/7 (Motorola Flip-Phone; Android/14) BridgeJavaSDK/10"))
+                .withAppId(TEST_APP_ID).build();
+        
+        setupConfigsForUser();
+        service.getAppConfigForUser(context, true);
+    }
+    
     private AppConfig setupAndTestConfigResolution(Supplier<AppConfig> supplier) {
         Survey survey = Survey.create();
         survey.setIdentifier("theIdentifier");
@@ -541,6 +590,7 @@ public class AppConfigServiceTest {
         assertEquals(appConfigCaptor.getValue(), oldConfig);
         
         verify(mockStudyService).getStudyIds(TEST_APP_ID);
+        verify(mockScheduleCache).invalidate(TEST_APP_ID);
 
         assertEquals(oldConfig, returnValue);
     }
@@ -565,6 +615,7 @@ public class AppConfigServiceTest {
         service.deleteAppConfig(TEST_APP_ID,  GUID);
         
         verify(mockDao).deleteAppConfig(TEST_APP_ID, GUID);
+        verify(mockScheduleCache).invalidate(TEST_APP_ID);
     }
     
     @Test
@@ -38,6 +38,7 @@ import com.google.common.collect.Sets;
 
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -311,6 +312,21 @@ public class AppServiceTest extends Mockito {
         verifyEmailVerificationEmail("different-email@example.com");
     }
 
+    @Test
+    public void updateAppCachesAppAfterWrite() {
+        when(mockAppDao.getApp(TEST_APP_ID)).thenReturn(getTestApp());
+
+        App newApp = getTestApp();
+        newApp.setName("different-name");
+        service.updateApp(newApp, false);
+
+        // The app is set in the cache, which tells other nodes to drop their copies, only after it's written to DDB.
+        InOrder inOrder = inOrder(mockCacheProvider, mockAppDao);
+        inOrder.verify(mockCacheProvider).removeApp(TEST_APP_ID);
+        inOrder.verify(mockAppDao).updateApp(any());
+        inOrder.verify(mockCacheProvider).setApp(any());
+    }
+
     private void verifyEmailVerificationEmail(String consentNotificationEmail) throws Exception {
         // Verify token in CacheProvider.
         ArgumentCaptor<String> verificationDataCaptor = ArgumentCaptor.forClass(String.class);
@@ -1657,7 +1673,8 @@ public class AppServiceTest extends Mockito {
         service.deleteApp(app.getIdentifier(), true);
         
         verify(mockCacheProvider).getApp(app.getIdentifier());
-        verify(mockCacheProvider).setApp(updatedApp);
+        verify(mockCacheProvider).cacheLoadedApp(updatedApp);
+        verify(mockCacheProvider, never()).setApp(any());
         verify(mockCacheProvider).removeApp(app.getIdentifier());
 
         verify(mockAppDao).deleteApp(updatedApp);
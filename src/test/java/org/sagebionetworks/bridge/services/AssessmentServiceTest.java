@@ -47,6 +47,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import org.sagebionetworks.bridge.RequestContext;
+import org.sagebionetworks.bridge.cache.ResolvedAppConfigCache;
 import org.sagebionetworks.bridge.dao.AssessmentDao;
 import org.sagebionetworks.bridge.dao.AssessmentResourceDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
@@ -82,6 +83,9 @@ public class AssessmentServiceTest extends Mockito {
     @Mock
     Organization mockOrganization;
     
+    @Mock
+    ResolvedAppConfigCache mockResolvedAppConfigCache;
+    
     @Captor
     ArgumentCaptor<Assessment> assessmentCaptor;
     
@@ -365,6 +369,7 @@ public class AssessmentServiceTest extends Mockito {
         assertEquals(retValue.getModifiedOn(), MODIFIED_ON);
         
         verify(mockDao).updateAssessment(TEST_APP_ID, retValue);
+        verify(mockResolvedAppConfigCache).invalidate(TEST_APP_ID);
     }
     
     @Test
@@ -512,6 +517,7 @@ public class AssessmentServiceTest extends Mockito {
         service.updateSharedAssessment(TEST_APP_ID, assessment);
         
         verify(mockDao).updateAssessment(SHARED_APP_ID, assessment);
+        verify(mockResolvedAppConfigCache).invalidate(SHARED_APP_ID);
         
         assertEquals(assessment.getIdentifier(), IDENTIFIER);
         assertEquals(TEST_APP_ID + ":" + TEST_OWNER_ID, assessment.getOwnerId());
@@ -910,6 +916,8 @@ public class AssessmentServiceTest extends Mockito {
         // verify that a fuller copy also occurred
         assertEquals(assessmentToPublish.getTitle(), existing.getTitle());
         assertEquals(assessmentToPublish.getTags(), existing.getTags());
+        
+        verify(mockResolvedAppConfigCache).invalidate(TEST_APP_ID);
     }
     
     @Test
@@ -1170,6 +1178,7 @@ public class AssessmentServiceTest extends Mockito {
         verify(mockDao).updateAssessment(TEST_APP_ID, assessment);
         assertTrue(assessment.isDeleted());
         assertEquals(assessment.getModifiedOn(), MODIFIED_ON);
+        verify(mockResolvedAppConfigCache).invalidate(TEST_APP_ID);
     }
     
     @Test
@@ -1205,6 +1214,7 @@ public class AssessmentServiceTest extends Mockito {
         service.deleteAssessmentPermanently(TEST_APP_ID, GUID);
         
         verify(mockDao).deleteAssessment(TEST_APP_ID, ASSESSMENT);
+        verify(mockResolvedAppConfigCache).invalidate(TEST_APP_ID);
     }
     
     @Test
@@ -1212,6 +1222,7 @@ public class AssessmentServiceTest extends Mockito {
         when(mockDao.getAssessment(TEST_APP_ID, GUID)).thenReturn(Optional.empty());
         service.deleteAssessmentPermanently(TEST_APP_ID, GUID);
         verify(mockDao, never()).deleteAssessment(any(), any());
+        verify(mockResolvedAppConfigCache, never()).invalidate(any());
     }
         
     // OWNERSHIP VERIFICATION
@@ -19,6 +19,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.cache.ScheduleCache;
 import org.sagebionetworks.bridge.dao.CompoundActivityDefinitionDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.ConstraintViolationException;
@@ -40,15 +41,18 @@ public class CompoundActivityDefinitionServiceTest {
 
     private SchedulePlanService schedulePlanService;
     private CompoundActivityDefinitionDao dao;
+    private ScheduleCache scheduleCache;
     private CompoundActivityDefinitionService service;
 
     @BeforeMethod
     public void setup() {
         dao = mock(CompoundActivityDefinitionDao.class);
         schedulePlanService = mock(SchedulePlanService.class);
+        scheduleCache = mock(ScheduleCache.class);
         service = new CompoundActivityDefinitionService();
         service.setSchedulePlanService(schedulePlanService);
         service.setCompoundActivityDefDao(dao);
+        service.setScheduleCache(scheduleCache);
     }
 
     // CREATE
@@ -73,6 +77,8 @@ public class CompoundActivityDefinitionServiceTest {
 
         // Validate that the service result is the same as the dao result.
         assertSame(serviceResult, daoResult);
+
+        verify(scheduleCache).invalidate(TEST_APP_ID);
     }
 
     @Test
@@ -251,6 +257,8 @@ public class CompoundActivityDefinitionServiceTest {
 
         // Validate that the service result is the same as the dao result.
         assertSame(serviceResult, daoResult);
+
+        verify(scheduleCache).invalidate(TEST_APP_ID);
     }
 
     @Test
@@ -0,0 +1,166 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.sagebionetworks.bridge.TestConstants.EMAIL;
+import static org.sagebionetworks.bridge.models.accounts.SharingScope.NO_SHARING;
+import static org.sagebionetworks.bridge.services.StudyConsentService.SIGNATURE_BLOCK;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.apache.commons.io.IOUtils;
+import org.springframework.core.io.ClassPathResource;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.sagebionetworks.bridge.RequestContext;
+import org.sagebionetworks.bridge.dynamodb.DynamoApp;
+import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
+import org.sagebionetworks.bridge.models.apps.App;
+import org.sagebionetworks.bridge.models.subpopulations.ConsentSignature;
+import org.sagebionetworks.bridge.models.subpopulations.StudyConsentView;
+
+public class ConsentPdfRendererTest {
+    private static final String DOCUMENT_FRAGMENT = "<p>This is a consent agreement body</p>" + SIGNATURE_BLOCK;
+    private static final String SUBPOP_GUID = "subpop-guid";
+    private static final long CREATED_ON = 1446044814108L;
+    private static final String REQUEST_ID = "request-id";
+    private static final StudyParticipant EMAIL_PARTICIPANT = new StudyParticipant.Builder()
+            .withEmail(EMAIL).withEmailVerified(true).build();
+    private static final ConsentSignature SIGNATURE = new ConsentSignature.Builder().withName("Test Person")
+            .withBirthdate("1980-06-06").build();
+
+    private String consentBodyTemplate;
+    private App app;
+    private MetricRegistry metricRegistry;
+    private ConsentPdfRenderer renderer;
+
+    @BeforeMethod
+    public void before() throws Exception {
+        consentBodyTemplate = IOUtils.toString(new FileInputStream(new ClassPathResource(
+                "conf/app-defaults/consent-page.xhtml").getFile()));
+
+        app = new DynamoApp();
+        app.setName("App Name");
+        app.setSponsorName("Sponsor Name");
+        app.setSupportEmail("sender@default.com");
+
+        metricRegistry = new MetricRegistry();
+        renderer = new ConsentPdfRenderer();
+        renderer.setExecutorService(MoreExecutors.newDirectExecutorService());
+        renderer.setMetricRegistry(metricRegistry);
+    }
+
+    @AfterMethod
+    public void after() {
+        RequestContext.set(null);
+    }
+
+    @Test
+    public void consentDocumentIsCachedPerVersion() {
+        StudyConsentView studyConsent = mockStudyConsent(CREATED_ON);
+
+        String first = renderer.getConsentDocument(studyConsent, consentBodyTemplate);
+        String second = renderer.getConsentDocument(studyConsent, consentBodyTemplate);
+        assertSame(second, first);
+        assertTrue(first.contains("This is a consent agreement body"));
+
+        // A new version of the consent is assembled again.
+        StudyConsentView newVersion = mockStudyConsent(CREATED_ON + 1);
+        when(newVersion.getDocumentContent()).thenReturn("<p>Revised</p>" + SIGNATURE_BLOCK);
+        assertTrue(renderer.getConsentDocument(newVersion, consentBodyTemplate).contains("Revised"));
+
+        assertEquals(metricRegistry.counter(ConsentPdfRenderer.METRIC_DOCUMENT_MISS).getCount(), 2L);
+        assertEquals(metricRegistry.counter(ConsentPdfRenderer.METRIC_DOCUMENT_HIT).getCount(), 1L);
+    }
+
+    @Test
+    public void renderAndDeliver() {
+        List<byte[]> delivered = new ArrayList<>();
+        renderer.renderAndDeliver(consentPdf(), delivered::add);
+        renderer.renderAndDeliver(consentPdf(), delivered::add);
+
+        assertEquals(delivered.size(), 2);
+        assertTrue(delivered.get(0).length > 0);
+        assertTrue(delivered.get(1).length > 0);
+        assertEquals(metricRegistry.timer(ConsentPdfRenderer.METRIC_RENDER).getCount(), 2L);
+        assertEquals(metricRegistry.timer(ConsentPdfRenderer.METRIC_WAIT).getCount(), 2L);
+    }
+
+    @Test
+    public void deliveryErrorIsLogged() {
+        // Does not throw.
+        renderer.renderAndDeliver(consentPdf(), (bytes) -> {
+            throw new IllegalStateException();
+        });
+
+        // The next PDF still renders.
+        List<byte[]> delivered = new ArrayList<>();
+        renderer.renderAndDeliver(consentPdf(), delivered::add);
+        assertEquals(delivered.size(), 1);
+    }
+
+    @Test
+    public void requestContextIsCarriedToPoolThread() throws Exception {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        renderer.setExecutorService(executorService);
+        RequestContext.set(new RequestContext.Builder().withRequestId(REQUEST_ID).build());
+
+        AtomicReference<String> requestId = new AtomicReference<>();
+        renderer.renderAndDeliver(consentPdf(), (bytes) -> requestId.set(RequestContext.get().getId()));
+
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(requestId.get(), REQUEST_ID);
+    }
+
+    @Test
+    public void fullQueueRendersOnCallingThread() {
+        ExecutorService executorService = MoreExecutors.newDirectExecutorService();
+        executorService.shutdown();
+        renderer.setExecutorService(executorService);
+
+        List<byte[]> delivered = new ArrayList<>();
+        renderer.renderAndDeliver(consentPdf(), delivered::add);
+
+        assertEquals(delivered.size(), 1);
+        assertTrue(delivered.get(0).length > 0);
+        assertEquals(metricRegistry.meter(ConsentPdfRenderer.METRIC_REJECTED).getCount(), 1L);
+        assertEquals(metricRegistry.timer(ConsentPdfRenderer.METRIC_RENDER).getCount(), 1L);
+    }
+
+    @Test
+    public void worksWithoutMetrics() {
+        ConsentPdfRenderer rendererWithoutMetrics = new ConsentPdfRenderer();
+        rendererWithoutMetrics.setExecutorService(MoreExecutors.newDirectExecutorService());
+
+        AtomicReference<byte[]> delivered = new AtomicReference<>();
+        rendererWithoutMetrics.renderAndDeliver(consentPdf(), delivered::set);
+        assertTrue(delivered.get().length > 0);
+    }
+
+    private ConsentPdf consentPdf() {
+        String consentDocument = renderer.getConsentDocument(mockStudyConsent(CREATED_ON), consentBodyTemplate);
+        return new ConsentPdf(app, EMAIL_PARTICIPANT, SIGNATURE, NO_SHARING, consentDocument);
+    }
+
+    private static StudyConsentView mockStudyConsent(long createdOn) {
+        StudyConsentView studyConsent = mock(StudyConsentView.class);
+        when(studyConsent.getSubpopulationGuid()).thenReturn(SUBPOP_GUID);
+        when(studyConsent.getCreatedOn()).thenReturn(createdOn);
+        when(studyConsent.getDocumentContent()).thenReturn(DOCUMENT_FRAGMENT);
+        return studyConsent;
+    }
+}
@@ -4,6 +4,7 @@ import static org.sagebionetworks.bridge.TestConstants.EMAIL;
 import static org.sagebionetworks.bridge.TestConstants.PHONE;
 import static org.sagebionetworks.bridge.models.accounts.SharingScope.NO_SHARING;
 import static org.sagebionetworks.bridge.services.StudyConsentService.SIGNATURE_BLOCK;
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
 import java.io.FileInputStream;
@@ -16,6 +17,7 @@ import org.springframework.core.io.ClassPathResource;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
+import org.xhtmlrenderer.pdf.ITextRenderer;
 
 import org.sagebionetworks.bridge.dynamodb.DynamoApp;
 import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
@@ -169,6 +171,33 @@ public class ConsentPdfTest {
         assertTrue(output.contains("October 4, 2017 (GMT)"), "Contains formatted date");
     }
     
+    @Test
+    public void assembledDocumentFormattedSameAsFragment() throws Exception {
+        ConsentSignature sig = makeSignatureWithImage();
+        
+        ConsentPdf fromFragment = new ConsentPdf(app, EMAIL_PARTICIPANT, sig, NO_SHARING,
+                DOCUMENT_FRAGMENT, consentBodyTemplate);
+        String consentDocument = ConsentPdf.assembleConsentDocument(DOCUMENT_FRAGMENT, consentBodyTemplate);
+        ConsentPdf fromAssembled = new ConsentPdf(app, EMAIL_PARTICIPANT, sig, NO_SHARING, consentDocument);
+        
+        String output = fromAssembled.getFormattedConsentDocument();
+        validateDocBody(output);
+        assertEquals(output, fromFragment.getFormattedConsentDocument());
+    }
+    
+    @Test
+    public void rendererCanBeReused() throws Exception {
+        ITextRenderer renderer = new ITextRenderer();
+        
+        ConsentPdf first = new ConsentPdf(app, EMAIL_PARTICIPANT, makeSignatureWithoutImage(), NO_SHARING,
+                DOCUMENT_FRAGMENT, consentBodyTemplate);
+        ConsentPdf second = new ConsentPdf(app, EMAIL_PARTICIPANT, makeSignatureWithImage(), NO_SHARING,
+                DOCUMENT_FRAGMENT, consentBodyTemplate);
+        
+        assertTrue(first.getBytes(renderer).length > 0);
+        assertTrue(second.getBytes(renderer).length > 0);
+    }
+    
     private static ConsentSignature makeSignatureWithoutImage() {
         return new ConsentSignature.Builder().withName("Test Person").withBirthdate("1980-06-06").build();
     }
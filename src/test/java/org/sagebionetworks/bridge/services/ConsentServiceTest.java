@@ -26,6 +26,7 @@ import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.apache.commons.io.IOUtils;
 import org.joda.time.DateTime;
@@ -156,6 +157,10 @@ public class ConsentServiceTest extends Mockito {
 
         consentService.setConsentTemplate(new ByteArrayResource((documentString).getBytes()));
 
+        ConsentPdfRenderer consentPdfRenderer = new ConsentPdfRenderer();
+        consentPdfRenderer.setExecutorService(MoreExecutors.newDirectExecutorService());
+        consentService.setConsentPdfRenderer(consentPdfRenderer);
+
         app = TestUtils.getValidApp(ConsentServiceTest.class);
         
         TemplateRevision revision = TemplateRevision.create();
@@ -1037,6 +1042,50 @@ public class ConsentServiceTest extends Mockito {
         consentService.resendConsentAgreement(app, SUBPOP_GUID, noPhoneOrEmail);
     }
 
+    @Test
+    public void resendConsentAgreementNoVerifiedChannelDoesNotRender() {
+        account.setConsentSignatureHistory(SUBPOP_GUID, ImmutableList.of(CONSENT_SIGNATURE));
+        ConsentPdfRenderer mockRenderer = mock(ConsentPdfRenderer.class);
+        consentService.setConsentPdfRenderer(mockRenderer);
+
+        StudyParticipant noPhoneOrEmail = new StudyParticipant.Builder().copyOf(PARTICIPANT)
+                .withPhone(TestConstants.PHONE).withEmailVerified(null).withPhoneVerified(null).build();
+        try {
+            consentService.resendConsentAgreement(app, SUBPOP_GUID, noPhoneOrEmail);
+            fail("Should have thrown exception");
+        } catch (BadRequestException e) {
+            // expected
+        }
+        verify(mockRenderer, never()).renderAndDeliver(any(), any());
+    }
+
+    @Test
+    public void consentToResearchSucceedsWhenSendFails() {
+        doThrow(new BridgeServiceException("SES is down")).when(sendMailService).sendEmail(any());
+
+        // The email is sent after the PDF is rendered in the background, so the error is logged and the consent is
+        // still recorded.
+        consentService.consentToResearch(app, SUBPOP_GUID, PARTICIPANT, CONSENT_SIGNATURE,
+                SharingScope.NO_SHARING, true);
+
+        verify(sendMailService).sendEmail(any());
+        verify(accountService).updateAccount(any());
+    }
+
+    @Test
+    public void consentToResearchWithoutRecipientsDoesNotRender() {
+        ConsentPdfRenderer mockRenderer = mock(ConsentPdfRenderer.class);
+        consentService.setConsentPdfRenderer(mockRenderer);
+        app.setConsentNotificationEmail(null);
+        when(subpopulation.isAutoSendConsentSuppressed()).thenReturn(true);
+
+        consentService.consentToResearch(app, SUBPOP_GUID, PARTICIPANT, CONSENT_SIGNATURE,
+                SharingScope.NO_SHARING, true);
+
+        verify(mockRenderer, never()).renderAndDeliver(any(), any());
+        verify(sendMailService, never()).sendEmail(any());
+    }
+
     @Test
     public void getSignedConsentUrl() {
         String url = consentService.getSignedConsentUrl();
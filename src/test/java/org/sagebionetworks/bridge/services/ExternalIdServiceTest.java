@@ -4,6 +4,10 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.sagebionetworks.bridge.BridgeConstants.NEGATIVE_OFFSET_ERROR;
 import static org.sagebionetworks.bridge.TestConstants.TEST_APP_ID;
+import static org.sagebionetworks.bridge.models.ResourceList.ID_FILTER;
+import static org.sagebionetworks.bridge.models.ResourceList.OFFSET_KEY;
+import static org.sagebionetworks.bridge.models.ResourceList.PAGE_SIZE;
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertSame;
 
 import java.util.List;
@@ -21,6 +25,7 @@ import org.sagebionetworks.bridge.dao.AccountDao;
 import org.sagebionetworks.bridge.dao.ExternalIdDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.models.accounts.Account;
 import org.sagebionetworks.bridge.models.accounts.AccountId;
@@ -114,6 +119,37 @@ public class ExternalIdServiceTest {
     public void getPagedExternalIdsPageTooLarge() {
         externalIdService.getPagedExternalIds(TEST_APP_ID, STUDY_ID, null, null, 10000);
     }
+
+    @Test
+    public void getExternalIdsAfter() {
+        List<ExternalIdentifierInfo> list = ImmutableList.of(new ExternalIdentifierInfo("extId1", STUDY_ID, true),
+                new ExternalIdentifierInfo("extId2", STUDY_ID, true));
+        ForwardCursorPagedResourceList<ExternalIdentifierInfo> page = new ForwardCursorPagedResourceList<>(list,
+                "extId2", true);
+        
+        when(mockExternalIdDao.getExternalIdsAfter(TEST_APP_ID, STUDY_ID, "idFilter", "extId0", 2)).thenReturn(page);
+        
+        ForwardCursorPagedResourceList<ExternalIdentifierInfo> retValue = externalIdService
+                .getExternalIdsAfter(TEST_APP_ID, STUDY_ID, "idFilter", "extId0", 2);
+        assertSame(retValue, page);
+        assertEquals(retValue.getRequestParams().get(ID_FILTER), "idFilter");
+        assertEquals(retValue.getRequestParams().get(OFFSET_KEY), "extId0");
+        assertEquals(retValue.getRequestParams().get(PAGE_SIZE), 2);
+        
+        verify(mockExternalIdDao).getExternalIdsAfter(TEST_APP_ID, STUDY_ID, "idFilter", "extId0", 2);
+    }
+    
+    @Test(expectedExceptions = BadRequestException.class, 
+            expectedExceptionsMessageRegExp = ExternalIdService.PAGE_SIZE_ERROR)
+    public void getExternalIdsAfterPageTooSmall() {
+        externalIdService.getExternalIdsAfter(TEST_APP_ID, STUDY_ID, null, null, 0);
+    }
+    
+    @Test(expectedExceptions = BadRequestException.class, 
+            expectedExceptionsMessageRegExp = ExternalIdService.PAGE_SIZE_ERROR)
+    public void getExternalIdsAfterPageTooLarge() {
+        externalIdService.getExternalIdsAfter(TEST_APP_ID, STUDY_ID, null, null, 10000);
+    }
     
     @Test
     public void deleteExternalIdPermanently() {
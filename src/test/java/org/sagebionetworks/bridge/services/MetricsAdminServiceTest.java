@@ -0,0 +1,59 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class MetricsAdminServiceTest {
+
+    private MetricRegistry metricRegistry;
+    private MetricsAdminService service;
+
+    @BeforeMethod
+    public void before() {
+        metricRegistry = new MetricRegistry();
+        metricRegistry.counter("upload.validation.DecryptHandler.success").inc(3);
+        metricRegistry.timer("upload.validation.DecryptHandler.latency").update(20, TimeUnit.MILLISECONDS);
+        metricRegistry.register("async.executor.queued", (Gauge<Integer>) () -> 7);
+
+        service = new MetricsAdminService();
+        service.setMetricRegistry(metricRegistry);
+    }
+
+    @Test
+    public void getAllMetrics() {
+        JsonNode node = service.getMetrics(null);
+        assertEquals(node.size(), 3);
+
+        JsonNode counterNode = node.get("upload.validation.DecryptHandler.success");
+        assertEquals(counterNode.get("type").textValue(), "counter");
+        assertEquals(counterNode.get("count").longValue(), 3L);
+
+        JsonNode timerNode = node.get("upload.validation.DecryptHandler.latency");
+        assertEquals(timerNode.get("type").textValue(), "timer");
+        assertEquals(timerNode.get("count").longValue(), 1L);
+        assertEquals(timerNode.get("p50").doubleValue(), 20.0, 0.001);
+        assertEquals(timerNode.get("p99").doubleValue(), 20.0, 0.001);
+
+        JsonNode gaugeNode = node.get("async.executor.queued");
+        assertEquals(gaugeNode.get("type").textValue(), "gauge");
+        assertEquals(gaugeNode.get("value").intValue(), 7);
+    }
+
+    @Test
+    public void getMetricsWithPrefix() {
+        JsonNode node = service.getMetrics("upload.validation");
+        assertEquals(node.size(), 2);
+        assertTrue(node.has("upload.validation.DecryptHandler.success"));
+        assertTrue(node.has("upload.validation.DecryptHandler.latency"));
+        assertFalse(node.has("async.executor.queued"));
+    }
+}
@@ -1,7 +1,6 @@
 package org.sagebionetworks.bridge.services;
 
 import static org.mockito.Mockito.any;
-import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.sagebionetworks.bridge.TestConstants.TEST_APP_ID;
@@ -11,14 +10,15 @@ import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 import static org.mockito.Mockito.doReturn;
-import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
@@ -27,6 +27,8 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.async.SnsDispatcher;
+import org.sagebionetworks.bridge.config.BridgeConfig;
 import org.sagebionetworks.bridge.dao.NotificationRegistrationDao;
 import org.sagebionetworks.bridge.dao.NotificationTopicDao;
 import org.sagebionetworks.bridge.dao.TopicSubscriptionDao;
@@ -40,7 +42,9 @@ import org.sagebionetworks.bridge.models.notifications.SubscriptionStatus;
 import org.sagebionetworks.bridge.models.notifications.NotificationTopic;
 import org.sagebionetworks.bridge.models.notifications.TopicSubscription;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.sns.AmazonSNSClient;
+import com.amazonaws.services.sns.model.NotFoundException;
 import com.amazonaws.services.sns.model.PublishRequest;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
@@ -137,6 +141,9 @@ public class NotificationTopicServiceTest {
     @Mock
     private NotificationRegistration mockNotificationRegistration;
     
+    @Mock
+    private BridgeConfig mockConfig;
+    
     @Captor
     private ArgumentCaptor<PublishRequest> publishRequestCaptor;
 
@@ -151,6 +158,19 @@ public class NotificationTopicServiceTest {
         service.setSnsClient(mockSnsClient);
         service.setNotificationRegistrationDao(mockRegistrationDao);
         service.setTopicSubscriptionDao(mockSubscriptionDao);
+
+        when(mockConfig.getPropertyAsInt("sns.dispatch.max.concurrency")).thenReturn(4);
+        SnsDispatcher snsDispatcher = new SnsDispatcher();
+        snsDispatcher.setBridgeConfig(mockConfig);
+        snsDispatcher.setFanOutExecutorService(MoreExecutors.newDirectExecutorService());
+        service.setSnsDispatcher(snsDispatcher);
+
+        // By default, all subscription changes succeed.
+        when(mockSubscriptionDao.batchSubscribe(any(), any())).thenAnswer(invocation -> {
+            List<NotificationTopic> topicList = invocation.getArgument(1);
+            return topicList.stream().map(topic -> getSub(topic.getGuid())).collect(Collectors.toList());
+        });
+        when(mockSubscriptionDao.batchUnsubscribe(any())).thenAnswer(invocation -> invocation.getArgument(0));
     }
     
     @Test
@@ -340,10 +360,12 @@ public class NotificationTopicServiceTest {
                 SMS_REGISTRATION));
 
         // Each registration is subscribed to criteria topic 1 and manual topic 1.
+        TopicSubscription pushCriteriaSub = getSub(CRITERIA_TOPIC_1.getGuid());
+        TopicSubscription smsCriteriaSub = getSub(CRITERIA_TOPIC_1.getGuid());
         when(mockSubscriptionDao.listSubscriptions(PUSH_REGISTRATION)).thenReturn((List)ImmutableList.of(
-                getSub(CRITERIA_TOPIC_1.getGuid()), getSub(MANUAL_TOPIC_1.getGuid())));
+                pushCriteriaSub, getSub(MANUAL_TOPIC_1.getGuid())));
         when(mockSubscriptionDao.listSubscriptions(SMS_REGISTRATION)).thenReturn((List)ImmutableList.of(
-                getSub(CRITERIA_TOPIC_1.getGuid()), getSub(MANUAL_TOPIC_1.getGuid())));
+                smsCriteriaSub, getSub(MANUAL_TOPIC_1.getGuid())));
 
         // Create criteria context with data group 2.
         CriteriaContext context = new CriteriaContext.Builder().withContext(EMPTY_CONTEXT).withUserDataGroups(
@@ -352,17 +374,11 @@ public class NotificationTopicServiceTest {
         // Execute test.
         service.manageCriteriaBasedSubscriptions(TEST_APP_ID, context, HEALTH_CODE);
 
-        // We un-sub from criteria topic 1 and sub to criteria topic 2.
-        verify(mockSubscriptionDao).unsubscribe(PUSH_REGISTRATION, CRITERIA_TOPIC_1);
-        verify(mockSubscriptionDao).unsubscribe(SMS_REGISTRATION, CRITERIA_TOPIC_1);
-        verify(mockSubscriptionDao).subscribe(PUSH_REGISTRATION, CRITERIA_TOPIC_2);
-        verify(mockSubscriptionDao).subscribe(SMS_REGISTRATION, CRITERIA_TOPIC_2);
-
-        // We do not sub or unsub to any manual topics.
-        verify(mockSubscriptionDao, never()).unsubscribe(any(), eq(MANUAL_TOPIC_1));
-        verify(mockSubscriptionDao, never()).unsubscribe(any(), eq(MANUAL_TOPIC_2));
-        verify(mockSubscriptionDao, never()).subscribe(any(), eq(MANUAL_TOPIC_1));
-        verify(mockSubscriptionDao, never()).subscribe(any(), eq(MANUAL_TOPIC_2));
+        // We un-sub from criteria topic 1 and sub to criteria topic 2. We do not sub or unsub to any manual topics.
+        verify(mockSubscriptionDao).batchUnsubscribe(ImmutableList.of(pushCriteriaSub));
+        verify(mockSubscriptionDao).batchUnsubscribe(ImmutableList.of(smsCriteriaSub));
+        verify(mockSubscriptionDao).batchSubscribe(PUSH_REGISTRATION, ImmutableList.of(CRITERIA_TOPIC_2));
+        verify(mockSubscriptionDao).batchSubscribe(SMS_REGISTRATION, ImmutableList.of(CRITERIA_TOPIC_2));
     }
 
     @Test
@@ -376,7 +392,7 @@ public class NotificationTopicServiceTest {
         service.unsubscribeAll(TEST_APP_ID, HEALTH_CODE, SMS_REGISTRATION.getGuid());
 
         // We don't unsubscribe from anything.
-        verify(mockSubscriptionDao, never()).unsubscribe(any(), any());
+        verify(mockSubscriptionDao, never()).batchUnsubscribe(any());
     }
 
     @Test
@@ -384,23 +400,16 @@ public class NotificationTopicServiceTest {
         // Mock dependencies.
         when(mockRegistrationDao.getRegistration(HEALTH_CODE, SMS_REGISTRATION.getGuid())).thenReturn(
                 SMS_REGISTRATION);
-        when(mockSubscriptionDao.listSubscriptions(SMS_REGISTRATION)).thenReturn((List) ImmutableList.of(
-                getSub(MANUAL_TOPIC_1.getGuid()), getSub(MANUAL_TOPIC_2.getGuid()), getSub(MANUAL_TOPIC_3.getGuid())));
-
-        when(mockTopicDao.getTopic(TEST_APP_ID, MANUAL_TOPIC_1.getGuid())).thenReturn(MANUAL_TOPIC_1);
-        when(mockTopicDao.getTopic(TEST_APP_ID, MANUAL_TOPIC_2.getGuid())).thenReturn(MANUAL_TOPIC_2);
-        when(mockTopicDao.getTopic(TEST_APP_ID, MANUAL_TOPIC_3.getGuid())).thenReturn(MANUAL_TOPIC_3);
-
-        // To test error handling, unsubscribing from topic 2 will throw.
-        doThrow(RuntimeException.class).when(mockSubscriptionDao).unsubscribe(SMS_REGISTRATION, MANUAL_TOPIC_2);
+        List<TopicSubscription> subscriptionList = ImmutableList.of(getSub(MANUAL_TOPIC_1.getGuid()),
+                getSub(MANUAL_TOPIC_2.getGuid()), getSub(MANUAL_TOPIC_3.getGuid()));
+        when(mockSubscriptionDao.listSubscriptions(SMS_REGISTRATION)).thenReturn((List) subscriptionList);
 
         // Execute.
         service.unsubscribeAll(TEST_APP_ID, HEALTH_CODE, SMS_REGISTRATION.getGuid());
 
-        // Verify we unsubscribe from all 3 topics.
-        verify(mockSubscriptionDao).unsubscribe(SMS_REGISTRATION, MANUAL_TOPIC_1);
-        verify(mockSubscriptionDao).unsubscribe(SMS_REGISTRATION, MANUAL_TOPIC_2);
-        verify(mockSubscriptionDao).unsubscribe(SMS_REGISTRATION, MANUAL_TOPIC_3);
+        // Verify we unsubscribe from all 3 topics at once. We don't need to look up the topics.
+        verify(mockSubscriptionDao).batchUnsubscribe(subscriptionList);
+        verifyZeroInteractions(mockTopicDao);
     }
 
     @Test
@@ -434,8 +443,9 @@ public class NotificationTopicServiceTest {
                 PUSH_REGISTRATION);
 
         // We are currently subscribed to 1 and 2.
+        TopicSubscription topic2Sub = getSub(MANUAL_TOPIC_2.getGuid());
         when(mockSubscriptionDao.listSubscriptions(PUSH_REGISTRATION)).thenReturn((List)ImmutableList.of(
-                getSub(MANUAL_TOPIC_1.getGuid()), getSub(MANUAL_TOPIC_2.getGuid())));
+                getSub(MANUAL_TOPIC_1.getGuid()), topic2Sub));
 
         // Execute. We want to subscribe to 1 and 3.
         List<SubscriptionStatus> statusList = service.subscribe(TEST_APP_ID, HEALTH_CODE, PUSH_REGISTRATION.getGuid(),
@@ -458,19 +468,71 @@ public class NotificationTopicServiceTest {
         assertEquals(statusList.get(3).getTopicName(), MANUAL_TOPIC_4.getName());
         assertFalse(statusList.get(3).isSubscribed());
 
-        // Verify back-ends. We unsub from topic 2 and sub to topic 3.
-        verify(mockSubscriptionDao).unsubscribe(PUSH_REGISTRATION, MANUAL_TOPIC_2);
-        verify(mockSubscriptionDao).subscribe(PUSH_REGISTRATION, MANUAL_TOPIC_3);
+        // Verify back-ends. We unsub from topic 2 and sub to topic 3. We don't touch topics 1 or 4 or either of the
+        // criteria topics.
+        verify(mockSubscriptionDao).batchUnsubscribe(ImmutableList.of(topic2Sub));
+        verify(mockSubscriptionDao).batchSubscribe(PUSH_REGISTRATION, ImmutableList.of(MANUAL_TOPIC_3));
+    }
+
+    @Test
+    public void subscribe_ChangesFail() {
+        when(mockTopicDao.listTopics(TEST_APP_ID, false)).thenReturn(ImmutableList.of(MANUAL_TOPIC_1,
+                MANUAL_TOPIC_2));
+        when(mockRegistrationDao.getRegistration(HEALTH_CODE, PUSH_REGISTRATION.getGuid())).thenReturn(
+                PUSH_REGISTRATION);
+
+        // We are currently subscribed to 1.
+        when(mockSubscriptionDao.listSubscriptions(PUSH_REGISTRATION)).thenReturn((List)ImmutableList.of(
+                getSub(MANUAL_TOPIC_1.getGuid())));
+
+        // Neither change succeeds.
+        when(mockSubscriptionDao.batchSubscribe(any(), any())).thenReturn(ImmutableList.of());
+        when(mockSubscriptionDao.batchUnsubscribe(any())).thenReturn(ImmutableList.of());
+
+        // Execute. We want to switch from 1 to 2.
+        List<SubscriptionStatus> statusList = service.subscribe(TEST_APP_ID, HEALTH_CODE, PUSH_REGISTRATION.getGuid(),
+                ImmutableSet.of(MANUAL_TOPIC_2.getGuid()));
+        assertEquals(statusList.size(), 2);
+
+        // Both topics keep their current status.
+        assertEquals(statusList.get(0).getTopicGuid(), MANUAL_TOPIC_1.getGuid());
+        assertTrue(statusList.get(0).isSubscribed());
+        assertEquals(statusList.get(1).getTopicGuid(), MANUAL_TOPIC_2.getGuid());
+        assertFalse(statusList.get(1).isSubscribed());
+    }
 
-        // We don't touch topics 1 or 4 or either of the criteria topics.
-        verify(mockSubscriptionDao, never()).unsubscribe(any(), eq(MANUAL_TOPIC_1));
-        verify(mockSubscriptionDao, never()).unsubscribe(any(), eq(MANUAL_TOPIC_4));
-        verify(mockSubscriptionDao, never()).unsubscribe(any(), eq(CRITERIA_TOPIC_1));
-        verify(mockSubscriptionDao, never()).unsubscribe(any(), eq(CRITERIA_TOPIC_2));
+    @Test
+    public void subscriptionCleanup() {
+        when(mockTopicDao.listTopics(TEST_APP_ID, false)).thenReturn(ImmutableList.of(MANUAL_TOPIC_1,
+                MANUAL_TOPIC_2, MANUAL_TOPIC_3));
+        when(mockRegistrationDao.getRegistration(HEALTH_CODE, PUSH_REGISTRATION.getGuid())).thenReturn(
+                PUSH_REGISTRATION);
+
+        // Subscription 1 is fine. Subscription 2 no longer exists in SNS. SNS fails for subscription 3.
+        TopicSubscription sub1 = getSub(MANUAL_TOPIC_1.getGuid());
+        sub1.setSubscriptionARN("sub-arn-1");
+        TopicSubscription sub2 = getSub(MANUAL_TOPIC_2.getGuid());
+        sub2.setSubscriptionARN("sub-arn-2");
+        TopicSubscription sub3 = getSub(MANUAL_TOPIC_3.getGuid());
+        sub3.setSubscriptionARN("sub-arn-3");
+        when(mockSubscriptionDao.listSubscriptions(PUSH_REGISTRATION)).thenReturn((List)ImmutableList.of(sub1, sub2,
+                sub3));
+        when(mockSnsClient.getSubscriptionAttributes("sub-arn-2")).thenThrow(new NotFoundException("not found"));
+        when(mockSnsClient.getSubscriptionAttributes("sub-arn-3")).thenThrow(new AmazonServiceException("error"));
+
+        // Execute. We want to stay subscribed to all 3.
+        List<SubscriptionStatus> statusList = service.subscribe(TEST_APP_ID, HEALTH_CODE, PUSH_REGISTRATION.getGuid(),
+                ImmutableSet.of(MANUAL_TOPIC_1.getGuid(), MANUAL_TOPIC_2.getGuid(), MANUAL_TOPIC_3.getGuid()));
+        assertEquals(statusList.size(), 3);
+        assertTrue(statusList.get(0).isSubscribed());
+        assertTrue(statusList.get(1).isSubscribed());
+        assertTrue(statusList.get(2).isSubscribed());
 
-        verify(mockSubscriptionDao, never()).subscribe(any(), eq(MANUAL_TOPIC_1));
-        verify(mockSubscriptionDao, never()).subscribe(any(), eq(MANUAL_TOPIC_4));
-        verify(mockSubscriptionDao, never()).subscribe(any(), eq(CRITERIA_TOPIC_1));
-        verify(mockSubscriptionDao, never()).subscribe(any(), eq(CRITERIA_TOPIC_2));
+        // The orphaned subscription is removed, and we subscribe to that topic again.
+        verify(mockSubscriptionDao).removeOrphanedSubscription(sub2);
+        verify(mockSubscriptionDao, never()).removeOrphanedSubscription(sub1);
+        verify(mockSubscriptionDao, never()).removeOrphanedSubscription(sub3);
+        verify(mockSubscriptionDao).batchSubscribe(PUSH_REGISTRATION, ImmutableList.of(MANUAL_TOPIC_2));
+        verify(mockSubscriptionDao, never()).batchUnsubscribe(any());
     }
 }
@@ -10,6 +10,7 @@ import static org.testng.Assert.fail;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.util.List;
@@ -17,6 +18,7 @@ import java.util.Map;
 import java.util.Set;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
@@ -25,6 +27,8 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import org.sagebionetworks.bridge.TestConstants;
+import org.sagebionetworks.bridge.async.SnsDispatcher;
+import org.sagebionetworks.bridge.config.BridgeConfig;
 import org.sagebionetworks.bridge.dao.NotificationRegistrationDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.NotImplementedException;
@@ -40,6 +44,7 @@ import com.amazonaws.services.sns.AmazonSNSClient;
 import com.amazonaws.services.sns.model.InvalidParameterException;
 import com.amazonaws.services.sns.model.PublishRequest;
 import com.amazonaws.services.sns.model.PublishResult;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -73,6 +78,9 @@ public class NotificationsServiceTest {
     
     @Mock
     private App mockApp;
+    
+    @Mock
+    private BridgeConfig mockConfig;
 
     @Captor
     private ArgumentCaptor<PublishRequest> requestCaptor;
@@ -90,6 +98,12 @@ public class NotificationsServiceTest {
         service.setNotificationRegistrationDao(mockRegistrationDao);
         service.setSnsClient(mockSnsClient);
 
+        when(mockConfig.getPropertyAsInt("sns.dispatch.max.concurrency")).thenReturn(4);
+        SnsDispatcher snsDispatcher = new SnsDispatcher();
+        snsDispatcher.setBridgeConfig(mockConfig);
+        snsDispatcher.setFanOutExecutorService(MoreExecutors.newDirectExecutorService());
+        service.setSnsDispatcher(snsDispatcher);
+
         Map<String,String> map = Maps.newHashMap();
         map.put(OS_NAME, PLATFORM_ARN);
         doReturn(map).when(mockApp).getPushNotificationARNs();
@@ -320,6 +334,45 @@ public class NotificationsServiceTest {
         service.sendNotificationToUser(TEST_APP_ID, HEALTH_CODE, message);
     }
 
+    // Publish to three devices concurrently. Each registration that fails is reported.
+    @Test
+    public void sendNotificationToManyRegistrations() {
+        NotificationRegistration reg1 = getNotificationRegistration();
+        reg1.setGuid("registrationGuid1");
+        reg1.setEndpoint("endpointARN1");
+        NotificationRegistration reg2 = getNotificationRegistration();
+        reg2.setGuid("registrationGuid2");
+        reg2.setEndpoint("endpointARN2");
+        NotificationRegistration reg3 = getNotificationRegistration();
+        reg3.setGuid("registrationGuid3");
+        reg3.setEndpoint("endpointARN3");
+        doReturn(ImmutableList.of(reg1, reg2, reg3)).when(mockRegistrationDao).listRegistrations(HEALTH_CODE);
+        
+        when(mockSnsClient.publish(any())).thenAnswer(invocation -> {
+            PublishRequest request = invocation.getArgument(0);
+            if (request.getTargetArn().equals("endpointARN2")) {
+                throw new InvalidParameterException("bad parameter");
+            }
+            return mockPublishResult;
+        });
+        
+        NotificationMessage message = getNotificationMessage();
+        Set<String> erroredNotifications = service.sendNotificationToUser(TEST_APP_ID, HEALTH_CODE, message);
+        assertEquals(erroredNotifications, ImmutableSet.of("registrationGuid2"));
+        verify(mockSnsClient, times(3)).publish(any());
+    }
+    
+    // Errors that aren't from SNS aren't converted.
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void sendNotificationOtherExceptionThrown() {
+        doReturn(ImmutableList.of(getNotificationRegistration())).when(mockRegistrationDao)
+                .listRegistrations(HEALTH_CODE);
+        
+        doThrow(new IllegalStateException()).when(mockSnsClient).publish(any());
+        
+        service.sendNotificationToUser(TEST_APP_ID, HEALTH_CODE, getNotificationMessage());
+    }
+
     private static NotificationRegistration getSmsNotificationRegistration() {
         NotificationRegistration registration = NotificationRegistration.create();
         registration.setHealthCode(HEALTH_CODE);
@@ -1,9 +1,11 @@
 package org.sagebionetworks.bridge.services;
 
 import static org.sagebionetworks.bridge.TestConstants.TEST_USER_ID;
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertSame;
 
+import org.joda.time.DateTime;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -26,6 +28,9 @@ public class RequestInfoServiceTest extends Mockito {
     @Mock
     RequestInfoDao mockRequestInfoDao;
     
+    @Mock
+    RequestInfoWriteBuffer mockWriteBuffer;
+    
     @BeforeMethod
     public void beforeMethod() {
         MockitoAnnotations.initMocks(this);
@@ -34,6 +39,17 @@ public class RequestInfoServiceTest extends Mockito {
     @Test
     public void updateRequestInfo() {
         RequestInfo info = new RequestInfo.Builder().build();
+        when(mockWriteBuffer.offer(info)).thenReturn(true);
+        service.updateRequestInfo(info);
+        
+        verify(mockWriteBuffer).offer(info);
+        verify(mockRequestInfoDao, never()).updateRequestInfo(any());
+    }
+    
+    @Test
+    public void updateRequestInfoBufferFull() {
+        RequestInfo info = new RequestInfo.Builder().build();
+        when(mockWriteBuffer.offer(info)).thenReturn(false);
         service.updateRequestInfo(info);
         
         verify(mockRequestInfoDao).updateRequestInfo(info);
@@ -64,6 +80,32 @@ public class RequestInfoServiceTest extends Mockito {
         verify(mockRequestInfoDao).updateRequestInfo(info);
     }
     
+    @Test
+    public void getRequestInfoIncludesPendingUpdates() {
+        DateTime signedInOn = DateTime.now();
+        DateTime activitiesAccessedOn = signedInOn.plusMinutes(1);
+        RequestInfo info = new RequestInfo.Builder().withUserId(TEST_USER_ID).withSignedInOn(signedInOn).build();
+        when(mockRequestInfoDao.getRequestInfo(TEST_USER_ID)).thenReturn(info);
+        
+        RequestInfo pending = new RequestInfo.Builder().withUserId(TEST_USER_ID)
+                .withActivitiesAccessedOn(activitiesAccessedOn).build();
+        when(mockWriteBuffer.get(TEST_USER_ID)).thenReturn(pending);
+        
+        RequestInfo retrieved = service.getRequestInfo(TEST_USER_ID);
+        assertEquals(retrieved.getSignedInOn(), signedInOn);
+        assertEquals(retrieved.getActivitiesAccessedOn(), activitiesAccessedOn);
+    }
+    
+    @Test
+    public void getRequestInfoOnlyPendingUpdates() {
+        RequestInfo pending = new RequestInfo.Builder().withUserId(TEST_USER_ID)
+                .withSignedInOn(DateTime.now()).build();
+        when(mockWriteBuffer.get(TEST_USER_ID)).thenReturn(pending);
+        
+        RequestInfo retrieved = service.getRequestInfo(TEST_USER_ID);
+        assertEquals(retrieved, pending);
+    }
+    
     @Test
     public void getRequestInfoReturnsNothing() {
         RequestInfo retrieved = service.getRequestInfo(TEST_USER_ID);
@@ -74,6 +116,7 @@ public class RequestInfoServiceTest extends Mockito {
     @Test
     public void removeRequestInfo() {
         service.removeRequestInfo(TEST_USER_ID);
+        verify(mockWriteBuffer).remove(TEST_USER_ID);
         verify(mockRequestInfoDao).removeRequestInfo(TEST_USER_ID);
         verify(mockCacheProvider).removeRequestInfo(TEST_USER_ID);
     }
@@ -0,0 +1,338 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.persistence.PersistenceException;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+import org.hibernate.exception.JDBCConnectionException;
+import org.joda.time.DateTime;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.sagebionetworks.bridge.dao.RequestInfoDao;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.models.RequestInfo;
+
+public class RequestInfoWriteBufferTest {
+    private static final String USER_A = "user-a";
+    private static final String USER_B = "user-b";
+    private static final String USER_C = "user-c";
+    private static final DateTime SIGNED_IN_ON = DateTime.parse("2020-05-01T10:00:00.000Z");
+    private static final DateTime ACTIVITIES_ACCESSED_ON = DateTime.parse("2020-05-01T10:05:00.000Z");
+
+    @Mock
+    private RequestInfoDao mockRequestInfoDao;
+
+    @Captor
+    private ArgumentCaptor<List<RequestInfo>> batchCaptor;
+
+    private MetricRegistry metricRegistry;
+    private RequestInfoWriteBuffer buffer;
+
+    @BeforeMethod
+    public void before() {
+        MockitoAnnotations.initMocks(this);
+        metricRegistry = new MetricRegistry();
+
+        // Don't start the flush thread, so the tests control when updates are written.
+        buffer = new RequestInfoWriteBuffer();
+        buffer.setBatchSize(2);
+        buffer.setMaxSize(3);
+        buffer.setMetricRegistry(metricRegistry);
+        buffer.setRequestInfoDao(mockRequestInfoDao);
+    }
+
+    @Test
+    public void updatesAreCoalescedPerUser() {
+        assertTrue(buffer.offer(new RequestInfo.Builder().withUserId(USER_A).withSignedInOn(SIGNED_IN_ON)
+                .withUserDataGroups(ImmutableSet.of("group1")).build()));
+        assertTrue(buffer.offer(new RequestInfo.Builder().withUserId(USER_A)
+                .withActivitiesAccessedOn(ACTIVITIES_ACCESSED_ON).withUserDataGroups(ImmutableSet.of("group2"))
+                .build()));
+        assertEquals(buffer.getPendingCount(), 1);
+
+        buffer.flush();
+
+        verify(mockRequestInfoDao).updateRequestInfos(batchCaptor.capture());
+        List<RequestInfo> batch = batchCaptor.getValue();
+        assertEquals(batch.size(), 1);
+        RequestInfo written = batch.get(0);
+        assertEquals(written.getSignedInOn(), SIGNED_IN_ON);
+        assertEquals(written.getActivitiesAccessedOn(), ACTIVITIES_ACCESSED_ON);
+        assertEquals(written.getUserDataGroups(), ImmutableSet.of("group2"));
+        assertEquals(buffer.getPendingCount(), 0);
+    }
+
+    @Test
+    public void flushWritesInBatches() {
+        buffer.offer(new RequestInfo.Builder().withUserId(USER_A).build());
+        buffer.offer(new RequestInfo.Builder().withUserId(USER_B).build());
+        buffer.offer(new RequestInfo.Builder().withUserId(USER_C).build());
+
+        buffer.flush();
+
+        verify(mockRequestInfoDao, times(2)).updateRequestInfos(batchCaptor.capture());
+        List<List<RequestInfo>> batches = batchCaptor.getAllValues();
+        assertEquals(batches.get(0).size(), 2);
+        assertEquals(batches.get(0).get(0).getUserId(), USER_A);
+        assertEquals(batches.get(0).get(1).getUserId(), USER_B);
+        assertEquals(batches.get(1).size(), 1);
+        assertEquals(batches.get(1).get(0).getUserId(), USER_C);
+    }
+
+    @Test
+    public void flushEmptyBufferDoesNothing() {
+        buffer.flush();
+        verify(mockRequestInfoDao, never()).updateRequestInfos(any());
+    }
+
+    @Test
+    public void offerRejectsNewUsersWhenFull() {
+        assertTrue(buffer.offer(new RequestInfo.Builder().withUserId(USER_A).build()));
+        assertTrue(buffer.offer(new RequestInfo.Builder().withUserId(USER_B).build()));
+        assertTrue(buffer.offer(new RequestInfo.Builder().withUserId(USER_C).build()));
+        assertFalse(buffer.offer(new RequestInfo.Builder().withUserId("user-d").build()));
+        assertEquals(metricRegistry.counter(RequestInfoWriteBuffer.METRIC_REJECTED).getCount(), 1L);
+
+        // Users that already have a pending update can still be updated.
+        assertTrue(buffer.offer(new RequestInfo.Builder().withUserId(USER_A).withSignedInOn(SIGNED_IN_ON).build()));
+        assertEquals(buffer.getPendingCount(), 3);
+    }
+
+    @Test
+    public void getReturnsPendingUpdate() {
+        assertNull(buffer.get(USER_A));
+
+        RequestInfo info = new RequestInfo.Builder().withUserId(USER_A).withSignedInOn(SIGNED_IN_ON).build();
+        buffer.offer(info);
+        assertSame(buffer.get(USER_A), info);
+    }
+
+    @Test
+    public void getReturnsUpdateBeingWritten() {
+        buffer.offer(new RequestInfo.Builder().withUserId(USER_A).withSignedInOn(SIGNED_IN_ON).build());
+
+        // While the batch is being written, a read sees the in-flight update merged with newer updates.
+        RequestInfo[] duringWrite = new RequestInfo[1];
+        doAnswer(invocation -> {
+            buffer.offer(new RequestInfo.Builder().withUserId(USER_A)
+                    .withActivitiesAccessedOn(ACTIVITIES_ACCESSED_ON).build());
+            duringWrite[0] = buffer.get(USER_A);
+            return null;
+        }).doNothing().when(mockRequestInfoDao).updateRequestInfos(any());
+
+        buffer.flush();
+
+        assertEquals(duringWrite[0].getSignedInOn(), SIGNED_IN_ON);
+        assertEquals(duringWrite[0].getActivitiesAccessedOn(), ACTIVITIES_ACCESSED_ON);
+
+        // The update that arrived during the write was written in the next batch.
+        verify(mockRequestInfoDao, times(2)).updateRequestInfos(any());
+        assertNull(buffer.get(USER_A));
+    }
+
+    @Test
+    public void removeDiscardsPendingUpdate() {
+        buffer.offer(new RequestInfo.Builder().withUserId(USER_A).build());
+        buffer.remove(USER_A);
+
+        assertNull(buffer.get(USER_A));
+        buffer.flush();
+        verify(mockRequestInfoDao, never()).updateRequestInfos(any());
+    }
+
+    @Test
+    public void failedBatchIsWrittenOneAtATimeAndBadRecordDropped() {
+        buffer.offer(new RequestInfo.Builder().withUserId(USER_A).build());
+        buffer.offer(new RequestInfo.Builder().withUserId(USER_B).build());
+        buffer.offer(new RequestInfo.Builder().withUserId(USER_C).build());
+
+        // Any write that includes user B fails.
+        doAnswer(invocation -> {
+            List<RequestInfo> batch = invocation.getArgument(0);
+            if (batch.stream().anyMatch(info -> info.getUserId().equals(USER_B))) {
+                throw new BridgeServiceException("test");
+            }
+            return null;
+        }).when(mockRequestInfoDao).updateRequestInfos(any());
+
+        buffer.flush();
+
+        // The first batch, then A and B on their own, then the second batch.
+        verify(mockRequestInfoDao, times(4)).updateRequestInfos(batchCaptor.capture());
+        List<List<RequestInfo>> batches = batchCaptor.getAllValues();
+        assertEquals(batches.get(0).size(), 2);
+        assertEquals(batches.get(1).size(), 1);
+        assertEquals(batches.get(1).get(0).getUserId(), USER_A);
+        assertEquals(batches.get(2).size(), 1);
+        assertEquals(batches.get(2).get(0).getUserId(), USER_B);
+        assertEquals(batches.get(3).size(), 1);
+        assertEquals(batches.get(3).get(0).getUserId(), USER_C);
+
+        // Only user B is dropped.
+        assertEquals(metricRegistry.counter(RequestInfoWriteBuffer.METRIC_FAILED).getCount(), 1L);
+        assertEquals(buffer.getPendingCount(), 0);
+    }
+
+    @Test
+    public void retryableFailureKeepsBatchPending() {
+        buffer.offer(new RequestInfo.Builder().withUserId(USER_A).withSignedInOn(SIGNED_IN_ON).build());
+        buffer.offer(new RequestInfo.Builder().withUserId(USER_B).build());
+        buffer.offer(new RequestInfo.Builder().withUserId(USER_C).build());
+
+        // HibernateHelper wraps the persistence exception, which wraps Hibernate's exception.
+        BridgeServiceException retryable = new BridgeServiceException(new PersistenceException(
+                new JDBCConnectionException("test", new SQLException("test"))));
+        doAnswer(invocation -> {
+            // An update that arrives during the failed write is merged on top of the retried update.
+            buffer.offer(new RequestInfo.Builder().withUserId(USER_A)
+                    .withActivitiesAccessedOn(ACTIVITIES_ACCESSED_ON).build());
+            throw retryable;
+        }).doNothing().when(mockRequestInfoDao).updateRequestInfos(any());
+
+        buffer.flush();
+
+        // The flush stops after the failed batch, and nothing is dropped.
+        verify(mockRequestInfoDao, times(1)).updateRequestInfos(any());
+        assertEquals(metricRegistry.counter(RequestInfoWriteBuffer.METRIC_FAILED).getCount(), 0L);
+        assertEquals(buffer.getPendingCount(), 3);
+
+        // The next flush retries the batch first, in its original order.
+        buffer.flush();
+
+        verify(mockRequestInfoDao, times(3)).updateRequestInfos(batchCaptor.capture());
+        List<List<RequestInfo>> batches = batchCaptor.getAllValues();
+        List<RequestInfo> retried = batches.get(1);
+        assertEquals(retried.size(), 2);
+        assertEquals(retried.get(0).getUserId(), USER_A);
+        assertEquals(retried.get(0).getSignedInOn(), SIGNED_IN_ON);
+        assertEquals(retried.get(0).getActivitiesAccessedOn(), ACTIVITIES_ACCESSED_ON);
+        assertEquals(retried.get(1).getUserId(), USER_B);
+        assertEquals(batches.get(2).get(0).getUserId(), USER_C);
+        assertEquals(buffer.getPendingCount(), 0);
+    }
+
+    @Test
+    public void removeWaitsForWriteInFlight() throws Exception {
+        buffer.offer(new RequestInfo.Builder().withUserId(USER_A).build());
+
+        CountDownLatch writeStarted = new CountDownLatch(1);
+        CountDownLatch finishWrite = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writeStarted.countDown();
+            finishWrite.await();
+            return null;
+        }).when(mockRequestInfoDao).updateRequestInfos(any());
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> flush = executor.submit(buffer::flush);
+            writeStarted.await();
+
+            // The caller can't delete the user's request info until the write is done, or the write would recreate it.
+            Future<?> remove = executor.submit(() -> buffer.remove(USER_A));
+            try {
+                remove.get(200, TimeUnit.MILLISECONDS);
+                fail("expected exception");
+            } catch (TimeoutException ex) {
+                // expected exception
+            }
+
+            finishWrite.countDown();
+            remove.get(5, TimeUnit.SECONDS);
+            flush.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertNull(buffer.get(USER_A));
+        assertEquals(buffer.getPendingCount(), 0);
+    }
+
+    @Test
+    public void retryableFailureDoesNotRequeueRemovedUser() throws Exception {
+        buffer.offer(new RequestInfo.Builder().withUserId(USER_A).build());
+        buffer.offer(new RequestInfo.Builder().withUserId(USER_B).build());
+
+        CountDownLatch writeStarted = new CountDownLatch(1);
+        CountDownLatch finishWrite = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writeStarted.countDown();
+            finishWrite.await();
+            throw new BridgeServiceException(new PersistenceException(new SQLTransientConnectionException("test")));
+        }).when(mockRequestInfoDao).updateRequestInfos(any());
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> flush = executor.submit(buffer::flush);
+            writeStarted.await();
+            Future<?> remove = executor.submit(() -> buffer.remove(USER_A));
+
+            finishWrite.countDown();
+            remove.get(5, TimeUnit.SECONDS);
+            flush.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertNull(buffer.get(USER_A));
+        assertEquals(buffer.get(USER_B).getUserId(), USER_B);
+        assertEquals(buffer.getPendingCount(), 1);
+    }
+
+    @Test
+    public void retryableFailureWritingOneAtATimeKeepsTheRestPending() {
+        buffer.offer(new RequestInfo.Builder().withUserId(USER_A).build());
+        buffer.offer(new RequestInfo.Builder().withUserId(USER_B).build());
+        buffer.offer(new RequestInfo.Builder().withUserId(USER_C).build());
+
+        // The batch fails with a bad record, then the database goes away while writing user A on its own.
+        doThrow(new BridgeServiceException("test"))
+                .doThrow(new BridgeServiceException(new PersistenceException(
+                        new JDBCConnectionException("test", new SQLException("test")))))
+                .when(mockRequestInfoDao).updateRequestInfos(any());
+
+        buffer.flush();
+
+        // User B isn't tried, and user C's batch waits for the next flush.
+        verify(mockRequestInfoDao, times(2)).updateRequestInfos(any());
+        assertEquals(metricRegistry.counter(RequestInfoWriteBuffer.METRIC_FAILED).getCount(), 0L);
+        assertEquals(buffer.getPendingCount(), 3);
+    }
+
+    @Test
+    public void shutdownWritesPendingUpdates() {
+        buffer.offer(new RequestInfo.Builder().withUserId(USER_A).build());
+
+        buffer.shutdown();
+
+        verify(mockRequestInfoDao).updateRequestInfos(batchCaptor.capture());
+        assertEquals(batchCaptor.getValue().size(), 1);
+        assertEquals(batchCaptor.getValue().get(0).getUserId(), USER_A);
+        assertEquals(buffer.getPendingCount(), 0);
+    }
+}
@@ -23,6 +23,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.cache.ScheduleCache;
 import org.sagebionetworks.bridge.dao.SchedulePlanDao;
 import org.sagebionetworks.bridge.dynamodb.DynamoSchedulePlan;
 import org.sagebionetworks.bridge.dynamodb.DynamoApp;
@@ -54,6 +55,7 @@ public class SchedulePlanServiceTest {
     private SchedulePlanDao mockSchedulePlanDao;
     private SurveyService mockSurveyService;
     private StudyService mockStudyService;
+    private ScheduleCache mockScheduleCache;
     
     @BeforeMethod
     public void before() {
@@ -65,11 +67,13 @@ public class SchedulePlanServiceTest {
         mockSchedulePlanDao = mock(SchedulePlanDao.class);
         mockSurveyService = mock(SurveyService.class);
         mockStudyService = mock(StudyService.class);
+        mockScheduleCache = mock(ScheduleCache.class);
         
         service = new SchedulePlanService();
         service.setSchedulePlanDao(mockSchedulePlanDao);
         service.setSurveyService(mockSurveyService);
         service.setStudyService(mockStudyService);
+        service.setScheduleCache(mockScheduleCache);
         
         Survey survey1 = new TestSurvey(SchedulePlanServiceTest.class, false);
         survey1.setIdentifier("identifier1");
@@ -296,6 +300,7 @@ public class SchedulePlanServiceTest {
         service.deleteSchedulePlan(TEST_APP_ID, "planGuid");
         
         verify(mockSchedulePlanDao).deleteSchedulePlan(TEST_APP_ID, "planGuid");
+        verify(mockScheduleCache).invalidate(TEST_APP_ID);
     }
     
     @Test
@@ -303,6 +308,7 @@ public class SchedulePlanServiceTest {
         service.deleteSchedulePlanPermanently(TEST_APP_ID, "planGuid");
         
         verify(mockSchedulePlanDao).deleteSchedulePlanPermanently(TEST_APP_ID, "planGuid");
+        verify(mockScheduleCache).invalidate(TEST_APP_ID);
     }
     
     private SchedulePlan constructorInvalidSchedulePlan() {
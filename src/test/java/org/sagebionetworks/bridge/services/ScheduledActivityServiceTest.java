@@ -2,7 +2,6 @@ package org.sagebionetworks.bridge.services;
 
 import static java.util.stream.Collectors.toSet;
 import static org.mockito.Mockito.any;
-import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.eq;
@@ -13,7 +12,6 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 import static org.sagebionetworks.bridge.TestConstants.TEST_APP_ID;
-import static org.sagebionetworks.bridge.BridgeConstants.API_MAXIMUM_PAGE_SIZE;
 import static org.sagebionetworks.bridge.services.ScheduledActivityService.V3_FILTER;
 import static org.sagebionetworks.bridge.validators.ScheduleContextValidator.MAX_DATE_RANGE_IN_DAYS;
 import static org.testng.Assert.assertEquals;
@@ -40,18 +38,18 @@ import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
-import org.sagebionetworks.bridge.BridgeConstants;
 import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.cache.ScheduleCache;
 import org.sagebionetworks.bridge.dao.ScheduledActivityDao;
 import org.sagebionetworks.bridge.dynamodb.DynamoSchedulePlan;
 import org.sagebionetworks.bridge.dynamodb.DynamoScheduledActivity;
 import org.sagebionetworks.bridge.dynamodb.DynamoSurvey;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.time.DateUtils;
 import org.sagebionetworks.bridge.models.ClientInfo;
-import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.apps.App;
 import org.sagebionetworks.bridge.models.schedules.Activity;
 import org.sagebionetworks.bridge.models.schedules.ActivityType;
@@ -71,6 +69,7 @@ import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -138,15 +137,6 @@ public class ScheduledActivityServiceTest {
         Map<String,DateTime> map = ImmutableMap.of();
         when(activityEventService.getActivityEventMap(eq(TEST_APP_ID), anyString(), anyString())).thenReturn(map);
         
-        when(activityDao.getActivity(any(), anyString(), anyString(), eq(true))).thenAnswer(invocation -> {
-            Object[] args = invocation.getArguments();
-            DynamoScheduledActivity schActivity = new DynamoScheduledActivity();
-            schActivity.setTimeZone((DateTimeZone)args[0]);
-            schActivity.setHealthCode((String)args[1]);
-            schActivity.setGuid((String)args[2]);
-            return schActivity;
-        });
-        
         doReturn(SURVEY_CREATED_ON.getMillis()).when(survey).getCreatedOn();
         doReturn("identifier").when(survey).getIdentifier();
         when(surveyService.getSurveyMostRecentlyPublishedVersion(
@@ -157,6 +147,7 @@ public class ScheduledActivityServiceTest {
         service.setActivityEventService(activityEventService);
         service.setSurveyService(surveyService);
         service.setAppConfigService(appConfigService);
+        service.setScheduleCache(new ScheduleCache());
     }
     
     @AfterMethod
@@ -202,6 +193,22 @@ public class ScheduledActivityServiceTest {
                 eq(app), eq(null), eq(HEALTH_CODE), any(DateTime.class));
     }
     
+    @Test
+    public void getScheduledActivitiesV4RepeatPollUsesCachedSchedule() {
+        ScheduleContext context = createScheduleContext(ENDS_ON).build();
+        List<ScheduledActivity> first = service.getScheduledActivitiesV4(app, context);
+        List<ScheduledActivity> second = service.getScheduledActivitiesV4(app, context);
+        
+        // Schedule plans are only read (and the scheduler only runs) once.
+        verify(schedulePlanService).getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_APP_ID, false);
+        assertEquals(second, first);
+        
+        // Each poll still publishes its event and persists its activities.
+        verify(activityEventService, times(2)).publishActivitiesRetrieved(
+                eq(app), eq(null), eq(HEALTH_CODE), any(DateTime.class));
+        verify(activityDao, times(2)).saveActivities(any());
+    }
+    
     @Test
     public void activityHistoryDefaultsDateRange() {
         DateTimeUtils.setCurrentMillisFixed(STARTS_ON.getMillis());
@@ -287,8 +294,13 @@ public class ScheduledActivityServiceTest {
             activity.setFinishedOn(DateTimeUtils.currentTimeMillis());
         }
         
+        mockPersistedActivitiesForUpdate();
         service.updateScheduledActivities("AAA", scheduledActivities);
         
+        // Duplicates are not loaded or saved.
+        verify(activityDao).getActivities(eq(DateTimeZone.UTC), scheduledActivityListCaptor.capture());
+        assertEquals(scheduledActivityListCaptor.getValue().size(), size);
+        
         verify(activityDao).updateActivities(eq("AAA"), scheduledActivityListCaptor.capture());
         assertEquals(scheduledActivityListCaptor.getValue().size(), size);
     }
@@ -340,15 +352,21 @@ public class ScheduledActivityServiceTest {
         scheduledActivities.get(3).setClientData(TestUtils.getClientData());
         
         ArgumentCaptor<List> updateCapture = ArgumentCaptor.forClass(List.class);
-        ArgumentCaptor<ScheduledActivity> publishCapture = ArgumentCaptor.forClass(ScheduledActivity.class);
         
+        mockPersistedActivitiesForUpdate();
         service.updateScheduledActivities("BBB", scheduledActivities);
         
         verify(activityDao).updateActivities(anyString(), updateCapture.capture());
-        // Three activities have timestamp updates and need to be persisted
-        verify(activityDao, times(count)).getActivity(any(), anyString(), anyString(), eq(true));
-        // Two activities have been finished and generate activity finished events
-        verify(activityEventService, times(2)).publishActivityFinishedEvent(publishCapture.capture());
+        // All activities are loaded in one batch
+        verify(activityDao).getActivities(eq(DateTimeZone.UTC), scheduledActivityListCaptor.capture());
+        assertEquals(scheduledActivityListCaptor.getValue().size(), count);
+        for (ScheduledActivity key : scheduledActivityListCaptor.getValue()) {
+            assertEquals(key.getHealthCode(), "BBB");
+        }
+        // Two activities have been finished and generate activity finished events, in one batch
+        verify(activityEventService).publishActivityFinishedEvents(scheduledActivityListCaptor.capture());
+        List<ScheduledActivity> publishedActivities = scheduledActivityListCaptor.getValue();
+        assertEquals(publishedActivities.size(), 2);
         
         List<DynamoScheduledActivity> dbActivities = (List<DynamoScheduledActivity>)updateCapture.getValue();
         assertEquals(dbActivities.size(), 4);
@@ -360,10 +378,18 @@ public class ScheduledActivityServiceTest {
         assertEquals(dbActivities.get(3).getClientData(), scheduledActivities.get(3).getClientData());
         
         // Correct published activities.
-        ScheduledActivity publishedActivity2 = publishCapture.getAllValues().get(0);
-        assertEquals(publishedActivity2.getGuid(), scheduledActivities.get(2).getGuid());
-        ScheduledActivity publishedActivity1 = publishCapture.getAllValues().get(1);
-        assertEquals(publishedActivity1.getGuid(), scheduledActivities.get(1).getGuid());
+        assertEquals(publishedActivities.get(0).getGuid(), scheduledActivities.get(1).getGuid());
+        assertEquals(publishedActivities.get(1).getGuid(), scheduledActivities.get(2).getGuid());
+    }
+    
+    @Test(expectedExceptions = EntityNotFoundException.class)
+    public void updateActivitiesThrowsIfActivityNotPersisted() {
+        ScheduleContext context = createScheduleContext(ENDS_ON).build();
+        List<ScheduledActivity> scheduledActivities = TestUtils.runSchedulerForActivities(context);
+        scheduledActivities.get(0).setFinishedOn(NOW.getMillis());
+        
+        // Nothing is returned from the batch load.
+        service.updateScheduledActivities("BBB", scheduledActivities);
     }
     
     @Test(expectedExceptions = BadRequestException.class)
@@ -446,9 +472,8 @@ public class ScheduledActivityServiceTest {
         
         when(schedulePlanService.getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_APP_ID, false)).thenReturn(Lists.newArrayList(aaa,bbb));
         
-        ForwardCursorPagedResourceList<ScheduledActivity> list = new ForwardCursorPagedResourceList<>(createStartedActivities("BBB"+TIME_PORTION), null);
-        when(activityDao.getActivityHistoryV2(HEALTH_CODE, "BBB", NOW, NOW, null, API_MAXIMUM_PAGE_SIZE))
-                .thenReturn(list);        
+        when(activityDao.getActivityHistoriesV2(eq(HEALTH_CODE), any(), eq(NOW), eq(NOW)))
+                .thenReturn(createStartedActivities("BBB"+TIME_PORTION));
         
         List<ScheduledActivity> returnedActivities = service.getScheduledActivitiesV4(app, createScheduleContext(NOW).build());
         assertActivityGuids(returnedActivities, "AAA", "BBB");
@@ -524,8 +549,7 @@ public class ScheduledActivityServiceTest {
         
         List<ScheduledActivity> db = Lists.newArrayList(createExpiredActivities("AAA"+TIME_PORTION).get(0),
                 createFinishedActivities("BBB"+TIME_PORTION).get(0));
-        when(activityDao.getActivityHistoryV2(HEALTH_CODE, "BBB", NOW, NOW, null, API_MAXIMUM_PAGE_SIZE))
-                .thenReturn(new ForwardCursorPagedResourceList<>(db, null));
+        when(activityDao.getActivityHistoriesV2(eq(HEALTH_CODE), any(), eq(NOW), eq(NOW))).thenReturn(db);
         
         List<ScheduledActivity> returnedActivities = service.getScheduledActivitiesV4(app, createScheduleContext(NOW).build());
         assertActivityGuids(returnedActivities, "AAA", "BBB", "CCC");
@@ -567,8 +591,7 @@ public class ScheduledActivityServiceTest {
         when(schedulePlanService.getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_APP_ID, false)).thenReturn(Lists.newArrayList(aaa,bbb,ccc));
         
         List<ScheduledActivity> db = createStartedActivities("AAA"+TIME_PORTION,"CCC"+TIME_PORTION);
-        when(activityDao.getActivityHistoryV2(HEALTH_CODE, "BBB", NOW, NOW, null, API_MAXIMUM_PAGE_SIZE))
-                .thenReturn(new ForwardCursorPagedResourceList<>(db, null));
+        when(activityDao.getActivityHistoriesV2(eq(HEALTH_CODE), any(), eq(NOW), eq(NOW))).thenReturn(db);
         
         List<ScheduledActivity> returnedActivities = service.getScheduledActivitiesV4(app, createScheduleContext(NOW).build());
         assertActivityGuids(returnedActivities, "AAA", "BBB", "CCC");
@@ -637,14 +660,13 @@ public class ScheduledActivityServiceTest {
         List<ScheduledActivity> db = createNewActivities("CCC"+TIME_PORTION);
         db.get(0).setActivity(oldActivity);
         
-        ForwardCursorPagedResourceList<ScheduledActivity> page = new ForwardCursorPagedResourceList<>(db, null);
-        when(activityDao.getActivityHistoryV2(any(), any(), any(), any(), any(), anyInt())).thenReturn(page);
+        when(activityDao.getActivityHistoriesV2(any(), any(), any(), any())).thenReturn(db);
         
         List<ScheduledActivity> returnedActivities = service.getScheduledActivitiesV4(app, createScheduleContext(NOW).build());
         assertEquals(returnedActivities.size(), 1);
         assertEquals(returnedActivities.get(0).getActivity().getSurvey().getCreatedOn().getMillis(), 5678);
         
-        verify(activityDao).getActivityHistoryV2(any(), any(), any(), any(), any(), anyInt());
+        verify(activityDao).getActivityHistoriesV2(any(), any(), any(), any());
     }
     
     @Test
@@ -702,15 +724,14 @@ public class ScheduledActivityServiceTest {
         }
         db.get(0).setActivity(oldActivity);
         
-        ForwardCursorPagedResourceList<ScheduledActivity> page = new ForwardCursorPagedResourceList<>(db, null);
-        when(activityDao.getActivityHistoryV2(any(), any(), any(), any(), any(), anyInt())).thenReturn(page);
+        when(activityDao.getActivityHistoriesV2(any(), any(), any(), any())).thenReturn(db);
         
         List<ScheduledActivity> returnedActivities = service.getScheduledActivitiesV4(app, createScheduleContext(NOW).build());
         assertEquals(returnedActivities.size(), 1);
         assertEquals(returnedActivities.get(0).getActivity().getSurvey().getCreatedOn().getMillis(), 1234);
         assertNotNull(returnedActivities.get(0).getClientData());
         
-        verify(activityDao).getActivityHistoryV2(any(), any(), any(), any(), any(), anyInt());
+        verify(activityDao).getActivityHistoriesV2(any(), any(), any(), any());
     }
     
     @Test
@@ -805,8 +826,8 @@ public class ScheduledActivityServiceTest {
         oneTimeActivity.setFinishedOn(NOW.plusMinutes(5).getMillis());
         
         mockAllCallsForDbActivities(ImmutableList.of());
-        when(activityDao.getActivity(context.getStartsOn().getZone(), HEALTH_CODE, guid, false))
-                .thenReturn(oneTimeActivity);
+        when(activityDao.getActivities(eq(context.getStartsOn().getZone()), any()))
+                .thenReturn(ImmutableList.of(oneTimeActivity));
         
         List<ScheduledActivity> scheduledActivities = service.getScheduledActivitiesV4(app, context);
         assertEquals(scheduledActivities.size(), 1);
@@ -814,10 +835,12 @@ public class ScheduledActivityServiceTest {
         assertNotNull(scheduledActivities.get(0).getStartedOn());
         assertNotNull(scheduledActivities.get(0).getFinishedOn());
         
-        verify(activityDao, times(1)).getActivityHistoryV2(HEALTH_CODE, "guidForCCC", context.getStartsOn(), context.getEndsOn(),
-                null, BridgeConstants.API_MAXIMUM_PAGE_SIZE);
-        // Retrieve any remaining scheduled activity from the DB to ensure state is maintained. 
-        verify(activityDao, times(1)).getActivity(context.getStartsOn().getZone(), HEALTH_CODE, guid, false);
+        verify(activityDao, times(1)).getActivityHistoriesV2(HEALTH_CODE, ImmutableSet.of("guidForCCC"),
+                context.getStartsOn(), context.getEndsOn());
+        // Retrieve any remaining scheduled activity from the DB, in one batch, to ensure state is maintained. 
+        verify(activityDao, times(1)).getActivities(eq(context.getStartsOn().getZone()),
+                scheduledActivityListCaptor.capture());
+        assertEquals(toGuids(scheduledActivityListCaptor.getValue()), ImmutableSet.of(guid));
         
         verify(activityDao).saveActivities(scheduledActivityListCaptor.capture());
         
@@ -1157,8 +1180,8 @@ public class ScheduledActivityServiceTest {
         List<ScheduledActivity> activities = service.getScheduledActivitiesV4(app, context);
         assertTrue(activities.size() > 0);
         
-        verify(activityDao, times(1)).getActivityHistoryV2(HEALTH_CODE, "AAA", context.getStartsOn(), context.getEndsOn(),
-                null, BridgeConstants.API_MAXIMUM_PAGE_SIZE);
+        verify(activityDao, times(1)).getActivityHistoriesV2(HEALTH_CODE, ImmutableSet.of("AAA"), context.getStartsOn(),
+                context.getEndsOn());
         
         verify(activityDao).saveActivities(scheduledActivityListCaptor.capture());
         List<ScheduledActivity> activitiesOnSave = scheduledActivityListCaptor.getValue();
@@ -1284,32 +1307,32 @@ public class ScheduledActivityServiceTest {
         dbActivity.setLocalScheduledOn(LocalDateTime.parse("2017-02-23T13:00:00.000"));
         // This is the critical line. Without this, the service fails. Also tested in DAO code.
         dbActivity.setTimeZone(context.getStartsOn().getZone());
-        when(mockedActivityDao.getActivity(context.getStartsOn().getZone(), HEALTH_CODE, "AAA:2017-02-23T13:00:00.000", false)).thenReturn(dbActivity);
+        when(mockedActivityDao.getActivities(eq(context.getStartsOn().getZone()), any())).thenReturn(ImmutableList.of(dbActivity));
         
         service.getScheduledActivitiesV4(app, context);
-        verify(mockedActivityDao).getActivity(context.getStartsOn().getZone(), HEALTH_CODE, "AAA:2017-02-23T13:00:00.000", false);
+        verify(mockedActivityDao).getActivities(eq(context.getStartsOn().getZone()), any());
+    }
+    
+    // Mocks the batch load of persisted activities, returning a new persisted activity for each key.
+    private void mockPersistedActivitiesForUpdate() {
+        when(activityDao.getActivities(any(), any())).thenAnswer(invocation -> {
+            DateTimeZone timeZone = invocation.getArgument(0);
+            List<ScheduledActivity> keys = invocation.getArgument(1);
+            List<ScheduledActivity> dbActivities = Lists.newArrayList();
+            for (ScheduledActivity key : keys) {
+                DynamoScheduledActivity schActivity = new DynamoScheduledActivity();
+                schActivity.setTimeZone(timeZone);
+                schActivity.setHealthCode(key.getHealthCode());
+                schActivity.setGuid(key.getGuid());
+                dbActivities.add(schActivity);
+            }
+            return dbActivities;
+        });
     }
     
     private void mockAllCallsForDbActivities(List<ScheduledActivity> dbActivities) {
         reset(activityDao);
-        Map<String,List<ScheduledActivity>> map = Maps.newHashMap();
-        for (ScheduledActivity oneActivity : dbActivities) {
-            String guid = oneActivity.getGuid().split(":")[0];
-            if (!map.containsKey(guid)) {
-                map.put(guid, Lists.newArrayList());
-            }
-            map.get(guid).add(oneActivity);
-        }
-        for (String guid : map.keySet()) {
-            mockGetActivitiesV2(guid, map.get(guid));
-        }
-    }
-    
-    private void mockGetActivitiesV2(String activityGuid, List<ScheduledActivity> activities) {
-        ForwardCursorPagedResourceList<ScheduledActivity> list = new ForwardCursorPagedResourceList<>(activities, null);
-
-        when(activityDao.getActivityHistoryV2(eq(HEALTH_CODE), eq(activityGuid), any(), any(), 
-                eq(null), eq(BridgeConstants.API_MAXIMUM_PAGE_SIZE))).thenReturn(list);
+        when(activityDao.getActivityHistoriesV2(eq(HEALTH_CODE), any(), any(), any())).thenReturn(dbActivities);
     }
     
     private String firstTimeStampFor(int initialTZOffset, int requestTZOffset, Schedule schedule) {
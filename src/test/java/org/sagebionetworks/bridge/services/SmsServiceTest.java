@@ -38,7 +38,6 @@ import org.sagebionetworks.bridge.TestConstants;
 import org.sagebionetworks.bridge.dao.SmsMessageDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
-import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.models.accounts.Phone;
 import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
 import org.sagebionetworks.bridge.models.apps.App;
@@ -91,7 +90,7 @@ public class SmsServiceTest {
         // Mock schema service to return dummy schema for message log. The schema is empty for the purposes of the
         // test, since we only care that it exists, not what's in it.
         mockSchemaService = mock(UploadSchemaService.class);
-        when(mockSchemaService.getUploadSchemaByIdAndRev(TEST_APP_ID, SmsService.MESSAGE_LOG_SCHEMA_ID,
+        when(mockSchemaService.getCachedUploadSchemaByIdAndRev(TEST_APP_ID, SmsService.MESSAGE_LOG_SCHEMA_ID,
                 SmsService.MESSAGE_LOG_SCHEMA_REV)).thenReturn(UploadSchema.create());
 
         // Mock SMS providers.
@@ -245,9 +244,9 @@ public class SmsServiceTest {
         when(mockParticipantService.getParticipant(any(), anyString(), eq(false))).thenReturn(
                 PARTICIPANT_WITH_TIME_ZONE);
 
-        // Schema Service has no schema (throws).
-        when(mockSchemaService.getUploadSchemaByIdAndRev(TEST_APP_ID, SmsService.MESSAGE_LOG_SCHEMA_ID,
-                SmsService.MESSAGE_LOG_SCHEMA_REV)).thenThrow(EntityNotFoundException.class);
+        // Schema Service has no schema.
+        when(mockSchemaService.getCachedUploadSchemaByIdAndRev(TEST_APP_ID, SmsService.MESSAGE_LOG_SCHEMA_ID,
+                SmsService.MESSAGE_LOG_SCHEMA_REV)).thenReturn(null);
 
         // Set up test and execute.
         SmsMessageProvider provider = new SmsMessageProvider.Builder()
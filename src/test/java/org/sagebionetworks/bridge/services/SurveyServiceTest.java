@@ -21,6 +21,7 @@ import static org.testng.Assert.fail;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -35,6 +36,9 @@ import org.testng.annotations.Test;
 
 import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.cache.ImmutableArtifactCache;
+import org.sagebionetworks.bridge.cache.ResolvedAppConfigCache;
+import org.sagebionetworks.bridge.cache.ScheduleCache;
 import org.sagebionetworks.bridge.dao.SurveyDao;
 import org.sagebionetworks.bridge.dynamodb.DynamoSchedulePlan;
 import org.sagebionetworks.bridge.dynamodb.DynamoSurvey;
@@ -89,6 +93,15 @@ public class SurveyServiceTest {
 
     @Mock
     AppService mockAppService;
+
+    @Mock
+    ScheduleCache mockScheduleCache;
+
+    @Mock
+    ResolvedAppConfigCache mockResolvedAppConfigCache;
+
+    @Mock
+    ImmutableArtifactCache mockImmutableArtifactCache;
     
     @Captor
     ArgumentCaptor<GuidCreatedOnVersionHolder> keysCaptor;
@@ -122,6 +135,9 @@ public class SurveyServiceTest {
         service.setSchedulePlanService(mockSchedulePlanService);
         service.setSharedModuleMetadataService(mockSharedModuleMetadataService);
         service.setPublishValidator(mockSurveyPublishValidator);
+        service.setScheduleCache(mockScheduleCache);
+        service.setResolvedAppConfigCache(mockResolvedAppConfigCache);
+        service.setImmutableArtifactCache(mockImmutableArtifactCache);
     }
 
     @Test
@@ -186,6 +202,21 @@ public class SurveyServiceTest {
         
         verify(mockSurveyDao).getSurvey(TEST_APP_ID, SURVEY_KEYS, false);
     }
+
+    @Test
+    public void getCachedSurvey() {
+        Survey survey = Survey.create();
+        survey.setAppId(TEST_APP_ID);
+        when(mockSurveyDao.getSurvey(TEST_APP_ID, SURVEY_KEYS, false)).thenReturn(survey);
+        when(mockImmutableArtifactCache.getSurvey(eq(TEST_APP_ID), eq(SURVEY_KEYS), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<Survey>>getArgument(2).get());
+
+        Survey result = service.getCachedSurvey(TEST_APP_ID, SURVEY_KEYS);
+        assertSame(result, survey);
+
+        // The cache loads the survey without its elements.
+        verify(mockSurveyDao).getSurvey(TEST_APP_ID, SURVEY_KEYS, false);
+    }
     
     @Test
     public void getSurveyMostRecentlyPublishedWithoutElements() {
@@ -261,6 +292,7 @@ public class SurveyServiceTest {
         // execute and validate
         Survey retval = service.publishSurvey(TEST_APP_ID, SURVEY_KEYS, true);
         assertSame(retval, survey);
+        verify(mockScheduleCache).invalidate(TEST_APP_ID);
     }
     
     @Test(expectedExceptions = EntityNotFoundException.class)
@@ -370,6 +402,8 @@ public class SurveyServiceTest {
         
         service.deleteSurvey(TEST_APP_ID, survey);
         verify(mockSurveyDao).deleteSurvey(survey);
+        verify(mockResolvedAppConfigCache).invalidate(TEST_APP_ID);
+        verify(mockImmutableArtifactCache).invalidate(TEST_APP_ID);
     }
     
     @Test
@@ -486,6 +520,8 @@ public class SurveyServiceTest {
         
         //Does not throw an exception
         service.deleteSurveyPermanently(TEST_APP_ID, survey1);
+        verify(mockResolvedAppConfigCache).invalidate(TEST_APP_ID);
+        verify(mockImmutableArtifactCache).invalidate(TEST_APP_ID);
     }
     
     @Test
@@ -625,6 +661,26 @@ public class SurveyServiceTest {
         
         verify(mockSurveyDao).updateSurvey(eq(TEST_APP_ID), surveyCaptor.capture());
         assertFalse(surveyCaptor.getValue().isDeleted());
+        verify(mockResolvedAppConfigCache).invalidate(TEST_APP_ID);
+        verify(mockImmutableArtifactCache).invalidate(TEST_APP_ID);
+    }
+    
+    @Test
+    public void updateSurveyInvalidatesResolvedAppConfigs() {
+        Survey existing = Survey.create();
+        existing.setAppId(TEST_APP_ID);
+        when(mockSurveyDao.getSurvey(any(), any(), eq(false))).thenReturn(existing);
+        
+        Survey update = Survey.create();
+        update.setIdentifier("surveyIdentifier");
+        update.setName("This is a survey name");
+        update.setGuid(SURVEY_GUID);
+        update.setAppId(TEST_APP_ID);
+        
+        service.updateSurvey(TEST_APP_ID, update);
+        
+        verify(mockSurveyDao).updateSurvey(TEST_APP_ID, update);
+        verify(mockResolvedAppConfigCache).invalidate(TEST_APP_ID);
     }
     
     @Test
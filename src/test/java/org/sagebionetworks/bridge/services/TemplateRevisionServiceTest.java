@@ -27,6 +27,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import org.sagebionetworks.bridge.TestConstants;
+import org.sagebionetworks.bridge.cache.TemplateCache;
 import org.sagebionetworks.bridge.dao.TemplateDao;
 import org.sagebionetworks.bridge.dao.TemplateRevisionDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
@@ -51,6 +52,9 @@ public class TemplateRevisionServiceTest extends Mockito {
     @Mock
     TemplateRevisionDao mockTemplateRevisionDao;
     
+    @Mock
+    TemplateCache mockTemplateCache;
+    
     @InjectMocks
     @Spy
     TemplateRevisionService service;
@@ -188,6 +192,7 @@ public class TemplateRevisionServiceTest extends Mockito {
         
         verify(mockTemplateDao).updateTemplate(templateCaptor.capture());
         assertEquals(templateCaptor.getValue().getPublishedCreatedOn(), CREATED_ON);
+        verify(mockTemplateCache).invalidate(TEST_APP_ID);
     }
     
     @Test(expectedExceptions = EntityNotFoundException.class, expectedExceptionsMessageRegExp = "Template not found.")
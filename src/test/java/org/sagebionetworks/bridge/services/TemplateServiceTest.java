@@ -27,8 +27,10 @@ import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import com.google.common.collect.ImmutableList;
@@ -51,6 +53,7 @@ import org.testng.annotations.Test;
 
 import org.sagebionetworks.bridge.RequestContext;
 import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.cache.TemplateCache;
 import org.sagebionetworks.bridge.dao.CriteriaDao;
 import org.sagebionetworks.bridge.dao.TemplateDao;
 import org.sagebionetworks.bridge.dao.TemplateRevisionDao;
@@ -106,6 +109,11 @@ public class TemplateServiceTest extends Mockito {
     
     App app;
     
+    TemplateCache templateCache;
+    
+    // Criteria that the mock criteria DAO returns from a batch get, by key.
+    Map<String, Criteria> savedCriteria;
+    
     @BeforeMethod
     public void beforeMethod() throws Exception {
         MockitoAnnotations.initMocks(this);
@@ -138,6 +146,20 @@ public class TemplateServiceTest extends Mockito {
         app.setDefaultTemplates(new HashMap<>());
         when(mockAppService.getApp(TEST_APP_ID)).thenReturn(app);
         when(mockStudyService.getStudyIds(TEST_APP_ID)).thenReturn(USER_STUDY_IDS);
+        
+        templateCache = spy(new TemplateCache());
+        service.setTemplateCache(templateCache);
+        
+        savedCriteria = new HashMap<>();
+        when(mockCriteriaDao.batchGetCriteria(any())).thenAnswer(invocation -> {
+            Map<String, Criteria> results = new HashMap<>();
+            for (String key : invocation.<Collection<String>>getArgument(0)) {
+                if (savedCriteria.containsKey(key)) {
+                    results.put(key, savedCriteria.get(key));
+                }
+            }
+            return results;
+        });
     }
     
     @AfterMethod
@@ -158,6 +180,7 @@ public class TemplateServiceTest extends Mockito {
         criteria.setAllOfStudyIds(ImmutableSet.of());
         criteria.setNoneOfStudyIds(ImmutableSet.of());
         when(mockCriteriaDao.getCriteria("template:"+guid)).thenReturn(criteria);
+        savedCriteria.put("template:"+guid, criteria);
         return criteria;
     }
     
@@ -270,6 +293,52 @@ public class TemplateServiceTest extends Mockito {
 
         assertFalse(service.getTemplateForUser(app, makeContext("fr"), EMAIL_RESET_PASSWORD).isPresent());
     }
+    
+    @Test
+    public void getTemplateForUserLoadsCriteriaInOneBatch() {
+        Template t1 = makeTemplate(GUID1, "en");
+        Template t2 = makeTemplate(GUID2, "fr");
+        t1.setCriteria(null);
+        t2.setCriteria(null);
+        mockGetTemplates(ImmutableList.of(t1, t2));
+        
+        Template template = service.getTemplateForUser(app, makeContext("fr"), EMAIL_RESET_PASSWORD).get();
+        assertEquals(template, t2);
+        assertEquals(t1.getCriteria().getLanguage(), "en");
+        assertEquals(t2.getCriteria().getLanguage(), "fr");
+        
+        verify(mockCriteriaDao).batchGetCriteria(ImmutableList.of("template:"+GUID1, "template:"+GUID2));
+        verify(mockCriteriaDao, never()).getCriteria(any());
+    }
+    
+    @Test
+    public void getTemplateForUserUsesCachedTemplates() {
+        Template t1 = makeTemplate(GUID1, "en");
+        Template t2 = makeTemplate(GUID2, "fr");
+        mockGetTemplates(ImmutableList.of(t1, t2));
+        
+        assertEquals(service.getTemplateForUser(app, makeContext("fr"), EMAIL_RESET_PASSWORD).get(), t2);
+        assertEquals(service.getTemplateForUser(app, makeContext("en"), EMAIL_RESET_PASSWORD).get(), t1);
+        
+        verify(mockTemplateDao, times(1)).getTemplates(TEST_APP_ID, EMAIL_RESET_PASSWORD, null, null, false);
+        verify(mockCriteriaDao, times(1)).batchGetCriteria(any());
+    }
+    
+    // More than one template matches, and the default is not one of the templates of this type, so it's loaded
+    @Test
+    public void getTemplateForUserMatchesManyLoadsDefaultNotInIndex() {
+        Template t1 = makeTemplate(GUID1, "fr");
+        Template t2 = makeTemplate(GUID2, "fr");
+        mockGetTemplates(ImmutableList.of(t1, t2));
+        
+        Template defaultTemplate = makeTemplate("defaultGuid", "en");
+        mockTemplateDefault("defaultGuid");
+        
+        Template template = service.getTemplateForUser(app, makeContext("fr"), EMAIL_RESET_PASSWORD).get();
+        assertEquals(template, defaultTemplate);
+        
+        verify(mockTemplateDao).getTemplate(TEST_APP_ID, "defaultGuid");
+    }
 
     @Test
     public void getTemplatesForType() {
@@ -284,17 +353,17 @@ public class TemplateServiceTest extends Mockito {
         doReturn(resourceList).when(mockTemplateDao).getTemplates(TEST_APP_ID, EMAIL_RESET_PASSWORD, 5, 50, true);
         
         Criteria criteria = Criteria.create();
-        when(mockCriteriaDao.getCriteria(any())).thenReturn(criteria);
+        savedCriteria.put("template:guidOne", criteria);
+        savedCriteria.put("template:guidTwo", criteria);
         
         PagedResourceList<? extends Template> results = service.getTemplatesForType(TEST_APP_ID, EMAIL_RESET_PASSWORD, 5, 50, true);
         assertSame(results, resourceList);
         
         for (Template template : results.getItems()) {
-            assertNotNull(template.getCriteria());
+            assertSame(template.getCriteria(), criteria);
         }
         verify(mockTemplateDao).getTemplates(TEST_APP_ID, EMAIL_RESET_PASSWORD, 5, 50, true);
-        verify(mockCriteriaDao).getCriteria("template:guidOne");
-        verify(mockCriteriaDao).getCriteria("template:guidTwo");
+        verify(mockCriteriaDao).batchGetCriteria(ImmutableList.of("template:guidOne", "template:guidTwo"));
     }
     
     @Test
@@ -417,6 +486,7 @@ public class TemplateServiceTest extends Mockito {
         verify(mockTemplateRevisionDao).createTemplateRevision(revisionCaptor.capture());
         verify(mockCriteriaDao).createOrUpdateCriteria(criteria);
         verify(mockTemplateDao).createTemplate(template);
+        verify(templateCache).invalidate(TEST_APP_ID);
         
         TemplateRevision revision = revisionCaptor.getValue();
         assertEquals(revision.getCreatedBy(), TEST_USER_ID);
@@ -486,6 +556,7 @@ public class TemplateServiceTest extends Mockito {
         
         verify(mockCriteriaDao).createOrUpdateCriteria(criteria);
         verify(mockTemplateDao).updateTemplate(template);
+        verify(templateCache).invalidate(TEST_APP_ID);
     }
     
     @Test
@@ -555,6 +626,7 @@ public class TemplateServiceTest extends Mockito {
         Template persisted = templateCaptor.getValue();
         assertTrue(persisted.isDeleted());
         assertEquals(persisted.getModifiedOn(), TIMESTAMP);
+        verify(templateCache).invalidate(TEST_APP_ID);
     }
     
     @Test(expectedExceptions = EntityNotFoundException.class)
@@ -587,6 +659,7 @@ public class TemplateServiceTest extends Mockito {
 
         verify(mockCriteriaDao).deleteCriteria("template:"+GUID1);
         verify(mockTemplateDao).deleteTemplatePermanently(TEST_APP_ID, GUID1);
+        verify(templateCache).invalidate(TEST_APP_ID);
     }
     
     @Test(expectedExceptions = EntityNotFoundException.class)
@@ -682,5 +755,6 @@ public class TemplateServiceTest extends Mockito {
         service.deleteTemplatesForApp(TEST_APP_ID);
         
         verify(mockTemplateDao).deleteTemplatesForApp(TEST_APP_ID);
+        verify(templateCache).invalidate(TEST_APP_ID);
     }
 }
@@ -19,6 +19,7 @@ import static org.testng.Assert.fail;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
@@ -29,6 +30,7 @@ import org.mockito.MockitoAnnotations;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import org.sagebionetworks.bridge.cache.ImmutableArtifactCache;
 import org.sagebionetworks.bridge.dao.UploadSchemaDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
@@ -53,6 +55,7 @@ public class UploadSchemaServiceTest {
     private UploadSchemaDao dao;
     private UploadSchemaService svc;
     private SharedModuleMetadataService mockSharedModuleMetadataService;
+    private ImmutableArtifactCache mockImmutableArtifactCache;
 
     @Captor
     ArgumentCaptor<String> queryCaptor;
@@ -70,6 +73,8 @@ public class UploadSchemaServiceTest {
         svc = new UploadSchemaService();
         svc.setUploadSchemaDao(dao);
         svc.setSharedModuleMetadataService(mockSharedModuleMetadataService);
+        mockImmutableArtifactCache = mock(ImmutableArtifactCache.class);
+        svc.setImmutableArtifactCache(mockImmutableArtifactCache);
     }
 
     @Test(expectedExceptions = BadRequestException.class)
@@ -294,6 +299,7 @@ public class UploadSchemaServiceTest {
         // execute and verify delete call
         svc.deleteUploadSchemaById(TEST_APP_ID, SCHEMA_ID);
         verify(dao).deleteUploadSchemas(schemaListToDelete);
+        verify(mockImmutableArtifactCache).invalidate(TEST_APP_ID);
 
         // verify query args
         verify(mockSharedModuleMetadataService).queryAllMetadata(eq(false), eq(false), queryCaptor.capture(),
@@ -315,6 +321,7 @@ public class UploadSchemaServiceTest {
         // execute and verify delete call
         svc.deleteUploadSchemaByIdPermanently(TEST_APP_ID, SCHEMA_ID);
         verify(dao).deleteUploadSchemasPermanently(schemaListToDelete);
+        verify(mockImmutableArtifactCache).invalidate(TEST_APP_ID);
 
         // verify query args
         verify(mockSharedModuleMetadataService).queryAllMetadata(eq(false), eq(false), queryCaptor.capture(),
@@ -438,6 +445,7 @@ public class UploadSchemaServiceTest {
         // execute and verify delete call
         svc.deleteUploadSchemaByIdAndRevision(TEST_APP_ID, SCHEMA_ID, SCHEMA_REV);
         verify(dao).deleteUploadSchemas(ImmutableList.of(schemaToDelete));
+        verify(mockImmutableArtifactCache).invalidate(TEST_APP_ID);
 
         // verify query args
         verify(mockSharedModuleMetadataService).queryAllMetadata(eq(false), eq(false), queryCaptor.capture(),
@@ -459,6 +467,7 @@ public class UploadSchemaServiceTest {
         // execute and verify delete call
         svc.deleteUploadSchemaByIdAndRevisionPermanently(TEST_APP_ID, SCHEMA_ID, SCHEMA_REV);
         verify(dao).deleteUploadSchemasPermanently(ImmutableList.of(schemaToDelete));
+        verify(mockImmutableArtifactCache).invalidate(TEST_APP_ID);
 
         // verify query args
         verify(mockSharedModuleMetadataService).queryAllMetadata(eq(false), eq(false), queryCaptor.capture(),
@@ -662,6 +671,24 @@ public class UploadSchemaServiceTest {
         assertSame(svcOutputSchema, daoOutputSchema);
     }
 
+    @Test(expectedExceptions = BadRequestException.class)
+    public void getCachedByIdAndRevBlankId() {
+        svc.getCachedUploadSchemaByIdAndRev(TEST_APP_ID, "   ", SCHEMA_REV);
+    }
+
+    @Test
+    public void getCachedByIdAndRevSuccess() {
+        UploadSchema daoOutputSchema = makeSimpleSchema();
+        when(dao.getUploadSchemaByIdAndRevision(TEST_APP_ID, SCHEMA_ID, SCHEMA_REV)).thenReturn(
+                daoOutputSchema);
+        when(mockImmutableArtifactCache.getUploadSchema(eq(TEST_APP_ID), eq(SCHEMA_ID), eq(SCHEMA_REV), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<UploadSchema>>getArgument(3).get());
+
+        UploadSchema svcOutputSchema = svc.getCachedUploadSchemaByIdAndRev(TEST_APP_ID, SCHEMA_ID, SCHEMA_REV);
+        assertSame(svcOutputSchema, daoOutputSchema);
+        verify(dao).getUploadSchemaByIdAndRevision(TEST_APP_ID, SCHEMA_ID, SCHEMA_REV);
+    }
+
     @Test(expectedExceptions = BadRequestException.class)
     public void getLatestNullId() {
         svc.getLatestUploadSchemaRevisionForAppVersion(TEST_APP_ID, null, ClientInfo.UNKNOWN_CLIENT);
@@ -839,6 +866,7 @@ public class UploadSchemaServiceTest {
         
         verify(dao).updateSchemaRevision(schemaCaptor.capture());
         assertTrue(schemaCaptor.getValue().isDeleted());
+        verify(mockImmutableArtifactCache).invalidate(TEST_APP_ID);
     }
     
     @Test
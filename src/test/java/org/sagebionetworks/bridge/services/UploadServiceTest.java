@@ -3,6 +3,7 @@ package org.sagebionetworks.bridge.services;
 import static com.amazonaws.services.s3.Headers.SERVER_SIDE_ENCRYPTION;
 import static com.amazonaws.services.s3.model.ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyBoolean;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.eq;
@@ -575,7 +576,7 @@ public class UploadServiceTest {
         svc.uploadComplete(TEST_APP_ID, S3_WORKER, upload, true);
         
         verify(mockUploadDao).uploadComplete(S3_WORKER, upload);
-        verify(mockUploadValidationService).validateUpload(TEST_APP_ID, upload);
+        verify(mockUploadValidationService).validateUpload(TEST_APP_ID, upload, true);
     }
     
     @Test
@@ -590,7 +591,7 @@ public class UploadServiceTest {
         
         verify(mockS3Client, never()).getObjectMetadata(any(), any());
         verify(mockUploadDao, never()).uploadComplete(any(), any());
-        verify(mockUploadValidationService, never()).validateUpload(any(), any());
+        verify(mockUploadValidationService, never()).validateUpload(any(), any(), anyBoolean());
     }
 
     @Test(expectedExceptions = BridgeServiceException.class)
@@ -634,7 +635,7 @@ public class UploadServiceTest {
         svc.uploadComplete(TEST_APP_ID, S3_WORKER, upload, true);
         
         verify(mockUploadDao).uploadComplete(S3_WORKER, upload);
-        verify(mockUploadValidationService, never()).validateUpload(TEST_APP_ID, upload);
+        verify(mockUploadValidationService, never()).validateUpload(TEST_APP_ID, upload, true);
     }
     
     UploadRequest constructUploadRequest() {
@@ -1,6 +1,7 @@
 package org.sagebionetworks.bridge.services;
 
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyBoolean;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -171,7 +172,8 @@ public class UploadServiceUploadCompleteTest {
         svc.uploadComplete(TEST_APP_ID, APP, upload, false);
 
         // Verify upload DAO and validation.
-        verify(mockUploadValidationService, never()).validateUpload(any(String.class), any(Upload.class));
+        verify(mockUploadValidationService, never()).validateUpload(any(String.class), any(Upload.class),
+                anyBoolean());
     }
 
     @Test
@@ -191,7 +193,7 @@ public class UploadServiceUploadCompleteTest {
 
         // Verify upload DAO and validation.
         verify(mockUploadDao).uploadComplete(APP, upload);
-        verify(mockUploadValidationService).validateUpload(TEST_APP_ID, upload);
+        verify(mockUploadValidationService).validateUpload(TEST_APP_ID, upload, false);
     }
 
     @Test
@@ -211,6 +213,6 @@ public class UploadServiceUploadCompleteTest {
 
         // Verify upload DAO and validation.
         verify(mockUploadDao).uploadComplete(APP, upload);
-        verify(mockUploadValidationService).validateUpload(TEST_APP_ID, upload);
+        verify(mockUploadValidationService).validateUpload(TEST_APP_ID, upload, true);
     }
 }
@@ -2,48 +2,103 @@ package org.sagebionetworks.bridge.services;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
-import java.util.concurrent.ExecutorService;
-
+import com.google.common.collect.ImmutableList;
+import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.dao.UploadDao;
 import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
 import org.sagebionetworks.bridge.models.apps.App;
-import org.sagebionetworks.bridge.models.upload.Upload;
+import org.sagebionetworks.bridge.models.upload.UploadStatus;
+import org.sagebionetworks.bridge.upload.UploadValidationExecutor;
 import org.sagebionetworks.bridge.upload.UploadValidationTask;
 import org.sagebionetworks.bridge.upload.UploadValidationTaskFactory;
 
 public class UploadValidationServiceTest {
-    @Test
-    public void test() {
-        // UploadValidationService is a simple call-through to the task factory and the async thread pool. As such, our
-        // test strategy is to verify that execution flows through to these dependencies.
+    private static final long SMALL_UPLOAD_BYTES = 1000L;
+
+    private String appId;
+    private DynamoUpload2 upload;
+    private UploadValidationTask mockTask;
+    private UploadDao mockUploadDao;
+    private UploadValidationExecutor mockExecutor;
+    private UploadValidationService svc;
+
+    @BeforeMethod
+    public void before() {
+        // UploadValidationService is a simple call-through to the task factory and the upload validation executor. As
+        // such, our test strategy is to verify that execution flows through to these dependencies.
 
         // inputs
         App app = TestUtils.getValidApp(UploadValidationServiceTest.class);
-        Upload upload = new DynamoUpload2();
+        appId = app.getIdentifier();
+        upload = new DynamoUpload2();
+        upload.setUploadId("test-upload");
 
         // mock task
-        UploadValidationTask mockTask = mock(UploadValidationTask.class);
+        mockTask = mock(UploadValidationTask.class);
 
         // mock task factory
         UploadValidationTaskFactory mockTaskFactory = mock(UploadValidationTaskFactory.class);
-        when(mockTaskFactory.newTask(app.getIdentifier(), upload)).thenReturn(mockTask);
+        when(mockTaskFactory.newTask(appId, upload)).thenReturn(mockTask);
 
-        // mock async thread pool
-        ExecutorService mockExecutor = mock(ExecutorService.class);
+        // mock executor and dao
+        mockExecutor = mock(UploadValidationExecutor.class);
+        mockUploadDao = mock(UploadDao.class);
 
         // set up service
-        UploadValidationService svc = new UploadValidationService();
-        svc.setAsyncExecutorService(mockExecutor);
+        svc = new UploadValidationService();
+        svc.setSmallUploadBytes(SMALL_UPLOAD_BYTES);
         svc.setTaskFactory(mockTaskFactory);
+        svc.setUploadDao(mockUploadDao);
+        svc.setUploadValidationExecutor(mockExecutor);
+    }
+
+    @Test
+    public void largeUploadIsNormalPriority() {
+        upload.setContentLength(SMALL_UPLOAD_BYTES + 1);
+        when(mockExecutor.submit(appId, mockTask, false)).thenReturn(true);
+
+        svc.validateUpload(appId, upload, false);
+
+        verify(mockExecutor).submit(appId, mockTask, false);
+        verifyZeroInteractions(mockUploadDao);
+    }
+
+    @Test
+    public void smallUploadIsHighPriority() {
+        upload.setContentLength(SMALL_UPLOAD_BYTES);
+        when(mockExecutor.submit(appId, mockTask, true)).thenReturn(true);
+
+        svc.validateUpload(appId, upload, false);
+
+        verify(mockExecutor).submit(appId, mockTask, true);
+        verifyZeroInteractions(mockUploadDao);
+    }
+
+    @Test
+    public void redriveIsHighPriority() {
+        upload.setContentLength(SMALL_UPLOAD_BYTES + 1);
+        when(mockExecutor.submit(appId, mockTask, true)).thenReturn(true);
+
+        svc.validateUpload(appId, upload, true);
+
+        verify(mockExecutor).submit(appId, mockTask, true);
+        verifyZeroInteractions(mockUploadDao);
+    }
+
+    @Test
+    public void rejectedUploadIsMarkedForRedrive() {
+        upload.setContentLength(SMALL_UPLOAD_BYTES + 1);
+        when(mockExecutor.submit(appId, mockTask, false)).thenReturn(false);
 
-        // execute
-        svc.validateUpload(app.getIdentifier(), upload);
+        svc.validateUpload(appId, upload, false);
 
-        // validate
-        verify(mockExecutor).execute(mockTask);
+        verify(mockUploadDao).writeValidationStatus(upload, UploadStatus.REQUESTED,
+                ImmutableList.of(UploadValidationService.QUEUE_FULL_MESSAGE), null);
     }
 }
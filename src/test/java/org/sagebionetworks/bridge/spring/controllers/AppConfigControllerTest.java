@@ -263,7 +263,7 @@ public class AppConfigControllerTest extends Mockito {
         
         controller.getAppConfigByCriteria(TEST_APP_ID);
         
-        verify(mockCacheProvider).addCacheKeyToSet(CACHE_KEY, "26:iPhone OS:en:" + TEST_APP_ID + ":AppConfig:view");
+        verify(mockCacheProvider).addCacheKeyToSet(CACHE_KEY, "26:iPhone OS:en:" + TEST_APP_ID + ":AppConfig:view:v2");
     }
 
     @Test
@@ -117,6 +117,7 @@ public class ExternalIdControllerV4Test extends Mockito {
         assertDelete(ExternalIdControllerV4.class, "deleteExternalIdentifier");
         assertPost(ExternalIdControllerV4.class, "generatePassword");
         assertGet(ExternalIdControllerV4.class, "getExternalIdentifiersForStudy");
+        assertGet(ExternalIdControllerV4.class, "getExternalIdentifiersForStudyByOffsetKey");
     }
     
     @Test
@@ -213,4 +214,41 @@ public class ExternalIdControllerV4Test extends Mockito {
         
         verify(mockService).getPagedExternalIds(TEST_APP_ID, TEST_STUDY_ID, null, 0, API_DEFAULT_PAGE_SIZE);        
     }
+
+    @Test
+    public void getExternalIdentifiersForStudyByOffsetKey() {
+        doReturn(session).when(controller).getAdministrativeSession();
+        
+        RequestContext.set(new RequestContext.Builder()
+                .withCallerRoles(ImmutableSet.of(RESEARCHER)).build());
+
+        ForwardCursorPagedResourceList<ExternalIdentifierInfo> page = new ForwardCursorPagedResourceList<>(
+                ImmutableList.of(), "nextKey", true);
+        when(mockService.getExternalIdsAfter(TEST_APP_ID, TEST_STUDY_ID, "idFilter", "offsetKey", 50))
+            .thenReturn(page);
+        
+        ForwardCursorPagedResourceList<ExternalIdentifierInfo> retValue = controller
+                .getExternalIdentifiersForStudyByOffsetKey(TEST_STUDY_ID, "offsetKey", "50", "idFilter");
+        assertEquals(retValue, page);
+        
+        verify(mockService).getExternalIdsAfter(TEST_APP_ID, TEST_STUDY_ID, "idFilter", "offsetKey", 50);
+    }
+
+    @Test
+    public void getExternalIdentifiersForStudyByOffsetKeyFirstPage() {
+        doReturn(session).when(controller).getAdministrativeSession();
+        
+        RequestContext.set(new RequestContext.Builder()
+                .withOrgSponsoredStudies(ImmutableSet.of(TEST_STUDY_ID))
+                .withCallerRoles(ImmutableSet.of(STUDY_COORDINATOR)).build());
+
+        ForwardCursorPagedResourceList<ExternalIdentifierInfo> page = new ForwardCursorPagedResourceList<>(
+                ImmutableList.of(), null, true);
+        when(mockService.getExternalIdsAfter(TEST_APP_ID, TEST_STUDY_ID, null, "", API_DEFAULT_PAGE_SIZE))
+            .thenReturn(page);
+        
+        ForwardCursorPagedResourceList<ExternalIdentifierInfo> retValue = controller
+                .getExternalIdentifiersForStudyByOffsetKey(TEST_STUDY_ID, "", null, null);
+        assertEquals(retValue, page);
+    }
 }
@@ -0,0 +1,74 @@
+package org.sagebionetworks.bridge.spring.controllers;
+
+import static org.sagebionetworks.bridge.Roles.ADMIN;
+import static org.sagebionetworks.bridge.Roles.SUPERADMIN;
+import static org.sagebionetworks.bridge.TestConstants.TEST_USER_ID;
+import static org.sagebionetworks.bridge.TestUtils.assertCrossOrigin;
+import static org.sagebionetworks.bridge.TestUtils.assertGet;
+import static org.testng.Assert.assertSame;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableSet;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.sagebionetworks.bridge.exceptions.UnauthorizedException;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
+import org.sagebionetworks.bridge.models.accounts.UserSession;
+import org.sagebionetworks.bridge.services.MetricsAdminService;
+
+public class MetricsAdminControllerTest extends Mockito {
+
+    @Mock
+    private MetricsAdminService mockMetricsAdminService;
+
+    @InjectMocks
+    @Spy
+    private MetricsAdminController controller = new MetricsAdminController();
+
+    private UserSession session;
+
+    @BeforeMethod
+    private void before() {
+        MockitoAnnotations.initMocks(this);
+
+        session = new UserSession();
+        session.setParticipant(new StudyParticipant.Builder()
+                .withRoles(ImmutableSet.of(SUPERADMIN)).withId(TEST_USER_ID).build());
+        doAnswer(answer -> {
+            if (session.isInRole(SUPERADMIN)) {
+                return session;
+            }
+            throw new UnauthorizedException("Nope");
+        }).when(controller).getAuthenticatedSession(any());
+    }
+
+    @Test
+    public void verifyAnnotations() throws Exception {
+        assertCrossOrigin(MetricsAdminController.class);
+        assertGet(MetricsAdminController.class, "getMetrics");
+    }
+
+    @Test
+    public void getMetrics() {
+        JsonNode metrics = BridgeObjectMapper.get().createObjectNode();
+        when(mockMetricsAdminService.getMetrics("upload.validation")).thenReturn(metrics);
+
+        JsonNode result = controller.getMetrics("upload.validation");
+        assertSame(result, metrics);
+    }
+
+    @Test(expectedExceptions = UnauthorizedException.class)
+    public void getMetricsRejectsAppAdmin() {
+        session.setParticipant(new StudyParticipant.Builder()
+                .withRoles(ImmutableSet.of(ADMIN)).withId(TEST_USER_ID).build());
+
+        controller.getMetrics(null);
+    }
+}
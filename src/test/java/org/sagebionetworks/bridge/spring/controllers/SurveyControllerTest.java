@@ -14,12 +14,23 @@ import static org.sagebionetworks.bridge.TestUtils.assertGet;
 import static org.sagebionetworks.bridge.TestUtils.assertPost;
 import static org.sagebionetworks.bridge.TestUtils.mockRequestBody;
 import static org.sagebionetworks.bridge.TestUtils.randomName;
+import static org.springframework.http.HttpHeaders.ACCEPT_ENCODING;
+import static org.springframework.http.HttpHeaders.CONTENT_ENCODING;
+import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
+import static org.springframework.http.HttpHeaders.VARY;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -35,6 +46,9 @@ import org.mockito.MockitoAnnotations;
 import org.mockito.Spy;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -95,7 +109,7 @@ public class SurveyControllerTest extends Mockito {
     
     ViewCache viewCache;
     
-    Map<CacheKey,String> cacheMap;
+    Map<CacheKey,byte[]> cacheMap;
     
     UserSession session;
     
@@ -110,9 +124,9 @@ public class SurveyControllerTest extends Mockito {
         viewCache.setObjectMapper(BridgeObjectMapper.get());
         viewCache.setCachePeriod(BRIDGE_VIEW_EXPIRE_IN_SECONDS);
         
-        when(mockCacheProvider.getObject(any(), eq(String.class))).thenAnswer(new Answer<String>() {
+        when(mockCacheProvider.getBytes(any())).thenAnswer(new Answer<byte[]>() {
             @Override
-            public String answer(InvocationOnMock invocation) throws Throwable {
+            public byte[] answer(InvocationOnMock invocation) throws Throwable {
                 CacheKey key = invocation.getArgument(0);
                 return cacheMap.get(key);
             }
@@ -121,11 +135,11 @@ public class SurveyControllerTest extends Mockito {
             @Override
             public Void answer(InvocationOnMock invocation) throws Throwable {
                 CacheKey key = invocation.getArgument(0);
-                String value = invocation.getArgument(1);
+                byte[] value = invocation.getArgument(1);
                 cacheMap.put(key, value);
                 return null;
             }
-        }).when(mockCacheProvider).setObject(any(), anyString(), anyInt());
+        }).when(mockCacheProvider).setBytes(any(), any(), anyInt());
         doAnswer(new Answer<Void>() {
             @Override
             public Void answer(InvocationOnMock invocation) throws Throwable {
@@ -310,12 +324,95 @@ public class SurveyControllerTest extends Mockito {
         when(mockSurveyService.getSurvey(null, KEYS, true, true)).thenReturn(survey);
 
         // execute and validate
-        String result = controller.getSurvey(SURVEY_GUID, CREATED_ON.toString());
+        ResponseEntity<byte[]> result = controller.getSurvey(SURVEY_GUID, CREATED_ON.toString());
         
-        Survey resultSurvey = BridgeObjectMapper.get().readValue(result, Survey.class);
+        Survey resultSurvey = BridgeObjectMapper.get().readValue(result.getBody(), Survey.class);
         assertEquals("test-survey", resultSurvey.getGuid());
     }
 
+    @Test
+    public void getSurveyReturnsEtag() throws Exception {
+        setupContext(TEST_APP_ID, CONSENTED, DEVELOPER);
+        doReturn(session).when(controller).getSessionEitherConsentedOrInRole(WORKER, DEVELOPER);
+        when(mockSurveyService.getSurvey(TEST_APP_ID, KEYS, true, true)).thenReturn(getSurvey(false));
+        
+        ResponseEntity<byte[]> result = controller.getSurvey(SURVEY_GUID, CREATED_ON.toString());
+        
+        assertEquals(result.getStatusCode(), HttpStatus.OK);
+        assertNotNull(result.getHeaders().getETag());
+        assertEquals(result.getHeaders().getContentType(), MediaType.APPLICATION_JSON_UTF8);
+        assertNull(result.getHeaders().getFirst(CONTENT_ENCODING));
+        Survey resultSurvey = BridgeObjectMapper.get().readValue(result.getBody(), Survey.class);
+        assertEquals(resultSurvey.getGuid(), SURVEY_GUID);
+        
+        // The client sends the ETag back, and the view hasn't changed.
+        when(mockRequest.getHeader(IF_NONE_MATCH)).thenReturn(result.getHeaders().getETag());
+        
+        ResponseEntity<byte[]> notModified = controller.getSurvey(SURVEY_GUID, CREATED_ON.toString());
+        
+        assertEquals(notModified.getStatusCode(), HttpStatus.NOT_MODIFIED);
+        assertEquals(notModified.getHeaders().getETag(), result.getHeaders().getETag());
+        assertNull(notModified.getBody());
+        // The second request is served from the cache.
+        verify(mockSurveyService, times(1)).getSurvey(TEST_APP_ID, KEYS, true, true);
+    }
+
+    @Test
+    public void getSurveyGzipped() throws Exception {
+        viewCache.setCompressionThreshold(0);
+        setupContext(TEST_APP_ID, CONSENTED, DEVELOPER);
+        doReturn(session).when(controller).getSessionEitherConsentedOrInRole(WORKER, DEVELOPER);
+        when(mockSurveyService.getSurvey(TEST_APP_ID, KEYS, true, true)).thenReturn(getSurvey(false));
+        when(mockRequest.getHeader(ACCEPT_ENCODING)).thenReturn("gzip, deflate");
+        
+        ResponseEntity<byte[]> result = controller.getSurvey(SURVEY_GUID, CREATED_ON.toString());
+        
+        assertEquals(result.getHeaders().getFirst(CONTENT_ENCODING), "gzip");
+        assertEquals(result.getHeaders().getFirst(VARY), ACCEPT_ENCODING);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(result.getBody()))) {
+            Survey resultSurvey = BridgeObjectMapper.get().readValue(in, Survey.class);
+            assertEquals(resultSurvey.getGuid(), SURVEY_GUID);
+        }
+        
+        // Clients that don't accept gzip get the same view, uncompressed.
+        when(mockRequest.getHeader(ACCEPT_ENCODING)).thenReturn(null);
+        
+        ResponseEntity<byte[]> uncompressed = controller.getSurvey(SURVEY_GUID, CREATED_ON.toString());
+        
+        assertNull(uncompressed.getHeaders().getFirst(CONTENT_ENCODING));
+        assertEquals(uncompressed.getHeaders().getETag(), result.getHeaders().getETag());
+        Survey resultSurvey = BridgeObjectMapper.get().readValue(uncompressed.getBody(), Survey.class);
+        assertEquals(resultSurvey.getGuid(), SURVEY_GUID);
+    }
+
+    @Test
+    public void getSurveyNotGzippedBelowThreshold() throws Exception {
+        setupContext(TEST_APP_ID, CONSENTED, DEVELOPER);
+        doReturn(session).when(controller).getSessionEitherConsentedOrInRole(WORKER, DEVELOPER);
+        when(mockSurveyService.getSurvey(TEST_APP_ID, KEYS, true, true)).thenReturn(getSurvey(false));
+        when(mockRequest.getHeader(ACCEPT_ENCODING)).thenReturn("gzip");
+        
+        ResponseEntity<byte[]> result = controller.getSurvey(SURVEY_GUID, CREATED_ON.toString());
+        
+        assertNull(result.getHeaders().getFirst(CONTENT_ENCODING));
+        Survey resultSurvey = BridgeObjectMapper.get().readValue(result.getBody(), Survey.class);
+        assertEquals(resultSurvey.getGuid(), SURVEY_GUID);
+    }
+
+    @Test
+    public void acceptsGzip() {
+        assertTrue(SurveyController.acceptsGzip("gzip"));
+        assertTrue(SurveyController.acceptsGzip("deflate, GZIP"));
+        assertTrue(SurveyController.acceptsGzip("gzip;q=0.5"));
+        assertTrue(SurveyController.acceptsGzip("*"));
+        
+        assertFalse(SurveyController.acceptsGzip(null));
+        assertFalse(SurveyController.acceptsGzip(""));
+        assertFalse(SurveyController.acceptsGzip("deflate"));
+        assertFalse(SurveyController.acceptsGzip("gzip;q=0"));
+        assertFalse(SurveyController.acceptsGzip("gzip; q=0.0"));
+    }
+
     @Test
     public void getSurveyMostRecentVersion() throws Exception {
         setupContext(TEST_APP_ID, UNCONSENTED, DEVELOPER);
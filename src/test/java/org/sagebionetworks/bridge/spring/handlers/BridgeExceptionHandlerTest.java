@@ -42,6 +42,7 @@ import org.sagebionetworks.bridge.dynamodb.DynamoApp;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.exceptions.ConsentRequiredException;
 import org.sagebionetworks.bridge.exceptions.InvalidEntityException;
+import org.sagebionetworks.bridge.exceptions.LimitExceededException;
 import org.sagebionetworks.bridge.models.accounts.SharingScope;
 import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
 import org.sagebionetworks.bridge.models.accounts.UserSession;
@@ -253,6 +254,30 @@ public class BridgeExceptionHandlerTest extends Mockito {
         }
     }
     
+    @Test
+    public void limitExceededExceptionIncludesRetryAfter() throws Throwable {
+        LimitExceededException ex = new LimitExceededException("Try again later", 5);
+        
+        ResponseEntity<String> response = handler.handleException(mockRequest, ex);
+        JsonNode node = new ObjectMapper().readTree(response.getBody());
+        
+        assertEquals(response.getStatusCodeValue(), 429);
+        assertEquals(response.getHeaders().getFirst(BridgeExceptionHandler.RETRY_AFTER_HEADER), "5");
+        assertEquals(node.get("statusCode").intValue(), 429);
+        assertEquals(node.get("type").textValue(), "LimitExceededException");
+        assertFalse(node.has("retryAfterSeconds"));
+    }
+    
+    @Test
+    public void limitExceededExceptionWithoutRetryAfter() throws Throwable {
+        LimitExceededException ex = new LimitExceededException("Too many users");
+        
+        ResponseEntity<String> response = handler.handleException(mockRequest, ex);
+        
+        assertEquals(response.getStatusCodeValue(), 429);
+        assertFalse(response.getHeaders().containsKey(BridgeExceptionHandler.RETRY_AFTER_HEADER));
+    }
+    
     @Test
     public void convertsMissingServletRequestParameterException() throws Throwable {
         MissingServletRequestParameterException ex = new MissingServletRequestParameterException("myParam", "String");
@@ -0,0 +1,93 @@
+package org.sagebionetworks.bridge.upload;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.annotations.Test;
+
+public class AttachmentUploadBatchTest {
+    private static final String UPLOAD_ID = "upload-id";
+
+    @Test
+    public void emptyBatch() throws Exception {
+        AttachmentUploadBatch batch = new AttachmentUploadBatch(UPLOAD_ID);
+        assertEquals(batch.size(), 0);
+
+        // Does not throw.
+        batch.await();
+    }
+
+    @Test
+    public void awaitSucceeds() throws Exception {
+        AttachmentUploadBatch batch = new AttachmentUploadBatch(UPLOAD_ID);
+        batch.add("attachment-1", completedTask(null));
+        batch.add("attachment-2", completedTask(null));
+        assertEquals(batch.size(), 2);
+
+        // Does not throw.
+        batch.await();
+    }
+
+    @Test
+    public void awaitThrowsFirstFailure() throws Exception {
+        IOException firstEx = new IOException("first");
+        AttachmentUploadBatch batch = new AttachmentUploadBatch(UPLOAD_ID);
+        batch.add("attachment-1", completedTask(null));
+        batch.add("attachment-2", completedTask(firstEx));
+        batch.add("attachment-3", completedTask(new IOException("second")));
+
+        try {
+            batch.await();
+            fail("expected exception");
+        } catch (UploadValidationException ex) {
+            assertSame(ex.getCause(), firstEx);
+            assertTrue(ex.getMessage().contains(UPLOAD_ID));
+            assertTrue(ex.getMessage().contains("attachment-2"));
+        }
+    }
+
+    @Test
+    public void cancelWaitsAndIgnoresFailures() throws Exception {
+        AttachmentUploadBatch batch = new AttachmentUploadBatch(UPLOAD_ID);
+        assertFalse(batch.isCancelled());
+        batch.add("attachment-1", completedTask(new IOException("failed")));
+
+        // A task that is still running when the batch is cancelled.
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean finished = new AtomicBoolean();
+        FutureTask<Void> runningTask = new FutureTask<>(() -> {
+            started.countDown();
+            Thread.sleep(100);
+            finished.set(true);
+            return null;
+        });
+        Thread thread = new Thread(runningTask);
+        thread.start();
+        started.await();
+        batch.add("attachment-2", runningTask);
+
+        // Does not throw, and doesn't return until the running task is done.
+        batch.cancel();
+        assertTrue(batch.isCancelled());
+        assertTrue(finished.get());
+    }
+
+    private static FutureTask<Void> completedTask(Exception ex) {
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            if (ex != null) {
+                throw ex;
+            }
+            return null;
+        });
+        task.run();
+        return task;
+    }
+}
@@ -0,0 +1,117 @@
+package org.sagebionetworks.bridge.upload;
+
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sagebionetworks.bridge.TestConstants.TEST_APP_ID;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Map;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.S3Object;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.sagebionetworks.bridge.TestConstants;
+import org.sagebionetworks.bridge.file.InMemoryFileHelper;
+import org.sagebionetworks.bridge.models.upload.Upload;
+import org.sagebionetworks.bridge.services.UploadArchiveService;
+
+public class StreamingUnzipHandlerTest {
+    private static final byte[] ENCRYPTED_CONTENT = "encrypted test data".getBytes(Charsets.UTF_8);
+    // Object ID and upload ID are the same.
+    private static final String UPLOAD_ID = "test-upload-id";
+
+    private UploadValidationContext ctx;
+    private InMemoryFileHelper fileHelper;
+    private AmazonS3 mockS3Client;
+    private UploadArchiveService svc;
+    private StreamingUnzipHandler handler;
+    private Upload upload;
+    private byte[] zippedContent;
+
+    @BeforeMethod
+    public void before() {
+        // Set up file helper.
+        fileHelper = new InMemoryFileHelper();
+        File tmpDir = fileHelper.createTempDir();
+
+        // Use a real archive service, so we can test that the zip is streamed through correctly. Only decrypt is
+        // mocked.
+        svc = spy(new UploadArchiveService());
+        svc.setMaxNumZipEntries(100);
+        svc.setMaxZipEntrySize(100000);
+        zippedContent = svc.zip(ImmutableMap.of(
+                "foo", "foo data".getBytes(Charsets.UTF_8),
+                "bar", "bar data".getBytes(Charsets.UTF_8)));
+
+        // Mock S3.
+        S3Object s3Object = new S3Object();
+        s3Object.setObjectContent(new ByteArrayInputStream(ENCRYPTED_CONTENT));
+        mockS3Client = mock(AmazonS3.class);
+        when(mockS3Client.getObject(TestConstants.UPLOAD_BUCKET, UPLOAD_ID)).thenReturn(s3Object);
+
+        // Set up handler. Don't actually buffer the input stream, as this breaks the test.
+        handler = spy(new StreamingUnzipHandler());
+        handler.setFileHelper(fileHelper);
+        handler.setS3Client(mockS3Client);
+        handler.setUploadArchiveService(svc);
+        doAnswer(invocation -> invocation.getArgument(0)).when(handler).getBufferedInputStream(any());
+
+        // inputs
+        upload = Upload.create();
+        upload.setUploadId(UPLOAD_ID);
+        upload.setFilename("test.zip");
+
+        ctx = new UploadValidationContext();
+        ctx.setAppId(TEST_APP_ID);
+        ctx.setUpload(upload);
+        ctx.setTempDir(tmpDir);
+    }
+
+    @Test
+    public void encryptedAndZipped() throws Exception {
+        doReturn(new ByteArrayInputStream(zippedContent)).when(svc).decrypt(eq(TEST_APP_ID), any(InputStream.class));
+
+        handler.handle(ctx);
+
+        // The decrypted zip is written in full, for the raw data attachment.
+        assertEquals(fileHelper.getBytes(ctx.getDecryptedDataFile()), zippedContent);
+        assertNull(ctx.getDataFile());
+
+        Map<String, File> unzippedDataFileMap = ctx.getUnzippedDataFileMap();
+        assertEquals(unzippedDataFileMap.size(), 2);
+        assertEquals(new String(fileHelper.getBytes(unzippedDataFileMap.get("foo")), Charsets.UTF_8), "foo data");
+        assertEquals(new String(fileHelper.getBytes(unzippedDataFileMap.get("bar")), Charsets.UTF_8), "bar data");
+    }
+
+    @Test
+    public void notEncryptedNotZipped() throws Exception {
+        upload.setEncrypted(false);
+        upload.setZipped(false);
+
+        handler.handle(ctx);
+
+        assertEquals(fileHelper.getBytes(ctx.getDecryptedDataFile()), ENCRYPTED_CONTENT);
+        Map<String, File> unzippedDataFileMap = ctx.getUnzippedDataFileMap();
+        assertEquals(unzippedDataFileMap.size(), 1);
+        assertSame(unzippedDataFileMap.get("test.zip"), ctx.getDecryptedDataFile());
+
+        verify(svc, never()).decrypt(any(), any(InputStream.class));
+        verify(svc, never()).unzip(any(), any(), any());
+    }
+}
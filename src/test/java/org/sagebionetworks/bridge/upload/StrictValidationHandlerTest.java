@@ -24,6 +24,7 @@ import org.testng.annotations.Test;
 
 import org.sagebionetworks.bridge.dynamodb.DynamoApp;
 import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
+import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
 import org.sagebionetworks.bridge.models.upload.UploadFieldDefinition;
@@ -70,7 +71,7 @@ public class StrictValidationHandlerTest {
 
         // mock schema service
         UploadSchemaService mockSchemaService = mock(UploadSchemaService.class);
-        when(mockSchemaService.getUploadSchemaByIdAndRev(TEST_APP_ID, "test-schema", 1)).thenReturn(
+        when(mockSchemaService.getCachedUploadSchemaByIdAndRev(TEST_APP_ID, "test-schema", 1)).thenReturn(
                 testSchema);
         handler.setUploadSchemaService(mockSchemaService);
 
@@ -439,4 +440,18 @@ public class StrictValidationHandlerTest {
         // We don't ever use the dependent services.
         verifyZeroInteractions(mockAppService, mockUploadSchemaService);
     }
+
+    @Test(expectedExceptions = EntityNotFoundException.class)
+    public void schemaNotFound() throws Exception {
+        // Schema service returns no schema.
+        handler.setUploadSchemaService(mock(UploadSchemaService.class));
+
+        HealthDataRecord record = HealthDataRecord.create();
+        record.setData(BridgeObjectMapper.get().createObjectNode());
+        record.setSchemaId("test-schema");
+        record.setSchemaRevision(1);
+        context.setHealthDataRecord(record);
+
+        handler.handle(context);
+    }
 }
@@ -1,12 +1,10 @@
 package org.sagebionetworks.bridge.upload;
 
-import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
-import static org.mockito.Mockito.when;
 import static org.mockito.internal.verification.VerificationModeFactory.times;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNull;
@@ -14,6 +12,7 @@ import static org.testng.Assert.assertNull;
 import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -24,7 +23,6 @@ import org.mockito.ArgumentCaptor;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
-import org.sagebionetworks.bridge.TestConstants;
 import org.sagebionetworks.bridge.file.InMemoryFileHelper;
 import org.sagebionetworks.bridge.models.upload.UploadFieldDefinition;
 import org.sagebionetworks.bridge.models.upload.UploadFieldType;
@@ -49,10 +47,6 @@ public class UploadFileHelperFindValueTest {
         tmpDir = inMemoryFileHelper.createTempDir();
 
         // Mock dependencies.
-        DigestUtils mockMd5DigestUtils = mock(DigestUtils.class);
-        when(mockMd5DigestUtils.digest(any(File.class))).thenReturn(TestConstants.MOCK_MD5);
-        when(mockMd5DigestUtils.digest(any(byte[].class))).thenReturn(TestConstants.MOCK_MD5);
-
         mockS3Helper = mock(S3Helper.class);
 
         metadataCaptor = ArgumentCaptor.forClass(ObjectMetadata.class);
@@ -60,7 +54,6 @@ public class UploadFileHelperFindValueTest {
         // Create UploadFileHelper.
         uploadFileHelper = new UploadFileHelper();
         uploadFileHelper.setFileHelper(inMemoryFileHelper);
-        uploadFileHelper.setMd5DigestUtils(mockMd5DigestUtils);
         uploadFileHelper.setS3Helper(mockS3Helper);
     }
 
@@ -85,10 +78,38 @@ public class UploadFileHelperFindValueTest {
 
         ObjectMetadata metadata = metadataCaptor.getValue();
         assertEquals(metadata.getUserMetaDataOf(UploadFileHelper.KEY_CUSTOM_CONTENT_MD5),
-                TestConstants.MOCK_MD5_HEX_ENCODED);
+                DigestUtils.md5Hex("dummy content"));
         assertEquals(metadata.getSSEAlgorithm(), ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION);
     }
 
+    @Test
+    public void attachmentFileUploadedInBackground() throws Exception {
+        ExecutorService mockExecutorService = mock(ExecutorService.class);
+        uploadFileHelper.setAttachmentUploadExecutorService(mockExecutorService);
+
+        UploadFieldDefinition fieldDef = new UploadFieldDefinition.Builder().withName(FIELD_NAME_FILE)
+                .withType(UploadFieldType.ATTACHMENT_V2).build();
+        File recordJsonFile = makeFileWithContent(FIELD_NAME_FILE, "dummy content");
+        Map<String, File> fileMap = ImmutableMap.of(FIELD_NAME_FILE, recordJsonFile);
+
+        // Execute. The attachment ID is returned before the upload runs.
+        AttachmentUploadBatch attachmentBatch = new AttachmentUploadBatch(UPLOAD_ID);
+        JsonNode result = uploadFileHelper.findValueForField(UPLOAD_ID, fileMap, fieldDef, new HashMap<>(),
+                attachmentBatch);
+        assertEquals(result.textValue(), UPLOAD_ID + '-' + FIELD_NAME_FILE);
+        assertEquals(attachmentBatch.size(), 1);
+        verifyZeroInteractions(mockS3Helper);
+
+        // Run the upload on the "executor", then wait for the batch.
+        ArgumentCaptor<Runnable> taskCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(mockExecutorService).execute(taskCaptor.capture());
+        taskCaptor.getValue().run();
+        attachmentBatch.await();
+
+        verify(mockS3Helper).writeFileToS3(eq(UploadFileHelper.ATTACHMENT_BUCKET),
+                eq(UPLOAD_ID + '-' + FIELD_NAME_FILE), eq(recordJsonFile), metadataCaptor.capture());
+    }
+
     @Test
     public void attachmentFileEmpty() throws Exception {
         // Make field def.
@@ -189,7 +210,7 @@ public class UploadFileHelperFindValueTest {
                 eq("\"record-value\"".getBytes(Charsets.UTF_8)), metadataCaptor.capture());
 
         ObjectMetadata metadata = metadataCaptor.getValue();
-        assertEquals(TestConstants.MOCK_MD5_HEX_ENCODED, metadata.getUserMetaDataOf(
+        assertEquals(DigestUtils.md5Hex("\"record-value\""), metadata.getUserMetaDataOf(
                 UploadFileHelper.KEY_CUSTOM_CONTENT_MD5));
         assertEquals(ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION, metadata.getSSEAlgorithm());
     }
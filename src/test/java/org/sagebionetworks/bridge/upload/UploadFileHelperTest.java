@@ -3,14 +3,23 @@ package org.sagebionetworks.bridge.upload;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.Upload;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
@@ -19,7 +28,7 @@ import org.mockito.MockitoAnnotations;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
-import org.sagebionetworks.bridge.TestConstants;
+import org.sagebionetworks.bridge.file.FileHelper;
 import org.sagebionetworks.bridge.s3.S3Helper;
 
 public class UploadFileHelperTest {
@@ -27,20 +36,30 @@ public class UploadFileHelperTest {
     private static final String FILENAME = "file.txt";
 
     @Mock
-    DigestUtils mockMd5DigestUtils;
+    FileHelper mockFileHelper;
 
     @Mock
     S3Helper mockS3Helper;
 
+    @Mock
+    TransferManager mockTransferManager;
+
+    @Mock
+    Upload mockTransfer;
+
     @InjectMocks
     UploadFileHelper helper;
 
+    File mockFile;
+
     @BeforeMethod
     public void before() throws Exception {
         MockitoAnnotations.initMocks(this);
 
-        when(mockMd5DigestUtils.digest(any(File.class))).thenReturn(TestConstants.MOCK_MD5);
-        when(mockMd5DigestUtils.digest(any(byte[].class))).thenReturn(TestConstants.MOCK_MD5);
+        mockFile = mock(File.class);
+        when(mockFileHelper.getInputStream(mockFile)).thenReturn(new ByteArrayInputStream(CONTENT));
+        when(mockFileHelper.fileSize(mockFile)).thenReturn((long) CONTENT.length);
+        when(mockTransferManager.upload(any(PutObjectRequest.class))).thenReturn(mockTransfer);
     }
 
     @Test
@@ -54,14 +73,13 @@ public class UploadFileHelperTest {
                 metadataCaptor.capture());
         ObjectMetadata metadata = metadataCaptor.getValue();
         assertEquals(metadata.getUserMetaDataOf(UploadFileHelper.KEY_CUSTOM_CONTENT_MD5),
-                TestConstants.MOCK_MD5_HEX_ENCODED);
+                DigestUtils.md5Hex(CONTENT));
         assertEquals(metadata.getSSEAlgorithm(), ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION);
     }
 
     @Test
     public void uploadFileAsAttachment() throws Exception {
         // Execute.
-        File mockFile = mock(File.class);
         helper.uploadFileAsAttachment(FILENAME, mockFile);
 
         // Verify.
@@ -70,7 +88,39 @@ public class UploadFileHelperTest {
                 metadataCaptor.capture());
         ObjectMetadata metadata = metadataCaptor.getValue();
         assertEquals(metadata.getUserMetaDataOf(UploadFileHelper.KEY_CUSTOM_CONTENT_MD5),
-                TestConstants.MOCK_MD5_HEX_ENCODED);
+                DigestUtils.md5Hex(CONTENT));
         assertEquals(metadata.getSSEAlgorithm(), ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION);
+
+        verify(mockTransferManager, never()).upload(any(PutObjectRequest.class));
+    }
+
+    @Test
+    public void uploadLargeFileAsAttachmentUsesMultipart() throws Exception {
+        helper.setMultipartThresholdBytes(CONTENT.length - 1);
+
+        // Execute.
+        helper.uploadFileAsAttachment(FILENAME, mockFile);
+
+        // Verify.
+        ArgumentCaptor<PutObjectRequest> requestCaptor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(mockTransferManager).upload(requestCaptor.capture());
+        verify(mockTransfer).waitForCompletion();
+        verify(mockS3Helper, never()).writeFileToS3(any(), any(), any(), any());
+
+        PutObjectRequest request = requestCaptor.getValue();
+        assertEquals(request.getBucketName(), UploadFileHelper.ATTACHMENT_BUCKET);
+        assertEquals(request.getKey(), FILENAME);
+        assertSame(request.getFile(), mockFile);
+        assertEquals(request.getMetadata().getUserMetaDataOf(UploadFileHelper.KEY_CUSTOM_CONTENT_MD5),
+                DigestUtils.md5Hex(CONTENT));
+        assertEquals(request.getMetadata().getSSEAlgorithm(), ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void uploadLargeFileAsAttachmentError() throws Exception {
+        helper.setMultipartThresholdBytes(CONTENT.length - 1);
+        doThrow(new AmazonClientException("test")).when(mockTransfer).waitForCompletion();
+
+        helper.uploadFileAsAttachment(FILENAME, mockFile);
     }
 }
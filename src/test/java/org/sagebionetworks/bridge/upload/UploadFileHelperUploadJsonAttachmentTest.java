@@ -5,22 +5,19 @@ import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.testng.Assert.assertEquals;
 
-import java.io.File;
 import java.io.IOException;
 
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.TextNode;
 import com.google.common.base.Charsets;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.mockito.ArgumentCaptor;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
-import org.sagebionetworks.bridge.TestConstants;
 import org.sagebionetworks.bridge.s3.S3Helper;
 
 public class UploadFileHelperUploadJsonAttachmentTest {
@@ -33,14 +30,9 @@ public class UploadFileHelperUploadJsonAttachmentTest {
 
     @BeforeMethod
     public void before() throws Exception {
-        DigestUtils mockMd5DigestUtils = mock(DigestUtils.class);
-        when(mockMd5DigestUtils.digest(any(File.class))).thenReturn(TestConstants.MOCK_MD5);
-        when(mockMd5DigestUtils.digest(any(byte[].class))).thenReturn(TestConstants.MOCK_MD5);
-
         mockS3Helper = mock(S3Helper.class);
 
         uploadFileHelper = new UploadFileHelper();
-        uploadFileHelper.setMd5DigestUtils(mockMd5DigestUtils);
         uploadFileHelper.setS3Helper(mockS3Helper);
     }
 
@@ -65,4 +57,17 @@ public class UploadFileHelperUploadJsonAttachmentTest {
         doThrow(IOException.class).when(mockS3Helper).writeBytesToS3(any(), any(), any(byte[].class), any());
         uploadFileHelper.uploadJsonNodeAsAttachment(TextNode.valueOf("dummy content"), UPLOAD_ID, FIELD_NAME);
     }
+
+    @Test
+    public void cancelledBatchSkipsUpload() throws Exception {
+        AttachmentUploadBatch attachmentBatch = new AttachmentUploadBatch(UPLOAD_ID);
+        attachmentBatch.cancel();
+
+        JsonNode result = uploadFileHelper.uploadJsonNodeAsAttachment(TextNode.valueOf("dummy content"), UPLOAD_ID,
+                FIELD_NAME, attachmentBatch);
+        assertEquals(result.textValue(), EXPECTED_ATTACHMENT_NAME);
+
+        // Uploads that haven't started when the batch is cancelled do nothing.
+        verifyZeroInteractions(mockS3Helper);
+    }
 }
@@ -19,12 +19,12 @@ import java.util.Map;
 import java.util.Set;
 
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeUtils;
 import org.joda.time.LocalDate;
@@ -199,13 +199,8 @@ public class UploadHandlersEndToEndTest {
         }
 
         // Set up UploadFileHelper
-        DigestUtils mockMd5DigestUtils = mock(DigestUtils.class);
-        when(mockMd5DigestUtils.digest(any(File.class))).thenReturn(TestConstants.MOCK_MD5);
-        when(mockMd5DigestUtils.digest(any(byte[].class))).thenReturn(TestConstants.MOCK_MD5);
-
         UploadFileHelper uploadFileHelper = new UploadFileHelper();
         uploadFileHelper.setFileHelper(inMemoryFileHelper);
-        uploadFileHelper.setMd5DigestUtils(mockMd5DigestUtils);
         uploadFileHelper.setS3Helper(mockS3UploadHelper);
 
         // set up S3DownloadHandler - mock S3 Helper
@@ -244,17 +239,15 @@ public class UploadHandlersEndToEndTest {
         // mock schema service
         UploadSchemaService mockUploadSchemaService = mock(UploadSchemaService.class);
         if (schema != null) {
-            when(mockUploadSchemaService.getUploadSchemaByIdAndRev(TEST_APP_ID, schema.getSchemaId(),
-                    schema.getRevision())).thenReturn(schema);
-            when(mockUploadSchemaService.getUploadSchemaByIdAndRevNoThrow(TEST_APP_ID,
+            when(mockUploadSchemaService.getCachedUploadSchemaByIdAndRev(TEST_APP_ID,
                     schema.getSchemaId(), schema.getRevision())).thenReturn(schema);
         }
 
         // mock survey service
         SurveyService mockSurveyService = mock(SurveyService.class);
         if (survey != null) {
-            when(mockSurveyService.getSurvey(TEST_APP_ID,
-                    new GuidCreatedOnVersionHolderImpl(survey.getGuid(), survey.getCreatedOn()), false, true))
+            when(mockSurveyService.getCachedSurvey(TEST_APP_ID,
+                    new GuidCreatedOnVersionHolderImpl(survey.getGuid(), survey.getCreatedOn())))
                             .thenReturn(survey);
         }
 
@@ -319,6 +312,7 @@ public class UploadHandlersEndToEndTest {
         UploadValidationTaskFactory taskFactory = new UploadValidationTaskFactory();
         taskFactory.setFileHelper(inMemoryFileHelper);
         taskFactory.setHandlerList(handlerList);
+        taskFactory.setMetricRegistry(new MetricRegistry());
         taskFactory.setUploadDao(mockUploadDao);
         taskFactory.setHealthDataService(mockHealthDataService);
 
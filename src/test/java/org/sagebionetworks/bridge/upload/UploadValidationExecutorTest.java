@@ -0,0 +1,98 @@
+package org.sagebionetworks.bridge.upload;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.MetricRegistry;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class UploadValidationExecutorTest {
+    private static final String APP_A = "app-a";
+    private static final String APP_B = "app-b";
+
+    private MetricRegistry metricRegistry;
+    private UploadValidationExecutor executor;
+
+    @BeforeMethod
+    public void before() {
+        metricRegistry = new MetricRegistry();
+
+        // Don't start the worker threads, so we can inspect the scheduling order with poll().
+        executor = new UploadValidationExecutor();
+        executor.setMaxQueueSize(4);
+        executor.setThreadCount(1);
+        executor.setMetricRegistry(metricRegistry);
+    }
+
+    @AfterMethod
+    public void after() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void roundRobinAcrossApps() {
+        Runnable a1 = () -> {};
+        Runnable a2 = () -> {};
+        Runnable a3 = () -> {};
+        Runnable b1 = () -> {};
+        assertTrue(executor.submit(APP_A, a1, false));
+        assertTrue(executor.submit(APP_A, a2, false));
+        assertTrue(executor.submit(APP_A, a3, false));
+        assertTrue(executor.submit(APP_B, b1, false));
+        assertEquals(executor.getQueuedCount(), 4);
+
+        // App B's task is scheduled before app A's remaining tasks.
+        assertSame(executor.poll(), a1);
+        assertSame(executor.poll(), b1);
+        assertSame(executor.poll(), a2);
+        assertSame(executor.poll(), a3);
+        assertNull(executor.poll());
+        assertEquals(executor.getQueuedCount(), 0);
+    }
+
+    @Test
+    public void highPriorityFirst() {
+        Runnable normal = () -> {};
+        Runnable high = () -> {};
+        executor.submit(APP_A, normal, false);
+        executor.submit(APP_B, high, true);
+
+        assertSame(executor.poll(), high);
+        assertSame(executor.poll(), normal);
+    }
+
+    @Test
+    public void rejectsWhenFull() {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(executor.submit(APP_A, () -> {}, false));
+        }
+        assertFalse(executor.submit(APP_B, () -> {}, true));
+        assertEquals(executor.getQueuedCount(), 4);
+        assertEquals(metricRegistry.counter(UploadValidationExecutor.METRIC_REJECTED).getCount(), 1);
+        assertEquals(metricRegistry.getGauges().get(UploadValidationExecutor.METRIC_QUEUED).getValue(), 4);
+
+        // Once a task is taken off the queue, there's room again.
+        executor.poll();
+        assertTrue(executor.submit(APP_B, () -> {}, true));
+    }
+
+    @Test
+    public void runsTasks() throws Exception {
+        CountDownLatch latch = new CountDownLatch(2);
+        executor.start();
+        executor.submit(APP_A, () -> {
+            throw new RuntimeException("worker should survive this");
+        }, false);
+        executor.submit(APP_A, latch::countDown, false);
+        executor.submit(APP_B, latch::countDown, true);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -7,6 +7,7 @@ import static org.testng.Assert.assertSame;
 import java.util.Collections;
 import java.util.List;
 
+import com.codahale.metrics.MetricRegistry;
 import org.testng.annotations.Test;
 
 import org.sagebionetworks.bridge.TestUtils;
@@ -26,11 +27,13 @@ public class UploadValidationTaskFactoryTest {
         UploadDao dao = mock(UploadDao.class);
         FileHelper fileHelper = new FileHelper();
         HealthDataService healthDataService = new HealthDataService();
+        MetricRegistry metricRegistry = new MetricRegistry();
 
         // set up task factory
         UploadValidationTaskFactory taskFactory = new UploadValidationTaskFactory();
         taskFactory.setFileHelper(fileHelper);
         taskFactory.setHandlerList(handlerList);
+        taskFactory.setMetricRegistry(metricRegistry);
         taskFactory.setUploadDao(dao);
         taskFactory.setHealthDataService(healthDataService);
 
@@ -47,6 +50,7 @@ public class UploadValidationTaskFactoryTest {
 
         assertSame(task.getFileHelper(), fileHelper);
         assertSame(task.getHandlerList(), handlerList);
+        assertSame(task.getMetricRegistry(), metricRegistry);
         assertSame(task.getUploadDao(), dao);
         assertSame(task.getHealthDataService(), healthDataService);
     }
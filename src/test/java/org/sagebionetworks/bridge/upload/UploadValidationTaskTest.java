@@ -18,6 +18,7 @@ import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.util.List;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 
@@ -56,6 +57,7 @@ public class UploadValidationTaskTest {
 
     private UploadValidationContext ctx;
     private InMemoryFileHelper inMemoryFileHelper;
+    private MetricRegistry metricRegistry;
     private UploadDao mockDao;
     private UploadValidationTask task;
     private Upload upload;
@@ -79,6 +81,7 @@ public class UploadValidationTaskTest {
 
         // Set up other pre-reqs
         inMemoryFileHelper = new InMemoryFileHelper();
+        metricRegistry = new MetricRegistry();
         mockDao = mock(UploadDao.class);
 
         // Set up task. Spy so we can verify some calls.
@@ -86,6 +89,7 @@ public class UploadValidationTaskTest {
         task.setFileHelper(inMemoryFileHelper);
         task.setHandlerList(handlerList);
         task.setHealthDataService(healthDataService);
+        task.setMetricRegistry(metricRegistry);
         task.setUploadDao(mockDao);
     }
 
@@ -103,6 +107,15 @@ public class UploadValidationTaskTest {
         assertEquals(messageList.get(0), "foo was here");
         assertEquals(messageList.get(1), "bar was here");
         assertEquals(messageList.get(2), "kilroy was here");
+
+        // validate metrics
+        assertEquals(metricRegistry.timer("upload.validation.MessageHandler.latency").getCount(), 3);
+        assertEquals(metricRegistry.timer("upload.validation.MessageHandler." + ctx.getAppId() + ".latency")
+                .getCount(), 3);
+        assertEquals(metricRegistry.counter("upload.validation.MessageHandler.success").getCount(), 3);
+        assertEquals(metricRegistry.counter("upload.validation.RecordIdHandler.success").getCount(), 1);
+        assertEquals(metricRegistry.counter("upload.validation.succeeded").getCount(), 1);
+        assertEquals(metricRegistry.counter("upload.validation.validation_failed").getCount(), 0);
     }
 
     @Test
@@ -146,6 +159,14 @@ public class UploadValidationTaskTest {
         assertEquals(messageList.size(), 2);
         assertEquals(messageList.get(0), "foo succeeded");
         assertFalse(Strings.isNullOrEmpty(messageList.get(1)));
+
+        // Validate metrics. The failing handler is counted as a failure, and handlers after it never run.
+        assertEquals(metricRegistry.counter("upload.validation.MessageHandler.success").getCount(), 1);
+        String barHandlerName = barHandler.getClass().getSimpleName();
+        assertEquals(metricRegistry.counter("upload.validation." + barHandlerName + ".failure").getCount(), 1);
+        assertEquals(metricRegistry.timer("upload.validation." + barHandlerName + ".latency").getCount(), 1);
+        assertEquals(metricRegistry.timer("upload.validation.RecordIdHandler.latency").getCount(), 0);
+        assertEquals(metricRegistry.counter("upload.validation.validation_failed").getCount(), 1);
     }
 
     // helper test method, encapsulating core setup and validation